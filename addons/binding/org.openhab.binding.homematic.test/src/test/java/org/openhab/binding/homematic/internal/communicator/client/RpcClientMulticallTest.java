@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.homematic.internal.communicator.client;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.homematic.internal.common.HomematicConfig;
+import org.openhab.binding.homematic.internal.communicator.message.RpcRequest;
+import org.openhab.binding.homematic.internal.model.HmChannel;
+import org.openhab.binding.homematic.internal.model.HmDevice;
+import org.openhab.binding.homematic.internal.model.HmInterface;
+import org.openhab.binding.homematic.internal.model.HmParamsetType;
+
+/**
+ * Tests the system.multicall batching of the {@link RpcClient} and the fallback to single requests.
+ *
+ * @author agent - Initial contribution
+ */
+public class RpcClientMulticallTest {
+    private HomematicConfig config;
+    private TestRpcClient client;
+    private List<HmChannel> channels;
+
+    @Before
+    public void setUp() {
+        config = new HomematicConfig();
+        client = new TestRpcClient(config);
+        channels = Arrays.asList(createChannel("LEQ0000001", 1), createChannel("LEQ0000002", 1));
+    }
+
+    @Test
+    public void batchesRequestsInOneMulticall() throws IOException {
+        client.multicallResult = new Object[] { new Object[] { createMulticallEntry(), createMulticallEntry() } };
+
+        client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+
+        assertEquals(Arrays.asList("system.multicall"), client.methodNames);
+        assertEquals(2, ((List<?>) client.requests.get(0).args.get(0)).size());
+    }
+
+    @Test
+    public void fallsBackAndRemembersUnknownMethodFault() throws IOException {
+        client.multicallFault = new RpcFaultException(-32601, "requested method not found", "method not found");
+
+        client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+        assertEquals(Arrays.asList("system.multicall", "getParamset", "getParamset"), client.methodNames);
+
+        client.methodNames.clear();
+        client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+        assertEquals(Arrays.asList("getParamset", "getParamset"), client.methodNames);
+    }
+
+    @Test
+    public void fallsBackAndRetriesAfterOtherFault() throws IOException {
+        client.multicallFault = new RpcFaultException(-1, "Failure", "Failure");
+
+        client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+        assertEquals(Arrays.asList("system.multicall", "getParamset", "getParamset"), client.methodNames);
+
+        client.methodNames.clear();
+        client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+        assertEquals(Arrays.asList("system.multicall", "getParamset", "getParamset"), client.methodNames);
+    }
+
+    @Test
+    public void repeatsFailedMulticallEntriesWithSingleRequests() throws IOException {
+        Map<String, Object> fault = new HashMap<String, Object>();
+        fault.put("faultCode", -1);
+        fault.put("faultString", "Failure");
+        client.multicallResult = new Object[] { new Object[] { createMulticallEntry(), fault } };
+
+        client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+
+        assertEquals(Arrays.asList("system.multicall", "getParamset"), client.methodNames);
+        assertEquals("LEQ0000002:1", client.requests.get(1).args.get(0));
+    }
+
+    @Test
+    public void fallsBackOnUnexpectedMulticallResult() throws IOException {
+        client.multicallResult = new Object[] { new Object[] { createMulticallEntry() } };
+
+        client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+
+        assertEquals(Arrays.asList("system.multicall", "getParamset", "getParamset"), client.methodNames);
+    }
+
+    @Test
+    public void doesNotSendMulticallIfDisabled() throws IOException {
+        config.setMulticallBatchSize(1);
+
+        client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+
+        assertEquals(Arrays.asList("getParamset", "getParamset"), client.methodNames);
+    }
+
+    @Test
+    public void propagatesTransportErrors() {
+        client.multicallError = new IOException("Connection refused");
+        try {
+            client.setChannelDatapointValues(channels, HmParamsetType.VALUES);
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertEquals("Connection refused", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void detectsUnknownMethodFaults() {
+        assertTrue(RpcClient.isUnknownMethodFault(new RpcFaultException(-32601, null, "")));
+        assertTrue(RpcClient.isUnknownMethodFault(new RpcFaultException(-1, "Unknown method", "")));
+        assertTrue(RpcClient.isUnknownMethodFault(new RpcFaultException(-1, "Method not found", "")));
+        assertTrue(RpcClient.isUnknownMethodFault(new RpcFaultException(-1, "method is not supported", "")));
+        assertFalse(RpcClient.isUnknownMethodFault(new RpcFaultException(-1, "Failure", "")));
+        assertFalse(RpcClient.isUnknownMethodFault(new RpcFaultException(-2, "Unknown instance", "")));
+        assertFalse(RpcClient.isUnknownMethodFault(new RpcFaultException(-1, null, "")));
+    }
+
+    private static HmChannel createChannel(String address, int number) {
+        HmDevice device = new HmDevice();
+        device.setAddress(address);
+        device.setHmInterface(HmInterface.RF);
+        HmChannel channel = new HmChannel();
+        channel.setNumber(number);
+        device.addChannel(channel);
+        return channel;
+    }
+
+    private static Map<String, Object> createParamset() {
+        return new HashMap<String, Object>();
+    }
+
+    /**
+     * Returns a successful entry of a system.multicall response, the result is wrapped in an array.
+     */
+    private static Object[] createMulticallEntry() {
+        return new Object[] { createParamset() };
+    }
+
+    /**
+     * A RpcRequest which only records the method name and the arguments.
+     */
+    private static class TestRpcRequest implements RpcRequest {
+        private String methodName;
+        private List<Object> args = new ArrayList<Object>();
+
+        public TestRpcRequest(String methodName) {
+            this.methodName = methodName;
+        }
+
+        @Override
+        public void addArg(Object arg) {
+            args.add(arg);
+        }
+
+        @Override
+        public byte[] createMessage() {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * A RpcClient which records all requests and answers them without a gateway.
+     */
+    private static class TestRpcClient extends RpcClient {
+        private List<TestRpcRequest> requests = new ArrayList<TestRpcRequest>();
+        private List<String> methodNames = new ArrayList<String>();
+        private Object[] multicallResult;
+        private RpcFaultException multicallFault;
+        private IOException multicallError;
+
+        public TestRpcClient(HomematicConfig config) {
+            super(config);
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        protected RpcRequest createRpcRequest(String methodName) {
+            return new TestRpcRequest(methodName);
+        }
+
+        @Override
+        protected String getRpcCallbackUrl() {
+            return "binary://127.0.0.1:9126";
+        }
+
+        @Override
+        protected Object[] sendMessage(int port, RpcRequest request) throws IOException {
+            TestRpcRequest testRequest = (TestRpcRequest) request;
+            requests.add(testRequest);
+            methodNames.add(testRequest.methodName);
+            if ("system.multicall".equals(testRequest.methodName)) {
+                if (multicallFault != null) {
+                    throw multicallFault;
+                }
+                if (multicallError != null) {
+                    throw multicallError;
+                }
+                return multicallResult;
+            }
+            return new Object[] { createParamset() };
+        }
+    }
+}
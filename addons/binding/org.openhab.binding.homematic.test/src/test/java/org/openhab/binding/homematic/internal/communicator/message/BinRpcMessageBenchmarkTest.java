@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.homematic.internal.communicator.message;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.ArrayUtils;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Micro benchmark of the BIN-RPC decoder with event frames as sent by the CCU. It compares the
+ * {@link BinRpcMessage} decoder with the previous decoder, which is kept here as {@link LegacyDecoder}.
+ *
+ * The benchmark is skipped by default, run it with
+ * <code>mvn install -Dtycho.testArgLine=-Dhomematic.benchmark=true</code>.
+ *
+ * @author agent - Initial contribution
+ */
+public class BinRpcMessageBenchmarkTest {
+    private final static Logger logger = LoggerFactory.getLogger(BinRpcMessageBenchmarkTest.class);
+
+    private static final String ENCODING = "ISO-8859-1";
+    private static final int EVENTS_PER_MULTICALL = 10;
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 200000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void decodesSingleEventLikeLegacyDecoder() throws IOException {
+        byte[] frame = createEventFrame();
+        BinRpcMessage message = new BinRpcMessage(new ByteArrayInputStream(frame), true, ENCODING);
+        LegacyDecoder legacy = new LegacyDecoder(new ByteArrayInputStream(frame), ENCODING);
+
+        assertEquals("event", message.getMethodName());
+        assertEquals(legacy.methodName, message.getMethodName());
+        assertEquals(normalize(legacy.messageData), normalize(message.getResponseData()));
+    }
+
+    @Test
+    public void decodesMulticallLikeLegacyDecoder() throws IOException {
+        byte[] frame = createMulticallFrame();
+        BinRpcMessage message = new BinRpcMessage(new ByteArrayInputStream(frame), true, ENCODING);
+        LegacyDecoder legacy = new LegacyDecoder(new ByteArrayInputStream(frame), ENCODING);
+
+        assertEquals("system.multicall", message.getMethodName());
+        assertEquals(EVENTS_PER_MULTICALL, ((Object[]) message.getResponseData()[0]).length);
+        assertEquals(normalize(legacy.messageData), normalize(message.getResponseData()));
+    }
+
+    @Test
+    public void benchmarkDecode() throws IOException {
+        assumeTrue(Boolean.getBoolean("homematic.benchmark"));
+
+        for (byte[] frame : Arrays.asList(createEventFrame(), createMulticallFrame())) {
+            long legacyNanos = Long.MAX_VALUE;
+            long currentNanos = Long.MAX_VALUE;
+            decodeLegacy(frame, WARMUP_ITERATIONS);
+            decodeCurrent(frame, WARMUP_ITERATIONS);
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                decodeLegacy(frame, ITERATIONS);
+                legacyNanos = Math.min(legacyNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                decodeCurrent(frame, ITERATIONS);
+                currentNanos = Math.min(currentNanos, System.nanoTime() - start);
+            }
+            logger.info("Decoding a {} byte frame: legacy {} ns, current {} ns per frame", frame.length,
+                    legacyNanos / ITERATIONS, currentNanos / ITERATIONS);
+        }
+    }
+
+    private static void decodeLegacy(byte[] frame, int iterations) throws IOException {
+        int values = 0;
+        for (int i = 0; i < iterations; i++) {
+            values += new LegacyDecoder(new ByteArrayInputStream(frame), ENCODING).messageData.length;
+        }
+        assertTrue(values >= iterations);
+    }
+
+    private static void decodeCurrent(byte[] frame, int iterations) throws IOException {
+        int values = 0;
+        for (int i = 0; i < iterations; i++) {
+            values += new BinRpcMessage(new ByteArrayInputStream(frame), true, ENCODING).getResponseData().length;
+        }
+        assertTrue(values >= iterations);
+    }
+
+    /**
+     * Creates a single event as sent by the CCU for a datapoint update.
+     */
+    private static byte[] createEventFrame() {
+        BinRpcMessage message = new BinRpcMessage("event", ENCODING);
+        message.addArg("openHAB-ccu-BidCos-RF");
+        message.addArg("LEQ0123456:1");
+        message.addArg("LEVEL");
+        message.addArg(0.75);
+        return message.createMessage();
+    }
+
+    /**
+     * Creates a system.multicall with the events of several datapoints, which is sent by the CCU for bursts.
+     */
+    private static byte[] createMulticallFrame() {
+        List<Map<String, Object>> calls = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < EVENTS_PER_MULTICALL; i++) {
+            Object value;
+            String key;
+            switch (i % 4) {
+                case 0:
+                    key = "STATE";
+                    value = Boolean.TRUE;
+                    break;
+                case 1:
+                    key = "ACTUAL_TEMPERATURE";
+                    value = 21.5;
+                    break;
+                case 2:
+                    key = "RSSI_DEVICE";
+                    value = -65;
+                    break;
+                default:
+                    key = "LEVEL";
+                    value = 0.25;
+            }
+            Map<String, Object> call = new HashMap<String, Object>();
+            call.put("methodName", "event");
+            call.put("params", Arrays.<Object> asList("openHAB-ccu-BidCos-RF", "LEQ01234" + (10 + i) + ":1", key,
+                    value));
+            calls.add(call);
+        }
+        BinRpcMessage message = new BinRpcMessage("system.multicall", ENCODING);
+        message.addArg(calls);
+        return message.createMessage();
+    }
+
+    /**
+     * Converts arrays to lists, so decoded messages can be compared with equals.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Object[]) {
+            List<Object> list = new ArrayList<Object>();
+            for (Object element : (Object[]) value) {
+                list.add(normalize(element));
+            }
+            return list;
+        } else if (value instanceof Map<?, ?>) {
+            Map<Object, Object> map = new TreeMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(entry.getKey(), normalize(entry.getValue()));
+            }
+            return map;
+        }
+        return value;
+    }
+
+    /**
+     * The BIN-RPC decoder before the ByteBuffer based decoding, only used for comparison.
+     */
+    private static class LegacyDecoder {
+        private Object[] messageData;
+        private byte binRpcData[];
+        private int offset;
+        private String methodName;
+        private String encoding;
+
+        public LegacyDecoder(InputStream is, String encoding) throws IOException {
+            this.encoding = encoding;
+            byte sig[] = new byte[8];
+            is.read(sig, 0, 4);
+            is.read(sig, 4, 4);
+            int datasize = (new BigInteger(ArrayUtils.subarray(sig, 4, 8))).intValue();
+            binRpcData = ArrayUtils.addAll(sig, IOUtils.toByteArray(is, datasize));
+
+            offset = 8;
+            methodName = readString();
+            readInt();
+
+            offset = 8 + methodName.length() + 8;
+            List<Object> values = new ArrayList<Object>();
+            while (offset < binRpcData.length) {
+                values.add(readRpcValue());
+            }
+            messageData = values.toArray();
+        }
+
+        private int readInt() {
+            byte bi[] = new byte[4];
+            System.arraycopy(binRpcData, offset, bi, 0, 4);
+            offset += 4;
+            return (new BigInteger(bi)).intValue();
+        }
+
+        private String readString() throws IOException {
+            int len = readInt();
+            offset += len;
+            return new String(binRpcData, offset - len, len, encoding);
+        }
+
+        private Object readRpcValue() throws IOException {
+            int type = readInt();
+            switch (type) {
+                case 1:
+                    return new Integer(readInt());
+                case 2:
+                    return binRpcData[offset++] != 0 ? Boolean.TRUE : Boolean.FALSE;
+                case 3:
+                    return readString();
+                case 4:
+                    int mantissa = readInt();
+                    int exponent = readInt();
+                    BigDecimal bd = new BigDecimal((double) mantissa / (double) (1 << 30) * Math.pow(2, exponent));
+                    return bd.setScale(6, RoundingMode.HALF_DOWN).doubleValue();
+                case 5:
+                    return new Date(readInt() * 1000);
+                case 0x100:
+                    int numElements = readInt();
+                    List<Object> array = new ArrayList<Object>();
+                    while (numElements-- > 0) {
+                        array.add(readRpcValue());
+                    }
+                    return array.toArray();
+                case 0x101:
+                    numElements = readInt();
+                    Map<String, Object> struct = new TreeMap<String, Object>();
+                    while (numElements-- > 0) {
+                        String name = readString();
+                        struct.put(name, readRpcValue());
+                    }
+                    return struct;
+                default:
+                    throw new IOException("Unknown data type " + type);
+            }
+        }
+    }
+}
@@ -170,6 +170,16 @@ public class HomematicBridgeHandler extends BaseBridgeHandler implements Homemat
      */
     private HomematicConfig createHomematicConfig() {
         HomematicConfig homematicConfig = getThing().getConfiguration().as(HomematicConfig.class);
+        if (homematicConfig.getSocketMaxAlive() != null) {
+            if (getThing().getConfiguration().get("socketMaxIdle") == null) {
+                logger.warn("The parameter socketMaxAlive of bridge '{}' is deprecated, use socketMaxIdle instead",
+                        getThing().getUID().getId());
+                homematicConfig.setSocketMaxIdle(homematicConfig.getSocketMaxAlive());
+            } else {
+                logger.warn("Ignoring the deprecated parameter socketMaxAlive of bridge '{}', socketMaxIdle is set",
+                        getThing().getUID().getId());
+            }
+        }
         if (homematicConfig.getCallbackHost() == null) {
             homematicConfig.setCallbackHost(NetUtil.getLocalIpv4HostAddress());
         }
@@ -44,9 +44,13 @@ public class HomematicConfig {
     private int binCallbackPort;
 
     private Integer aliveInterval = 300;
-    private int socketMaxAlive = 900;
+    private int socketPoolSize = 3;
+    private int socketMaxIdle = 60;
+    private Integer socketMaxAlive;
     private int timeout = 15;
     private int reconnectInterval = 0;
+    private int multicallBatchSize = 50;
+    private int eventCoalescingWindow = 200;
 
     private HmGatewayInfo gatewayInfo;
 
@@ -155,17 +159,39 @@ public class HomematicConfig {
     }
 
     /**
-     * Returns the max alive time of a socket connection to a Homematic gateway in seconds.
+     * Returns the max number of concurrent socket connections per interface of a Homematic gateway.
      */
-    public int getSocketMaxAlive() {
-        return socketMaxAlive;
+    public int getSocketPoolSize() {
+        return socketPoolSize;
+    }
+
+    /**
+     * Sets the max number of concurrent socket connections per interface of a Homematic gateway.
+     */
+    public void setSocketPoolSize(int socketPoolSize) {
+        this.socketPoolSize = socketPoolSize;
     }
 
     /**
-     * Sets the max alive time of a socket connection to a Homematic gateway in seconds.
+     * Returns the max idle time of a socket connection to a Homematic gateway in seconds.
      */
-    public void setSocketMaxAlive(int socketMaxAlive) {
-        this.socketMaxAlive = socketMaxAlive;
+    public int getSocketMaxIdle() {
+        return socketMaxIdle;
+    }
+
+    /**
+     * Sets the max idle time of a socket connection to a Homematic gateway in seconds.
+     */
+    public void setSocketMaxIdle(int socketMaxIdle) {
+        this.socketMaxIdle = socketMaxIdle;
+    }
+
+    /**
+     * Returns the deprecated max lifetime of a socket connection to a Homematic gateway in seconds, replaced by
+     * {@link #getSocketMaxIdle()}.
+     */
+    public Integer getSocketMaxAlive() {
+        return socketMaxAlive;
     }
 
     /**
@@ -196,6 +222,34 @@ public class HomematicConfig {
         this.reconnectInterval = reconnectInterval;
     }
 
+    /**
+     * Returns the max number of calls which are sent in one system.multicall request to the Homematic gateway.
+     */
+    public int getMulticallBatchSize() {
+        return multicallBatchSize;
+    }
+
+    /**
+     * Sets the max number of calls which are sent in one system.multicall request to the Homematic gateway.
+     */
+    public void setMulticallBatchSize(int multicallBatchSize) {
+        this.multicallBatchSize = multicallBatchSize;
+    }
+
+    /**
+     * Returns the time window in milliseconds in which events of a datapoint are coalesced.
+     */
+    public int getEventCoalescingWindow() {
+        return eventCoalescingWindow;
+    }
+
+    /**
+     * Sets the time window in milliseconds in which events of a datapoint are coalesced.
+     */
+    public void setEventCoalescingWindow(int eventCoalescingWindow) {
+        this.eventCoalescingWindow = eventCoalescingWindow;
+    }
+
     /**
      * Returns the HmGatewayType.
      */
@@ -298,7 +352,10 @@ public class HomematicConfig {
                 .append("gatewayType", gatewayType).append("rfPort", getRfPort()).append("wiredPort", getWiredPort())
                 .append("hmIpPort", getHmIpPort()).append("cuxdPort", getCuxdPort())
                 .append("aliveInterval", aliveInterval).append("reconnectInterval", reconnectInterval)
-                .append("timeout", timeout).append("socketMaxAlive", socketMaxAlive);
+                .append("timeout", timeout).append("socketPoolSize", socketPoolSize)
+                .append("socketMaxIdle", socketMaxIdle)
+                .append("multicallBatchSize", multicallBatchSize)
+                .append("eventCoalescingWindow", eventCoalescingWindow);
         return tsb.toString();
     }
 }
@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -51,6 +52,8 @@ import org.openhab.binding.homematic.internal.communicator.virtual.VirtualDatapo
 import org.openhab.binding.homematic.internal.communicator.virtual.VirtualGateway;
 import org.openhab.binding.homematic.internal.misc.DelayedExecuter;
 import org.openhab.binding.homematic.internal.misc.DelayedExecuter.DelayedExecuterCallback;
+import org.openhab.binding.homematic.internal.misc.EventCoalescer;
+import org.openhab.binding.homematic.internal.misc.EventCoalescer.EventCoalescerCallback;
 import org.openhab.binding.homematic.internal.misc.HomematicClientException;
 import org.openhab.binding.homematic.internal.misc.MiscUtils;
 import org.openhab.binding.homematic.internal.model.HmChannel;
@@ -83,8 +86,10 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
     private String id;
     private HomematicGatewayListener eventListener;
     private long lastEventTime = System.currentTimeMillis();
-    private DelayedExecuter delayedExecutor = new DelayedExecuter();
-    private Set<HmDatapointInfo> echoEvents = Collections.synchronizedSet(new HashSet<HmDatapointInfo>());
+    private DelayedExecuter delayedExecutor;
+    private EventCoalescer eventCoalescer;
+    private Set<HmDatapointInfo> echoEvents = Collections
+            .newSetFromMap(new ConcurrentHashMap<HmDatapointInfo, Boolean>());
     private ScheduledFuture<?> eventTrackerThread;
     private ScheduledFuture<?> connectionTrackerThread;
     private ScheduledFuture<?> reconnectThread;
@@ -92,6 +97,7 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
     private Map<HmInterface, TransferMode> availableInterfaces = new TreeMap<HmInterface, TransferMode>();
     private static List<VirtualDatapointHandler> virtualDatapointHandlers = new ArrayList<VirtualDatapointHandler>();
     private boolean cancelLoadAllMetadata;
+    private ChannelMetadataCache metadataCache;
 
     static {
         // loads all virtual datapoints
@@ -111,6 +117,16 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
         this.id = id;
         this.config = config;
         this.eventListener = eventListener;
+        this.delayedExecutor = new DelayedExecuter(ThreadPoolManager.getScheduledPool(GATEWAY_POOL_NAME));
+        this.metadataCache = new ChannelMetadataCache(id, config);
+        this.eventCoalescer = new EventCoalescer(ThreadPoolManager.getScheduledPool(GATEWAY_POOL_NAME),
+                config.getEventCoalescingWindow(), new EventCoalescerCallback() {
+
+                    @Override
+                    public void forward(HmDatapointInfo dpInfo, Object value) {
+                        updateDatapoint(dpInfo, value);
+                    }
+                });
     }
 
     /**
@@ -167,7 +183,14 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
     @Override
     public void dispose() {
         stopWatchdogs();
+        logger.debug("Delayed events on gateway with id '{}': pending={}, fired={}, coalesced={}", id,
+                delayedExecutor.getPendingCount(), delayedExecutor.getFiredCount(),
+                delayedExecutor.getCoalescedCount());
         delayedExecutor.stop();
+        logger.debug("Events on gateway with id '{}': forwarded={}, dropped={}, coalesced={}", id,
+                eventCoalescer.getForwardedCount(), eventCoalescer.getDroppedCount(),
+                eventCoalescer.getCoalescedCount());
+        eventCoalescer.stop();
         stopServers();
         stopClients();
         devices.clear();
@@ -327,6 +350,15 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
         return dp;
     }
 
+    /**
+     * Returns a copy of all known devices.
+     */
+    protected Collection<HmDevice> getDevices() {
+        synchronized (devices) {
+            return new ArrayList<HmDevice>(devices.values());
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -357,9 +389,42 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
         // load all device descriptions
         List<HmDevice> deviceDescriptions = getDeviceDescriptions();
 
-        // loading datapoints for all channels
+        // loading datapoints for all channels, a bunch of devices at once
         Set<String> loadedDevices = new HashSet<String>();
-        Map<String, Collection<HmDatapoint>> datapointsByChannelIdCache = new HashMap<String, Collection<HmDatapoint>>();
+        List<HmDevice> pendingDevices = new ArrayList<HmDevice>();
+        int pendingChannels = 0;
+        for (HmDevice device : deviceDescriptions) {
+            if (!cancelLoadAllMetadata) {
+                pendingDevices.add(device);
+                pendingChannels += device.getChannels().size();
+                if (pendingChannels >= config.getMulticallBatchSize()) {
+                    loadDeviceMetadata(pendingDevices, loadedDevices);
+                    pendingDevices.clear();
+                    pendingChannels = 0;
+                }
+            }
+        }
+        if (!cancelLoadAllMetadata) {
+            loadDeviceMetadata(pendingDevices, loadedDevices);
+            devices.keySet().retainAll(loadedDevices);
+
+            // persist the metadata of all current device types
+            Set<String> deviceTypes = new HashSet<String>();
+            for (HmDevice device : deviceDescriptions) {
+                deviceTypes.add(device.getType() + ":" + device.getFirmware());
+            }
+            metadataCache.retainDeviceTypes(deviceTypes);
+            metadataCache.save();
+        }
+    }
+
+    /**
+     * Loads the metadata for the given devices. Channels which are not in the cache are first loaded in batches per
+     * interface, if a batch fails, the channels are loaded individually per device.
+     */
+    private void loadDeviceMetadata(List<HmDevice> deviceDescriptions, Set<String> loadedDevices) {
+        Set<HmChannel> batchLoadedChannels = batchLoadChannelDatapoints(deviceDescriptions);
+
         for (HmDevice device : deviceDescriptions) {
             if (!cancelLoadAllMetadata) {
                 try {
@@ -372,14 +437,12 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
                         for (HmChannel channel : device.getChannels()) {
                             logger.trace("  Loading channel {}", channel);
                             // speed up metadata generation a little bit for equal channels in the gateway devices
-                            if ((DEVICE_TYPE_VIRTUAL.equals(device.getType())
-                                    || DEVICE_TYPE_VIRTUAL_WIRED.equals(device.getType())) && channel.getNumber() > 1) {
+                            if (isVirtualChannelClone(channel)) {
                                 HmChannel previousChannel = device.getChannel(channel.getNumber() - 1);
                                 cloneAllDatapointsIntoChannel(channel, previousChannel.getDatapoints().values());
-                            } else {
-                                String channelId = String.format("%s:%s:%s", channel.getDevice().getType(),
-                                        channel.getDevice().getFirmware(), channel.getNumber());
-                                Collection<HmDatapoint> cachedDatapoints = datapointsByChannelIdCache.get(channelId);
+                            } else if (!batchLoadedChannels.contains(channel)) {
+                                String channelId = getChannelId(channel);
+                                Collection<HmDatapoint> cachedDatapoints = metadataCache.get(channelId);
                                 if (cachedDatapoints != null) {
                                     // clone all datapoints
                                     cloneAllDatapointsIntoChannel(channel, cachedDatapoints);
@@ -390,7 +453,7 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
                                     getRpcClient(hmInterface).addChannelDatapoints(channel, HmParamsetType.MASTER);
                                     getRpcClient(hmInterface).addChannelDatapoints(channel, HmParamsetType.VALUES);
 
-                                    datapointsByChannelIdCache.put(channelId, channel.getDatapoints().values());
+                                    metadataCache.put(channelId, channel.getDatapoints().values());
                                 }
                             }
                         }
@@ -404,9 +467,70 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
                 }
             }
         }
-        if (!cancelLoadAllMetadata) {
-            devices.keySet().retainAll(loadedDevices);
+    }
+
+    /**
+     * Loads the datapoints of all uncached channels of the devices with batched requests and returns the loaded
+     * channels.
+     */
+    private Set<HmChannel> batchLoadChannelDatapoints(List<HmDevice> deviceDescriptions) {
+        Map<HmInterface, List<HmChannel>> channelsByInterface = new TreeMap<HmInterface, List<HmChannel>>();
+        Set<String> channelIds = new HashSet<String>();
+        for (HmDevice device : deviceDescriptions) {
+            if (!device.isGatewayExtras()) {
+                for (HmChannel channel : device.getChannels()) {
+                    String channelId = getChannelId(channel);
+                    if (!isVirtualChannelClone(channel) && !metadataCache.contains(channelId)
+                            && channelIds.add(channelId)) {
+                        List<HmChannel> channels = channelsByInterface.get(device.getHmInterface());
+                        if (channels == null) {
+                            channels = new ArrayList<HmChannel>();
+                            channelsByInterface.put(device.getHmInterface(), channels);
+                        }
+                        channels.add(channel);
+                    }
+                }
+            }
         }
+
+        Set<HmChannel> loadedChannels = new HashSet<HmChannel>();
+        for (Entry<HmInterface, List<HmChannel>> entry : channelsByInterface.entrySet()) {
+            List<HmChannel> channels = entry.getValue();
+            try {
+                logger.trace("Loading datapoints of {} channels from interface {}", channels.size(), entry.getKey());
+                getRpcClient(entry.getKey()).addChannelDatapoints(channels, HmParamsetType.MASTER,
+                        HmParamsetType.VALUES);
+                for (HmChannel channel : channels) {
+                    metadataCache.put(getChannelId(channel), channel.getDatapoints().values());
+                    loadedChannels.add(channel);
+                }
+            } catch (IOException ex) {
+                logger.debug("Batch loading of datapoints from interface {} failed, loading devices individually: {}",
+                        entry.getKey(), ex.getMessage());
+                for (HmChannel channel : channels) {
+                    channel.getDatapoints().clear();
+                }
+            }
+        }
+        return loadedChannels;
+    }
+
+    /**
+     * Returns true, if the channel is an equal channel in a virtual gateway device which is cloned from the previous
+     * channel.
+     */
+    private boolean isVirtualChannelClone(HmChannel channel) {
+        String deviceType = channel.getDevice().getType();
+        return (DEVICE_TYPE_VIRTUAL.equals(deviceType) || DEVICE_TYPE_VIRTUAL_WIRED.equals(deviceType))
+                && channel.getNumber() > 1;
+    }
+
+    /**
+     * Returns the cache id of the channel.
+     */
+    private String getChannelId(HmChannel channel) {
+        return ChannelMetadataCache.getChannelId(channel.getDevice().getType(), channel.getDevice().getFirmware(),
+                channel.getNumber());
     }
 
     /**
@@ -457,8 +581,8 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
         } else {
             logger.debug("Loading values for channel {} of device '{}'", channel, channel.getDevice().getAddress());
             HmInterface hmInterface = channel.getDevice().getHmInterface();
-            getRpcClient(hmInterface).setChannelDatapointValues(channel, HmParamsetType.MASTER);
-            getRpcClient(hmInterface).setChannelDatapointValues(channel, HmParamsetType.VALUES);
+            getRpcClient(hmInterface).setChannelDatapointValues(Collections.singletonList(channel),
+                    HmParamsetType.MASTER, HmParamsetType.VALUES);
         }
         channel.setInitialized(true);
     }
@@ -539,6 +663,7 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
                         getRpcClient(dp.getChannel().getDevice().getHmInterface()).setDatapointValue(dp, newValue);
                     }
                     dp.setValue(newValue);
+                    eventCoalescer.invalidate(dpInfo);
 
                     if (MiscUtils.isTrueValue(newValue)
                             && (dp.isPressDatapoint() || dp.isScript() || dp.isActionType())) {
@@ -576,18 +701,31 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
         } else {
             try {
                 HmDatapoint dp = getDatapoint(dpInfo);
-                dp.setValue(newValue);
-
-                eventListener.onStateUpdated(dp);
-                if (dp.isPressDatapoint() && MiscUtils.isTrueValue(dp.getValue())) {
-                    disableDatapoint(dp, DEFAULT_DISABLE_DELAY);
-                }
+                boolean coalesce = !dp.isPressDatapoint() && HmValueType.ACTION != dp.getType();
+                eventCoalescer.add(dpInfo, newValue, coalesce);
             } catch (HomematicClientException ex) {
                 // ignore datapoint not found
             }
         }
     }
 
+    /**
+     * Sets the value of a received event to the datapoint and notifies the listener.
+     */
+    private void updateDatapoint(HmDatapointInfo dpInfo, Object newValue) {
+        try {
+            HmDatapoint dp = getDatapoint(dpInfo);
+            dp.setValue(newValue);
+
+            eventListener.onStateUpdated(dp);
+            if (dp.isPressDatapoint() && MiscUtils.isTrueValue(dp.getValue())) {
+                disableDatapoint(dp, DEFAULT_DISABLE_DELAY);
+            }
+        } catch (HomematicClientException ex) {
+            // ignore datapoint not found
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -600,11 +738,8 @@ public abstract class AbstractHomematicGateway implements RpcEventListener, Home
                 List<HmDevice> deviceDescriptions = getDeviceDescriptions();
                 for (HmDevice device : deviceDescriptions) {
                     if (device.getAddress().equals(address)) {
-                        for (HmChannel channel : device.getChannels()) {
-                            HmInterface hmInterface = channel.getDevice().getHmInterface();
-                            getRpcClient(hmInterface).addChannelDatapoints(channel, HmParamsetType.MASTER);
-                            getRpcClient(hmInterface).addChannelDatapoints(channel, HmParamsetType.VALUES);
-                        }
+                        getRpcClient(device.getHmInterface()).addChannelDatapoints(device.getChannels(),
+                                HmParamsetType.MASTER, HmParamsetType.VALUES);
                         prepareDevice(device);
                         eventListener.onNewDevice(device);
                     }
@@ -13,6 +13,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -50,9 +51,14 @@ public class CcuGateway extends AbstractHomematicGateway {
     private static final Logger logger = LoggerFactory.getLogger(CcuGateway.class);
     private static final boolean TRACE_ENABLED = logger.isTraceEnabled();
 
+    private static final long SCRIPT_RESULT_TTL = TimeUnit.SECONDS.toMillis(10);
+    private static final int MAX_SCRIPT_DATAPOINTS = 1000;
+
     private Map<String, String> tclregaScripts;
     private HttpClient httpClient;
     private XStream xStream = new XStream(new StaxDriver());
+    private Map<String, CachedScriptResult> scriptResultCache = new HashMap<String, CachedScriptResult>();
+    private long scriptResultGeneration;
 
     protected CcuGateway(String id, HomematicConfig config, HomematicGatewayListener eventListener) {
         super(id, config, eventListener);
@@ -89,6 +95,7 @@ public class CcuGateway extends AbstractHomematicGateway {
     protected void stopClients() {
         super.stopClients();
         tclregaScripts = null;
+        invalidateScriptResults(null);
         if (httpClient != null) {
             try {
                 httpClient.stop();
@@ -104,7 +111,7 @@ public class CcuGateway extends AbstractHomematicGateway {
      */
     @Override
     protected void loadVariables(HmChannel channel) throws IOException {
-        TclScriptDataList resultList = sendScriptByName("getAllVariables", TclScriptDataList.class);
+        TclScriptDataList resultList = sendCachedScriptByName("getAllVariables");
         new CcuVariablesAndScriptsParser(channel).parse(resultList);
     }
 
@@ -113,7 +120,7 @@ public class CcuGateway extends AbstractHomematicGateway {
      */
     @Override
     protected void loadScripts(HmChannel channel) throws IOException {
-        TclScriptDataList resultList = sendScriptByName("getAllPrograms", TclScriptDataList.class);
+        TclScriptDataList resultList = sendCachedScriptByName("getAllPrograms");
         new CcuVariablesAndScriptsParser(channel).parse(resultList);
     }
 
@@ -122,7 +129,7 @@ public class CcuGateway extends AbstractHomematicGateway {
      */
     @Override
     protected void loadDeviceNames(Collection<HmDevice> devices) throws IOException {
-        TclScriptDataList resultList = sendScriptByName("getAllDeviceNames", TclScriptDataList.class);
+        TclScriptDataList resultList = sendCachedScriptByName("getAllDeviceNames");
         new CcuLoadDeviceNamesParser(devices).parse(resultList);
     }
 
@@ -138,26 +145,75 @@ public class CcuGateway extends AbstractHomematicGateway {
                     "RpcMessage unknown RPC failure (-1 Failure), fetching values with TclRega script for device '{}'",
                     channel.getDevice().getAddress());
 
-            Collection<String> dpNames = new ArrayList<String>();
+            // load the values of the uninitialized channels of all devices of the interface with one script,
+            // the channels of this device first
+            HmDevice device = channel.getDevice();
+            List<HmChannel> channels = new ArrayList<HmChannel>();
+            channels.add(channel);
+            int datapointCount = channel.getDatapoints().size();
+            for (HmChannel deviceChannel : device.getChannels()) {
+                if (deviceChannel != channel && !deviceChannel.isInitialized()) {
+                    channels.add(deviceChannel);
+                    datapointCount += deviceChannel.getDatapoints().size();
+                }
+            }
+            for (HmDevice otherDevice : getDevices()) {
+                if (datapointCount >= MAX_SCRIPT_DATAPOINTS) {
+                    break;
+                }
+                if (otherDevice == device || otherDevice.getHmInterface() != device.getHmInterface()
+                        || otherDevice.isGatewayExtras()) {
+                    continue;
+                }
+                for (HmChannel otherChannel : otherDevice.getChannels()) {
+                    if (datapointCount >= MAX_SCRIPT_DATAPOINTS) {
+                        break;
+                    }
+                    if (!otherChannel.isInitialized()) {
+                        channels.add(otherChannel);
+                        datapointCount += otherChannel.getDatapoints().size();
+                    }
+                }
+            }
+            loadChannelValuesWithScript(channels);
+        }
+    }
+
+    /**
+     * Loads the values of all readable datapoints of the channels with a single TclRega script.
+     */
+    private void loadChannelValuesWithScript(Collection<HmChannel> channels) throws IOException {
+        Collection<String> dpNames = new ArrayList<String>();
+        for (HmChannel channel : channels) {
+            String channelName = CcuValueParser.getChannelName(channel);
             for (HmDatapoint dp : channel.getDatapoints().values()) {
                 if (!dp.isVirtual() && dp.isReadable() && dp.getParamsetType() == HmParamsetType.VALUES) {
-                    dpNames.add(dp.getName());
+                    dpNames.add(channelName + dp.getName());
                 }
             }
-            if (dpNames.size() > 0) {
-                HmDevice device = channel.getDevice();
-                String channelName = String.format("%s.%s:%s.", device.getHmInterface().getName(), device.getAddress(),
-                        channel.getNumber());
-                String datapointNames = StringUtils.join(dpNames.toArray(), "\\t");
-                TclScriptDataList resultList = sendScriptByName("getAllChannelValues", TclScriptDataList.class,
-                        new String[] { "channel_name", "datapoint_names" },
-                        new String[] { channelName, datapointNames });
-                new CcuValueParser(channel).parse(resultList);
-                channel.setInitialized(true);
-            }
+        }
+        if (dpNames.size() > 0) {
+            String datapointNames = StringUtils.join(dpNames.toArray(), "\\t");
+            String result = sendScriptByName("getAllChannelValues", new String[] { "datapoint_names" },
+                    new String[] { datapointNames });
+            new CcuValueParser(channels).parse(result);
+        }
+        for (HmChannel channel : channels) {
+            channel.setInitialized(true);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void triggerDeviceValuesReload(HmDevice device) {
+        if (device.isGatewayExtras()) {
+            invalidateScriptResults(null);
+        }
+        super.triggerDeviceValuesReload(device);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -172,6 +228,7 @@ public class CcuGateway extends AbstractHomematicGateway {
         if (!result.isValid()) {
             throw new IOException("Unable to set CCU variable " + dp.getInfo());
         }
+        invalidateScriptResults("getAllVariables");
     }
 
     /**
@@ -187,29 +244,73 @@ public class CcuGateway extends AbstractHomematicGateway {
     }
 
     /**
-     * Sends a TclRega script to the CCU.
+     * Sends a TclRega script to the CCU or returns the cached result, if the script has been sent within the TTL.
      */
-    private <T> T sendScriptByName(String scriptName, Class<T> clazz) throws IOException {
-        return sendScriptByName(scriptName, clazz, new String[] {}, null);
+    private TclScriptDataList sendCachedScriptByName(String scriptName) throws IOException {
+        long generation;
+        synchronized (scriptResultCache) {
+            CachedScriptResult cachedResult = scriptResultCache.get(scriptName);
+            if (cachedResult != null && !cachedResult.isExpired()) {
+                logger.trace("Returning cached result of TclRegaScript '{}'", scriptName);
+                return cachedResult.result;
+            }
+            generation = scriptResultGeneration;
+        }
+
+        // the request is sent without holding the lock, cached results are returned meanwhile
+        TclScriptDataList result = sendScriptByName(scriptName, TclScriptDataList.class, new String[] {}, null);
+        synchronized (scriptResultCache) {
+            // a result requested before an invalidation may be outdated
+            if (generation == scriptResultGeneration) {
+                scriptResultCache.put(scriptName, new CachedScriptResult(result));
+            }
+        }
+        return result;
     }
 
     /**
-     * Sends a TclRega script with the specified variables to the CCU.
+     * Removes the cached result of the script, or all cached results if the scriptName is null.
      */
+    private void invalidateScriptResults(String scriptName) {
+        synchronized (scriptResultCache) {
+            scriptResultGeneration++;
+            if (scriptName == null) {
+                scriptResultCache.clear();
+            } else {
+                scriptResultCache.remove(scriptName);
+            }
+        }
+    }
+
+    /**
+     * Sends a TclRega script with the specified variables to the CCU and parses the result with XStream.
+     */
+    @SuppressWarnings("unchecked")
     private <T> T sendScriptByName(String scriptName, Class<T> clazz, String[] variableNames, String[] values)
             throws IOException {
+        String result = sendScriptByName(scriptName, variableNames, values);
+        try {
+            return (T) xStream.fromXML(result);
+        } catch (Exception ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Sends a TclRega script with the specified variables to the CCU.
+     */
+    private String sendScriptByName(String scriptName, String[] variableNames, String[] values) throws IOException {
         String script = tclregaScripts.get(scriptName);
         for (int i = 0; i < variableNames.length; i++) {
             script = StringUtils.replace(script, "{" + variableNames[i] + "}", values[i]);
         }
-        return sendScript(script, clazz);
+        return sendScript(script);
     }
 
     /**
-     * Main method for sending a TclRega script and parsing the XML result.
+     * Main method for sending a TclRega script and returning the XML result.
      */
-    @SuppressWarnings("unchecked")
-    private synchronized <T> T sendScript(String script, Class<T> clazz) throws IOException {
+    private synchronized String sendScript(String script) throws IOException {
         try {
             script = StringUtils.trim(script);
             if (StringUtils.isEmpty(script)) {
@@ -229,8 +330,7 @@ public class CcuGateway extends AbstractHomematicGateway {
             if (TRACE_ENABLED) {
                 logger.trace("Result TclRegaScript: {}", result);
             }
-
-            return (T) xStream.fromXML(result);
+            return result;
         } catch (Exception ex) {
             throw new IOException(ex.getMessage(), ex);
         }
@@ -253,4 +353,25 @@ public class CcuGateway extends AbstractHomematicGateway {
         return result;
     }
 
+    /**
+     * A TclRega script result with the time it has been received.
+     *
+     * @author agent - Initial contribution
+     */
+    private static class CachedScriptResult {
+        private final TclScriptDataList result;
+        private final long created = System.currentTimeMillis();
+
+        public CachedScriptResult(TclScriptDataList result) {
+            this.result = result;
+        }
+
+        /**
+         * Returns true, if the result is older than the TTL.
+         */
+        public boolean isExpired() {
+            return System.currentTimeMillis() - created > SCRIPT_RESULT_TTL;
+        }
+    }
+
 }
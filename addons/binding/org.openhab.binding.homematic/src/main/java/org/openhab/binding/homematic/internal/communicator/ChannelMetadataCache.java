@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.homematic.internal.communicator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.smarthome.config.core.ConfigConstants;
+import org.openhab.binding.homematic.internal.common.HomematicConfig;
+import org.openhab.binding.homematic.internal.model.HmDatapoint;
+import org.openhab.binding.homematic.internal.model.HmGatewayInfo;
+import org.openhab.binding.homematic.internal.model.HmParamsetType;
+import org.openhab.binding.homematic.internal.model.HmValueType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the datapoint metadata of channels by device type, firmware and channel number. The cache is persisted in a
+ * binary file in the userdata folder and is loaded on first access, so a restart only loads the metadata of new or
+ * changed device types from the gateway.
+ *
+ * @author agent - Initial contribution
+ */
+public class ChannelMetadataCache {
+    private static final Logger logger = LoggerFactory.getLogger(ChannelMetadataCache.class);
+
+    private static final int FILE_MAGIC = 0x484D4443; // HMDC
+    private static final int FILE_VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_STRING = 5;
+
+    private HomematicConfig config;
+    private File cacheFile;
+    private Map<String, Collection<HmDatapoint>> datapointsByChannelId;
+    private String gatewayKey;
+    private boolean changed;
+
+    public ChannelMetadataCache(String gatewayId, HomematicConfig config) {
+        this.config = config;
+        cacheFile = new File(ConfigConstants.getUserDataFolder() + File.separator + "homematic" + File.separator
+                + gatewayId + ".metadata");
+    }
+
+    /**
+     * Returns the cache id of the channel.
+     */
+    public static String getChannelId(String deviceType, String firmware, int channelNumber) {
+        return String.format("%s:%s:%s", deviceType, firmware, channelNumber);
+    }
+
+    /**
+     * Returns the cached datapoints of the channel or null, if the channel is not cached.
+     */
+    public synchronized Collection<HmDatapoint> get(String channelId) {
+        load();
+        return datapointsByChannelId.get(channelId);
+    }
+
+    /**
+     * Returns true, if the datapoints of the channel are cached.
+     */
+    public synchronized boolean contains(String channelId) {
+        load();
+        return datapointsByChannelId.containsKey(channelId);
+    }
+
+    /**
+     * Adds a copy of the datapoints of a channel to the cache.
+     */
+    public synchronized void put(String channelId, Collection<HmDatapoint> datapoints) {
+        load();
+        List<HmDatapoint> cachedDatapoints = new ArrayList<HmDatapoint>(datapoints.size());
+        for (HmDatapoint dp : datapoints) {
+            if (!dp.isVirtual()) {
+                HmDatapoint cachedDp = dp.clone();
+                cachedDp.setChannel(null);
+                cachedDp.setValue(null);
+                cachedDatapoints.add(cachedDp);
+            }
+        }
+        datapointsByChannelId.put(channelId, cachedDatapoints);
+        changed = true;
+    }
+
+    /**
+     * Removes all channels from the cache, which don't belong to one of the given device types. A device type has the
+     * format type:firmware.
+     */
+    public synchronized void retainDeviceTypes(Set<String> deviceTypes) {
+        load();
+        Iterator<String> it = datapointsByChannelId.keySet().iterator();
+        while (it.hasNext()) {
+            if (!deviceTypes.contains(StringUtils.substringBeforeLast(it.next(), ":"))) {
+                it.remove();
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the cache to disk if it has been changed.
+     */
+    public synchronized void save() {
+        if (datapointsByChannelId == null || !changed) {
+            return;
+        }
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(gatewayKey);
+            out.writeInt(datapointsByChannelId.size());
+            for (Map.Entry<String, Collection<HmDatapoint>> entry : datapointsByChannelId.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (HmDatapoint dp : entry.getValue()) {
+                    writeDatapoint(out, dp);
+                }
+            }
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!tempFile.renameTo(cacheFile)) {
+                    throw new IOException("Can't rename " + tempFile + " to " + cacheFile);
+                }
+            }
+            changed = false;
+            logger.debug("Saved metadata of {} channels to '{}'", datapointsByChannelId.size(), cacheFile);
+        } catch (IOException ex) {
+            logger.warn("Can't save Homematic metadata cache '{}': {}", cacheFile, ex.getMessage());
+            tempFile.delete();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Loads the cache from disk on first access. The file is ignored, if it was created for another gateway type or
+     * firmware.
+     */
+    private void load() {
+        HmGatewayInfo gatewayInfo = config.getGatewayInfo();
+        String currentGatewayKey = String.format("%s:%s:%s", gatewayInfo.getId(), gatewayInfo.getType(),
+                gatewayInfo.getFirmware());
+        if (datapointsByChannelId != null && currentGatewayKey.equals(gatewayKey)) {
+            return;
+        }
+        if (datapointsByChannelId != null) {
+            logger.debug("Gateway changed from '{}' to '{}', discarding cached metadata", gatewayKey,
+                    currentGatewayKey);
+        }
+        datapointsByChannelId = new HashMap<String, Collection<HmDatapoint>>();
+        gatewayKey = currentGatewayKey;
+        changed = true;
+
+        if (!cacheFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                logger.debug("Ignoring metadata cache '{}' with unknown format", cacheFile);
+                return;
+            }
+            String fileGatewayKey = in.readUTF();
+            if (!currentGatewayKey.equals(fileGatewayKey)) {
+                logger.debug("Ignoring metadata cache '{}' created for gateway '{}'", cacheFile, fileGatewayKey);
+                return;
+            }
+            int channelCount = in.readInt();
+            Map<String, Collection<HmDatapoint>> loaded = new HashMap<String, Collection<HmDatapoint>>(
+                    channelCount * 2);
+            for (int i = 0; i < channelCount; i++) {
+                String channelId = in.readUTF();
+                int datapointCount = in.readInt();
+                List<HmDatapoint> datapoints = new ArrayList<HmDatapoint>(datapointCount);
+                for (int j = 0; j < datapointCount; j++) {
+                    datapoints.add(readDatapoint(in));
+                }
+                loaded.put(channelId, datapoints);
+            }
+            datapointsByChannelId = loaded;
+            changed = false;
+            logger.debug("Loaded metadata of {} channels from '{}'", loaded.size(), cacheFile);
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.warn("Can't load Homematic metadata cache '{}', ignoring it: {}", cacheFile, ex.getMessage());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private void writeDatapoint(DataOutputStream out, HmDatapoint dp) throws IOException {
+        out.writeUTF(dp.getName());
+        writeValue(out, dp.getDescription());
+        out.writeUTF(dp.getType().name());
+        out.writeUTF(dp.getParamsetType().name());
+        out.writeBoolean(dp.isReadOnly());
+        out.writeBoolean(dp.isReadable());
+        writeValue(out, dp.getUnit());
+        writeValue(out, dp.getMinValue());
+        writeValue(out, dp.getMaxValue());
+        writeValue(out, dp.getDefaultValue());
+        String[] options = dp.getOptions();
+        out.writeInt(options == null ? -1 : options.length);
+        if (options != null) {
+            for (String option : options) {
+                writeValue(out, option);
+            }
+        }
+    }
+
+    private HmDatapoint readDatapoint(DataInputStream in) throws IOException {
+        HmDatapoint dp = new HmDatapoint();
+        dp.setName(in.readUTF());
+        dp.setDescription((String) readValue(in));
+        dp.setType(HmValueType.valueOf(in.readUTF()));
+        dp.setParamsetType(HmParamsetType.valueOf(in.readUTF()));
+        dp.setReadOnly(in.readBoolean());
+        dp.setReadable(in.readBoolean());
+        dp.setUnit((String) readValue(in));
+        dp.setMinValue((Number) readValue(in));
+        dp.setMaxValue((Number) readValue(in));
+        dp.setDefaultValue(readValue(in));
+        int optionCount = in.readInt();
+        if (optionCount >= 0) {
+            String[] options = new String[optionCount];
+            for (int i = 0; i < optionCount; i++) {
+                options[i] = (String) readValue(in);
+            }
+            dp.setOptions(options);
+        }
+        return dp;
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_STRING:
+                return in.readUTF();
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+}
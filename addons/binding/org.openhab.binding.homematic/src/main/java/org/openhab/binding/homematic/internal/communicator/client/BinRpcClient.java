@@ -72,7 +72,7 @@ public class BinRpcClient extends RpcClient {
      * Sends a BIN-RPC message and parses the response to see if there was an error.
      */
     @Override
-    protected synchronized Object[] sendMessage(int port, RpcRequest request) throws IOException {
+    protected Object[] sendMessage(int port, RpcRequest request) throws IOException {
         if (TRACE_ENABLED) {
             logger.trace("Client BinRpcRequest:\n{}", request);
         }
@@ -84,15 +84,22 @@ public class BinRpcClient extends RpcClient {
      */
     private Object[] sendMessage(int port, BinRpcMessage request, int socketRetryCounter) throws IOException {
         BinRpcMessage resp = null;
+        SocketInfo socketInfo = socketHandler.getSocket(port, "setValue".equals(request.getMethodName()));
         try {
-            Socket socket = socketHandler.getSocket(port);
-            socket.getOutputStream().write(request.createMessage());
+            Socket socket = socketInfo.getSocket();
+            request.writeTo(socket.getOutputStream());
             resp = new BinRpcMessage(socket.getInputStream(), false, config.getEncoding());
+            socketHandler.releaseSocket(port, socketInfo);
+            socketInfo = null;
             return new RpcResponseParser(request).parse(resp.getResponseData());
-        } catch (UnknownRpcFailureException rpcEx) {
+        } catch (RpcFaultException rpcEx) {
             // throw immediately, don't retry the message
             throw rpcEx;
         } catch (IOException ioEx) {
+            if (socketInfo != null) {
+                socketHandler.invalidateSocket(port, socketInfo);
+                socketInfo = null;
+            }
             if ("init".equals(request.getMethodName()) || socketRetryCounter >= MAX_SOCKET_RETRY) {
                 throw ioEx;
             } else {
@@ -103,6 +110,9 @@ public class BinRpcClient extends RpcClient {
                 return sendMessage(port, request, socketRetryCounter);
             }
         } finally {
+            if (socketInfo != null) {
+                socketHandler.invalidateSocket(port, socketInfo);
+            }
             if (TRACE_ENABLED) {
                 logger.trace("Client BinRpcResponse:\n{}", resp == null ? "null" : resp.toString());
             }
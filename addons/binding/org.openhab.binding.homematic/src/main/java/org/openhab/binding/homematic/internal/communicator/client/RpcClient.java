@@ -9,9 +9,15 @@
 package org.openhab.binding.homematic.internal.communicator.client;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.commons.lang.StringUtils;
 import org.openhab.binding.homematic.internal.common.HomematicConfig;
@@ -43,7 +49,11 @@ public abstract class RpcClient {
     private static final Logger logger = LoggerFactory.getLogger(RpcClient.class);
     protected static final boolean TRACE_ENABLED = logger.isTraceEnabled();
 
+    /** Fault code of the XML-RPC specification for an unknown method */
+    private static final int FAULT_METHOD_NOT_FOUND = -32601;
+
     protected HomematicConfig config;
+    private Set<Integer> multicallUnsupportedPorts = new CopyOnWriteArraySet<Integer>();
 
     public RpcClient(HomematicConfig config) {
         this.config = config;
@@ -187,6 +197,169 @@ public abstract class RpcClient {
         }
     }
 
+    /**
+     * Loads all datapoint metadata into the given channels, the requests are batched with system.multicall if
+     * supported by the gateway.
+     */
+    public void addChannelDatapoints(Collection<HmChannel> channels, HmParamsetType... paramsetTypes)
+            throws IOException {
+        for (List<HmChannel> batch : createMulticallBatches(channels, paramsetTypes.length)) {
+            int port = config.getRpcPort(batch.get(0));
+            List<Map<String, Object>> calls = new ArrayList<Map<String, Object>>();
+            for (HmChannel channel : batch) {
+                for (HmParamsetType paramsetType : paramsetTypes) {
+                    calls.add(createMulticallEntry("getParamsetDescription", getRpcAddress(channel),
+                            paramsetType.toString()));
+                }
+            }
+
+            Object[] results = sendMulticall(port, calls);
+            int index = 0;
+            for (HmChannel channel : batch) {
+                for (HmParamsetType paramsetType : paramsetTypes) {
+                    Object[] result = results == null ? null : getMulticallResult(results, index++);
+                    if (result == null) {
+                        addChannelDatapoints(channel, paramsetType);
+                    } else {
+                        new GetParamsetDescriptionParser(channel, paramsetType).parse(result);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets all datapoint values for the given channels, the requests are batched with system.multicall if supported by
+     * the gateway.
+     */
+    public void setChannelDatapointValues(Collection<HmChannel> channels, HmParamsetType... paramsetTypes)
+            throws IOException {
+        for (List<HmChannel> batch : createMulticallBatches(channels, paramsetTypes.length)) {
+            int port = config.getRpcPort(batch.get(0));
+            List<Map<String, Object>> calls = new ArrayList<Map<String, Object>>();
+            for (HmChannel channel : batch) {
+                for (HmParamsetType paramsetType : paramsetTypes) {
+                    calls.add(createMulticallEntry("getParamset", getRpcAddress(channel), paramsetType.toString()));
+                }
+            }
+
+            Object[] results = sendMulticall(port, calls);
+            int index = 0;
+            for (HmChannel channel : batch) {
+                for (HmParamsetType paramsetType : paramsetTypes) {
+                    Object[] result = results == null ? null : getMulticallResult(results, index++);
+                    boolean isCuxdValues = channel.getDevice().getHmInterface() == HmInterface.CUXD
+                            && paramsetType == HmParamsetType.VALUES;
+                    if (result == null || isCuxdValues) {
+                        // single request with all fallbacks
+                        setChannelDatapointValues(channel, paramsetType);
+                    } else {
+                        new GetParamsetParser(channel, paramsetType).parse(result);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the channels into batches of channels with the same port, respecting the configured multicall batch
+     * size.
+     */
+    private List<List<HmChannel>> createMulticallBatches(Collection<HmChannel> channels, int callsPerChannel) {
+        int channelsPerBatch = Math.max(1, config.getMulticallBatchSize() / Math.max(1, callsPerChannel));
+        Map<Integer, List<HmChannel>> channelsByPort = new TreeMap<Integer, List<HmChannel>>();
+        for (HmChannel channel : channels) {
+            Integer port = config.getRpcPort(channel);
+            List<HmChannel> portChannels = channelsByPort.get(port);
+            if (portChannels == null) {
+                portChannels = new ArrayList<HmChannel>();
+                channelsByPort.put(port, portChannels);
+            }
+            portChannels.add(channel);
+        }
+
+        List<List<HmChannel>> batches = new ArrayList<List<HmChannel>>();
+        for (List<HmChannel> portChannels : channelsByPort.values()) {
+            for (int i = 0; i < portChannels.size(); i += channelsPerBatch) {
+                batches.add(portChannels.subList(i, Math.min(i + channelsPerBatch, portChannels.size())));
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Creates a call entry for a system.multicall request.
+     */
+    private Map<String, Object> createMulticallEntry(String methodName, Object... params) {
+        Map<String, Object> call = new HashMap<String, Object>();
+        call.put("methodName", methodName);
+        call.put("params", Arrays.asList(params));
+        return call;
+    }
+
+    /**
+     * Sends all calls in one system.multicall request. Returns null, if the gateway does not support system.multicall
+     * on this port, multicall is disabled or the multicall failed on the gateway.
+     */
+    private Object[] sendMulticall(int port, List<Map<String, Object>> calls) throws IOException {
+        if (config.getMulticallBatchSize() <= 1 || multicallUnsupportedPorts.contains(port)) {
+            return null;
+        }
+        RpcRequest request = createRpcRequest("system.multicall");
+        request.addArg(calls);
+        try {
+            Object[] message = sendMessage(port, request);
+            if (message[0] instanceof Object[] && ((Object[]) message[0]).length == calls.size()) {
+                return (Object[]) message[0];
+            }
+            logger.debug("Unexpected system.multicall result on port {}, falling back to single requests", port);
+            return null;
+        } catch (RpcFaultException ex) {
+            if (isUnknownMethodFault(ex)) {
+                logger.info("system.multicall not supported on port {}, falling back to single requests: {}", port,
+                        ex.getMessage());
+                multicallUnsupportedPorts.add(port);
+            } else {
+                logger.debug("system.multicall failed on port {}, falling back to single requests: {}", port,
+                        ex.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns true, if the fault response says that the gateway does not know the called method.
+     */
+    static boolean isUnknownMethodFault(RpcFaultException ex) {
+        if (ex.getFaultCode() == FAULT_METHOD_NOT_FOUND) {
+            return true;
+        }
+        String faultString = StringUtils.lowerCase(ex.getFaultString());
+        return StringUtils.contains(faultString, "method")
+                && (StringUtils.contains(faultString, "unknown") || StringUtils.contains(faultString, "not found")
+                        || StringUtils.contains(faultString, "not supported"));
+    }
+
+    /**
+     * Returns the result of a single call in a system.multicall response. Returns null, if the call failed on the
+     * gateway, the caller has to repeat the call with a single request.
+     */
+    private Object[] getMulticallResult(Object[] results, int index) {
+        Object result = results[index];
+        if (result instanceof Object[] && ((Object[]) result).length > 0) {
+            return (Object[]) result;
+        }
+        logger.debug("system.multicall entry {} failed, repeating with single request: {}", index, result);
+        return null;
+    }
+
+    /**
+     * Returns the rpc address of the channel.
+     */
+    private String getRpcAddress(HmChannel channel) {
+        return getRpcAddress(channel.getDevice().getAddress()) + ":" + channel.getNumber();
+    }
+
     /**
      * Tries to identify the gateway and returns the GatewayInfo.
      */
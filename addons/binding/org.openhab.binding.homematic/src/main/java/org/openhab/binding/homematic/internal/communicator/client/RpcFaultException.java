@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.homematic.internal.communicator.client;
+
+import java.io.IOException;
+
+/**
+ * Exception if the RPC call returns a fault response.
+ *
+ * @author agent - Initial contribution
+ */
+public class RpcFaultException extends IOException {
+    private static final long serialVersionUID = 2937914576323541468L;
+
+    private int faultCode;
+    private String faultString;
+
+    public RpcFaultException(int faultCode, String faultString, String message) {
+        super(message);
+        this.faultCode = faultCode;
+        this.faultString = faultString;
+    }
+
+    /**
+     * Returns the fault code of the response.
+     */
+    public int getFaultCode() {
+        return faultCode;
+    }
+
+    /**
+     * Returns the fault string of the response.
+     */
+    public String getFaultString() {
+        return faultString;
+    }
+
+}
@@ -11,7 +11,11 @@ package org.openhab.binding.homematic.internal.communicator.client;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.openhab.binding.homematic.internal.common.HomematicConfig;
@@ -19,14 +23,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Simple socket cache class.
+ * Socket pool with a limited number of sockets per port. Sockets which have not been used for the max idle time are
+ * closed, priority requests get the next free socket before all other requests.
  *
  * @author Gerhard Riegler - Initial contribution
  */
 public class SocketHandler {
     private static final Logger logger = LoggerFactory.getLogger(SocketHandler.class);
 
-    private Map<Integer, SocketInfo> socketsPerPort = new HashMap<Integer, SocketInfo>();
+    private Map<Integer, SocketPool> poolsPerPort = new HashMap<Integer, SocketPool>();
     private HomematicConfig config;
 
     public SocketHandler(HomematicConfig config) {
@@ -34,52 +39,56 @@ public class SocketHandler {
     }
 
     /**
-     * Returns a socket for the given port, (re)creates it if required.
+     * Returns a socket for the given port, creates it if required. If all sockets of the port are in use, waits until
+     * a socket is released or the timeout is reached. The socket must be returned with
+     * {@link #releaseSocket(int, SocketInfo)} or {@link #invalidateSocket(int, SocketInfo)}.
      */
-    public Socket getSocket(int port) throws IOException {
-        SocketInfo socketInfo = socketsPerPort.get(port);
-        if (socketInfo == null) {
-            logger.trace("Creating new socket for port {}", port);
-            Socket socket = new Socket();
-            socket.setSoTimeout(config.getTimeout() * 1000);
-            socket.connect(new InetSocketAddress(config.getGatewayAddress(), port), socket.getSoTimeout());
-            socketInfo = new SocketInfo(socket);
-            socketsPerPort.put(port, socketInfo);
-        } else {
-            boolean isMaxAliveReached = System.currentTimeMillis()
-                    - socketInfo.getCreated() > (config.getSocketMaxAlive() * 1000);
-
-            if (isMaxAliveReached) {
-                logger.debug("Max alive time reached for socket on port {}", port);
-                removeSocket(port);
-                return getSocket(port);
-            }
-            logger.trace("Returning socket for port {}", port);
-        }
-        return socketInfo.getSocket();
+    public SocketInfo getSocket(int port, boolean priority) throws IOException {
+        return getPool(port).borrow(priority);
+    }
+
+    /**
+     * Returns a socket to the pool after a successful request.
+     */
+    public void releaseSocket(int port, SocketInfo socketInfo) {
+        getPool(port).release(socketInfo);
+    }
+
+    /**
+     * Closes a socket after a communication failure.
+     */
+    public void invalidateSocket(int port, SocketInfo socketInfo) {
+        getPool(port).invalidate(socketInfo);
     }
 
     /**
-     * Removes the socket for the given port from the cache.
+     * Closes all idle sockets for the given port, sockets in use are closed when they are released.
      */
     public void removeSocket(int port) {
-        SocketInfo socketInfo = socketsPerPort.get(port);
-        if (socketInfo != null) {
-            logger.trace("Closing Socket on port {}", port);
-            socketsPerPort.remove(port);
-            closeSilent(socketInfo.getSocket());
-        }
+        getPool(port).clear();
     }
 
     /**
      * Removes all cached sockets.
      */
     public void flush() {
-        synchronized (SocketHandler.class) {
-            Integer[] portsToRemove = socketsPerPort.keySet().toArray(new Integer[0]);
-            for (Integer key : portsToRemove) {
-                removeSocket(key);
+        List<SocketPool> pools;
+        synchronized (poolsPerPort) {
+            pools = new ArrayList<SocketPool>(poolsPerPort.values());
+        }
+        for (SocketPool pool : pools) {
+            pool.clear();
+        }
+    }
+
+    private SocketPool getPool(int port) {
+        synchronized (poolsPerPort) {
+            SocketPool pool = poolsPerPort.get(port);
+            if (pool == null) {
+                pool = new SocketPool(port);
+                poolsPerPort.put(port, pool);
             }
+            return pool;
         }
     }
 
@@ -93,4 +102,130 @@ public class SocketHandler {
             // ignore
         }
     }
+
+    /**
+     * The sockets of one port. Idle sockets are reused in LIFO order, so rarely used sockets reach the max idle time
+     * and are closed.
+     *
+     * @author agent - Initial contribution
+     */
+    private class SocketPool {
+        private final int port;
+        private final Deque<SocketInfo> idleSockets = new ArrayDeque<SocketInfo>();
+        private int openSockets;
+        private int waitingPriorityRequests;
+        private int generation;
+
+        public SocketPool(int port) {
+            this.port = port;
+        }
+
+        /**
+         * Returns an idle socket or creates a new one if the pool is not exhausted.
+         */
+        public SocketInfo borrow(boolean priority) throws IOException {
+            int socketGeneration;
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + config.getTimeout() * 1000L;
+                if (priority) {
+                    waitingPriorityRequests++;
+                }
+                try {
+                    while (true) {
+                        evictIdleSockets();
+                        if (priority || waitingPriorityRequests == 0) {
+                            SocketInfo socketInfo = idleSockets.pollFirst();
+                            if (socketInfo != null) {
+                                logger.trace("Returning socket for port {}", port);
+                                return socketInfo;
+                            }
+                            if (openSockets < Math.max(1, config.getSocketPoolSize())) {
+                                openSockets++;
+                                socketGeneration = generation;
+                                break;
+                            }
+                        }
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            throw new IOException("Timeout waiting for a free socket on port " + port);
+                        }
+                        wait(remaining);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a free socket on port " + port);
+                } finally {
+                    if (priority && --waitingPriorityRequests == 0) {
+                        notifyAll();
+                    }
+                }
+            }
+
+            logger.trace("Creating new socket for port {}", port);
+            Socket socket = new Socket();
+            try {
+                socket.setSoTimeout(config.getTimeout() * 1000);
+                socket.connect(new InetSocketAddress(config.getGatewayAddress(), port), socket.getSoTimeout());
+                return new SocketInfo(socket, socketGeneration);
+            } catch (IOException ex) {
+                closeSilent(socket);
+                synchronized (this) {
+                    openSockets--;
+                    notifyAll();
+                }
+                throw ex;
+            }
+        }
+
+        /**
+         * Returns the socket to the idle sockets, closes it if the pool has been cleared in the meantime.
+         */
+        public synchronized void release(SocketInfo socketInfo) {
+            if (socketInfo.getGeneration() == generation) {
+                socketInfo.setLastUsed(System.currentTimeMillis());
+                idleSockets.addFirst(socketInfo);
+            } else {
+                closeSilent(socketInfo.getSocket());
+                openSockets--;
+            }
+            notifyAll();
+        }
+
+        /**
+         * Closes the socket and frees its slot in the pool.
+         */
+        public synchronized void invalidate(SocketInfo socketInfo) {
+            logger.trace("Closing socket on port {}", port);
+            closeSilent(socketInfo.getSocket());
+            openSockets--;
+            notifyAll();
+        }
+
+        /**
+         * Closes all idle sockets and marks the sockets in use to be closed when released.
+         */
+        public synchronized void clear() {
+            generation++;
+            for (SocketInfo socketInfo : idleSockets) {
+                logger.trace("Closing socket on port {}", port);
+                closeSilent(socketInfo.getSocket());
+                openSockets--;
+            }
+            idleSockets.clear();
+            notifyAll();
+        }
+
+        /**
+         * Closes the sockets which have not been used for the max idle time.
+         */
+        private void evictIdleSockets() {
+            long maxIdleTime = config.getSocketMaxIdle() * 1000L;
+            long now = System.currentTimeMillis();
+            while (!idleSockets.isEmpty() && now - idleSockets.peekLast().getLastUsed() > maxIdleTime) {
+                logger.debug("Max idle time reached for socket on port {}", port);
+                closeSilent(idleSockets.pollLast().getSocket());
+                openSockets--;
+            }
+        }
+    }
 }
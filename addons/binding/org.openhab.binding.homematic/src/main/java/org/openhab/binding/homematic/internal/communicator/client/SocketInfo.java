@@ -18,10 +18,14 @@ import java.net.Socket;
 public class SocketInfo {
     private Socket socket;
     private long created;
+    private long lastUsed;
+    private int generation;
 
-    public SocketInfo(Socket socket) {
+    public SocketInfo(Socket socket, int generation) {
         this.socket = socket;
+        this.generation = generation;
         this.created = System.currentTimeMillis();
+        this.lastUsed = created;
     }
 
     /**
@@ -37,4 +41,25 @@ public class SocketInfo {
     public long getCreated() {
         return created;
     }
+
+    /**
+     * Returns the timestamp when the socket has been used the last time.
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Sets the timestamp when the socket has been used the last time.
+     */
+    public void setLastUsed(long lastUsed) {
+        this.lastUsed = lastUsed;
+    }
+
+    /**
+     * Returns the generation of the socket pool in which the socket has been created.
+     */
+    public int getGeneration() {
+        return generation;
+    }
 }
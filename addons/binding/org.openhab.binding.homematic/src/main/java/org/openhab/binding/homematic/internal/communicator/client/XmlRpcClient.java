@@ -37,6 +37,7 @@ public class XmlRpcClient extends RpcClient {
         super(config);
         httpClient = new HttpClient();
         httpClient.setConnectTimeout(config.getTimeout() * 1000L);
+        httpClient.setMaxConnectionsPerDestination(Math.max(1, config.getSocketPoolSize()));
 
         try {
             httpClient.start();
@@ -75,7 +76,7 @@ public class XmlRpcClient extends RpcClient {
      * {@inheritDoc}
      */
     @Override
-    protected synchronized Object[] sendMessage(int port, RpcRequest request) throws IOException {
+    protected Object[] sendMessage(int port, RpcRequest request) throws IOException {
         try {
             if (TRACE_ENABLED) {
                 logger.trace("Client XmlRpcRequest (port {}):\n{}", port, request);
@@ -95,7 +96,7 @@ public class XmlRpcClient extends RpcClient {
             Object[] data = new XmlRpcResponse(new ByteArrayInputStream(result.getBytes(config.getEncoding())),
                     config.getEncoding()).getResponseData();
             return new RpcResponseParser(request).parse(data);
-        } catch (UnknownRpcFailureException ex) {
+        } catch (RpcFaultException ex) {
             throw ex;
         } catch (Exception ex) {
             throw new IOException(ex.getMessage(), ex);
@@ -11,10 +11,12 @@ package org.openhab.binding.homematic.internal.communicator.message;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -25,8 +27,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +38,20 @@ import org.slf4j.LoggerFactory;
 public class BinRpcMessage implements RpcRequest, RpcResponse {
     private final static Logger logger = LoggerFactory.getLogger(BinRpcMessage.class);
 
+    private static final int HEADER_LENGTH = 8;
+    private static final int INITIAL_READ_BUFFER_SIZE = 1024;
+    private static final int MAX_POOLED_READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Each thread reuses its own read buffer, messages are decoded completely before the buffer is used again.
+     */
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        }
+    };
+
     public enum TYPE {
         REQUEST,
         RESPONSE;
@@ -46,6 +60,7 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
     private Object[] messageData;
     private byte binRpcData[];
     private int offset;
+    private int argsPosition;
 
     private String methodName;
     private TYPE type;
@@ -67,23 +82,33 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
     }
 
     /**
-     * Decodes a BIN-RPC message from the given InputStream.
+     * Decodes a BIN-RPC message from the given InputStream. The message is read into a reusable buffer of the current
+     * thread and decoded directly from there.
      */
     public BinRpcMessage(InputStream is, boolean methodHeader, String encoding) throws IOException {
         this.encoding = encoding;
-        byte sig[] = new byte[8];
-        int length = is.read(sig, 0, 4);
-        if (length != 4) {
-            throw new EOFException("Only " + length + " bytes received reading signature");
+        ByteBuffer buffer = READ_BUFFER.get();
+        readFully(is, buffer.array(), 0, 4, "signature");
+        validateBinXSignature(buffer.array());
+        readFully(is, buffer.array(), 4, 4, "message length");
+
+        int datasize = buffer.getInt(4);
+        if (datasize < 0) {
+            throw new IOException("Invalid message length " + datasize);
         }
-        validateBinXSignature(sig);
-        length = is.read(sig, 4, 4);
-        if (length != 4) {
-            throw new EOFException("Only " + length + " bytes received reading message length");
+        int messageSize = HEADER_LENGTH + datasize;
+        if (messageSize > buffer.capacity()) {
+            ByteBuffer largerBuffer = ByteBuffer.allocate(messageSize);
+            largerBuffer.put(buffer.array(), 0, HEADER_LENGTH);
+            buffer = largerBuffer;
+            if (messageSize <= MAX_POOLED_READ_BUFFER_SIZE) {
+                READ_BUFFER.set(buffer);
+            }
         }
-        int datasize = (new BigInteger(ArrayUtils.subarray(sig, 4, 8))).intValue();
-        byte[] message = ArrayUtils.addAll(sig, IOUtils.toByteArray(is, datasize));
-        decodeMessage(message, methodHeader);
+        readFully(is, buffer.array(), HEADER_LENGTH, datasize, "message");
+        buffer.clear();
+        buffer.limit(messageSize);
+        decodeMessage(buffer, methodHeader);
     }
 
     private void validateBinXSignature(byte[] sig) throws UnsupportedEncodingException {
@@ -97,50 +122,68 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
      */
     public BinRpcMessage(byte[] message, boolean methodHeader, String encoding) throws IOException, ParseException {
         this.encoding = encoding;
-        if (message.length < 8) {
+        if (message.length < HEADER_LENGTH) {
             throw new EOFException("Only " + message.length + " bytes received");
         }
         validateBinXSignature(message);
-        decodeMessage(message, methodHeader);
+        decodeMessage(ByteBuffer.wrap(message), methodHeader);
     }
 
-    private void decodeMessage(byte[] message, boolean methodHeader) throws IOException {
-        binRpcData = message;
-
-        offset = 8;
-
-        if (methodHeader) {
-            methodName = readString();
-            readInt();
+    /**
+     * Decodes a BIN-RPC message from the given heap buffer, the message starts at position zero and ends at the limit
+     * of the buffer.
+     */
+    public BinRpcMessage(ByteBuffer message, boolean methodHeader, String encoding) throws IOException {
+        this.encoding = encoding;
+        if (message.limit() < HEADER_LENGTH) {
+            throw new EOFException("Only " + message.limit() + " bytes received");
         }
-        generateResponseData();
+        validateBinXSignature(message.array());
+        decodeMessage(message, methodHeader);
     }
 
-    public void setType(TYPE type) {
-        binRpcData[3] = type == TYPE.RESPONSE ? (byte) 1 : (byte) 0;
+    /**
+     * Reads exactly len bytes from the InputStream.
+     */
+    private static void readFully(InputStream is, byte[] data, int off, int len, String part) throws IOException {
+        int read = 0;
+        while (read < len) {
+            int count = is.read(data, off + read, len - read);
+            if (count < 0) {
+                throw new EOFException("Only " + read + " bytes received reading " + part);
+            }
+            read += count;
+        }
     }
 
-    private void generateResponseData() throws IOException {
-        offset = 8 + (methodName != null ? methodName.length() + 8 : 0);
+    private void decodeMessage(ByteBuffer buffer, boolean methodHeader) throws IOException {
+        buffer.position(HEADER_LENGTH);
+        if (methodHeader) {
+            methodName = readString(buffer);
+            buffer.getInt();
+        }
         List<Object> values = new ArrayList<Object>();
-        while (offset < binRpcData.length) {
-            values.add(readRpcValue());
+        while (buffer.hasRemaining()) {
+            values.add(readRpcValue(buffer));
         }
         messageData = values.toArray();
-        values.clear();
+    }
+
+    public void setType(TYPE type) {
+        binRpcData[3] = type == TYPE.RESPONSE ? (byte) 1 : (byte) 0;
     }
 
     private void createHeader() {
         binRpcData = new byte[256];
-        addString("Bin ");
+        addBytes(new byte[] { 'B', 'i', 'n', ' ' });
         setType(type);
         addInt(0); // placeholder content length
         if (methodName != null) {
-            addInt(methodName.length());
             addString(methodName);
+            argsPosition = offset;
             addInt(0); // placeholder arguments
         }
-        setInt(4, offset - 8);
+        setInt(4, offset - HEADER_LENGTH);
     }
 
     /**
@@ -149,10 +192,10 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
     @Override
     public void addArg(Object argument) {
         addObject(argument);
-        setInt(4, offset - 8);
+        setInt(4, offset - HEADER_LENGTH);
 
         if (methodName != null) {
-            setInt(12 + methodName.length(), ++args);
+            setInt(argsPosition, ++args);
         }
     }
 
@@ -170,14 +213,18 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
      */
     @Override
     public byte[] createMessage() {
-        trimBinRpcData();
+        if (binRpcData.length != offset) {
+            binRpcData = Arrays.copyOf(binRpcData, offset);
+        }
         return binRpcData;
     }
 
-    private void trimBinRpcData() {
-        byte[] trimmed = new byte[offset];
-        System.arraycopy(binRpcData, 0, trimmed, 0, offset);
-        binRpcData = trimmed;
+    /**
+     * Writes the message to the OutputStream without creating a trimmed copy of the message data.
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        os.write(binRpcData, 0, offset);
+        os.flush();
     }
 
     /**
@@ -189,82 +236,84 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
     }
 
     // read rpc values
-    private int readInt() {
-        byte bi[] = new byte[4];
-        System.arraycopy(binRpcData, offset, bi, 0, 4);
-        offset += 4;
-        return (new BigInteger(bi)).intValue();
+    private String readString(ByteBuffer buffer) throws UnsupportedEncodingException {
+        int len = buffer.getInt();
+        int position = buffer.position();
+        buffer.position(position + len);
+        return new String(buffer.array(), buffer.arrayOffset() + position, len, encoding);
     }
 
-    private String readString() throws UnsupportedEncodingException {
-        int len = readInt();
-        offset += len;
-        return new String(binRpcData, offset - len, len, encoding);
-    }
-
-    private Object readRpcValue() throws IOException {
-        int type = readInt();
+    private Object readRpcValue(ByteBuffer buffer) throws IOException {
+        int type = buffer.getInt();
         switch (type) {
             case 1:
-                return new Integer(readInt());
+                return new Integer(buffer.getInt());
             case 2:
-                return binRpcData[offset++] != 0 ? Boolean.TRUE : Boolean.FALSE;
+                return buffer.get() != 0 ? Boolean.TRUE : Boolean.FALSE;
             case 3:
-                return readString();
+                return readString(buffer);
             case 4:
-                int mantissa = readInt();
-                int exponent = readInt();
+                int mantissa = buffer.getInt();
+                int exponent = buffer.getInt();
                 BigDecimal bd = new BigDecimal((double) mantissa / (double) (1 << 30) * Math.pow(2, exponent));
                 return bd.setScale(6, RoundingMode.HALF_DOWN).doubleValue();
             case 5:
-                return new Date(readInt() * 1000);
+                return new Date(buffer.getInt() * 1000L);
             case 0x100:
                 // Array
-                int numElements = readInt();
-                Collection<Object> array = new ArrayList<Object>();
-                while (numElements-- > 0) {
-                    array.add(readRpcValue());
+                int numElements = buffer.getInt();
+                Object[] array = new Object[numElements];
+                for (int i = 0; i < numElements; i++) {
+                    array[i] = readRpcValue(buffer);
                 }
-                return array.toArray();
+                return array;
             case 0x101:
                 // Struct
-                numElements = readInt();
+                numElements = buffer.getInt();
                 Map<String, Object> struct = new TreeMap<String, Object>();
                 while (numElements-- > 0) {
-                    String name = readString();
-                    struct.put(name, readRpcValue());
+                    String name = readString(buffer);
+                    struct.put(name, readRpcValue(buffer));
                 }
                 return struct;
 
             default:
-                for (int i = 0; i < binRpcData.length; i++) {
-                    logger.info(Integer.toHexString(binRpcData[i]) + " " + (char) binRpcData[i]);
+                for (int i = 0; i < buffer.limit(); i++) {
+                    byte b = buffer.get(i);
+                    logger.info(Integer.toHexString(b) + " " + (char) b);
                 }
                 throw new IOException("Unknown data type " + type);
         }
     }
 
     private void setInt(int position, int value) {
-        int temp = offset;
-        offset = position;
-        addInt(value);
-        offset = temp;
+        binRpcData[position] = (byte) (value >> 24);
+        binRpcData[position + 1] = (byte) (value >> 16);
+        binRpcData[position + 2] = (byte) (value >> 8);
+        binRpcData[position + 3] = (byte) (value);
     }
 
-    private void addByte(byte b) {
-        if (offset == binRpcData.length) {
-            byte newdata[] = new byte[binRpcData.length * 2];
-            System.arraycopy(binRpcData, 0, newdata, 0, binRpcData.length);
-            binRpcData = newdata;
+    private void ensureCapacity(int length) {
+        if (offset + length > binRpcData.length) {
+            binRpcData = Arrays.copyOf(binRpcData, Math.max(binRpcData.length * 2, offset + length));
         }
+    }
+
+    private void addByte(byte b) {
+        ensureCapacity(1);
         binRpcData[offset++] = b;
     }
 
+    private void addBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, binRpcData, offset, bytes.length);
+        offset += bytes.length;
+    }
+
     private void addInt(int value) {
-        addByte((byte) (value >> 24));
-        addByte((byte) (value >> 16));
-        addByte((byte) (value >> 8));
-        addByte((byte) (value));
+        ensureCapacity(4);
+        setInt(offset, value);
+        offset += 4;
     }
 
     private void addDouble(double value) {
@@ -289,6 +338,9 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
         addInt(exp);
     }
 
+    /**
+     * Adds the length of the encoded string followed by the encoded string.
+     */
     private void addString(String string) {
         byte sd[];
         try {
@@ -296,9 +348,8 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
         } catch (UnsupportedEncodingException use) {
             sd = string.getBytes();
         }
-        for (byte ch : sd) {
-            addByte(ch);
-        }
+        addInt(sd.length);
+        addBytes(sd);
     }
 
     private void addList(Collection<?> collection) {
@@ -310,9 +361,7 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
     private void addObject(Object object) {
         if (object.getClass() == String.class) {
             addInt(3);
-            String string = (String) object;
-            addInt(string.length());
-            addString(string);
+            addString((String) object);
         } else if (object.getClass() == Boolean.class) {
             addInt(2);
             addByte(((Boolean) object).booleanValue() ? (byte) 1 : (byte) 0);
@@ -334,7 +383,7 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
             addDouble(((BigInteger) object).doubleValue());
         } else if (object.getClass() == Date.class) {
             addInt(5);
-            addInt((int) ((Date) object).getTime() / 1000);
+            addInt((int) (((Date) object).getTime() / 1000));
         } else if (object instanceof List<?>) {
             Collection<?> list = (Collection<?>) object;
             addInt(0x100);
@@ -345,23 +394,22 @@ public class BinRpcMessage implements RpcRequest, RpcResponse {
             addInt(0x101);
             addInt(map.size());
             for (Map.Entry<?, ?> entry : map.entrySet()) {
-                String key = (String) entry.getKey();
-                addInt(key.length());
-                addString(key);
+                addString((String) entry.getKey());
                 addList(Collections.singleton(entry.getValue()));
             }
         }
     }
 
     public String toBinString() {
-        return Arrays.toString(createMessage());
+        return Arrays.toString(Arrays.copyOf(binRpcData, offset));
     }
 
     @Override
     public String toString() {
         try {
-            trimBinRpcData();
-            generateResponseData();
+            if (binRpcData != null) {
+                decodeMessage(ByteBuffer.wrap(binRpcData, 0, offset), methodName != null);
+            }
             return RpcUtils.dumpRpcMessage(methodName, messageData);
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
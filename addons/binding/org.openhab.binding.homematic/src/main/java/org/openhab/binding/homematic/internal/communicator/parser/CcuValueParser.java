@@ -9,47 +9,98 @@
 package org.openhab.binding.homematic.internal.communicator.parser;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang.StringUtils;
 import org.openhab.binding.homematic.internal.model.HmChannel;
 import org.openhab.binding.homematic.internal.model.HmDatapoint;
 import org.openhab.binding.homematic.internal.model.HmDatapointInfo;
-import org.openhab.binding.homematic.internal.model.TclScriptDataEntry;
-import org.openhab.binding.homematic.internal.model.TclScriptDataList;
+import org.openhab.binding.homematic.internal.model.HmDevice;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Parses a TclRega script result containing datapoint values for a channel.
+ * Parses a TclRega script result containing datapoint values for one or more channels. The result is read with a
+ * streaming parser, each entry contains the full datapoint name in the format interface.address:channel.datapoint.
  *
  * @author Gerhard Riegler - Initial contribution
  */
-public class CcuValueParser extends CommonRpcParser<TclScriptDataList, Void> {
+public class CcuValueParser extends CommonRpcParser<String, Void> {
     private static final Logger logger = LoggerFactory.getLogger(CcuValueParser.class);
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    private Map<String, HmChannel> channelsByName = new HashMap<String, HmChannel>();
 
-    private HmChannel channel;
+    public CcuValueParser(Collection<HmChannel> channels) {
+        for (HmChannel channel : channels) {
+            channelsByName.put(getChannelName(channel), channel);
+        }
+    }
 
-    public CcuValueParser(HmChannel channel) {
-        this.channel = channel;
+    /**
+     * Returns the TclRega name of the channel, including the trailing dot.
+     */
+    public static String getChannelName(HmChannel channel) {
+        HmDevice device = channel.getDevice();
+        return String.format("%s.%s:%s.", device.getHmInterface().getName(), device.getAddress(), channel.getNumber());
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Void parse(TclScriptDataList resultList) throws IOException {
-        if (resultList.getEntries() != null) {
-            for (TclScriptDataEntry entry : resultList.getEntries()) {
-                HmDatapointInfo dpInfo = HmDatapointInfo.createValuesInfo(channel, entry.name);
-                HmDatapoint dp = channel.getDatapoint(dpInfo);
-                if (dp != null) {
-                    setDatapointValue(dp, entry.value);
-                    adjustRssiValue(dp);
-                } else {
-                    // should never happen, but in case ...
-                    logger.warn("Can't set value for datapoint '{}'", dpInfo);
+    public Void parse(String result) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(result));
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "entry".equals(reader.getLocalName())) {
+                    setValue(reader.getAttributeValue(null, "name"), reader.getAttributeValue(null, "value"));
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // ignore
                 }
             }
         }
         return null;
     }
+
+    /**
+     * Sets the value of a single result entry to the datapoint.
+     */
+    private void setValue(String fullName, String value) {
+        HmChannel channel = channelsByName.get(StringUtils.substringBeforeLast(fullName, ".") + ".");
+        if (channel != null) {
+            String dpName = StringUtils.substringAfterLast(fullName, ".");
+            HmDatapointInfo dpInfo = HmDatapointInfo.createValuesInfo(channel, dpName);
+            HmDatapoint dp = channel.getDatapoint(dpInfo);
+            if (dp != null) {
+                setDatapointValue(dp, value);
+                adjustRssiValue(dp);
+                return;
+            }
+        }
+        // should never happen, but in case ...
+        logger.warn("Can't set value for datapoint '{}'", fullName);
+    }
 }
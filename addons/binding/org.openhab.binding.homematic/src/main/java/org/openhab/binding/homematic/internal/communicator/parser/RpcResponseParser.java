@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
+import org.openhab.binding.homematic.internal.communicator.client.RpcFaultException;
 import org.openhab.binding.homematic.internal.communicator.client.UnknownRpcFailureException;
 import org.openhab.binding.homematic.internal.communicator.message.RpcRequest;
 
@@ -42,9 +43,9 @@ public class RpcResponseParser extends CommonRpcParser<Object[], Object[]> {
                     String faultString = toString(map.get("faultString"));
                     String faultMessage = String.format("%s %s (sending %s)", faultCode, faultString, response);
                     if (faultCode.intValue() == -1 && StringUtils.equals("Failure", faultString)) {
-                        throw new UnknownRpcFailureException(faultMessage);
+                        throw new UnknownRpcFailureException(faultCode.intValue(), faultString, faultMessage);
                     }
-                    throw new IOException(faultMessage);
+                    throw new RpcFaultException(faultCode.intValue(), faultString, faultMessage);
                 }
             }
             return message;
@@ -10,9 +10,7 @@ package org.openhab.binding.homematic.internal.communicator.server;
 
 import static org.openhab.binding.homematic.internal.misc.HomematicConstants.*;
 
-import java.io.EOFException;
 import java.io.IOException;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -26,11 +24,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Reads a BIN-RPC message from the socket and handles the method call.
+ * Handles the method calls of BIN-RPC messages received from the Homematic gateway.
  *
  * @author Gerhard Riegler - Initial contribution
  */
-public class BinRpcCallbackHandler implements Runnable {
+public class BinRpcCallbackHandler {
     private static final Logger logger = LoggerFactory.getLogger(BinRpcCallbackHandler.class);
     private static final boolean TRACE_ENABLED = logger.isTraceEnabled();
 
@@ -39,41 +37,41 @@ public class BinRpcCallbackHandler implements Runnable {
     private static final byte BIN_EMPTY_EVENT_LIST[] = { 'B', 'i', 'n', 1, 0, 0, 0, 21, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0,
             3, 0, 0, 0, 5, 'e', 'v', 'e', 'n', 't' };
 
-    private Socket socket;
     private RpcEventListener listener;
     private String encoding;
 
-    public BinRpcCallbackHandler(Socket socket, RpcEventListener listener, String encoding) {
-        this.socket = socket;
+    public BinRpcCallbackHandler(RpcEventListener listener, String encoding) {
         this.listener = listener;
         this.encoding = encoding;
     }
 
     /**
-     * Reads the event from the Homematic gateway and handles the method call.
+     * Handles the method call of the message and returns the response for the Homematic gateway.
      */
-    @Override
-    public void run() {
-        try {
-            BinRpcMessage message = new BinRpcMessage(socket.getInputStream(), true, encoding);
-            if (TRACE_ENABLED) {
-                logger.trace("Event BinRpcMessage: {}", message.toString());
-            }
-            byte[] returnValue = handleMethodCall(message.getMethodName(), message.getResponseData());
-            if (returnValue != null) {
-                socket.getOutputStream().write(returnValue);
-            }
-        } catch (EOFException eof) {
-            // ignore
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-        } finally {
-            try {
-                socket.close();
-            } catch (IOException ex) {
-                // ignore
+    public byte[] handleMessage(BinRpcMessage message) throws IOException {
+        if (TRACE_ENABLED) {
+            logger.trace("Event BinRpcMessage: {}", message.toString());
+        }
+        return handleMethodCall(message.getMethodName(), message.getResponseData());
+    }
+
+    /**
+     * Returns true, if the message only contains events, either directly or within a multicall.
+     */
+    public boolean isEventMessage(BinRpcMessage message) {
+        String methodName = message.getMethodName();
+        if (RPC_METHODNAME_EVENT.equals(methodName)) {
+            return true;
+        } else if (RPC_METHODNAME_SYSTEM_MULTICALL.equals(methodName)) {
+            for (Object o : (Object[]) message.getResponseData()[0]) {
+                Map<?, ?> call = (Map<?, ?>) o;
+                if (!RPC_METHODNAME_EVENT.equals(call.get("methodName"))) {
+                    return false;
+                }
             }
+            return true;
         }
+        return false;
     }
 
     /**
@@ -10,23 +10,62 @@ package org.openhab.binding.homematic.internal.communicator.server;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.smarthome.core.common.ThreadPoolManager;
 import org.openhab.binding.homematic.internal.common.HomematicConfig;
+import org.openhab.binding.homematic.internal.communicator.message.BinRpcMessage;
+import org.openhab.binding.homematic.internal.model.HmDatapointInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Waits for a message from the Homematic gateway and starts the RpcCallbackHandler to handle the message.
+ * Waits for messages from the Homematic gateway on persistent connections with a selector. Events are decoded on the
+ * selector thread and passed to the listener through a bounded queue, all other method calls are handled in the RPC
+ * thread pool. If the queue is full, the connections are not read until the queue has been drained.
  *
  * @author Gerhard Riegler - Initial contribution
  */
 public class BinRpcNetworkService implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(BinRpcNetworkService.class);
+
     private static final String RPC_POOL_NAME = "homematicRpc";
-    private ServerSocket serverSocket;
-    private boolean accept = true;
+    private static final int MAX_QUEUED_EVENTS = 5000;
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+    private static final int HEADER_LENGTH = 8;
+    private static final long METRICS_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean accept = true;
     private RpcEventListener listener;
     private HomematicConfig config;
+    private BinRpcCallbackHandler callbackHandler;
+    private Thread dispatcherThread;
+
+    private final BlockingQueue<QueuedEvent> eventQueue = new LinkedBlockingQueue<QueuedEvent>();
+    private final Queue<BinRpcConnection> completedConnections = new ConcurrentLinkedQueue<BinRpcConnection>();
+    private final List<BinRpcConnection> stalledConnections = new ArrayList<BinRpcConnection>();
+    private volatile boolean stalled;
+
+    private final AtomicLong eventCounter = new AtomicLong();
+    private volatile double eventsPerSecond;
+    private long metricsTime;
+    private long metricsEventCount;
 
     /**
      * Creates the socket for listening to events from the Homematic gateway.
@@ -34,26 +73,47 @@ public class BinRpcNetworkService implements Runnable {
     public BinRpcNetworkService(RpcEventListener listener, HomematicConfig config) throws IOException {
         this.listener = listener;
         this.config = config;
+        callbackHandler = new BinRpcCallbackHandler(new QueueingEventListener(), config.getEncoding());
 
-        serverSocket = new ServerSocket();
-        serverSocket.setReuseAddress(true);
-        serverSocket.bind(new InetSocketAddress(config.getBinCallbackPort()));
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.bind(new InetSocketAddress(config.getBinCallbackPort()));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ex) {
+            serverChannel.close();
+            selector.close();
+            throw ex;
+        }
     }
 
     /**
-     * Listening for events and starts the callbackHandler if a event received.
+     * Listening for messages and handles them when they are received completely.
      */
     @Override
     public void run() {
+        dispatcherThread = new Thread(new EventDispatcher());
+        dispatcherThread.setName("HomematicRpcEventDispatcher");
+        dispatcherThread.start();
+
+        metricsTime = System.nanoTime();
         while (accept) {
             try {
-                Socket cs = serverSocket.accept();
-                BinRpcCallbackHandler rpcHandler = new BinRpcCallbackHandler(cs, listener, config.getEncoding());
-                ThreadPoolManager.getPool(RPC_POOL_NAME).execute(rpcHandler);
+                selector.select(1000);
+                if (!accept) {
+                    break;
+                }
+                processSelectedKeys();
+                processCompletedConnections();
+                processStalledConnections();
+                updateMetrics();
             } catch (IOException ex) {
-                // ignore
+                logger.debug("BIN-RPC selector failure: {}", ex.getMessage());
             }
         }
+        closeSelector();
     }
 
     /**
@@ -62,10 +122,357 @@ public class BinRpcNetworkService implements Runnable {
     public void shutdown() {
         accept = false;
         try {
-            serverSocket.close();
+            serverChannel.close();
         } catch (IOException ioe) {
             // ignore
         }
+        selector.wakeup();
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+        }
+        logger.debug("BIN-RPC server received {} events, {} events still queued", eventCounter.get(),
+                eventQueue.size());
+    }
+
+    /**
+     * Returns the number of events received since the server was started.
+     */
+    public long getEventCount() {
+        return eventCounter.get();
+    }
+
+    /**
+     * Returns the average number of events per second of the last metrics interval.
+     */
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    /**
+     * Returns the number of events waiting to be passed to the listener.
+     */
+    public int getQueueSize() {
+        return eventQueue.size();
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                acceptConnection();
+            } else {
+                BinRpcConnection connection = (BinRpcConnection) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        connection.read();
+                    } else if (key.isWritable()) {
+                        connection.write();
+                    }
+                } catch (Exception ex) {
+                    logger.debug("Closing BIN-RPC connection: {}", ex.getMessage());
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private void acceptConnection() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new BinRpcConnection(channel, key));
+            }
+        } catch (IOException ex) {
+            logger.debug("Can't accept BIN-RPC connection: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Sends the responses of the method calls handled in the RPC thread pool.
+     */
+    private void processCompletedConnections() {
+        BinRpcConnection connection;
+        while ((connection = completedConnections.poll()) != null) {
+            try {
+                connection.sendResponse();
+            } catch (Exception ex) {
+                logger.debug("Closing BIN-RPC connection: {}", ex.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Handles the messages of the connections which had to wait for free space in the event queue.
+     */
+    private void processStalledConnections() {
+        if (stalledConnections.isEmpty() || eventQueue.size() >= MAX_QUEUED_EVENTS) {
+            return;
+        }
+        List<BinRpcConnection> connections = new ArrayList<BinRpcConnection>(stalledConnections);
+        stalledConnections.clear();
+        stalled = false;
+        for (BinRpcConnection connection : connections) {
+            try {
+                handleMessage(connection);
+            } catch (Exception ex) {
+                logger.debug("Closing BIN-RPC connection: {}", ex.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    private void updateMetrics() {
+        long now = System.nanoTime();
+        if (now - metricsTime >= METRICS_INTERVAL) {
+            long count = eventCounter.get();
+            eventsPerSecond = (count - metricsEventCount) / ((double) (now - metricsTime) / TimeUnit.SECONDS.toNanos(1));
+            metricsTime = now;
+            metricsEventCount = count;
+            logger.debug("BIN-RPC server: {} events/s, {} events queued, {} connections waiting", eventsPerSecond,
+                    eventQueue.size(), stalledConnections.size());
+        }
+    }
+
+    /**
+     * Handles a completely received message. Events are handled immediately if the event queue has free space, all
+     * other method calls are executed in the RPC thread pool.
+     */
+    private void handleMessage(final BinRpcConnection connection) throws IOException {
+        if (callbackHandler.isEventMessage(connection.message)) {
+            if (eventQueue.size() >= MAX_QUEUED_EVENTS) {
+                stalledConnections.add(connection);
+                stalled = true;
+            } else {
+                connection.response = callbackHandler.handleMessage(connection.message);
+                connection.sendResponse();
+            }
+        } else {
+            ThreadPoolManager.getPool(RPC_POOL_NAME).execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        connection.response = callbackHandler.handleMessage(connection.message);
+                    } catch (Exception ex) {
+                        logger.error(ex.getMessage(), ex);
+                        connection.failed = true;
+                    }
+                    completedConnections.add(connection);
+                    selector.wakeup();
+                }
+            });
+        }
+    }
+
+    private void closeSelector() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof BinRpcConnection) {
+                ((BinRpcConnection) key.attachment()).close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    /**
+     * A persistent connection from the Homematic gateway. A message is read incrementally until it is complete, the
+     * connection is not read again until the response has been sent.
+     *
+     * @author agent - Initial contribution
+     */
+    private class BinRpcConnection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        private ByteBuffer frame;
+        private ByteBuffer responseBuffer;
+
+        private volatile BinRpcMessage message;
+        private volatile byte[] response;
+        private volatile boolean failed;
+
+        public BinRpcConnection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Reads the available data and handles the message if it has been received completely.
+         */
+        private void read() throws IOException {
+            if (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    close();
+                    return;
+                }
+                if (header.hasRemaining()) {
+                    return;
+                }
+                if (header.get(0) != 'B' || header.get(1) != 'i' || header.get(2) != 'n') {
+                    throw new IOException("No BinX signature");
+                }
+                int messageSize = HEADER_LENGTH + header.getInt(4);
+                if (messageSize < HEADER_LENGTH || messageSize > MAX_MESSAGE_SIZE) {
+                    throw new IOException("Invalid message length " + (messageSize - HEADER_LENGTH));
+                }
+                if (frame == null || frame.capacity() < messageSize) {
+                    frame = ByteBuffer.allocate(messageSize);
+                }
+                frame.clear();
+                frame.limit(messageSize);
+                header.flip();
+                frame.put(header);
+            }
+
+            if (channel.read(frame) < 0) {
+                close();
+                return;
+            }
+            if (!frame.hasRemaining()) {
+                frame.flip();
+                message = new BinRpcMessage(frame, true, config.getEncoding());
+                key.interestOps(0);
+                handleMessage(this);
+            }
+        }
+
+        /**
+         * Starts sending the response, the connection is read again when the response has been sent.
+         */
+        private void sendResponse() throws IOException {
+            if (failed) {
+                close();
+            } else if (response == null) {
+                reset();
+            } else {
+                responseBuffer = ByteBuffer.wrap(response);
+                write();
+            }
+        }
+
+        /**
+         * Writes the remaining response data.
+         */
+        private void write() throws IOException {
+            channel.write(responseBuffer);
+            if (responseBuffer.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                reset();
+            }
+        }
+
+        /**
+         * Prepares the connection for the next message.
+         */
+        private void reset() {
+            message = null;
+            response = null;
+            responseBuffer = null;
+            header.clear();
+            if (frame != null && frame.capacity() > MAX_REUSED_BUFFER_SIZE) {
+                frame = null;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Passes events to the event queue, all other calls are passed to the listener directly.
+     *
+     * @author agent - Initial contribution
+     */
+    private class QueueingEventListener implements RpcEventListener {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void eventReceived(HmDatapointInfo dpInfo, Object newValue) {
+            eventCounter.incrementAndGet();
+            eventQueue.add(new QueuedEvent(dpInfo, newValue));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void newDevices(List<String> adresses) {
+            listener.newDevices(adresses);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void deleteDevices(List<String> addresses) {
+            listener.deleteDevices(addresses);
+        }
+    }
+
+    /**
+     * Takes the events from the queue in the order they have been received and passes them to the listener.
+     *
+     * @author agent - Initial contribution
+     */
+    private class EventDispatcher implements Runnable {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            while (accept) {
+                try {
+                    QueuedEvent event = eventQueue.poll(1, TimeUnit.SECONDS);
+                    if (event != null) {
+                        listener.eventReceived(event.dpInfo, event.value);
+                    }
+                    if (stalled && eventQueue.size() < MAX_QUEUED_EVENTS / 2) {
+                        selector.wakeup();
+                    }
+                } catch (InterruptedException ex) {
+                    // shutdown
+                } catch (Exception ex) {
+                    logger.error(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * A received event waiting to be passed to the listener.
+     *
+     * @author agent - Initial contribution
+     */
+    private static class QueuedEvent {
+        private final HmDatapointInfo dpInfo;
+        private final Object value;
+
+        public QueuedEvent(HmDatapointInfo dpInfo, Object value) {
+            this.dpInfo = dpInfo;
+            this.value = value;
+        }
     }
 
 }
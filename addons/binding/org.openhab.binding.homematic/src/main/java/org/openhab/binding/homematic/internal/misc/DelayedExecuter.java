@@ -9,24 +9,37 @@
 package org.openhab.binding.homematic.internal.misc;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openhab.binding.homematic.internal.model.HmDatapointInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Executes a callback method either immediately or after a given delay for a datapoint.
+ * Executes a callback method either immediately or after a given delay for a datapoint. All delayed events of a
+ * gateway share one scheduler, a retrigger of a pending datapoint only moves the due time of the already scheduled
+ * event instead of creating a new timer.
  *
  * @author Gerhard Riegler - Initial contribution
  */
 public class DelayedExecuter {
     private static final Logger logger = LoggerFactory.getLogger(DelayedExecuter.class);
 
-    private Map<HmDatapointInfo, Timer> delayedEvents = new HashMap<HmDatapointInfo, Timer>();
+    private final ScheduledExecutorService scheduler;
+    private final Map<HmDatapointInfo, DelayedEvent> delayedEvents;
+
+    private final AtomicLong firedCounter = new AtomicLong();
+    private final AtomicLong coalescedCounter = new AtomicLong();
+
+    public DelayedExecuter(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        this.delayedEvents = new ConcurrentHashMap<HmDatapointInfo, DelayedEvent>();
+    }
 
     /**
      * Executes a callback method either immediately or after a given delay.
@@ -34,28 +47,18 @@ public class DelayedExecuter {
     public void start(final HmDatapointInfo dpInfo, final double delay, final DelayedExecuterCallback callback)
             throws IOException, HomematicClientException {
         if (delay > 0.0) {
-            synchronized (DelayedExecuter.class) {
-                logger.debug("Delaying event for {} seconds: '{}'", delay, dpInfo);
+            logger.debug("Delaying event for {} seconds: '{}'", delay, dpInfo);
+            final long dueTime = System.nanoTime() + (long) (delay * TimeUnit.SECONDS.toNanos(1));
 
-                Timer timer = delayedEvents.get(dpInfo);
-                if (timer != null) {
-                    timer.cancel();
+            synchronized (delayedEvents) {
+                DelayedEvent event = delayedEvents.get(dpInfo);
+                if (event != null && event.retrigger(dueTime, callback)) {
+                    coalescedCounter.incrementAndGet();
+                } else {
+                    event = new DelayedEvent(dpInfo, dueTime, callback);
+                    delayedEvents.put(dpInfo, event);
+                    event.schedule(dueTime - System.nanoTime());
                 }
-
-                timer = new Timer();
-                delayedEvents.put(dpInfo, timer);
-                timer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        logger.debug("Executing delayed event for '{}'", dpInfo);
-                        delayedEvents.remove(dpInfo);
-                        try {
-                            callback.execute();
-                        } catch (Exception ex) {
-                            logger.error(ex.getMessage(), ex);
-                        }
-                    }
-                }, (long) (delay * 1000));
             }
         } else {
             callback.execute();
@@ -66,10 +69,116 @@ public class DelayedExecuter {
      * Stops all delayed events.
      */
     public void stop() {
-        for (Timer timer : delayedEvents.values()) {
-            timer.cancel();
+        synchronized (delayedEvents) {
+            for (DelayedEvent event : delayedEvents.values()) {
+                event.cancel();
+            }
+            delayedEvents.clear();
+        }
+    }
+
+    /**
+     * Returns the number of currently pending delayed events.
+     */
+    public int getPendingCount() {
+        return delayedEvents.size();
+    }
+
+    /**
+     * Returns the number of executed delayed events.
+     */
+    public long getFiredCount() {
+        return firedCounter.get();
+    }
+
+    /**
+     * Returns the number of events which replaced an already pending event of the same datapoint.
+     */
+    public long getCoalescedCount() {
+        return coalescedCounter.get();
+    }
+
+    /**
+     * A pending event for a datapoint. A retrigger only updates the due time and the callback, if the scheduled run
+     * is too early, the event schedules itself again for the remaining time.
+     *
+     * @author agent - Initial contribution
+     */
+    private class DelayedEvent implements Runnable {
+        private final HmDatapointInfo dpInfo;
+        private long dueTime;
+        private DelayedExecuterCallback callback;
+        private ScheduledFuture<?> future;
+        private boolean fired;
+        private boolean cancelled;
+
+        public DelayedEvent(HmDatapointInfo dpInfo, long dueTime, DelayedExecuterCallback callback) {
+            this.dpInfo = dpInfo;
+            this.dueTime = dueTime;
+            this.callback = callback;
+        }
+
+        /**
+         * Schedules the event after the given nanoseconds.
+         */
+        private synchronized void schedule(long delayNanos) {
+            future = scheduler.schedule(this, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Moves the due time of the event and replaces the callback, returns false if the event is already executing.
+         */
+        private synchronized boolean retrigger(long dueTime, DelayedExecuterCallback callback) {
+            if (fired || cancelled) {
+                return false;
+            }
+            this.callback = callback;
+            if (dueTime < this.dueTime) {
+                future.cancel(false);
+                this.dueTime = dueTime;
+                schedule(dueTime - System.nanoTime());
+            } else {
+                this.dueTime = dueTime;
+            }
+            return true;
+        }
+
+        /**
+         * Cancels the event.
+         */
+        private synchronized void cancel() {
+            cancelled = true;
+            future.cancel(false);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            final DelayedExecuterCallback currentCallback;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                long remaining = dueTime - System.nanoTime();
+                if (remaining > 0) {
+                    schedule(remaining);
+                    return;
+                }
+                fired = true;
+                currentCallback = callback;
+            }
+            delayedEvents.remove(dpInfo, this);
+
+            logger.debug("Executing delayed event for '{}'", dpInfo);
+            firedCounter.incrementAndGet();
+            try {
+                currentCallback.execute();
+            } catch (Exception ex) {
+                logger.error(ex.getMessage(), ex);
+            }
         }
-        delayedEvents.clear();
     }
 
     /**
@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.homematic.internal.misc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.openhab.binding.homematic.internal.model.HmDatapointInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the events of a datapoint within a time window. The first event of a datapoint is forwarded immediately,
+ * events received within the window after a forwarded event are dropped if the value is unchanged, otherwise only the
+ * latest value is forwarded at the end of the window.
+ *
+ * @author agent - Initial contribution
+ */
+public class EventCoalescer {
+    private static final Logger logger = LoggerFactory.getLogger(EventCoalescer.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final long windowNanos;
+    private final EventCoalescerCallback callback;
+    private final ConcurrentMap<HmDatapointInfo, DatapointEvents> datapointEvents;
+
+    private final AtomicLong forwardedCounter = new AtomicLong();
+    private final AtomicLong droppedCounter = new AtomicLong();
+    private final AtomicLong coalescedCounter = new AtomicLong();
+
+    public EventCoalescer(ScheduledExecutorService scheduler, long windowMillis, EventCoalescerCallback callback) {
+        this.scheduler = scheduler;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+        this.callback = callback;
+        this.datapointEvents = new ConcurrentHashMap<HmDatapointInfo, DatapointEvents>();
+    }
+
+    /**
+     * Adds an event for a datapoint. If coalesce is false or the window is disabled, the event is forwarded
+     * immediately.
+     */
+    public void add(HmDatapointInfo dpInfo, Object value, boolean coalesce) {
+        if (!coalesce || windowNanos == 0) {
+            forwardedCounter.incrementAndGet();
+            callback.forward(dpInfo, value);
+            return;
+        }
+
+        DatapointEvents events = datapointEvents.get(dpInfo);
+        if (events == null) {
+            DatapointEvents newEvents = new DatapointEvents(dpInfo);
+            events = datapointEvents.putIfAbsent(dpInfo, newEvents);
+            if (events == null) {
+                events = newEvents;
+            }
+        }
+        events.add(value);
+    }
+
+    /**
+     * Forgets the last forwarded value of the datapoint, the next event of the datapoint is not dropped even if the
+     * value is unchanged.
+     */
+    public void invalidate(HmDatapointInfo dpInfo) {
+        DatapointEvents events = datapointEvents.get(dpInfo);
+        if (events != null) {
+            events.invalidate();
+        }
+    }
+
+    /**
+     * Cancels all pending events.
+     */
+    public void stop() {
+        for (DatapointEvents events : datapointEvents.values()) {
+            events.cancel();
+        }
+        datapointEvents.clear();
+    }
+
+    /**
+     * Returns the number of forwarded events.
+     */
+    public long getForwardedCount() {
+        return forwardedCounter.get();
+    }
+
+    /**
+     * Returns the number of events which have been dropped because the value did not change.
+     */
+    public long getDroppedCount() {
+        return droppedCounter.get();
+    }
+
+    /**
+     * Returns the number of events which have been superseded by a newer event of the same datapoint.
+     */
+    public long getCoalescedCount() {
+        return coalescedCounter.get();
+    }
+
+    /**
+     * The state of the events of one datapoint. Events are forwarded while holding the lock of the datapoint, so the
+     * order of the forwarded values is always preserved.
+     *
+     * @author agent - Initial contribution
+     */
+    private class DatapointEvents implements Runnable {
+        private final HmDatapointInfo dpInfo;
+        private Object lastValue;
+        private long lastForwardTime;
+        private boolean forwarded;
+        private Object pendingValue;
+        private ScheduledFuture<?> future;
+
+        public DatapointEvents(HmDatapointInfo dpInfo) {
+            this.dpInfo = dpInfo;
+        }
+
+        /**
+         * Forwards, drops or delays the event depending on the time of the last forwarded event.
+         */
+        private synchronized void add(Object value) {
+            if (future != null) {
+                logger.trace("Coalescing event for '{}'", dpInfo);
+                coalescedCounter.incrementAndGet();
+                pendingValue = value;
+                return;
+            }
+            long elapsed = System.nanoTime() - lastForwardTime;
+            if (!forwarded || elapsed >= windowNanos) {
+                forward(value);
+            } else if (ObjectUtils.equals(lastValue, value)) {
+                logger.trace("Dropping unchanged event for '{}'", dpInfo);
+                droppedCounter.incrementAndGet();
+            } else {
+                pendingValue = value;
+                future = scheduler.schedule(this, windowNanos - elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Forgets the last forwarded value.
+         */
+        private synchronized void invalidate() {
+            forwarded = false;
+            lastValue = null;
+        }
+
+        /**
+         * Cancels the pending event.
+         */
+        private synchronized void cancel() {
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+            pendingValue = null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized void run() {
+            if (future == null) {
+                return;
+            }
+            future = null;
+            Object value = pendingValue;
+            pendingValue = null;
+            if (forwarded && ObjectUtils.equals(lastValue, value)) {
+                logger.trace("Dropping unchanged event for '{}'", dpInfo);
+                droppedCounter.incrementAndGet();
+            } else {
+                forward(value);
+            }
+        }
+
+        private void forward(Object value) {
+            lastValue = value;
+            lastForwardTime = System.nanoTime();
+            forwarded = true;
+            forwardedCounter.incrementAndGet();
+            try {
+                callback.forward(dpInfo, value);
+            } catch (Exception ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Callback interface for the {@link EventCoalescer}.
+     *
+     * @author agent - Initial contribution
+     */
+    public interface EventCoalescerCallback {
+
+        public void forward(HmDatapointInfo dpInfo, Object value);
+
+    }
+
+}
@@ -63,6 +63,7 @@ public class HomematicTypeGeneratorImpl implements HomematicTypeGenerator {
     private HomematicChannelTypeProvider channelTypeProvider;
     private HomematicConfigDescriptionProvider configDescriptionProvider;
     private Map<String, Set<String>> firmwaresByType = new HashMap<String, Set<String>>();
+    private Set<String> generatedDeviceTypes = new HashSet<String>();
 
     private static final String[] STATUS_DATAPOINT_NAMES = new String[] { DATAPOINT_NAME_UNREACH,
             DATAPOINT_NAME_CONFIG_PENDING, DATAPOINT_NAME_DEVICE_IN_BOOTLOADER, DATAPOINT_NAME_UPDATE_PENDING };
@@ -109,6 +110,11 @@ public class HomematicTypeGeneratorImpl implements HomematicTypeGenerator {
     @Override
     public void generate(HmDevice device) {
         if (thingTypeProvider != null) {
+            String deviceType = device.getType() + ":" + device.getFirmware();
+            if (!device.isGatewayExtras() && generatedDeviceTypes.contains(deviceType)) {
+                // types for this device type and firmware are already generated
+                return;
+            }
             ThingTypeUID thingTypeUID = UidUtils.generateThingTypeUID(device);
             ThingType tt = thingTypeProvider.getThingType(thingTypeUID, Locale.getDefault());
             if (tt == null || device.isGatewayExtras()) {
@@ -154,6 +160,7 @@ public class HomematicTypeGeneratorImpl implements HomematicTypeGenerator {
                 thingTypeProvider.addThingType(tt);
             }
             addFirmware(device);
+            generatedDeviceTypes.add(deviceType);
         }
     }
 
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.discovery;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the TCP probing of the {@link NetworkScanner}.
+ *
+ * @author agent - Initial contribution
+ */
+public class NetworkScannerTest {
+    private static final int TIMEOUT = 2000;
+
+    @Test
+    public void findsListeningPort() throws IOException {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+        RecordingListener listener = new RecordingListener();
+        try (ServerSocket server = new ServerSocket(0, 1, localhost)) {
+            scan(localhost, server.getLocalPort(), listener).run();
+        }
+
+        assertEquals(Collections.singletonList(localhost), listener.found);
+        assertEquals(Long.valueOf(1), listener.finished);
+        assertEquals(1, listener.scanned);
+    }
+
+    @Test
+    public void findsHostRefusingConnection() throws IOException {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+        int port;
+        try (ServerSocket server = new ServerSocket(0, 1, localhost)) {
+            port = server.getLocalPort();
+        }
+        RecordingListener listener = new RecordingListener();
+        scan(localhost, port, listener).run();
+
+        assertEquals(Collections.singletonList(localhost), listener.found);
+        assertEquals(Long.valueOf(1), listener.finished);
+    }
+
+    @Test
+    public void cancelSuppressesScanFinished() throws IOException {
+        InetAddress localhost = InetAddress.getByName("127.0.0.1");
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void hostFound(InetAddress address) {
+                super.hostFound(address);
+                scanner.cancel();
+            }
+        };
+        try (ServerSocket server = new ServerSocket(0, 1, localhost)) {
+            listener.scanner = scan(localhost, server.getLocalPort(), listener);
+            listener.scanner.run();
+        }
+
+        assertEquals(1, listener.found.size());
+        assertNull(listener.finished);
+    }
+
+    private static NetworkScanner scan(InetAddress address, int port, RecordingListener listener) throws IOException {
+        return new NetworkScanner(Collections.singletonList(address).iterator(), 1, new int[] { port }, TIMEOUT, 16,
+                0, null, listener);
+    }
+
+    private static class RecordingListener implements NetworkScanner.Listener {
+        final List<InetAddress> found = new ArrayList<InetAddress>();
+        long scanned;
+        Long finished;
+        NetworkScanner scanner;
+
+        @Override
+        public void hostFound(InetAddress address) {
+            found.add(address);
+        }
+
+        @Override
+        public void scanProgress(long scanned, long total) {
+            this.scanned = scanned;
+        }
+
+        @Override
+        public void scanFinished(NetworkScanner scanner, long found) {
+            finished = found;
+        }
+    }
+}
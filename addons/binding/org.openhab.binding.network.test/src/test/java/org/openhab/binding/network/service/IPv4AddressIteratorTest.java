@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.service;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link IPv4AddressIterator}.
+ *
+ * @author agent - Initial contribution
+ */
+public class IPv4AddressIteratorTest {
+
+    @Test
+    public void skipsNetworkAndBroadcastAddress() throws UnknownHostException {
+        IPv4AddressIterator iterator = new IPv4AddressIterator(Arrays.asList("192.168.1.1/30"));
+
+        assertEquals(2, iterator.size());
+        assertEquals(addresses("192.168.1.1", "192.168.1.2"), collect(iterator));
+    }
+
+    @Test
+    public void returnsAllAddressesOfPointToPointNetworks() throws UnknownHostException {
+        assertEquals(addresses("10.0.0.4", "10.0.0.5"), collect(new IPv4AddressIterator(Arrays.asList("10.0.0.5/31"))));
+        assertEquals(addresses("10.0.0.7"), collect(new IPv4AddressIterator(Arrays.asList("10.0.0.7/32"))));
+    }
+
+    @Test
+    public void mergesOverlappingNetworks() throws UnknownHostException {
+        IPv4AddressIterator iterator = new IPv4AddressIterator(
+                Arrays.asList("10.0.0.200/25", "10.0.0.1/24", "10.0.0.1/24"));
+
+        assertEquals(254, iterator.size());
+        List<InetAddress> addresses = collect(iterator);
+        assertEquals(254, addresses.size());
+        assertEquals(InetAddress.getByName("10.0.0.1"), addresses.get(0));
+        assertEquals(InetAddress.getByName("10.0.0.254"), addresses.get(253));
+    }
+
+    @Test
+    public void iteratesSortedNetworksInOrder() throws UnknownHostException {
+        IPv4AddressIterator iterator = new IPv4AddressIterator(Arrays.asList("192.168.2.1/30", "192.168.1.1/30"));
+
+        assertEquals(4, iterator.size());
+        assertEquals(addresses("192.168.1.1", "192.168.1.2", "192.168.2.1", "192.168.2.2"), collect(iterator));
+    }
+
+    @Test
+    public void ignoresIPv6AndInvalidNetworks() {
+        IPv4AddressIterator iterator = new IPv4AddressIterator(
+                Arrays.asList("fe80::1/64", "10.0.0.1", "10.0.0.1/33", "10.0.0.1/x"));
+
+        assertEquals(0, iterator.size());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void throwsIfExhausted() {
+        IPv4AddressIterator iterator = new IPv4AddressIterator(Arrays.asList("10.0.0.7/32"));
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void throwsWithoutNetworks() {
+        new IPv4AddressIterator(Collections.<String> emptyList()).next();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void doesNotSupportRemove() {
+        new IPv4AddressIterator(Arrays.asList("10.0.0.7/32")).remove();
+    }
+
+    private static List<InetAddress> collect(IPv4AddressIterator iterator) {
+        List<InetAddress> addresses = new ArrayList<>();
+        while (iterator.hasNext()) {
+            addresses.add(iterator.next());
+        }
+        return addresses;
+    }
+
+    private static List<InetAddress> addresses(String... ips) throws UnknownHostException {
+        List<InetAddress> addresses = new ArrayList<>();
+        for (String ip : ips) {
+            addresses.add(InetAddress.getByName(ip));
+        }
+        return addresses;
+    }
+}
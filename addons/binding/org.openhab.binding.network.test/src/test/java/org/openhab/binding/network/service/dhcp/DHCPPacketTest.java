@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.service.dhcp;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+
+import org.junit.Test;
+import org.openhab.binding.network.service.dhcp.DHCPPacket.BadPacketException;
+
+/**
+ * Tests the parsing of DHCP requests by the {@link DHCPPacket}.
+ *
+ * @author agent - Initial contribution
+ */
+public class DHCPPacketTest {
+    private static final byte[] MAC = { 0x00, 0x1a, 0x2b, 0x3c, 0x4d, (byte) 0xfe };
+    private static final byte[] NO_ADDRESS = { 0, 0, 0, 0 };
+
+    @Test
+    public void parsesRequestWithRequestedAddress() throws IOException {
+        DHCPPacket packet = parse(createPacket(DHCPPacket.HTYPE_ETHER, NO_ADDRESS, DHCPPacket.DHO_PAD,
+                DHCPPacket.DHO_DHCP_MESSAGE_TYPE, 1, DHCPPacket.DHCPREQUEST, DHCPPacket.DHO_DHCP_REQUESTED_ADDRESS, 4,
+                (byte) 192, (byte) 168, 1, 42, DHCPPacket.DHO_END));
+
+        assertEquals(DHCPPacket.BOOTREQUEST, packet.getOp());
+        assertEquals(Byte.valueOf(DHCPPacket.DHCPREQUEST), packet.getDHCPMessageType());
+        assertEquals(InetAddress.getByName("192.168.1.42"), packet.getRequestedIPAddress());
+        assertNull(packet.getClientIPAddress());
+        assertEquals("00:1a:2b:3c:4d:fe", packet.getClientHardwareAddress());
+    }
+
+    @Test
+    public void parsesClientAddressOfRenewal() throws IOException {
+        DHCPPacket packet = parse(createPacket(DHCPPacket.HTYPE_ETHER, new byte[] { 10, 0, 0, 7 },
+                DHCPPacket.DHO_DHCP_MESSAGE_TYPE, 1, DHCPPacket.DHCPREQUEST, DHCPPacket.DHO_END));
+
+        assertNull(packet.getRequestedIPAddress());
+        assertEquals(InetAddress.getByName("10.0.0.7"), packet.getClientIPAddress());
+    }
+
+    @Test
+    public void parsesPacketAtDatagramOffset() throws IOException {
+        byte[] data = createPacket(DHCPPacket.HTYPE_ETHER, NO_ADDRESS, DHCPPacket.DHO_DHCP_MESSAGE_TYPE, 1,
+                DHCPPacket.DHCPDISCOVER, DHCPPacket.DHO_END);
+        byte[] buffer = new byte[data.length + 20];
+        System.arraycopy(data, 0, buffer, 10, data.length);
+
+        DHCPPacket packet = new DHCPPacket(new DatagramPacket(buffer, 10, data.length));
+
+        assertEquals(Byte.valueOf(DHCPPacket.DHCPDISCOVER), packet.getDHCPMessageType());
+        assertEquals("00:1a:2b:3c:4d:fe", packet.getClientHardwareAddress());
+    }
+
+    @Test
+    public void returnsNoHardwareAddressOfNonEthernetClients() throws IOException {
+        DHCPPacket packet = parse(createPacket((byte) 6, NO_ADDRESS, DHCPPacket.DHO_END));
+
+        assertNull(packet.getClientHardwareAddress());
+        assertNull(packet.getDHCPMessageType());
+    }
+
+    @Test(expected = BadPacketException.class)
+    public void rejectsTooSmallPacket() throws IOException {
+        parse(new byte[DHCPPacket._BOOTP_ABSOLUTE_MIN_LEN - 1]);
+    }
+
+    @Test(expected = BadPacketException.class)
+    public void rejectsPacketWithoutMagicCookie() throws IOException {
+        byte[] data = createPacket(DHCPPacket.HTYPE_ETHER, NO_ADDRESS, DHCPPacket.DHO_END);
+        data[DHCPPacket._BOOTP_ABSOLUTE_MIN_LEN] = 0;
+        parse(data);
+    }
+
+    @Test(expected = BadPacketException.class)
+    public void rejectsTruncatedOptions() throws IOException {
+        parse(createPacket(DHCPPacket.HTYPE_ETHER, NO_ADDRESS, DHCPPacket.DHO_DHCP_MESSAGE_TYPE, 1,
+                DHCPPacket.DHCPREQUEST));
+    }
+
+    @Test(expected = BadPacketException.class)
+    public void rejectsRequestedAddressOfWrongSize() throws IOException {
+        parse(createPacket(DHCPPacket.HTYPE_ETHER, NO_ADDRESS, DHCPPacket.DHO_DHCP_REQUESTED_ADDRESS, 2, 10, 0,
+                DHCPPacket.DHO_END)).getRequestedIPAddress();
+    }
+
+    private static DHCPPacket parse(byte[] data) throws IOException {
+        return new DHCPPacket(new DatagramPacket(data, data.length));
+    }
+
+    /**
+     * Creates a BOOTREQUEST packet of a client with the {@link #MAC} address.
+     */
+    private static byte[] createPacket(byte htype, byte[] ciaddr, int... options) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(DHCPPacket.BOOTREQUEST);
+        out.writeByte(htype);
+        out.writeByte(6); // hlen
+        out.writeByte(0); // hops
+        out.writeInt(0x12345678); // xid
+        out.writeShort(0); // secs
+        out.writeShort(0); // flags
+        out.write(ciaddr);
+        out.write(new byte[12]); // yiaddr, siaddr, giaddr
+        out.write(MAC);
+        out.write(new byte[10]); // chaddr padding
+        out.write(new byte[192]); // sname, file
+        out.writeInt(DHCPPacket._MAGIC_COOKIE);
+        for (int option : options) {
+            out.writeByte(option);
+        }
+        return bytes.toByteArray();
+    }
+}
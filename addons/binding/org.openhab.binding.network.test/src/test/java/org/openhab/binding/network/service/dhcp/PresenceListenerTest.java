@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.service.dhcp;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openhab.binding.network.service.StateUpdate;
+
+/**
+ * Tests the dispatch of seen hosts by the {@link PresenceListener}.
+ *
+ * @author agent - Initial contribution
+ */
+public class PresenceListenerTest {
+    private static final String MAC = "00:1a:2b:3c:4d:fe";
+    private static final String OTHER_MAC = "00:1a:2b:3c:4d:ff";
+
+    private final List<RecordingListener> listeners = new ArrayList<RecordingListener>();
+
+    @After
+    public void unregister() {
+        for (RecordingListener listener : listeners) {
+            PresenceListener.unregister(listener);
+        }
+    }
+
+    @Test
+    public void reportsHostByMAC() {
+        RecordingListener listener = register("192.168.1.10", "00-1A-2B-3C-4D-FE");
+
+        PresenceListener.seen(null, MAC);
+
+        assertEquals(1, listener.seen);
+    }
+
+    @Test
+    public void reportsHostRoamingToNewAddress() {
+        RecordingListener listener = register("192.168.1.10", MAC);
+
+        PresenceListener.seen("10.0.0.23", MAC);
+
+        assertEquals(1, listener.seen);
+    }
+
+    @Test
+    public void learnsMACFromAddressMatch() {
+        RecordingListener listener = register("192.168.1.10", null);
+
+        PresenceListener.seen("192.168.1.10", MAC);
+        PresenceListener.seen("10.0.0.23", MAC);
+
+        assertEquals(2, listener.seen);
+    }
+
+    @Test
+    public void ignoresAddressMatchWithConflictingMAC() {
+        RecordingListener listener = register("192.168.1.10", MAC);
+
+        PresenceListener.seen("192.168.1.10", OTHER_MAC);
+
+        assertEquals(0, listener.seen);
+    }
+
+    @Test
+    public void doesNotLearnMACOfOtherHost() {
+        RecordingListener owner = register("192.168.1.10", MAC);
+        RecordingListener other = register("192.168.1.11", null);
+
+        PresenceListener.seen("192.168.1.11", MAC);
+        PresenceListener.seen("192.168.1.11", OTHER_MAC);
+
+        assertEquals(1, owner.seen);
+        assertEquals(1, other.seen);
+
+        // the other host has learned its own MAC address only
+        PresenceListener.seen("10.0.0.23", OTHER_MAC);
+        assertEquals(2, other.seen);
+    }
+
+    @Test
+    public void learnsInvalidMAC() {
+        RecordingListener listener = register("192.168.1.10", "no mac");
+
+        PresenceListener.seen("192.168.1.10", MAC);
+        PresenceListener.seen("10.0.0.23", MAC);
+
+        assertEquals(2, listener.seen);
+    }
+
+    private RecordingListener register(String hostAddress, String macAddress) {
+        RecordingListener listener = new RecordingListener();
+        listeners.add(listener);
+        PresenceListener.addRegistration(hostAddress, macAddress, listener);
+        return listener;
+    }
+
+    private static class RecordingListener implements StateUpdate {
+        int seen;
+
+        @Override
+        public void newState(double state) {
+            assertEquals(0, state, 0);
+            seen++;
+        }
+
+        @Override
+        public void invalidConfig() {
+        }
+    }
+}
@@ -36,6 +36,7 @@ public class NetworkBindingConstants {
     public final static String PARAMETER_PORT = "port";
     public final static String PARAMETER_RETRY = "retry";
     public final static String PARAMETER_DHCPLISTEN = "dhcplisten";
+    public final static String PARAMETER_MACADDRESS = "macaddress";
     public final static String PARAMETER_TIMEOUT = "timeout";
     public final static String PARAMETER_REFRESH_INTERVAL = "refresh_interval";
     public final static String PARAMETER_USE_SYSTEM_PING = "use_system_ping";
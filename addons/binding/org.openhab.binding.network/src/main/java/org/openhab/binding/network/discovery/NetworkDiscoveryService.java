@@ -1,104 +1,144 @@
-/**
- * Copyright (c) 2014-2016 by the respective copyright holders.
- *
- * All rights reserved. This program and the accompanying materials
- * are made available under the terms of the Eclipse Public License v1.0
- * which accompanies this distribution, and is available at
- * http://www.eclipse.org/legal/epl-v10.html
- */
-package org.openhab.binding.network.discovery;
-
-import static org.openhab.binding.network.NetworkBindingConstants.*;
-
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-
-import org.eclipse.smarthome.config.discovery.AbstractDiscoveryService;
-import org.eclipse.smarthome.config.discovery.DiscoveryResult;
-import org.eclipse.smarthome.config.discovery.DiscoveryResultBuilder;
-import org.eclipse.smarthome.core.thing.ThingUID;
-import org.openhab.binding.network.service.DiscoveryCallback;
-import org.openhab.binding.network.service.NetworkUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-/**
- * The {@link NetworkDiscoveryService} is responsible for discovering devices on
- * the current Network. It uses every Network Interface which is connected to a network.
- *
- * @author Marc Mettke - Initial contribution
- */
-public class NetworkDiscoveryService extends AbstractDiscoveryService implements DiscoveryCallback {
-    private final Logger logger = LoggerFactory.getLogger(NetworkDiscoveryService.class);
-    private ExecutorService executorService = null;
-    final static int PING_TIMEOUT_IN_MS = 500;
-    private int scanningNetworkSize = 0;
-
-    public NetworkDiscoveryService() {
-        super(SUPPORTED_THING_TYPES_UIDS, 900, false);
-    }
-
-    /**
-     * Starts the DiscoveryThread for each IP on each interface on the network
-     *
-     */
-    @Override
-    protected void startScan() {
-        if (executorService != null) {
-            stopScan();
-        }
-
-        logger.debug("Starting Discovery");
-        LinkedHashSet<String> networkIPs = NetworkUtils.getNetworkIPs(NetworkUtils.getInterfaceIPs());
-        scanningNetworkSize = networkIPs.size();
-        executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 10);
-
-        for (Iterator<String> it = networkIPs.iterator(); it.hasNext();) {
-            final String ip = it.next();
-            executorService.execute(new PingRunnable(ip, this));
-        }
-        stopScan();
-    }
-
-    @Override
-    protected synchronized void stopScan() {
-        super.stopScan();
-        if (executorService == null) {
-            return;
-        }
-
-        try {
-            executorService.awaitTermination(PING_TIMEOUT_IN_MS * scanningNetworkSize, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-        }
-        executorService.shutdown();
-        executorService = null;
-
-    }
-
-    /**
-     * Submit newly discovered devices. This method is called by the spawned threads in {@link startScan}.
-     *
-     * @param ip The device IP, received by the
-     */
-    @Override
-    public void newDevice(String ip) {
-        logger.info("Found " + ip);
-
-        // uid must not contains dots
-        ThingUID uid = new ThingUID(THING_TYPE_DEVICE, ip.replace('.', '_'));
-
-        if (uid != null) {
-            Map<String, Object> properties = new HashMap<>(1);
-            properties.put(PARAMETER_HOSTNAME, ip);
-            DiscoveryResult result = DiscoveryResultBuilder.create(uid).withProperties(properties)
-                    .withLabel("Network Device (" + ip + ")").build();
-            thingDiscovered(result);
-        }
-    }
-}
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.discovery;
+
+import static org.openhab.binding.network.NetworkBindingConstants.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.smarthome.config.discovery.AbstractDiscoveryService;
+import org.eclipse.smarthome.config.discovery.DiscoveryResult;
+import org.eclipse.smarthome.config.discovery.DiscoveryResultBuilder;
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.openhab.binding.network.service.DiscoveryCallback;
+import org.openhab.binding.network.service.IPv4AddressIterator;
+import org.openhab.binding.network.service.NetworkUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link NetworkDiscoveryService} is responsible for discovering devices on
+ * the current Network. It uses every Network Interface which is connected to a network.
+ *
+ * The addresses are scanned by a {@link NetworkScanner} in the background, discovered devices are reported as soon as
+ * they are found.
+ *
+ * @author Marc Mettke - Initial contribution
+ */
+public class NetworkDiscoveryService extends AbstractDiscoveryService
+        implements DiscoveryCallback, NetworkScanner.Listener {
+    private final Logger logger = LoggerFactory.getLogger(NetworkDiscoveryService.class);
+    final static int PING_TIMEOUT_IN_MS = 500;
+
+    /** TCP ports probed on each address: echo, ssh, http and https */
+    private final static int[] PROBE_PORTS = { 7, 22, 80, 443 };
+
+    /** Maximum number of TCP connects in flight */
+    private final static int MAX_CONNECTIONS = 256;
+
+    /** The shared thread pool of the binding, runs the scan and the java pings */
+    private final static String THREADPOOL_NAME = "network";
+
+    /**
+     * Maximum number of java pings of addresses without TCP answer in flight, small enough to leave threads of the
+     * shared pool for the reachability checks of the things
+     */
+    private final static int MAX_PENDING_PINGS = 4;
+
+    /** Maximum number of addresses for which the java ping is used, larger networks are only probed by TCP */
+    private final static long MAX_PING_NETWORK_SIZE = 4096;
+
+    private NetworkScanner scanner;
+
+    public NetworkDiscoveryService() {
+        super(SUPPORTED_THING_TYPES_UIDS, 900, false);
+    }
+
+    /**
+     * Starts the scan of each IP on each interface on the network
+     *
+     */
+    @Override
+    protected synchronized void startScan() {
+        if (scanner != null) {
+            scanner.cancel();
+            scanner = null;
+        }
+
+        IPv4AddressIterator addresses = new IPv4AddressIterator(NetworkUtils.getInterfaceIPs());
+        long size = addresses.size();
+        logger.debug("Starting Discovery of {} addresses", size);
+        try {
+            scanner = new NetworkScanner(addresses, size, PROBE_PORTS, PING_TIMEOUT_IN_MS, MAX_CONNECTIONS,
+                    size <= MAX_PING_NETWORK_SIZE ? MAX_PENDING_PINGS : 0, ThreadPoolManager.getPool(THREADPOOL_NAME),
+                    this);
+        } catch (IOException e) {
+            logger.warn("Cannot start network scan: {}", e.getMessage());
+            return;
+        }
+        ThreadPoolManager.getPool(THREADPOOL_NAME).execute(scanner);
+    }
+
+    @Override
+    protected synchronized void stopScan() {
+        super.stopScan();
+        if (scanner == null) {
+            return;
+        }
+        logger.debug("Stopping Discovery after {} addresses", scanner.getScanned());
+        scanner.cancel();
+        scanner = null;
+    }
+
+    @Override
+    public void hostFound(InetAddress address) {
+        newDevice(address.getHostAddress());
+    }
+
+    @Override
+    public void scanProgress(long scanned, long total) {
+        logger.debug("Discovery scanned {} of {} addresses", scanned, total);
+    }
+
+    @Override
+    public synchronized void scanFinished(NetworkScanner finishedScanner, long found) {
+        if (finishedScanner != scanner) {
+            return; // cancelled by a new scan
+        }
+        logger.debug("Discovery finished, found {} devices", found);
+        scanner = null;
+        super.stopScan();
+    }
+
+    /**
+     * Submit newly discovered devices. This method is called by the {@link NetworkScanner} started in
+     * {@link startScan}.
+     *
+     * @param ip The device IP, received by the
+     */
+    @Override
+    public void newDevice(String ip) {
+        logger.info("Found " + ip);
+
+        // uid must not contains dots
+        ThingUID uid = new ThingUID(THING_TYPE_DEVICE, ip.replace('.', '_'));
+
+        if (uid != null) {
+            Map<String, Object> properties = new HashMap<>(1);
+            properties.put(PARAMETER_HOSTNAME, ip);
+            DiscoveryResult result = DiscoveryResultBuilder.create(uid).withProperties(properties)
+                    .withLabel("Network Device (" + ip + ")").build();
+            thingDiscovered(result);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.discovery;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans a range of addresses for reachable hosts and is used by the {@link NetworkDiscoveryService}.
+ *
+ * Each address is first probed by non-blocking TCP connects to a few ports, all handled by one {@link Selector}. A
+ * host is reachable if a connection is established or refused, as a refused connection is answered by the host
+ * itself. Addresses without TCP answer are checked by the java ping afterwards, which is blocking and runs on the
+ * given executor, the number of pings in flight is bounded. The number of probes in flight is bounded too, addresses
+ * are taken from the iterator only when there is room for them, so even large networks are scanned in constant
+ * memory.
+ *
+ * @author agent - Initial contribution
+ */
+class NetworkScanner implements Runnable {
+    /**
+     * Callback for the results of a scan.
+     */
+    interface Listener {
+        /**
+         * Called for every reachable host, as soon as it is found.
+         */
+        void hostFound(InetAddress address);
+
+        /**
+         * Called after every percent of the scanned addresses.
+         */
+        void scanProgress(long scanned, long total);
+
+        /**
+         * Called when the scan is finished. Not called if the scan was cancelled.
+         */
+        void scanFinished(NetworkScanner scanner, long found);
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(NetworkScanner.class);
+
+    private final Iterator<InetAddress> addresses;
+    private final long total;
+    private final int[] ports;
+    private final int timeout;
+    private final int maxConnections;
+    private final Listener listener;
+
+    private final Selector selector;
+    private final ExecutorService pingExecutor;
+    private final int maxPendingPings;
+    private final AtomicInteger pendingPings = new AtomicInteger();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong found = new AtomicLong();
+    private volatile boolean cancelled;
+    private int connections;
+    private long lastProgress;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param addresses The addresses to scan
+     * @param total The number of addresses
+     * @param ports The TCP ports to probe on each address
+     * @param timeout The timeout of each probe in milliseconds
+     * @param maxConnections The maximum number of TCP connects in flight
+     * @param maxPendingPings The maximum number of java pings of addresses without TCP answer in flight, 0 to skip
+     *            them
+     * @param pingExecutor The executor running the java pings, it is shared and not shut down by the scanner
+     * @param listener The listener for the results
+     */
+    NetworkScanner(Iterator<InetAddress> addresses, long total, int[] ports, int timeout, int maxConnections,
+            int maxPendingPings, ExecutorService pingExecutor, Listener listener) throws IOException {
+        this.addresses = addresses;
+        this.total = total;
+        this.ports = ports;
+        this.timeout = timeout;
+        this.maxConnections = Math.max(maxConnections, ports.length);
+        this.maxPendingPings = maxPendingPings;
+        this.listener = listener;
+        this.selector = Selector.open();
+        this.pingExecutor = maxPendingPings > 0 ? pingExecutor : null;
+    }
+
+    /**
+     * Cancels the scan, probes in flight are not reported anymore and queued pings are skipped.
+     */
+    public void cancel() {
+        cancelled = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Returns the number of scanned addresses.
+     */
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!cancelled) {
+                while (connections + ports.length <= maxConnections
+                        && (pingExecutor == null || pendingPings.get() < maxPendingPings) && addresses.hasNext()) {
+                    probe(addresses.next());
+                }
+                if (connections == 0 && pendingPings.get() == 0 && !addresses.hasNext()) {
+                    break;
+                }
+
+                long now = System.currentTimeMillis();
+                for (SelectionKey key : selector.keys()) {
+                    Probe probe = (Probe) key.attachment();
+                    if (key.isValid() && probe.deadline <= now) {
+                        finishConnect(key, false);
+                    }
+                }
+                selector.select(Math.min(100, timeout));
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    boolean reachable;
+                    try {
+                        ((SocketChannel) key.channel()).finishConnect();
+                        reachable = true;
+                    } catch (ConnectException e) {
+                        reachable = true; // refused by the host
+                    } catch (IOException e) {
+                        reachable = false;
+                    }
+                    finishConnect(key, reachable);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Network scan failed: {}", e.getMessage(), e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+            }
+        }
+        if (!cancelled) {
+            listener.scanFinished(this, found.get());
+        }
+    }
+
+    /**
+     * Starts the TCP connects to an address.
+     */
+    private void probe(InetAddress address) {
+        Probe probe = new Probe(address, System.currentTimeMillis() + timeout);
+        for (int port : ports) {
+            SocketChannel channel = null;
+            probe.pendingConnects++;
+            connections++;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                if (channel.connect(new InetSocketAddress(address, port))) {
+                    channel.close();
+                    probe.pendingConnects--;
+                    connections--;
+                    probe.reachable = true;
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                }
+            } catch (ConnectException e) {
+                probe.pendingConnects--;
+                connections--;
+                probe.reachable = true;
+                closeQuietly(channel);
+            } catch (IOException e) {
+                probe.pendingConnects--;
+                connections--;
+                closeQuietly(channel);
+            }
+        }
+        if (probe.pendingConnects == 0) {
+            finishProbe(probe);
+        }
+    }
+
+    private void finishConnect(SelectionKey key, boolean reachable) {
+        close(key);
+        Probe probe = (Probe) key.attachment();
+        connections--;
+        probe.pendingConnects--;
+        probe.reachable |= reachable;
+        if (probe.pendingConnects == 0) {
+            finishProbe(probe);
+        }
+    }
+
+    /**
+     * Finishes the TCP probe of an address, an address without TCP answer is checked by the java ping.
+     */
+    private void finishProbe(final Probe probe) {
+        if (probe.reachable) {
+            reportFound(probe.address);
+            reportScanned();
+            return;
+        }
+        if (pingExecutor == null) {
+            reportScanned();
+            return;
+        }
+        pendingPings.incrementAndGet();
+        try {
+            pingExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!cancelled && probe.address.isReachable(timeout)) {
+                            reportFound(probe.address);
+                        }
+                    } catch (IOException e) {
+                    } finally {
+                        pendingPings.decrementAndGet();
+                        reportScanned();
+                        selector.wakeup();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the executor has been shut down, the address counts as scanned anyway
+            pendingPings.decrementAndGet();
+            reportScanned();
+        }
+    }
+
+    private void reportFound(InetAddress address) {
+        if (cancelled) {
+            return;
+        }
+        found.incrementAndGet();
+        try {
+            listener.hostFound(address);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to report {}: {}", address, e.getMessage(), e);
+        }
+    }
+
+    private synchronized void reportScanned() {
+        long count = scanned.incrementAndGet();
+        long step = Math.max(1, total / 100);
+        if (!cancelled && (count - lastProgress >= step || count == total)) {
+            lastProgress = count;
+            listener.scanProgress(count, total);
+        }
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        closeQuietly((SocketChannel) key.channel());
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * The probe of an address in flight.
+     */
+    private static class Probe {
+        final InetAddress address;
+        final long deadline;
+        int pendingConnects;
+        boolean reachable;
+
+        Probe(InetAddress address, long deadline) {
+            this.address = address;
+            this.deadline = deadline;
+        }
+    }
+}
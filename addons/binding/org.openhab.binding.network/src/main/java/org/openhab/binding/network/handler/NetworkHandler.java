@@ -133,12 +133,17 @@ public class NetworkHandler extends BaseThingHandler implements StateUpdate {
             networkService.setDHCPListen(confValueToBoolean(value));
         }
 
+        value = conf.get(PARAMETER_MACADDRESS);
+        if (value != null) {
+            networkService.setMacAddress(String.valueOf(value));
+        }
+
         value = conf.get(PARAMETER_USE_SYSTEM_PING);
         if (value != null) {
             networkService.setUseSystemPing(confValueToBoolean(value));
         }
 
-        networkService.startAutomaticRefresh(scheduler, this);
+        networkService.startAutomaticRefresh(this);
     }
 
 }
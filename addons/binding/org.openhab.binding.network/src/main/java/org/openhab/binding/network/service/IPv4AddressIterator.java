@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.service;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Iterates lazily over every IPv4 address which can be assigned on the given networks. The networks are kept as ranges
+ * of integers, overlapping networks are merged, so every address is returned once. The network and broadcast
+ * addresses of the networks are skipped.
+ *
+ * @author agent - Initial contribution
+ */
+public class IPv4AddressIterator implements Iterator<InetAddress> {
+    private final List<long[]> ranges = new ArrayList<>();
+    private final long size;
+    private int rangeIndex;
+    private long next;
+
+    /**
+     * Creates an iterator for the given networks.
+     *
+     * @param interfaceIPs The networks in the format ip/prefix, e.g. as returned by
+     *            {@link NetworkUtils#getInterfaceIPs()}. IPv6 networks are ignored.
+     */
+    public IPv4AddressIterator(Collection<String> interfaceIPs) {
+        List<long[]> networks = new ArrayList<>();
+        for (String interfaceIP : interfaceIPs) {
+            long[] range = parseRange(interfaceIP);
+            if (range != null) {
+                networks.add(range);
+            }
+        }
+        Collections.sort(networks, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] r1, long[] r2) {
+                return Long.compare(r1[0], r2[0]);
+            }
+        });
+
+        long total = 0;
+        long[] current = null;
+        for (long[] range : networks) {
+            if (current != null && range[0] <= current[1] + 1) {
+                current[1] = Math.max(current[1], range[1]);
+            } else {
+                if (current != null) {
+                    ranges.add(current);
+                    total += current[1] - current[0] + 1;
+                }
+                current = range;
+            }
+        }
+        if (current != null) {
+            ranges.add(current);
+            total += current[1] - current[0] + 1;
+        }
+        size = total;
+        next = ranges.isEmpty() ? 0 : ranges.get(0)[0];
+    }
+
+    /**
+     * Returns the total number of addresses of this iterator.
+     */
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return rangeIndex < ranges.size();
+    }
+
+    @Override
+    public InetAddress next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        InetAddress address = NetworkUtils.long2InetAddress(next);
+        if (next < ranges.get(rangeIndex)[1]) {
+            next++;
+        } else if (++rangeIndex < ranges.size()) {
+            next = ranges.get(rangeIndex)[0];
+        }
+        return address;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Parses a network in the format ip/prefix to the range of its assignable addresses.
+     *
+     * @return The first and last address or null, if it is no valid IPv4 network
+     */
+    private static long[] parseRange(String interfaceIP) {
+        String ip = StringUtils.substringBefore(interfaceIP, "/");
+        int prefix;
+        InetAddress address;
+        try {
+            prefix = Integer.parseInt(StringUtils.substringAfter(interfaceIP, "/"));
+            if (ip.indexOf(':') >= 0) {
+                return null; // IPv6
+            }
+            address = InetAddress.getByName(ip);
+        } catch (NumberFormatException | UnknownHostException e) {
+            return null;
+        }
+        if (!(address instanceof Inet4Address) || prefix < 0 || prefix > 32) {
+            return null;
+        }
+
+        long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+        long network = NetworkUtils.inetAddress2Long(address) & mask;
+        long broadcast = network | (~mask & 0xFFFFFFFFL);
+        if (prefix >= 31) {
+            return new long[] { network, broadcast };
+        }
+        return new long[] { network + 1, broadcast - 1 };
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.service;
+
+/**
+ * Histogram of the latencies of the reachability checks of a host. Latencies are counted in buckets with
+ * exponentially growing upper bounds, failed checks are counted separately.
+ *
+ * @author agent - Initial contribution
+ */
+public class LatencyHistogram {
+    /** Upper bounds of the buckets in milliseconds, the last bucket has no upper bound */
+    private static final double[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000 };
+
+    private final long[] buckets = new long[BUCKET_BOUNDS.length + 1];
+    private long failures;
+    private double min = Double.MAX_VALUE;
+    private double max;
+    private double sum;
+
+    /**
+     * Adds the latency of a successful check.
+     *
+     * @param latency The latency in milliseconds
+     */
+    public synchronized void addLatency(double latency) {
+        int i = 0;
+        while (i < BUCKET_BOUNDS.length && latency > BUCKET_BOUNDS[i]) {
+            i++;
+        }
+        buckets[i]++;
+        min = Math.min(min, latency);
+        max = Math.max(max, latency);
+        sum += latency;
+    }
+
+    /**
+     * Adds a failed check.
+     */
+    public synchronized void addFailure() {
+        failures++;
+    }
+
+    /**
+     * Returns the number of successful checks.
+     */
+    public synchronized long getCount() {
+        long count = 0;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of failed checks.
+     */
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the counts of the buckets.
+     */
+    public synchronized long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    /**
+     * Returns the upper bounds of the buckets in milliseconds, the last bucket has no upper bound.
+     */
+    public static double[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    /**
+     * Returns the average latency in milliseconds or -1, if there was no successful check.
+     */
+    public synchronized double getAverage() {
+        long count = getCount();
+        return count == 0 ? -1 : sum / count;
+    }
+
+    /**
+     * Returns the latency below which the given fraction of the successful checks are, as upper bound of the bucket.
+     *
+     * @param fraction The fraction, e.g. 0.95
+     * @return The upper bound of the bucket in milliseconds or -1, if there was no successful check
+     */
+    public synchronized double getPercentile(double fraction) {
+        long count = getCount();
+        if (count == 0) {
+            return -1;
+        }
+        long threshold = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            seen += buckets[i];
+            if (seen >= threshold) {
+                return Math.min(BUCKET_BOUNDS[i], max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        long count = getCount();
+        sb.append("ok=").append(count).append(" failed=").append(failures);
+        if (count > 0) {
+            sb.append(String.format(" min=%.1fms avg=%.1fms max=%.1fms [", min, sum / count, max));
+            for (int i = 0; i < buckets.length; i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(i < BUCKET_BOUNDS.length ? "<=" + (int) BUCKET_BOUNDS[i] : ">" + (int) BUCKET_BOUNDS[i - 1]);
+                sb.append(':').append(buckets[i]);
+            }
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+}
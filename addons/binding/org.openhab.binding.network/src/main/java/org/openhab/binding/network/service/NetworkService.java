@@ -13,18 +13,19 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import org.eclipse.smarthome.model.script.actions.Ping;
-import org.openhab.binding.network.service.dhcp.ReceiveDHCPRequestPackets;
+import org.openhab.binding.network.service.dhcp.PresenceListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * The {@link NetworkService} handles the connection to the Device
  *
+ * The automatic refresh is done by the shared {@link ReachabilityEngine}. With DHCP listen, the device is also
+ * detected passively by the shared {@link PresenceListener}, which reports it immediately and lets the engine skip the
+ * active checks while the device is seen within the refresh interval.
+ *
  * @author Marc Mettke
  * @author David Gräff, 2016 - Add DHCP listen for request packets
  */
@@ -32,12 +33,14 @@ public class NetworkService {
 
     private static Logger logger = LoggerFactory.getLogger(NetworkService.class);
 
-    private ScheduledFuture<?> refreshJob;
+    private ReachabilityTarget reachabilityTarget;
+    private StateUpdate presenceUpdate;
 
     private String hostname;
     private int port;
     private int retry;
     private boolean dhcplisten;
+    private String macAddress;
     private long refreshInterval;
     private int timeout;
     private boolean useSystemPing;
@@ -70,6 +73,10 @@ public class NetworkService {
         return retry;
     }
 
+    public String getMacAddress() {
+        return macAddress;
+    }
+
     public long getRefreshInterval() {
         return refreshInterval;
     }
@@ -98,6 +105,10 @@ public class NetworkService {
         this.dhcplisten = dhcplisten;
     }
 
+    public void setMacAddress(String macAddress) {
+        this.macAddress = macAddress;
+    }
+
     public void setRefreshInterval(long refreshInterval) {
         this.refreshInterval = refreshInterval;
     }
@@ -110,24 +121,39 @@ public class NetworkService {
         this.useSystemPing = useSystemPing;
     }
 
-    public void startAutomaticRefresh(ScheduledExecutorService scheduledExecutorService,
-            final StateUpdate stateUpdate) {
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    stateUpdate.newState(updateDeviceState());
-                } catch (InvalidConfigurationException e) {
-                    stateUpdate.invalidConfig();
-                }
-            }
-        };
+    /**
+     * Returns the histogram of the latencies of the automatic refresh, or null if it is not running.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return reachabilityTarget != null ? reachabilityTarget.getLatencyHistogram() : null;
+    }
 
-        refreshJob = scheduledExecutorService.scheduleAtFixedRate(runnable, 0, refreshInterval, TimeUnit.MILLISECONDS);
+    public void startAutomaticRefresh(final StateUpdate stateUpdate) {
+        final ReachabilityTarget target = new ReachabilityTarget(hostname, port, retry, refreshInterval, timeout,
+                useSystemPing, stateUpdate);
+        reachabilityTarget = target;
+        try {
+            ReachabilityEngine.register(reachabilityTarget);
+        } catch (IOException e) {
+            logger.error("Cannot start automatic refresh: " + e.getMessage());
+        }
 
         if (dhcplisten) {
+            presenceUpdate = new StateUpdate() {
+                @Override
+                public void newState(double state) {
+                    target.markSeen();
+                    stateUpdate.newState(state);
+                }
+
+                @Override
+                public void invalidConfig() {
+                    stateUpdate.invalidConfig();
+                }
+            };
             try {
-                ReceiveDHCPRequestPackets.register(InetAddress.getByName(hostname).getHostAddress(), stateUpdate);
+                PresenceListener.register(InetAddress.getByName(hostname).getHostAddress(), macAddress,
+                        presenceUpdate);
             } catch (SocketException | UnknownHostException e) {
                 logger.error("Cannot use DHCP listen: " + e.getMessage());
             }
@@ -135,10 +161,14 @@ public class NetworkService {
     }
 
     public void stopAutomaticRefresh() {
-        refreshJob.cancel(true);
-        try {
-            ReceiveDHCPRequestPackets.unregister(InetAddress.getByName(hostname).getHostAddress());
-        } catch (UnknownHostException e) {
+        if (reachabilityTarget != null) {
+            ReachabilityEngine.unregister(reachabilityTarget);
+            logger.debug("Latencies of '{}': {}", hostname, reachabilityTarget.getLatencyHistogram());
+            reachabilityTarget = null;
+        }
+        if (presenceUpdate != null) {
+            PresenceListener.unregister(presenceUpdate);
+            presenceUpdate = null;
         }
     }
 
@@ -182,6 +212,6 @@ public class NetworkService {
     @Override
     public String toString() {
         return this.hostname + ";" + this.port + ";" + this.retry + ";" + this.refreshInterval + ";" + this.timeout
-                + ";" + this.useSystemPing;
+                + ";" + this.useSystemPing + ";" + this.macAddress;
     }
 }
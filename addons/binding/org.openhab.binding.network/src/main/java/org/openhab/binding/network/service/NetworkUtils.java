@@ -17,11 +17,9 @@ import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.util.Enumeration;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.TreeSet;
 
 import org.apache.commons.lang.SystemUtils;
-import org.apache.commons.net.util.SubnetUtils;
 
 /**
  * Network utility functions for pinging and for determining all interfaces and assigned IP addresses.
@@ -62,31 +60,6 @@ public class NetworkUtils {
         return interfaceIPs;
     }
 
-    /**
-     * Takes the interfaceIPs and fetches every IP which can be assigned on their network
-     *
-     * @param networkIPs The IPs which are assigned to the Network Interfaces
-     * @return Every single IP which can be assigned on the Networks the computer is connected to
-     */
-    public static LinkedHashSet<String> getNetworkIPs(TreeSet<String> interfaceIPs) {
-        LinkedHashSet<String> networkIPs = new LinkedHashSet<String>();
-
-        for (Iterator<String> it = interfaceIPs.iterator(); it.hasNext();) {
-            try {
-                // gets every ip which can be assigned on the given network
-                SubnetUtils utils = new SubnetUtils(it.next());
-                String[] addresses = utils.getInfo().getAllAddresses();
-                for (int i = 0; i < addresses.length; i++) {
-                    networkIPs.add(addresses[i]);
-                }
-
-            } catch (Exception ex) {
-            }
-        }
-
-        return networkIPs;
-    }
-
     /**
      * Converts 32 bits int to IPv4 <tt>InetAddress</tt>.
      *
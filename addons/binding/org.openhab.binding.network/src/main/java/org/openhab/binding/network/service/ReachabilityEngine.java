@@ -0,0 +1,421 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A singleton engine which checks the reachability of all registered {@link ReachabilityTarget}s. If the first target
+ * is registered, the engine thread is started, if the last target is removed, the thread is stopped.
+ *
+ * TCP checks are non-blocking connects, which are all handled by the single {@link Selector} of the engine thread.
+ * ICMP checks use {@link InetAddress#isReachable(int)}, which sends a raw ICMP echo request if permitted and falls back
+ * to a TCP echo request otherwise, and system ping checks run the ping program. Both are blocking and run in a shared
+ * thread pool. The first check of each target is delayed by a different fraction of its refresh interval, so the checks
+ * are spread over the interval instead of running in bursts. A check is skipped, if the target was seen by the passive
+ * presence detection within its refresh interval.
+ *
+ * A failure while handling a single target is logged and the target is checked again in its next interval. If the
+ * engine thread fails nevertheless, the registered targets are moved to a new engine.
+ *
+ * @author agent - Initial contribution
+ */
+public class ReachabilityEngine implements Runnable {
+    private static final String THREADPOOL_NAME = "network";
+
+    /** Maximum delay of the first check of a target */
+    private static final long MAX_SPREAD_MILLIS = 10000;
+
+    /** Fraction added to the phase of each new target, gives an evenly spread sequence of phases */
+    private static final double PHASE_STEP = 0.6180339887498949;
+
+    private static Logger logger = LoggerFactory.getLogger(ReachabilityEngine.class);
+    private static ReachabilityEngine instance;
+
+    private final Selector selector;
+    private final Thread thread;
+    private volatile boolean willbeclosed = false;
+
+    private final Set<ReachabilityTarget> targets = new CopyOnWriteArraySet<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private double phase;
+
+    /**
+     * Registers a target, its first check is done within its refresh interval.
+     */
+    public static synchronized void register(ReachabilityTarget target) throws IOException {
+        if (instance == null) {
+            instance = new ReachabilityEngine();
+            instance.thread.start();
+        }
+        instance.add(target);
+    }
+
+    /**
+     * Unregisters a target. A running check of the target is not reported anymore.
+     */
+    public static void unregister(ReachabilityTarget target) {
+        ReachabilityEngine stopped;
+        synchronized (ReachabilityEngine.class) {
+            target.cancelled = true;
+            if (instance == null) {
+                return;
+            }
+            instance.targets.remove(target);
+            if (!instance.targets.isEmpty()) {
+                return;
+            }
+            stopped = instance;
+            instance = null;
+        }
+
+        stopped.willbeclosed = true;
+        stopped.selector.wakeup();
+        try {
+            stopped.thread.join(1000);
+        } catch (InterruptedException e) {
+        }
+    }
+
+    /**
+     * Moves the targets of a failed engine to a new engine. If no new engine can be started, the targets are reported
+     * as not reachable.
+     */
+    private static synchronized void engineFailed(ReachabilityEngine engine) {
+        if (instance != engine) {
+            return; // stopped by unregister
+        }
+        instance = null;
+        if (engine.targets.isEmpty()) {
+            return;
+        }
+        try {
+            instance = new ReachabilityEngine();
+            instance.thread.start();
+            for (ReachabilityTarget target : engine.targets) {
+                instance.add(target);
+            }
+            logger.info("Reachability engine restarted with {} targets", engine.targets.size());
+        } catch (IOException e) {
+            logger.error("Cannot restart reachability engine: {}", e.getMessage());
+            for (ReachabilityTarget target : engine.targets) {
+                try {
+                    target.getStateUpdate().newState(-1);
+                } catch (RuntimeException re) {
+                    logger.warn("Failed to update state of '{}': {}", target, re.getMessage(), re);
+                }
+            }
+        }
+    }
+
+    private ReachabilityEngine() throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, "network-reachability");
+        thread.setDaemon(true);
+    }
+
+    private void add(ReachabilityTarget target) {
+        long spread = Math.min(target.getRefreshInterval(), MAX_SPREAD_MILLIS);
+        phase = (phase + PHASE_STEP) % 1.0;
+        target.nextProbeTime = now() + (long) (phase * spread);
+        target.attempt = 0;
+        target.probing = false;
+        target.cancelled = false;
+        targets.add(target);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        logger.debug("Reachability engine online");
+        try {
+            while (!willbeclosed) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.warn("Reachability task failed: {}", e.getMessage(), e);
+                    }
+                }
+
+                long now = now();
+                long nextWakeup = now + 1000;
+                for (ReachabilityTarget target : targets) {
+                    if (target.probing) {
+                        continue; // check is running
+                    }
+                    try {
+                        if (target.nextProbeTime <= now) {
+                            if (target.lastSeenTime > now - target.getRefreshInterval()) {
+                                scheduleNext(target); // seen passively, no need to check
+                                nextWakeup = Math.min(nextWakeup, target.nextProbeTime);
+                            } else {
+                                startAttempt(target);
+                            }
+                        } else {
+                            nextWakeup = Math.min(nextWakeup, target.nextProbeTime);
+                        }
+                    } catch (RuntimeException e) {
+                        logger.warn("Failed to check '{}': {}", target, e.getMessage(), e);
+                        scheduleNext(target);
+                    }
+                }
+                for (SelectionKey key : selector.keys()) {
+                    // a cancelled key stays in the key set until the next select, its attempt is already finished
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    PendingConnect pending = (PendingConnect) key.attachment();
+                    if (pending.deadline <= now) {
+                        closeQuietly(key);
+                        logger.debug("timed out while connecting to host '{}' port '{}' timeout '{}'",
+                                new Object[] { pending.target.getHostname(), pending.target.getPort(),
+                                        pending.target.getTimeout() });
+                        finishAttempt(pending.target, -1);
+                    } else {
+                        nextWakeup = Math.min(nextWakeup, pending.deadline);
+                    }
+                }
+
+                selector.select(Math.max(1, nextWakeup - now()));
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    PendingConnect pending = (PendingConnect) key.attachment();
+                    double latency;
+                    try {
+                        ((SocketChannel) key.channel()).finishConnect();
+                        latency = (System.nanoTime() - pending.startNanos) / 1000000.0;
+                        logger.debug("established connection [host '{}' port '{}' timeout '{}']",
+                                new Object[] { pending.target.getHostname(), pending.target.getPort(),
+                                        pending.target.getTimeout() });
+                    } catch (IOException e) {
+                        latency = -1;
+                        logger.debug("couldn't establish network connection [host '{}' port '{}' timeout '{}']",
+                                new Object[] { pending.target.getHostname(), pending.target.getPort(),
+                                        pending.target.getTimeout() });
+                    }
+                    closeQuietly(key);
+                    try {
+                        finishAttempt(pending.target, latency);
+                    } catch (RuntimeException e) {
+                        logger.warn("Failed to check '{}': {}", pending.target, e.getMessage(), e);
+                        scheduleNext(pending.target);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Reachability engine failed: {}", e.getMessage(), e);
+        } finally {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key);
+                }
+                selector.close();
+            } catch (IOException | RuntimeException e) {
+            }
+            logger.debug("Reachability engine offline");
+            if (!willbeclosed) {
+                engineFailed(this);
+            }
+        }
+    }
+
+    /**
+     * Starts an attempt to reach the target. Runs on the engine thread.
+     */
+    private void startAttempt(final ReachabilityTarget target) {
+        target.probing = true;
+        try {
+            ThreadPoolManager.getPool(THREADPOOL_NAME).execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (target.cancelled) {
+                        return;
+                    }
+                    try {
+                        if (target.isUseSystemPing()) {
+                            long start = System.nanoTime();
+                            boolean success = NetworkUtils.nativePing(target.getHostname(), target.getPort(),
+                                    target.getTimeout());
+                            report(target, success ? (System.nanoTime() - start) / 1000000.0 : -1);
+                            return;
+                        }
+                        final InetAddress address = InetAddress.getByName(target.getHostname());
+                        if (target.getPort() == 0) {
+                            long start = System.nanoTime();
+                            boolean success = address.isReachable(target.getTimeout());
+                            report(target, success ? (System.nanoTime() - start) / 1000000.0 : -1);
+                            return;
+                        }
+                        tasks.add(new Runnable() {
+                            @Override
+                            public void run() {
+                                connect(target, address);
+                            }
+                        });
+                        selector.wakeup();
+                    } catch (InvalidConfigurationException e) {
+                        tasks.add(new Runnable() {
+                            @Override
+                            public void run() {
+                                invalidConfig(target);
+                            }
+                        });
+                        selector.wakeup();
+                    } catch (IOException e) {
+                        logger.debug("couldn't establish network connection [host '{}' port '{}' timeout '{}']",
+                                new Object[] { target.getHostname(), target.getPort(), target.getTimeout() });
+                        report(target, -1);
+                    } catch (InterruptedException e) {
+                        logger.debug("ping program was interrupted");
+                        report(target, -1);
+                    } catch (RuntimeException e) {
+                        logger.warn("Failed to check '{}': {}", target, e.getMessage(), e);
+                        report(target, -1);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Cannot check '{}': {}", target, e.getMessage());
+            scheduleNext(target);
+        }
+    }
+
+    /**
+     * Starts a non-blocking TCP connect. Runs on the engine thread.
+     */
+    private void connect(ReachabilityTarget target, InetAddress address) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            PendingConnect pending = new PendingConnect(target, now() + target.getTimeout());
+            if (channel.connect(new InetSocketAddress(address, target.getPort()))) {
+                channel.close();
+                finishAttempt(target, (System.nanoTime() - pending.startNanos) / 1000000.0);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, pending);
+            }
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            finishAttempt(target, -1);
+        }
+    }
+
+    /**
+     * Reports the result of a blocking attempt to the engine thread.
+     */
+    private void report(final ReachabilityTarget target, final double latency) {
+        tasks.add(new Runnable() {
+            @Override
+            public void run() {
+                finishAttempt(target, latency);
+            }
+        });
+        selector.wakeup();
+    }
+
+    /**
+     * Finishes an attempt. A failed attempt is retried, otherwise the result is reported to the {@link StateUpdate} of
+     * the target and the next check is scheduled. Runs on the engine thread.
+     */
+    private void finishAttempt(ReachabilityTarget target, double latency) {
+        if (target.cancelled) {
+            return;
+        }
+        if (latency < 0) {
+            target.getLatencyHistogram().addFailure();
+            if (target.attempt < target.getRetry()) {
+                target.attempt++;
+                startAttempt(target);
+                return;
+            }
+        } else {
+            target.getLatencyHistogram().addLatency(latency);
+        }
+        scheduleNext(target);
+        try {
+            target.getStateUpdate().newState(latency);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to update state of '{}': {}", target, e.getMessage(), e);
+        }
+    }
+
+    private void invalidConfig(ReachabilityTarget target) {
+        if (target.cancelled) {
+            return;
+        }
+        scheduleNext(target);
+        target.getStateUpdate().invalidConfig();
+    }
+
+    /**
+     * Schedules the next check of the target, keeping its phase within the refresh interval.
+     */
+    private void scheduleNext(ReachabilityTarget target) {
+        long now = now();
+        long interval = Math.max(1, target.getRefreshInterval());
+        if (target.nextProbeTime <= now) {
+            target.nextProbeTime += ((now - target.nextProbeTime) / interval + 1) * interval;
+        }
+        target.attempt = 0;
+        target.probing = false;
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+        }
+    }
+
+    static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * A TCP connect in progress.
+     */
+    private static class PendingConnect {
+        final ReachabilityTarget target;
+        final long deadline;
+        final long startNanos = System.nanoTime();
+
+        PendingConnect(ReachabilityTarget target, long deadline) {
+            this.target = target;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.service;
+
+/**
+ * A host which is checked periodically by the {@link ReachabilityEngine}. The configuration is immutable, the
+ * scheduling state is only accessed by the thread of the engine.
+ *
+ * @author agent - Initial contribution
+ */
+public class ReachabilityTarget {
+    private final String hostname;
+    private final int port;
+    private final int retry;
+    private final long refreshInterval;
+    private final int timeout;
+    private final boolean useSystemPing;
+    private final StateUpdate stateUpdate;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    volatile boolean cancelled;
+    volatile long lastSeenTime = Long.MIN_VALUE;
+    long nextProbeTime;
+    int attempt;
+    boolean probing;
+
+    public ReachabilityTarget(String hostname, int port, int retry, long refreshInterval, int timeout,
+            boolean useSystemPing, StateUpdate stateUpdate) {
+        this.hostname = hostname;
+        this.port = port;
+        this.retry = retry;
+        this.refreshInterval = refreshInterval;
+        this.timeout = timeout;
+        this.useSystemPing = useSystemPing;
+        this.stateUpdate = stateUpdate;
+    }
+
+    public String getHostname() {
+        return hostname;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getRetry() {
+        return retry;
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public boolean isUseSystemPing() {
+        return useSystemPing;
+    }
+
+    public StateUpdate getStateUpdate() {
+        return stateUpdate;
+    }
+
+    /**
+     * Returns the histogram of the latencies of all checks of this host.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Marks the host as seen by a passive presence detection. The active checks are skipped while the host is seen
+     * within the refresh interval.
+     */
+    public void markSeen() {
+        lastSeenTime = ReachabilityEngine.now();
+    }
+
+    @Override
+    public String toString() {
+        return hostname + ":" + port;
+    }
+}
@@ -84,7 +84,14 @@ class DHCPPacket {
 
     }
 
+    /** Hardware type of ethernet **/
+    static final byte HTYPE_ETHER = 1;
+
     private byte op;
+    private byte htype;
+    private byte hlen;
+    private byte[] ciaddr = new byte[4];
+    private byte[] chaddr = new byte[16];
     private Map<Byte, byte[]> options;
 
     /**
@@ -116,17 +123,17 @@ class DHCPPacket {
 
         // parse static part of packet
         this.op = inStream.readByte();
-        inStream.readByte(); // read hardware type (ETHERNET)
-        inStream.readByte(); // read hardware address length (6 bytes)
+        this.htype = inStream.readByte(); // read hardware type (ETHERNET)
+        this.hlen = inStream.readByte(); // read hardware address length (6 bytes)
         inStream.readByte(); // read hops
         inStream.readInt(); // read transaction id
         inStream.readShort(); // read secsonds elapsed
         inStream.readShort(); // read flags
-        inStream.readFully(dummy, 0, 4); // ciaddr
+        inStream.readFully(this.ciaddr, 0, 4); // ciaddr
         inStream.readFully(dummy, 0, 4); // yiaddr
         inStream.readFully(dummy, 0, 4); // siaddr
         inStream.readFully(dummy, 0, 4); // giaddr
-        inStream.readFully(dummy, 0, 16); // chaddr
+        inStream.readFully(this.chaddr, 0, 16); // chaddr
         inStream.readFully(dummy, 0, 64); // sname
         inStream.readFully(dummy, 0, 128); // file
 
@@ -214,4 +221,36 @@ class DHCPPacket {
         }
         return InetAddress.getByAddress(opt);
     }
+
+    /**
+     * Returns the client IP address (ciaddr) of a packet. It is only set by clients, which already own an address,
+     * e.g. when renewing a lease.
+     *
+     * @return the client address or <tt>null</tt> if it is not set.
+     */
+    InetAddress getClientIPAddress() throws UnknownHostException {
+        if (ciaddr[0] == 0 && ciaddr[1] == 0 && ciaddr[2] == 0 && ciaddr[3] == 0) {
+            return null;
+        }
+        return InetAddress.getByAddress(ciaddr);
+    }
+
+    /**
+     * Returns the client hardware address (chaddr) of an ethernet packet in the format aa:bb:cc:dd:ee:ff.
+     *
+     * @return the MAC address or <tt>null</tt> if the packet is not from an ethernet client.
+     */
+    String getClientHardwareAddress() {
+        if (htype != HTYPE_ETHER || hlen != 6) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(17);
+        for (int i = 0; i < 6; i++) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            sb.append(String.format("%02x", chaddr[i]));
+        }
+        return sb.toString();
+    }
 }
@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.network.service.dhcp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.openhab.binding.network.service.StateUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A singleton listener for the passive presence detection of hosts. StateUpdate objects can register and unregister.
+ * If the first one is registered and there is no singleton instance, an instance will be created and the
+ * receiver thread will be started. If the last StateUpdate is removed, the thread will be stopped
+ * after the receive socket is closed.
+ *
+ * This instance listens to the UDP port 67 for DHCP discover, request and inform messages, which are sent by a
+ * device whenever it enters a network or renews its lease. Listeners are indexed by their IP address as well as by
+ * the MAC address of their device, so a device is also recognized if it requests a different address than the
+ * registered one, e.g. a phone roaming between access points. The MAC address is either given at registration, or
+ * learned from the first DHCP message for the registered address or from the ARP table of the operating system.
+ * StateUpdate.newState(0) is called for the matching listener as soon as a message is received.
+ *
+ * @author agent - Initial contribution
+ */
+public class PresenceListener extends Thread {
+    /** The ARP table of Linux systems */
+    private static final String ARP_TABLE = "/proc/net/arp";
+
+    /** Flag of complete entries in the ARP table */
+    private static final int ATF_COM = 0x02;
+
+    /** How often the ARP table is read for unknown MAC addresses, in milliseconds */
+    private static final int ARP_READ_INTERVAL = 60000;
+
+    private byte[] buffer = new byte[1024];
+    private DatagramSocket dsocket = new DatagramSocket(null);
+    private DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+    private volatile boolean willbeclosed = false;
+    private long nextArpRead;
+    private static Logger logger = LoggerFactory.getLogger(PresenceListener.class);
+    private static PresenceListener instance;
+    private static Map<String, Registration> listenersByAddress = new HashMap<>();
+    private static Map<String, Registration> listenersByMAC = new HashMap<>();
+
+    /**
+     * Registers a listener for the presence of a host.
+     *
+     * @param hostAddress The IP address of the host
+     * @param macAddress The MAC address of the host in the format aa:bb:cc:dd:ee:ff or null, if it should be learned
+     * @param listener The listener, which is called if the host is seen
+     */
+    public static synchronized void register(String hostAddress, String macAddress, StateUpdate listener)
+            throws SocketException {
+        if (instance == null) {
+            instance = new PresenceListener();
+            instance.start();
+        }
+        addRegistration(hostAddress, macAddress, listener);
+    }
+
+    /**
+     * Adds a listener to the address and MAC address indexes.
+     */
+    static synchronized void addRegistration(String hostAddress, String macAddress, StateUpdate listener) {
+        String normalizedMAC = normalizeMAC(macAddress);
+        if (macAddress != null && !macAddress.trim().isEmpty() && normalizedMAC == null) {
+            logger.warn("Invalid MAC address '{}' of {}, it will be learned instead", macAddress, hostAddress);
+        }
+        Registration registration = new Registration(hostAddress, normalizedMAC, listener);
+        Registration previous = listenersByAddress.put(hostAddress, registration);
+        if (previous != null && previous.macAddress != null) {
+            listenersByMAC.remove(previous.macAddress);
+        }
+        if (registration.macAddress != null) {
+            listenersByMAC.put(registration.macAddress, registration);
+        }
+    }
+
+    /**
+     * Unregisters a listener. If it was the last one, the receiver thread is stopped.
+     */
+    public static void unregister(StateUpdate listener) {
+        PresenceListener stopped;
+        synchronized (PresenceListener.class) {
+            removeListener(listenersByAddress, listener);
+            removeListener(listenersByMAC, listener);
+            if (!listenersByAddress.isEmpty() || instance == null) {
+                return;
+            }
+            stopped = instance;
+            instance = null;
+        }
+
+        stopped.willbeclosed = true;
+        stopped.dsocket.close();
+        try {
+            stopped.join(1000);
+        } catch (InterruptedException e) {
+        }
+        stopped.interrupt();
+    }
+
+    private static void removeListener(Map<String, Registration> listeners, StateUpdate listener) {
+        for (Map.Entry<String, Registration> entry : listeners.entrySet()) {
+            if (entry.getValue().listener == listener) {
+                listeners.remove(entry.getKey());
+                return;
+            }
+        }
+    }
+
+    PresenceListener() throws SocketException {
+        super("network-presence");
+        setDaemon(true);
+        try {
+            dsocket.setReuseAddress(true);
+            dsocket.setBroadcast(true);
+            dsocket.setSoTimeout(ARP_READ_INTERVAL);
+            dsocket.bind(new InetSocketAddress(67));
+        } catch (SocketException e) {
+            dsocket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            logger.info("Presence listener online");
+            while (!willbeclosed) {
+                if (System.currentTimeMillis() >= nextArpRead) {
+                    nextArpRead = System.currentTimeMillis() + ARP_READ_INTERVAL;
+                    readArpTable();
+                }
+
+                packet.setLength(buffer.length);
+                try {
+                    dsocket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+
+                try {
+                    receivedPacket();
+                } catch (RuntimeException e) {
+                    // a malformed packet must not stop the listener
+                    logger.debug("Failed to handle DHCP packet from {}: {}", packet.getAddress(), e.getMessage(), e);
+                }
+            }
+        } catch (IOException e) {
+            if (willbeclosed) {
+                return;
+            }
+            logger.error(e.getLocalizedMessage());
+        } finally {
+            dsocket.close();
+        }
+    }
+
+    /**
+     * Handles the DHCP request in the receive buffer.
+     */
+    private void receivedPacket() {
+        DHCPPacket request;
+        try {
+            request = new DHCPPacket(packet);
+        } catch (Exception e) {
+            return;
+        }
+
+        if (request.getOp() != DHCPPacket.BOOTREQUEST) {
+            return; // skipping non BOOTREQUEST message types
+        }
+
+        Byte dhcpMessageType = request.getDHCPMessageType();
+        if (dhcpMessageType == null || (dhcpMessageType != DHCPPacket.DHCPDISCOVER
+                && dhcpMessageType != DHCPPacket.DHCPREQUEST && dhcpMessageType != DHCPPacket.DHCPINFORM)) {
+            return; // skipping messages of leaving devices and server messages
+        }
+
+        InetAddress address;
+        try {
+            address = request.getRequestedIPAddress();
+            if (address == null) {
+                address = request.getClientIPAddress();
+            }
+        } catch (UnknownHostException e) {
+            return;
+        }
+        seen(address != null ? address.getHostAddress() : null, request.getClientHardwareAddress());
+    }
+
+    /**
+     * Notifies the listener of a host, which was seen with the given addresses.
+     *
+     * @param hostAddress The IP address of the host or null, if not known
+     * @param macAddress The MAC address of the host or null, if not known
+     */
+    static void seen(String hostAddress, String macAddress) {
+        Registration registration = null;
+        synchronized (PresenceListener.class) {
+            if (macAddress != null) {
+                registration = listenersByMAC.get(macAddress);
+            }
+            if (registration == null && hostAddress != null) {
+                registration = listenersByAddress.get(hostAddress);
+                if (registration != null && registration.macAddress != null && macAddress != null
+                        && !registration.macAddress.equals(macAddress)) {
+                    // another device uses the address of the host
+                    logger.trace("DHCP message for {} from other device {}", hostAddress, macAddress);
+                    return;
+                }
+                if (registration != null && registration.macAddress == null && macAddress != null
+                        && !listenersByMAC.containsKey(macAddress)) {
+                    registration.macAddress = macAddress;
+                    listenersByMAC.put(macAddress, registration);
+                    logger.debug("Learned MAC address {} of {}", macAddress, hostAddress);
+                }
+            }
+        }
+        if (registration == null) {
+            logger.trace("DHCP message of unknown host: {} {}", hostAddress, macAddress);
+            return;
+        }
+        if (hostAddress != null && !hostAddress.equals(registration.hostAddress)) {
+            logger.debug("Host {} seen with address {}", registration.hostAddress, hostAddress);
+        } else {
+            logger.debug("Host {} seen", registration.hostAddress);
+        }
+        try {
+            registration.listener.newState(0);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to update state of '{}': {}", registration.hostAddress, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Learns the MAC addresses of registered hosts from the ARP table of the operating system. The table is only
+     * available on Linux and only read if there are hosts with unknown MAC address.
+     */
+    private void readArpTable() {
+        synchronized (PresenceListener.class) {
+            if (listenersByMAC.size() >= listenersByAddress.size()) {
+                return;
+            }
+        }
+        File file = new File(ARP_TABLE);
+        if (!file.canRead()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            reader.readLine(); // header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // IP address, HW type, Flags, HW address, Mask, Device
+                String[] columns = line.trim().split("\\s+");
+                if (columns.length < 4 || (Integer.decode(columns[2]) & ATF_COM) == 0) {
+                    continue;
+                }
+                String macAddress = normalizeMAC(columns[3]);
+                synchronized (PresenceListener.class) {
+                    Registration registration = listenersByAddress.get(columns[0]);
+                    if (registration != null && registration.macAddress == null && macAddress != null
+                            && !listenersByMAC.containsKey(macAddress)) {
+                        registration.macAddress = macAddress;
+                        listenersByMAC.put(macAddress, registration);
+                        logger.debug("Learned MAC address {} of {} from the ARP table", macAddress, columns[0]);
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Failed to read the ARP table: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the MAC address in the format aa:bb:cc:dd:ee:ff, also accepts '-' as separator.
+     *
+     * @return The MAC address or null, if it is no valid MAC address
+     */
+    static String normalizeMAC(String macAddress) {
+        if (macAddress == null) {
+            return null;
+        }
+        String mac = macAddress.trim().toLowerCase(Locale.ROOT).replace('-', ':');
+        if (!mac.matches("([0-9a-f]{2}:){5}[0-9a-f]{2}") || mac.equals("00:00:00:00:00:00")) {
+            return null;
+        }
+        return mac;
+    }
+
+    /**
+     * A registered listener with the addresses of its host.
+     */
+    private static class Registration {
+        final String hostAddress;
+        final StateUpdate listener;
+        String macAddress;
+
+        Registration(String hostAddress, String macAddress, StateUpdate listener) {
+            this.hostAddress = hostAddress;
+            this.macAddress = macAddress;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.hueemulation.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.ArrayUtils;
+import org.eclipse.smarthome.core.items.GenericItem;
+import org.eclipse.smarthome.core.items.Item;
+import org.eclipse.smarthome.core.items.ItemRegistry;
+import org.eclipse.smarthome.core.items.ItemRegistryChangeListener;
+import org.eclipse.smarthome.core.items.StateChangeListener;
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.HSBType;
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.types.State;
+import org.openhab.io.hueemulation.internal.api.HueDevice;
+import org.openhab.io.hueemulation.internal.api.HueState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * Keeps an index of all items exposed as Hue devices. The index is updated by
+ * item registry events, so requests never have to scan the item registry.
+ * Every device gets a numeric light id, which is persisted so it is stable
+ * across restarts. The JSON of a device is rebuilt only if the item state
+ * changes.
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class HueDeviceRegistry implements ItemRegistryChangeListener, StateChangeListener {
+    private Logger logger = LoggerFactory.getLogger(HueDeviceRegistry.class);
+
+    private static final String[] SUPPORTED_TAGS = new String[] { "Switchable", "Lighting", "TargetTemperature" };
+
+    private final File idFile;
+    private final Gson gson = new Gson();
+
+    private ItemRegistry itemRegistry;
+
+    // item name -> light id, contains the ids of removed items too
+    private final Properties ids = new Properties();
+    private int nextId = 1;
+    private boolean idsChanged;
+
+    // light id -> light, sorted by id
+    private final Map<Integer, Light> lights = new TreeMap<Integer, Light>();
+    private final Map<String, Light> lightsByItem = new HashMap<String, Light>();
+
+    private String devicesSnapshot;
+    private String namesSnapshot;
+
+    public HueDeviceRegistry(File idFile) {
+        this.idFile = idFile;
+    }
+
+    /**
+     * adds all tagged items of the registry and listens for changes
+     */
+    public synchronized void start(ItemRegistry itemRegistry) {
+        this.itemRegistry = itemRegistry;
+        loadIds();
+        addItems(itemRegistry.getItems());
+        itemRegistry.addRegistryChangeListener(this);
+    }
+
+    /**
+     * stops listening to the registry and the items
+     */
+    public synchronized void stop() {
+        if (itemRegistry != null) {
+            itemRegistry.removeRegistryChangeListener(this);
+            itemRegistry = null;
+        }
+        clear();
+    }
+
+    /**
+     * returns the item of the light id or null
+     */
+    public synchronized Item getItem(String id) {
+        Light light = getLight(id);
+        return light != null ? light.item : null;
+    }
+
+    /**
+     * returns the JSON of the device with the light id or null
+     */
+    public synchronized String getDeviceJson(String id) {
+        Light light = getLight(id);
+        return light != null ? light.json : null;
+    }
+
+    /**
+     * returns a JSON object of all devices by light id
+     */
+    public synchronized String getDevicesJson() {
+        if (devicesSnapshot == null) {
+            StringBuilder sb = new StringBuilder("{");
+            for (Light light : lights.values()) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append('"').append(light.id).append("\":").append(light.json);
+            }
+            devicesSnapshot = sb.append('}').toString();
+        }
+        return devicesSnapshot;
+    }
+
+    /**
+     * returns a JSON object of all device names by light id
+     */
+    public synchronized String getDeviceNamesJson() {
+        if (namesSnapshot == null) {
+            Map<String, String> names = new TreeMap<String, String>();
+            for (Light light : lights.values()) {
+                names.put(light.id, light.item.getLabel());
+            }
+            namesSnapshot = gson.toJson(names);
+        }
+        return namesSnapshot;
+    }
+
+    /**
+     * returns the ids of all lights
+     */
+    public synchronized String[] getIds() {
+        List<String> result = new ArrayList<String>(lights.size());
+        for (Light light : lights.values()) {
+            result.add(light.id);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Converts an Item to a HueDevice
+     *
+     * @param item
+     * @return
+     *         HueDevice
+     */
+    public HueDevice itemToDevice(Item item) {
+        State itemState = item.getState();
+        HueState hueState;
+        if (itemState instanceof HSBType) {
+            HSBType color = (HSBType) itemState;
+            hueState = new HueState(color);
+        } else if (itemState instanceof DecimalType) {
+            short bri = (short) ((((DecimalType) itemState).intValue() * 255) / 100);
+            hueState = new HueState(bri);
+        } else if (itemState instanceof OnOffType) {
+            short bri = (short) (((OnOffType) itemState) == OnOffType.ON ? 255 : 0);
+            hueState = new HueState(bri);
+        } else {
+            hueState = new HueState((short) 0);
+        }
+
+        HueDevice d = new HueDevice(hueState, item.getLabel(), item.getName());
+        return d;
+    }
+
+    @Override
+    public synchronized void added(Item element) {
+        addItem(element);
+        saveIds();
+    }
+
+    @Override
+    public synchronized void removed(Item element) {
+        removeItem(element.getName());
+    }
+
+    @Override
+    public synchronized void updated(Item oldElement, Item element) {
+        removeItem(oldElement.getName());
+        addItem(element);
+        saveIds();
+    }
+
+    @Override
+    public synchronized void allItemsChanged(Collection<String> oldItemNames) {
+        clear();
+        if (itemRegistry != null) {
+            addItems(itemRegistry.getItems());
+        }
+    }
+
+    @Override
+    public synchronized void stateChanged(Item item, State oldState, State newState) {
+        Light light = lightsByItem.get(item.getName());
+        if (light != null && light.item == item) {
+            light.json = gson.toJson(itemToDevice(item));
+            devicesSnapshot = null;
+        }
+    }
+
+    @Override
+    public void stateUpdated(Item item, State state) {
+        // only changes are relevant
+    }
+
+    private Light getLight(String id) {
+        try {
+            return lights.get(Integer.valueOf(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void addItems(Collection<Item> items) {
+        for (Item item : items) {
+            addItem(item);
+        }
+        saveIds();
+    }
+
+    private void addItem(Item item) {
+        if (!isTagged(item)) {
+            return;
+        }
+        String id = ids.getProperty(item.getName());
+        if (id == null) {
+            id = String.valueOf(nextId++);
+            ids.setProperty(item.getName(), id);
+            idsChanged = true;
+        }
+        Light light = new Light(id, item);
+        light.json = gson.toJson(itemToDevice(item));
+        lights.put(Integer.valueOf(id), light);
+        lightsByItem.put(item.getName(), light);
+        if (item instanceof GenericItem) {
+            ((GenericItem) item).addStateChangeListener(this);
+        }
+        devicesSnapshot = null;
+        namesSnapshot = null;
+    }
+
+    private void removeItem(String itemName) {
+        Light light = lightsByItem.remove(itemName);
+        if (light != null) {
+            lights.remove(Integer.valueOf(light.id));
+            if (light.item instanceof GenericItem) {
+                ((GenericItem) light.item).removeStateChangeListener(this);
+            }
+            devicesSnapshot = null;
+            namesSnapshot = null;
+        }
+    }
+
+    private void clear() {
+        for (String itemName : new ArrayList<String>(lightsByItem.keySet())) {
+            removeItem(itemName);
+        }
+    }
+
+    private boolean isTagged(Item item) {
+        for (String tag : item.getTags()) {
+            if (ArrayUtils.contains(SUPPORTED_TAGS, tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void loadIds() {
+        ids.clear();
+        idsChanged = false;
+        if (idFile.exists()) {
+            FileInputStream fis = null;
+            try {
+                fis = new FileInputStream(idFile);
+                ids.load(fis);
+            } catch (IOException e) {
+                logger.error("Could not read light ids from {}", idFile, e);
+            } finally {
+                IOUtils.closeQuietly(fis);
+            }
+        }
+        nextId = 1;
+        for (String id : ids.stringPropertyNames()) {
+            try {
+                nextId = Math.max(nextId, Integer.parseInt(ids.getProperty(id)) + 1);
+            } catch (NumberFormatException e) {
+                ids.remove(id);
+            }
+        }
+    }
+
+    private void saveIds() {
+        if (!idsChanged) {
+            return;
+        }
+        idFile.getParentFile().mkdirs();
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(idFile);
+            ids.store(fos, "Hue light ids of the items");
+            idsChanged = false;
+        } catch (IOException e) {
+            logger.error("Could not write light ids to {}", idFile, e);
+        } finally {
+            IOUtils.closeQuietly(fos);
+        }
+    }
+
+    /**
+     * An exposed item with its light id and device JSON.
+     */
+    private static class Light {
+        private final String id;
+        private final Item item;
+        private String json;
+
+        public Light(String id, Item item) {
+            this.id = id;
+            this.item = item;
+        }
+    }
+}
@@ -14,12 +14,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetAddress;
-import java.util.Collection;
 import java.util.Dictionary;
-import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -31,22 +27,16 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.ArrayUtils;
 import org.eclipse.smarthome.config.core.ConfigConstants;
 import org.eclipse.smarthome.core.events.EventPublisher;
 import org.eclipse.smarthome.core.items.Item;
 import org.eclipse.smarthome.core.items.ItemNotFoundException;
 import org.eclipse.smarthome.core.items.ItemRegistry;
 import org.eclipse.smarthome.core.items.events.ItemEventFactory;
-import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.library.types.HSBType;
-import org.eclipse.smarthome.core.library.types.OnOffType;
 import org.eclipse.smarthome.core.types.Command;
-import org.eclipse.smarthome.core.types.State;
 import org.eclipse.smarthome.core.types.TypeParser;
 import org.openhab.io.hueemulation.internal.api.HueCreateUser;
-import org.openhab.io.hueemulation.internal.api.HueDataStore;
-import org.openhab.io.hueemulation.internal.api.HueDevice;
 import org.openhab.io.hueemulation.internal.api.HueErrorResponse;
 import org.openhab.io.hueemulation.internal.api.HueGroup;
 import org.openhab.io.hueemulation.internal.api.HueState;
@@ -80,12 +70,13 @@ public class HueEmulationServlet extends HttpServlet {
             ConfigConstants.getUserDataFolder() + File.separator + "hueemulation" + File.separator + "usernames");
     private static final File UDN_FILE = new File(
             ConfigConstants.getUserDataFolder() + File.separator + "hueemulation" + File.separator + "udn");
-
-    private static final String[] SUPPORTED_TAGS = new String[] { "Switchable", "Lighting", "TargetTemperature" };
+    private static final File LIGHTS_FILE = new File(
+            ConfigConstants.getUserDataFolder() + File.separator + "hueemulation" + File.separator + "lights");
 
     private Gson gson = new Gson();
     private HttpService httpService;
     private ItemRegistry itemRegistry;
+    private HueDeviceRegistry deviceRegistry = new HueDeviceRegistry(LIGHTS_FILE);
     private EventPublisher eventPublisher;
     private HueEmulationUpnpServer disco;
     private String udn;
@@ -155,9 +146,11 @@ public class HueEmulationServlet extends HttpServlet {
 
     protected void setItemRegistry(ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
+        deviceRegistry.start(itemRegistry);
     }
 
     protected void unsetItemRegistry(ItemRegistry itemRegistry) {
+        deviceRegistry.stop();
         this.itemRegistry = null;
     }
 
@@ -291,7 +284,7 @@ public class HueEmulationServlet extends HttpServlet {
         }
         try {
             // will throw exception if not found
-            Item item = itemRegistry.getItem(id);
+            Item item = getItem(id);
             HueState state = gson.fromJson(req.getReader(), HueState.class);
             HSBType hsb = state.toHSBType();
             logger.debug("HuState " + state);
@@ -318,8 +311,8 @@ public class HueEmulationServlet extends HttpServlet {
             }
 
             if (command != null) {
-                logger.debug("sending {} to {}", command, id);
-                eventPublisher.post(ItemEventFactory.createCommandEvent(id, command));
+                logger.debug("sending {} to {}", command, item.getName());
+                eventPublisher.post(ItemEventFactory.createCommandEvent(item.getName(), command));
                 PrintWriter out = resp.getWriter();
                 out.write(String.format(STATE_RESP, id, String.valueOf(state.on)));
                 out.close();
@@ -344,9 +337,12 @@ public class HueEmulationServlet extends HttpServlet {
      */
     private void apiLight(String id, HttpServletRequest req, HttpServletResponse resp) throws IOException {
         try {
-            Item item = itemRegistry.getItem(id);
+            String json = deviceRegistry.getDeviceJson(id);
+            if (json == null) {
+                json = gson.toJson(deviceRegistry.itemToDevice(itemRegistry.getItem(id)));
+            }
             PrintWriter out = resp.getWriter();
-            out.write(gson.toJson(itemToDevice(item)));
+            out.write(json);
             out.close();
         } catch (ItemNotFoundException e) {
             logger.debug("Item not found: " + id);
@@ -363,7 +359,7 @@ public class HueEmulationServlet extends HttpServlet {
      */
     public void apiLights(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         PrintWriter out = resp.getWriter();
-        out.write(gson.toJson(getHueDeviceNames()));
+        out.write(deviceRegistry.getDeviceNamesJson());
         out.close();
     }
 
@@ -376,7 +372,7 @@ public class HueEmulationServlet extends HttpServlet {
      */
     public void apiGroupZero(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         PrintWriter out = resp.getWriter();
-        String[] lights = getHueDeviceNames().keySet().toArray(new String[0]);
+        String[] lights = deviceRegistry.getIds();
         HueState action = new HueState();
         out.write(gson.toJson(new HueGroup("0", lights, action)));
         out.close();
@@ -391,9 +387,9 @@ public class HueEmulationServlet extends HttpServlet {
      */
     public void apiDataStore(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         PrintWriter out = resp.getWriter();
-        HueDataStore ds = new HueDataStore();
-        ds.lights = getHueDevices();
-        out.write(gson.toJson(ds));
+        out.write("{\"lights\":");
+        out.write(deviceRegistry.getDevicesJson());
+        out.write("}");
     }
 
     /**
@@ -462,12 +458,17 @@ public class HueEmulationServlet extends HttpServlet {
             xmlDoc = IOUtils.toString(getClass().getClassLoader().getResourceAsStream("discovery.xml"), "UTF-8");
         }
 
-        InetAddress address = disco.getAddress();
-        if (address == null) {
-            return;
+        // the UPnP server announces a location on every interface, so answer with the address the client used
+        String host = req.getLocalAddr();
+        if (host == null || host.contains(":")) {
+            InetAddress address = disco == null ? null : disco.getAddress();
+            if (address == null) {
+                return;
+            }
+            host = address.getHostAddress();
         }
 
-        String formattedXML = String.format(xmlDoc, address.getHostAddress(),
+        String formattedXML = String.format(xmlDoc, host,
                 System.getProperty("org.osgi.service.http.port"), getUDN());
         resp.setContentType(APPLICATION_XML);
         PrintWriter out = resp.getWriter();
@@ -476,84 +477,16 @@ public class HueEmulationServlet extends HttpServlet {
     }
 
     /**
-     * Returns a map of all our items that have voice tags.
-     *
-     * @param username
-     * @return
-     *         Map <item name, HueDevice>
-     */
-    private Map<String, HueDevice> getHueDevices() {
-        Collection<Item> items = getTaggedItems();
-        Map<String, HueDevice> devices = new HashMap<String, HueDevice>();
-        Iterator<Item> it = items.iterator();
-        while (it.hasNext()) {
-            Item item = it.next();
-            devices.put(item.getName(), itemToDevice(item));
-        }
-        return devices;
-    }
-
-    /**
-     * Returns the item name and voice name of each item
-     *
-     * @param username
-     * @return
-     *         Map<item name, item voice tag>
-     */
-    public Map<String, String> getHueDeviceNames() {
-        Collection<Item> items = getTaggedItems();
-        Map<String, String> devices = new HashMap<String, String>();
-        Iterator<Item> it = items.iterator();
-        while (it.hasNext()) {
-            Item item = it.next();
-            devices.put(item.getName(), item.getLabel());
-        }
-        return devices;
-    }
-
-    /**
-     * Converts an Item to a HueDevice
-     *
-     * @param item
-     * @return
-     *         HueDevice
-     */
-    private HueDevice itemToDevice(Item item) {
-        State itemState = item.getState();
-        HueState hueState;
-        if (itemState instanceof HSBType) {
-            HSBType color = (HSBType) itemState;
-            hueState = new HueState(color);
-        } else if (itemState instanceof DecimalType) {
-            short bri = (short) ((((DecimalType) itemState).intValue() * 255) / 100);
-            hueState = new HueState(bri);
-        } else if (itemState instanceof OnOffType) {
-            short bri = (short) (((OnOffType) itemState) == OnOffType.ON ? 255 : 0);
-            hueState = new HueState(bri);
-        } else {
-            hueState = new HueState((short) 0);
-        }
-
-        HueDevice d = new HueDevice(hueState, item.getLabel(), item.getName());
-        return d;
-    }
-
-    /**
-     * Gets all items that match our tag
+     * Returns the item of a light id. Item names are accepted as well, as
+     * clients paired before light ids were introduced use them.
      *
+     * @param id
      * @return
+     * @throws ItemNotFoundException
      */
-    private Collection<Item> getTaggedItems() {
-        Collection<Item> items = new LinkedList<Item>();
-        for (Item item : itemRegistry.getItems()) {
-            for (String tag : item.getTags()) {
-                if (ArrayUtils.contains(SUPPORTED_TAGS, tag)) {
-                    items.add(item);
-                    break;
-                }
-            }
-        }
-        return items;
+    private Item getItem(String id) throws ItemNotFoundException {
+        Item item = deviceRegistry.getItem(id);
+        return item != null ? item : itemRegistry.getItem(id);
     }
 
     /**
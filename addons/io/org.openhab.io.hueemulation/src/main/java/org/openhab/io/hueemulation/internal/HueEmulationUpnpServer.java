@@ -9,22 +9,40 @@
 package org.openhab.io.hueemulation.internal;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MulticastSocket;
+import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
-import java.net.SocketException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Advertises a Hue UPNP compatible bridge
+ * Advertises a Hue UPNP compatible bridge.
+ *
+ * A single non blocking channel joins the SSDP multicast group on all
+ * interfaces (or only on the interface of the configured discovery IP).
+ * Search requests are filtered by their search target before anything is
+ * allocated, the responses are built once per interface and a requester gets
+ * at most one response per {@link #RESPONSE_INTERVAL}.
  *
  * @author Dan Cunningham
  *
@@ -35,16 +53,35 @@ public class HueEmulationUpnpServer extends Thread {
     // jUPNP shares port 1900, but since this is multicast, we can also bind to it
     static final private int UPNP_PORT_RECV = 1900;
     static final private String MULTI_ADDR = "239.255.255.250";
-    private boolean running;
+
+    // interfaces are enumerated again after this time to join new ones
+    static final private long INTERFACE_REFRESH_INTERVAL = 60000;
+    // minimal time between two responses to the same requester
+    static final private long RESPONSE_INTERVAL = 1000;
+    // the requesters are purged if there are more
+    static final private int MAX_REQUESTERS = 1024;
+
+    static final private byte[] M_SEARCH = bytes("M-SEARCH");
+    static final private byte[] ST_HEADER = bytes("ST:");
+    static final private byte[][] SEARCH_TARGETS = new byte[][] { bytes("ssdp:all"), bytes("upnp:rootdevice"),
+            bytes("urn:schemas-upnp-org:device:basic:1") };
+
+    private volatile boolean running;
     private String discoPath;
     private String usn;
-    private InetAddress address;
+    private volatile InetAddress address;
     private String discoveryIp;
 
     private String discoString = "HTTP/1.1 200 OK\r\n" + "CACHE-CONTROL: max-age=100\r\n" + "EXT:\r\n"
             + "LOCATION: %s\r\n" + "SERVER: FreeRTOS/7.4.2 UPnP/1.0 IpBridge/1.10.0\r\n"
             + "ST: urn:schemas-upnp-org:device:basic:1\r\n" + "USN: uuid:%s::urn:Belkin:device:**\r\n\r\n";
 
+    private Selector selector;
+    private final Map<NetworkInterface, MembershipKey> memberships = new HashMap<NetworkInterface, MembershipKey>();
+    private final List<Response> responses = new ArrayList<Response>();
+    private final Map<InetAddress, Long> requesters = new HashMap<InetAddress, Long>();
+    private final ByteBuffer recvBuffer = ByteBuffer.allocateDirect(1024);
+
     /**
      * Server to send UDP packets onto the network when requested by a Hue API compatible device.
      *
@@ -56,6 +93,8 @@ public class HueEmulationUpnpServer extends Thread {
      *            Optional IP to use advertise for UPNP, if null the first available non localhost IP will be used
      */
     public HueEmulationUpnpServer(String discoPath, String usn, String discoveryIP) {
+        super("HueEmulationUpnpServer");
+        setDaemon(true);
         this.running = true;
         this.discoPath = discoPath;
         this.usn = usn;
@@ -67,67 +106,49 @@ public class HueEmulationUpnpServer extends Thread {
      */
     public void shutdown() {
         this.running = false;
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
     }
 
     @Override
     public void run() {
-        MulticastSocket recvSocket = null;
-        // since jupnp shares port 1900, lets use a different port to send UDP packets on just to be safe.
-        DatagramSocket sendSocket = null;
-        byte[] buf = new byte[1000];
-        DatagramPacket recv = new DatagramPacket(buf, buf.length);
         while (running) {
+            DatagramChannel recvChannel = null;
+            // since jupnp shares port 1900, lets use a different port to send UDP packets on just to be safe.
+            DatagramChannel sendChannel = null;
             try {
-                if (discoveryIp != null && discoveryIp.trim().length() > 0) {
-                    address = InetAddress.getByName(discoveryIp);
-                } else {
-                    Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-                    while (interfaces.hasMoreElements()) {
-                        NetworkInterface ni = interfaces.nextElement();
-                        Enumeration<InetAddress> addresses = ni.getInetAddresses();
-                        while (addresses.hasMoreElements()) {
-                            InetAddress addr = addresses.nextElement();
-                            if (addr instanceof Inet4Address && !addr.isLoopbackAddress()) {
-                                address = addr;
-                                break;
-                            }
-                        }
-                    }
-                }
-                InetSocketAddress socketAddr = new InetSocketAddress(MULTI_ADDR, UPNP_PORT_RECV);
-                recvSocket = new MulticastSocket(UPNP_PORT_RECV);
-                recvSocket.joinGroup(socketAddr, NetworkInterface.getByInetAddress(address));
-                sendSocket = new DatagramSocket();
+                selector = Selector.open();
+                recvChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+                recvChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                recvChannel.bind(new InetSocketAddress(UPNP_PORT_RECV));
+                recvChannel.configureBlocking(false);
+                recvChannel.register(selector, SelectionKey.OP_READ);
+                sendChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+                sendChannel.configureBlocking(false);
+
+                InetAddress group = InetAddress.getByName(MULTI_ADDR);
+                long nextRefresh = 0;
                 while (running) {
-                    recvSocket.receive(recv);
-                    if (recv.getLength() > 0) {
-                        String data = new String(recv.getData());
-                        logger.trace("Got SSDP Discovery packet from " + recv.getAddress().getHostAddress() + ":"
-                                + recv.getPort());
-                        if (data.startsWith("M-SEARCH")) {
-                            String msg = String
-                                    .format(discoString,
-                                            "http://" + address.getHostAddress().toString() + ":"
-                                                    + System.getProperty("org.osgi.service.http.port") + discoPath,
-                                            usn);
-                            DatagramPacket response = new DatagramPacket(msg.getBytes(), msg.length(),
-                                    recv.getAddress(), recv.getPort());
-                            try {
-                                logger.trace("Sending to " + recv.getAddress().getHostAddress() + " : " + msg);
-                                sendSocket.send(response);
-                            } catch (IOException e) {
-                                logger.error("Could not send UPNP response", e);
-                            }
-                        }
+                    long now = System.currentTimeMillis();
+                    if (now >= nextRefresh) {
+                        updateInterfaces(recvChannel, group);
+                        nextRefresh = now + INTERFACE_REFRESH_INTERVAL;
+                    }
+                    if (selector.select(Math.max(1, nextRefresh - now)) > 0) {
+                        selector.selectedKeys().clear();
+                        receive(recvChannel, sendChannel);
                     }
                 }
-            } catch (SocketException e) {
-                logger.error("Socket error with UPNP server", e);
             } catch (IOException e) {
                 logger.error("IO Error with UPNP server", e);
             } finally {
-                IOUtils.closeQuietly(recvSocket);
-                IOUtils.closeQuietly(sendSocket);
+                memberships.clear();
+                requesters.clear();
+                IOUtils.closeQuietly(recvChannel);
+                IOUtils.closeQuietly(sendChannel);
+                IOUtils.closeQuietly(selector);
                 if (running) {
                     try {
                         Thread.sleep(3000);
@@ -141,4 +162,233 @@ public class HueEmulationUpnpServer extends Thread {
     public InetAddress getAddress() {
         return address;
     }
+
+    /**
+     * Reads all pending packets and answers the search requests for a bridge
+     */
+    private void receive(DatagramChannel recvChannel, DatagramChannel sendChannel) throws IOException {
+        while (true) {
+            recvBuffer.clear();
+            SocketAddress sender = recvChannel.receive(recvBuffer);
+            if (sender == null) {
+                return;
+            }
+            recvBuffer.flip();
+            if (!isBridgeSearch(recvBuffer)) {
+                continue;
+            }
+            InetSocketAddress requester = (InetSocketAddress) sender;
+            long now = System.currentTimeMillis();
+            // rate limit by host, a client may use a new source port for every request
+            Long last = requesters.get(requester.getAddress());
+            if (last != null && now - last < RESPONSE_INTERVAL) {
+                logger.trace("Ignoring repeated SSDP Discovery packet from {}", requester);
+                continue;
+            }
+            if (requesters.size() >= MAX_REQUESTERS) {
+                purgeRequesters(now);
+            }
+            requesters.put(requester.getAddress(), now);
+
+            Response response = getResponse(requester.getAddress());
+            if (response == null) {
+                continue;
+            }
+            logger.trace("Sending SSDP response for {} to {}", response.address, requester);
+            response.data.rewind();
+            try {
+                if (sendChannel.send(response.data, requester) == 0) {
+                    logger.debug("Dropped UPNP response to {}, send buffer is full", requester);
+                }
+            } catch (IOException e) {
+                logger.error("Could not send UPNP response", e);
+            }
+        }
+    }
+
+    /**
+     * Checks if the packet is an M-SEARCH with a search target matching a bridge
+     */
+    private boolean isBridgeSearch(ByteBuffer packet) {
+        if (!startsWith(packet, 0, M_SEARCH)) {
+            return false;
+        }
+        int limit = packet.limit();
+        for (int i = 0; i < limit; i++) {
+            if (packet.get(i) != '\n' || !startsWithIgnoreCase(packet, i + 1, ST_HEADER)) {
+                continue;
+            }
+            int start = i + 1 + ST_HEADER.length;
+            while (start < limit && packet.get(start) == ' ') {
+                start++;
+            }
+            int end = start;
+            while (end < limit && packet.get(end) != '\r' && packet.get(end) != '\n') {
+                end++;
+            }
+            while (end > start && packet.get(end - 1) == ' ') {
+                end--;
+            }
+            for (byte[] target : SEARCH_TARGETS) {
+                if (end - start == target.length && startsWithIgnoreCase(packet, start, target)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the response of the interface in the subnet of the requester or
+     * the first response, if no subnet matches
+     */
+    private Response getResponse(InetAddress requester) {
+        byte[] requesterAddress = requester.getAddress();
+        for (Response response : responses) {
+            if (response.matches(requesterAddress)) {
+                return response;
+            }
+        }
+        return responses.isEmpty() ? null : responses.get(0);
+    }
+
+    /**
+     * Joins the multicast group on new interfaces, leaves the group on removed
+     * interfaces and builds the responses of the interface addresses
+     */
+    private void updateInterfaces(DatagramChannel recvChannel, InetAddress group) throws IOException {
+        InetAddress configuredAddress = null;
+        if (discoveryIp != null && discoveryIp.trim().length() > 0) {
+            configuredAddress = InetAddress.getByName(discoveryIp.trim());
+        }
+
+        List<Response> newResponses = new ArrayList<Response>();
+        Map<NetworkInterface, MembershipKey> oldMemberships = new HashMap<NetworkInterface, MembershipKey>(
+                memberships);
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        for (NetworkInterface ni : interfaces == null ? Collections.<NetworkInterface> emptyList()
+                : Collections.list(interfaces)) {
+            if (!ni.isUp() || ni.isLoopback() || !ni.supportsMulticast()) {
+                continue;
+            }
+            List<InterfaceAddress> addresses = new ArrayList<InterfaceAddress>();
+            for (InterfaceAddress ia : ni.getInterfaceAddresses()) {
+                InetAddress addr = ia.getAddress();
+                if (addr instanceof Inet4Address && !addr.isLoopbackAddress()
+                        && (configuredAddress == null || configuredAddress.equals(addr))) {
+                    addresses.add(ia);
+                }
+            }
+            if (addresses.isEmpty()) {
+                continue;
+            }
+            if (oldMemberships.remove(ni) == null) {
+                try {
+                    memberships.put(ni, recvChannel.join(group, ni));
+                    logger.debug("Joined UPNP multicast group on {}", ni.getName());
+                } catch (IOException e) {
+                    logger.debug("Could not join UPNP multicast group on {}: {}", ni.getName(), e.getMessage());
+                    continue;
+                }
+            }
+            for (InterfaceAddress ia : addresses) {
+                newResponses.add(new Response(ia.getAddress(), ia.getNetworkPrefixLength()));
+            }
+        }
+        for (Map.Entry<NetworkInterface, MembershipKey> entry : oldMemberships.entrySet()) {
+            entry.getValue().drop();
+            memberships.remove(entry.getKey());
+            logger.debug("Left UPNP multicast group on {}", entry.getKey().getName());
+        }
+
+        responses.clear();
+        responses.addAll(newResponses);
+        if (configuredAddress != null) {
+            address = configuredAddress;
+            if (responses.isEmpty()) {
+                logger.warn("No multicast interface found for discovery IP {}", discoveryIp);
+            }
+        } else if (!responses.isEmpty()) {
+            address = responses.get(0).address;
+        }
+    }
+
+    /**
+     * Removes all requesters which may get a response again
+     */
+    private void purgeRequesters(long now) {
+        Iterator<Long> it = requesters.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next() >= RESPONSE_INTERVAL) {
+                it.remove();
+            }
+        }
+        if (requesters.size() >= MAX_REQUESTERS) {
+            requesters.clear();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, byte[] prefix) {
+        if (buffer.limit() - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithIgnoreCase(ByteBuffer buffer, int offset, byte[] prefix) {
+        if (buffer.limit() - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (Character.toLowerCase(buffer.get(offset + i)) != Character.toLowerCase(prefix[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The precomputed response of an interface address
+     */
+    private class Response {
+        private final InetAddress address;
+        private final byte[] subnet;
+        private final int prefixLength;
+        private final ByteBuffer data;
+
+        public Response(InetAddress address, int prefixLength) {
+            this.address = address;
+            this.subnet = address.getAddress();
+            this.prefixLength = prefixLength;
+            String msg = String.format(discoString, "http://" + address.getHostAddress() + ":"
+                    + System.getProperty("org.osgi.service.http.port") + discoPath, usn);
+            this.data = ByteBuffer.wrap(bytes(msg));
+        }
+
+        /**
+         * Checks if the address is in the subnet of this interface address
+         */
+        public boolean matches(byte[] other) {
+            if (other.length != subnet.length) {
+                return false;
+            }
+            for (int bit = 0; bit < prefixLength; bit++) {
+                int mask = 0x80 >> (bit % 8);
+                if ((other[bit / 8] & mask) != (subnet[bit / 8] & mask)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -107,7 +107,7 @@ public class ImperiHomeApiServlet extends HttpServlet {
         actionRegistry = new ActionRegistry(eventPublisher);
         itemProcessor = new ItemProcessor(itemRegistry, deviceRegistry, actionRegistry);
         roomListHandler = new RoomListHandler(deviceRegistry);
-        devicesListHandler = new DevicesListHandler(deviceRegistry);
+        devicesListHandler = new DevicesListHandler(deviceRegistry, gson);
         deviceActionHandler = new DeviceActionHandler(deviceRegistry);
         deviceHistoryHandler = new DeviceHistoryHandler(deviceRegistry, persistenceServiceRegistry);
 
@@ -132,6 +132,7 @@ public class ImperiHomeApiServlet extends HttpServlet {
         }
 
         itemProcessor.destroy();
+        deviceHistoryHandler.destroy();
 
         systemHandler = null;
         deviceRegistry = null;
@@ -190,11 +191,15 @@ public class ImperiHomeApiServlet extends HttpServlet {
         if (URL_PATTERN_ROOMS.matcher(path).matches()) {
             response = roomListHandler.handle(req);
         } else if (URL_PATTERN_DEVICES.matcher(path).matches()) {
-            response = devicesListHandler.handle(req);
+            // device list is served from a prebuilt snapshot
+            devicesListHandler.handle(req, resp);
+            return;
         } else if (actionMatcher.matches()) {
             deviceActionHandler.handle(req, actionMatcher);
         } else if (historyMatcher.matches()) {
-            response = deviceHistoryHandler.handle(req, historyMatcher);
+            // history is downsampled and written directly to the response
+            deviceHistoryHandler.handle(req, historyMatcher, resp.getWriter());
+            return;
         } else if (URL_PATTERN_SYSTEM.matcher(path).matches()) {
             response = systemHandler.handle(req);
         } else {
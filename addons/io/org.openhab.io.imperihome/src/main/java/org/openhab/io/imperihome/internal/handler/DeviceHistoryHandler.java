@@ -8,11 +8,12 @@
  */
 package org.openhab.io.imperihome.internal.handler;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.Matcher;
 
@@ -20,38 +21,47 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.persistence.FilterCriteria;
+import org.eclipse.smarthome.core.persistence.FilterCriteria.Ordering;
 import org.eclipse.smarthome.core.persistence.HistoricItem;
 import org.eclipse.smarthome.core.persistence.PersistenceService;
 import org.eclipse.smarthome.core.persistence.PersistenceServiceRegistry;
 import org.eclipse.smarthome.core.persistence.QueryablePersistenceService;
 import org.eclipse.smarthome.core.types.State;
 import org.openhab.io.imperihome.internal.model.HistoryItem;
-import org.openhab.io.imperihome.internal.model.HistoryList;
 import org.openhab.io.imperihome.internal.model.device.AbstractDevice;
 import org.openhab.io.imperihome.internal.processor.DeviceRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.stream.JsonWriter;
+
 /**
- * Device history request handler.
+ * Device history request handler. The history is downsampled to about {@link #TARGET_POINTS} values while it is read
+ * from the persistence query, the response is written when the query is complete. Summaries of the last day, week and
+ * month are cached.
  *
  * @author Pepijn de Geus - Initial contribution
  */
 public class DeviceHistoryHandler {
 
     private static final String CHARSET = "UTF-8";
+    private static final int TARGET_POINTS = 500;
 
     private final Logger logger = LoggerFactory.getLogger(DeviceHistoryHandler.class);
 
     private final DeviceRegistry deviceRegistry;
     private final PersistenceServiceRegistry persistenceServiceRegistry;
+    private final HistorySummaryCache summaryCache = new HistorySummaryCache(TARGET_POINTS);
 
     public DeviceHistoryHandler(DeviceRegistry deviceRegistry, PersistenceServiceRegistry persistenceServiceRegistry) {
         this.deviceRegistry = deviceRegistry;
         this.persistenceServiceRegistry = persistenceServiceRegistry;
     }
 
-    public HistoryList handle(HttpServletRequest req, Matcher urlMatcher) {
+    /**
+     * Writes the history of the requested device as JSON, or null if the history is not available.
+     */
+    public void handle(HttpServletRequest req, Matcher urlMatcher, Writer out) throws IOException {
         String deviceId, field;
         long start, end;
         try {
@@ -68,52 +78,103 @@ public class DeviceHistoryHandler {
         AbstractDevice device = deviceRegistry.getDevice(deviceId);
         if (device == null) {
             logger.warn("Received history request for unknown device: {}", urlMatcher.group(0));
-            return null;
+            out.write("null");
+            return;
         }
 
         PersistenceService persistence = persistenceServiceRegistry.getDefault();
         if (persistence == null) {
             logger.warn("Could not retrieve default persistence service; can't serve history request");
-            return null;
+            out.write("null");
+            return;
         }
         if (!(persistence instanceof QueryablePersistenceService)) {
             logger.warn("Default persistence service is not queryable; can't serve history request");
-            return null;
+            out.write("null");
+            return;
+        }
+
+        // query before writing, so a failing query does not leave a partial response
+        List<HistoryItem> items = serveHistory(device, (QueryablePersistenceService) persistence, start, end);
+
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("values");
+        writer.beginArray();
+        for (HistoryItem item : items) {
+            writeHistoryItem(writer, item);
         }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
 
-        return serveHistory(device, (QueryablePersistenceService) persistence, start, end);
+    /**
+     * Clears the cached history summaries.
+     */
+    public void destroy() {
+        summaryCache.clear();
     }
 
-    private HistoryList serveHistory(AbstractDevice device, QueryablePersistenceService persistence, long start,
-            long end) {
+    private List<HistoryItem> serveHistory(AbstractDevice device, QueryablePersistenceService persistence, long start,
+            long end) throws IOException {
+        long now = System.currentTimeMillis();
+        String cacheKey = summaryCache.getKey(device.getItemName(), start, end, now);
+        if (cacheKey != null) {
+            List<HistoryItem> cachedItems = summaryCache.get(cacheKey, start, end, now);
+            if (cachedItems != null) {
+                logger.debug("Serving cached history of Item {}, from {} to {}", device.getItemName(), start, end);
+                return cachedItems;
+            }
+        }
+
         logger.info("Querying persistence for history of Item {}, from {} to {}", device.getItemName(), start, end);
 
+        // the downsampler needs the values in chronological order
         FilterCriteria criteria = new FilterCriteria().setItemName(device.getItemName()).setBeginDate(new Date(start))
-                .setEndDate(new Date(end));
-
-        List<HistoryItem> resultItems = new LinkedList<>();
-        Iterable<HistoricItem> historicItems = persistence.query(criteria);
+                .setEndDate(new Date(end)).setOrdering(Ordering.ASCENDING);
+
+        final List<HistoryItem> resultItems = new ArrayList<HistoryItem>();
+        HistoryDownsampler downsampler = new HistoryDownsampler(start, summaryCache.getBucketSize(end - start),
+                new HistoryDownsampler.Callback() {
+                    @Override
+                    public void historyItem(HistoryItem item) throws IOException {
+                        resultItems.add(item);
+                    }
+                });
+
+        int resultCount = 0;
+        int decimalCount = 0;
+        for (HistoricItem historicItem : persistence.query(criteria)) {
+            resultCount++;
+            State state = historicItem.getState();
+            if (state instanceof DecimalType) {
+                decimalCount++;
+                downsampler.add(historicItem.getTimestamp().getTime(), ((DecimalType) state).toBigDecimal());
+            }
+        }
+        downsampler.finish();
 
-        Iterator<HistoricItem> iterator = historicItems.iterator();
-        if (!iterator.hasNext()) {
+        if (resultCount == 0) {
             logger.info("Persistence returned no results for history query");
+        } else if (decimalCount == 0) {
+            logger.warn(
+                    "Persistence returned results for history query, but could not be interpreted as DecimalTypes");
         } else {
-            while (iterator.hasNext()) {
-                HistoricItem historicItem = iterator.next();
-                State state = historicItem.getState();
-                if (state instanceof DecimalType) {
-                    Number value = ((DecimalType) state).toBigDecimal();
-                    resultItems.add(new HistoryItem(historicItem.getTimestamp(), value));
-                }
-            }
+            logger.debug("Downsampled {} history values of Item {}", decimalCount, device.getItemName());
+        }
 
-            if (resultItems.isEmpty()) {
-                logger.warn(
-                        "Persistence returned results for history query, but could not be interpreted as DecimalTypes");
-            }
+        if (cacheKey != null) {
+            summaryCache.put(cacheKey, start, end, now, resultItems);
         }
+        return resultItems;
+    }
 
-        return new HistoryList(resultItems);
+    private void writeHistoryItem(JsonWriter writer, HistoryItem item) throws IOException {
+        writer.beginObject();
+        writer.name("date").value(item.getDate());
+        writer.name("value").value(item.getValue());
+        writer.endObject();
     }
 
 }
@@ -8,18 +8,24 @@
  */
 package org.openhab.io.imperihome.internal.handler;
 
+import java.io.IOException;
 import java.util.Collection;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.openhab.io.imperihome.internal.model.device.AbstractDevice;
 import org.openhab.io.imperihome.internal.model.device.DeviceList;
 import org.openhab.io.imperihome.internal.processor.DeviceRegistry;
+import org.openhab.io.imperihome.internal.util.DigestUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.Gson;
+
 /**
- * Device list request handler.
+ * Device list request handler. The serialized device list is kept as a snapshot, which is only rebuilt when the
+ * version of the {@link DeviceRegistry} changed. Clients sending the ETag of the snapshot get a 304 response.
  *
  * @author Pepijn de Geus - Initial contribution
  */
@@ -28,12 +34,35 @@ public class DevicesListHandler {
     private final Logger logger = LoggerFactory.getLogger(DevicesListHandler.class);
 
     private final DeviceRegistry deviceRegistry;
+    private final Gson gson;
+
+    private Snapshot snapshot;
 
-    public DevicesListHandler(DeviceRegistry deviceRegistry) {
+    public DevicesListHandler(DeviceRegistry deviceRegistry, Gson gson) {
         this.deviceRegistry = deviceRegistry;
+        this.gson = gson;
+    }
+
+    public void handle(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Snapshot current = getSnapshot();
+
+        resp.setHeader("ETag", current.etag);
+        resp.setHeader("Cache-Control", "no-cache");
+        if (current.etag.equals(req.getHeader("If-None-Match"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        resp.getWriter().write(current.json);
     }
 
-    public DeviceList handle(HttpServletRequest req) {
+    private synchronized Snapshot getSnapshot() {
+        // Read the version first, changes during the rebuild cause another rebuild on the next request
+        long version = deviceRegistry.getVersion();
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot;
+        }
+
         DeviceList response = new DeviceList();
 
         Collection<AbstractDevice> devices = deviceRegistry.getDevices().values();
@@ -44,7 +73,22 @@ public class DevicesListHandler {
         response.setDevices(devices);
 
         logger.debug("Device list response: {}", response);
-        return response;
+
+        String json = gson.toJson(response);
+        snapshot = new Snapshot(version, json, '"' + DigestUtil.sha1(json) + '"');
+        return snapshot;
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final String json;
+        private final String etag;
+
+        public Snapshot(long version, String json, String etag) {
+            this.version = version;
+            this.json = json;
+            this.etag = etag;
+        }
     }
 
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.imperihome.internal.handler;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.openhab.io.imperihome.internal.model.HistoryItem;
+
+/**
+ * Reduces a stream of history values to at most one value per bucket. Buckets containing a single value pass it
+ * unchanged, others are reduced to the average value at the date of their first value. Values must be added in
+ * chronological order.
+ *
+ * @author agent - Initial contribution
+ */
+public class HistoryDownsampler {
+
+    private final long start;
+    private final long bucketSize;
+    private final Callback callback;
+
+    private long bucket = Long.MIN_VALUE;
+    private long firstDate;
+    private BigDecimal firstValue;
+    private double sum;
+    private int count;
+
+    /**
+     * @param start Start of the requested range, the buckets are aligned to it.
+     * @param bucketSize Bucket size in milliseconds.
+     * @param callback Receives the downsampled values.
+     */
+    public HistoryDownsampler(long start, long bucketSize, Callback callback) {
+        this.start = start;
+        this.bucketSize = Math.max(1, bucketSize);
+        this.callback = callback;
+    }
+
+    public void add(long date, BigDecimal value) throws IOException {
+        long valueBucket = (date - start) / bucketSize;
+        if (valueBucket != bucket) {
+            flush();
+            bucket = valueBucket;
+            firstDate = date;
+            firstValue = value;
+        }
+        sum += value.doubleValue();
+        count++;
+    }
+
+    /**
+     * Emits the last bucket. Must be called after the last value has been added.
+     */
+    public void finish() throws IOException {
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        Number value = count == 1 ? firstValue : sum / count;
+        callback.historyItem(new HistoryItem(firstDate, value));
+        sum = 0;
+        count = 0;
+    }
+
+    /**
+     * Receiver of downsampled history items.
+     */
+    public interface Callback {
+        void historyItem(HistoryItem item) throws IOException;
+    }
+
+}
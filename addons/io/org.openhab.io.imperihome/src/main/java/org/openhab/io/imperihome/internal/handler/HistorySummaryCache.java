@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.imperihome.internal.handler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.io.imperihome.internal.model.HistoryItem;
+
+/**
+ * Caches the downsampled history of the ranges ImperiHome requests most: the last day, week and month of a device.
+ * A summary is reused until it is older than one bucket of its range, so a cached graph is never more than one point
+ * behind, and only for requests starting within its range.
+ *
+ * @author agent - Initial contribution
+ */
+public class HistorySummaryCache {
+
+    private static final long[] WINDOWS = { TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(7),
+            TimeUnit.DAYS.toMillis(30) };
+    private static final double WINDOW_TOLERANCE = 0.1;
+
+    private final int targetPoints;
+    private final Map<String, Summary> summaries = new ConcurrentHashMap<>();
+
+    public HistorySummaryCache(int targetPoints) {
+        this.targetPoints = targetPoints;
+    }
+
+    /**
+     * Returns the cache key of a request, or null if the requested range is not cacheable. Only ranges ending now and
+     * matching one of the windows are cached.
+     */
+    public String getKey(String itemName, long start, long end, long now) {
+        long range = end - start;
+        if (Math.abs(now - end) > getBucketSize(range)) {
+            return null;
+        }
+        for (long window : WINDOWS) {
+            if (Math.abs(range - window) <= window * WINDOW_TOLERANCE) {
+                return itemName + ":" + window;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bucket size used to downsample a range.
+     */
+    public long getBucketSize(long range) {
+        return Math.max(1, range / targetPoints);
+    }
+
+    /**
+     * Returns the cached items within the range, or null if there is no valid summary covering the start of the range.
+     */
+    public List<HistoryItem> get(String key, long start, long end, long now) {
+        Summary summary = summaries.get(key);
+        if (summary == null || summary.isExpired(now) || summary.start > start) {
+            return null;
+        }
+        List<HistoryItem> result = new ArrayList<>(summary.items.size());
+        for (HistoryItem item : summary.items) {
+            if (item.getDate() >= start && item.getDate() <= end) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    public void put(String key, long start, long end, long now, List<HistoryItem> items) {
+        Iterator<Summary> iterator = summaries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+        summaries.put(key, new Summary(start, now, getBucketSize(end - start), items));
+    }
+
+    public void clear() {
+        summaries.clear();
+    }
+
+    private static class Summary {
+        private final long start;
+        private final long created;
+        private final long maxAge;
+        private final List<HistoryItem> items;
+
+        public Summary(long start, long created, long maxAge, List<HistoryItem> items) {
+            this.start = start;
+            this.created = created;
+            this.maxAge = maxAge;
+            this.items = items;
+        }
+
+        public boolean isExpired(long now) {
+            return now - created >= maxAge;
+        }
+    }
+
+}
@@ -125,7 +125,10 @@ public abstract class AbstractDevice implements StateChangeListener {
 
     public void addParam(DeviceParam param) {
         logger.trace("Setting param for device {}: {}", this, param);
-        params.set(param);
+        if (!param.equals(params.get(param.getKey()))) {
+            params.set(param);
+            markChanged();
+        }
     }
 
     public Map<String, String> getLinks() {
@@ -199,8 +202,20 @@ public abstract class AbstractDevice implements StateChangeListener {
         actionInst.perform(this, item, value);
     }
 
+    /**
+     * Marks the device list as changed, so the next request gets the new params.
+     */
+    protected void markChanged() {
+        DeviceRegistry registry = deviceRegistry;
+        if (registry != null) {
+            registry.markChanged();
+        }
+    }
+
     @Override
     public void stateChanged(Item item, State oldState, State newState) {
+        // Called after stateUpdated(), so the params of the new state are already set
+        markChanged();
     }
 
     @Override
@@ -15,12 +15,14 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openhab.io.imperihome.internal.model.Room;
 import org.openhab.io.imperihome.internal.model.device.AbstractDevice;
 
 /**
- * The device registry stores created devices by ID.
+ * The device registry stores created devices by ID. Its version is incremented whenever a device is added, removed or
+ * changed, so serialized device lists only have to be rebuilt if the version changed.
  *
  * @author Pepijn de Geus - Initial contribution
  */
@@ -28,6 +30,7 @@ public class DeviceRegistry implements Iterable<AbstractDevice> {
 
     private final Map<String, AbstractDevice> devices;
     private Set<Room> rooms;
+    private final AtomicLong version = new AtomicLong();
 
     public DeviceRegistry() {
         devices = new ConcurrentHashMap<>();
@@ -56,14 +59,30 @@ public class DeviceRegistry implements Iterable<AbstractDevice> {
     public void add(AbstractDevice device) {
         devices.put(device.getId(), device);
         updateRooms();
+        markChanged();
     }
 
     public AbstractDevice remove(String deviceId) {
         AbstractDevice removed = devices.remove(deviceId);
         updateRooms();
+        markChanged();
         return removed;
     }
 
+    /**
+     * Returns the current version of the registry.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Marks the devices as changed, called by devices when their state changes.
+     */
+    public void markChanged() {
+        version.incrementAndGet();
+    }
+
     @Override
     public Iterator<AbstractDevice> iterator() {
         return devices.values().iterator();
@@ -75,6 +94,7 @@ public class DeviceRegistry implements Iterable<AbstractDevice> {
         if (rooms != null) {
             rooms.clear();
         }
+        markChanged();
     }
 
     private void updateRooms() {
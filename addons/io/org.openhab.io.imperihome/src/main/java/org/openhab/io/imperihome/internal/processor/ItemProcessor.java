@@ -103,6 +103,7 @@ public class ItemProcessor implements ItemRegistryChangeListener {
                 device.setName(getLabel(item, issTags));
                 device.setInverted(isInverted(issTags));
                 device.setActionRegistry(actionRegistry);
+                device.setDeviceRegistry(deviceRegistry);
 
                 setDeviceRoom(device, issTags);
                 setDeviceLinks(device, item, issTags);
@@ -201,9 +202,6 @@ public class ItemProcessor implements ItemRegistryChangeListener {
 
     private void setDeviceLinks(AbstractDevice device, Item item, Map<TagType, List<String>> issTags) {
         if (issTags.containsKey(TagType.LINK)) {
-            // Pass device registry to device for linked device lookup
-            device.setDeviceRegistry(deviceRegistry);
-
             // Parse link tags
             for (String link : issTags.get(TagType.LINK)) {
                 String[] parts = link.split(":");
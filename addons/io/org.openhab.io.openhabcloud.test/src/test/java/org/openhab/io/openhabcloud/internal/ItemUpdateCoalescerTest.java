@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.openhabcloud.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ItemUpdateCoalescer}.
+ *
+ * @author agent - Initial contribution
+ */
+public class ItemUpdateCoalescerTest {
+    private static final long LONG_WINDOW = TimeUnit.MINUTES.toMillis(10);
+
+    private ScheduledThreadPoolExecutor scheduler;
+    private TestSender sender;
+
+    @Before
+    public void setUp() {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        sender = new TestSender();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void sendsImmediatelyWithoutWindow() {
+        ItemUpdateCoalescer coalescer = new ItemUpdateCoalescer(scheduler, 0, sender);
+
+        coalescer.add("Light", "ON");
+        coalescer.add("Light", "OFF");
+
+        assertEquals(Arrays.asList(updates("Light", "ON"), updates("Light", "OFF")), sender.batches);
+        assertEquals(2, coalescer.getSentCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+        assertEquals(0, scheduler.getQueue().size());
+    }
+
+    @Test
+    public void keepsLatestStateOfEachItem() {
+        ItemUpdateCoalescer coalescer = new ItemUpdateCoalescer(scheduler, LONG_WINDOW, sender);
+
+        coalescer.add("Light", "ON");
+        coalescer.add("Temperature", "21.5");
+        coalescer.add("Light", "OFF");
+        assertTrue(sender.batches.isEmpty());
+
+        coalescer.flush();
+
+        assertEquals(Arrays.asList(updates("Light", "OFF", "Temperature", "21.5")), sender.batches);
+        assertEquals(Arrays.asList("Light", "Temperature"),
+                new ArrayList<String>(sender.batches.get(0).keySet()));
+        assertEquals(2, coalescer.getSentCount());
+        assertEquals(1, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void schedulesOneFlushPerWindow() {
+        ItemUpdateCoalescer coalescer = new ItemUpdateCoalescer(scheduler, LONG_WINDOW, sender);
+
+        coalescer.add("Light", "ON");
+        coalescer.add("Dimmer", "50");
+        assertEquals(1, scheduler.getQueue().size());
+
+        coalescer.flush();
+        assertEquals(0, scheduler.getQueue().size());
+
+        coalescer.add("Light", "OFF");
+        assertEquals(1, scheduler.getQueue().size());
+    }
+
+    @Test
+    public void sendsPendingUpdatesAfterWindow() throws InterruptedException {
+        ItemUpdateCoalescer coalescer = new ItemUpdateCoalescer(scheduler, 10, sender);
+
+        coalescer.add("Light", "ON");
+        coalescer.add("Light", "OFF");
+
+        assertTrue(sender.sent.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(updates("Light", "OFF")), sender.batches);
+    }
+
+    @Test
+    public void doesNotSendEmptyBatch() {
+        ItemUpdateCoalescer coalescer = new ItemUpdateCoalescer(scheduler, LONG_WINDOW, sender);
+
+        coalescer.flush();
+
+        assertTrue(sender.batches.isEmpty());
+    }
+
+    @Test
+    public void countsFailedBatchesAsDropped() {
+        sender.success = false;
+        ItemUpdateCoalescer coalescer = new ItemUpdateCoalescer(scheduler, LONG_WINDOW, sender);
+
+        coalescer.add("Light", "ON");
+        coalescer.add("Dimmer", "50");
+        coalescer.flush();
+
+        assertEquals(0, coalescer.getSentCount());
+        assertEquals(2, coalescer.getDroppedCount());
+    }
+
+    @Test
+    public void discardsPendingUpdatesOnStop() {
+        ItemUpdateCoalescer coalescer = new ItemUpdateCoalescer(scheduler, LONG_WINDOW, sender);
+
+        coalescer.add("Light", "ON");
+        coalescer.stop();
+        coalescer.flush();
+
+        assertTrue(sender.batches.isEmpty());
+        assertEquals(1, coalescer.getDroppedCount());
+        assertEquals(0, scheduler.getQueue().size());
+    }
+
+    private static Map<String, String> updates(String... namesAndStates) {
+        Map<String, String> updates = new LinkedHashMap<String, String>();
+        for (int i = 0; i < namesAndStates.length; i += 2) {
+            updates.put(namesAndStates[i], namesAndStates[i + 1]);
+        }
+        return updates;
+    }
+
+    /**
+     * A sender which records all batches.
+     */
+    private static class TestSender implements ItemUpdateCoalescer.Sender {
+        private final List<Map<String, String>> batches = new ArrayList<Map<String, String>>();
+        private final CountDownLatch sent = new CountDownLatch(1);
+        private boolean success = true;
+
+        @Override
+        public boolean sendItemUpdates(Map<String, String> updates) {
+            batches.add(new LinkedHashMap<String, String>(updates));
+            sent.countDown();
+            return success;
+        }
+    }
+}
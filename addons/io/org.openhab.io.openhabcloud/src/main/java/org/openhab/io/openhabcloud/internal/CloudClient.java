@@ -14,18 +14,21 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Request.FailureListener;
 import org.eclipse.jetty.client.api.Response;
-import org.eclipse.jetty.client.api.Response.ContentListener;
+import org.eclipse.jetty.client.api.Response.AsyncContentListener;
 import org.eclipse.jetty.client.api.Response.HeadersListener;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BytesContentProvider;
@@ -33,7 +36,7 @@ import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
-import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.smarthome.core.common.ThreadPoolManager;
 import org.json.JSONException;
@@ -47,6 +50,7 @@ import io.socket.client.Manager;
 import io.socket.client.Socket;
 import io.socket.emitter.Emitter;
 import io.socket.engineio.client.Transport;
+import io.socket.thread.EventThread;
 
 /**
  * This class provides communication between openHAB and the openHAB Cloud service.
@@ -77,6 +81,27 @@ public class CloudClient {
      */
     private static final int HTTP_CLIENT_TIMEOUT = 30000;
 
+    /*
+     * This constant defines the idle timeout of a single proxied request. Requests which don't
+     * receive any data for this time are aborted. It must be longer than the long polling timeout.
+     */
+    private static final int HTTP_REQUEST_IDLE_TIMEOUT = 2 * HTTP_CLIENT_TIMEOUT;
+
+    /*
+     * Default maximum size of a response content frame sent to the openHAB Cloud
+     */
+    public static final int DEFAULT_PROXY_FRAME_SIZE = 64 * 1024;
+
+    /*
+     * Default time in milliseconds after which a partially filled response content frame is sent
+     */
+    public static final long DEFAULT_PROXY_FLUSH_DELAY = 20;
+
+    /*
+     * The name of the thread pool used for delayed tasks
+     */
+    private static final String THREADPOOL_OPENHABCLOUD = "openhabcloud";
+
     /*
      * This variable holds base URL for the openHAB Cloud connections
      */
@@ -103,9 +128,28 @@ public class CloudClient {
     private HttpClient jettyClient;
 
     /*
-     * This hashmap holds HTTP requests to local openHAB which are currently running
+     * This map holds HTTP requests to local openHAB which are currently running
+     */
+    private final ConcurrentMap<Integer, Request> runningRequests;
+
+    /*
+     * Response content is aggregated into frames of at most this size
      */
-    private HashMap<Integer, Request> runningRequests;
+    private int proxyFrameSize = DEFAULT_PROXY_FRAME_SIZE;
+
+    /*
+     * A partially filled frame is sent after this time in milliseconds
+     */
+    private long proxyFlushDelay = DEFAULT_PROXY_FLUSH_DELAY;
+
+    /*
+     * Metrics of the proxied requests
+     */
+    private final AtomicLong proxiedRequests = new AtomicLong();
+    private final AtomicLong proxiedBytes = new AtomicLong();
+    private final AtomicLong proxiedChunks = new AtomicLong();
+    private final AtomicLong proxiedFrames = new AtomicLong();
+    private final AtomicLong proxiedTimeMillis = new AtomicLong();
 
     /*
      * This variable indicates if connection to the openHAB Cloud is currently in an established state
@@ -131,6 +175,11 @@ public class CloudClient {
     private boolean remoteAccessEnabled;
     private Set<String> exposedItems;
 
+    /*
+     * This variable holds the coalescer which collects item updates before they are sent to the openHAB Cloud
+     */
+    private final ItemUpdateCoalescer itemUpdateCoalescer;
+
     /**
      * Constructor of CloudClient
      *
@@ -138,20 +187,28 @@ public class CloudClient {
      * @param secret openHAB's Secret to connect to the openHAB Cloud
      * @param remoteAccessEnabled Allow the openHAB Cloud to be used as a remote proxy
      * @param exposedItems Items that are made available to apps connected to the openHAB Cloud
+     * @param updateWindow Time window in milliseconds in which updates of exposed items are coalesced
      *
      */
     public CloudClient(String uuid, String secret, String baseURL, String localBaseUrl, boolean remoteAccessEnabled,
-            Set<String> exposedItems) {
+            Set<String> exposedItems, long updateWindow) {
         this.uuid = uuid;
         this.secret = secret;
         this.baseURL = baseURL;
         this.localBaseUrl = localBaseUrl;
         this.remoteAccessEnabled = remoteAccessEnabled;
         this.exposedItems = exposedItems;
-        runningRequests = new HashMap<Integer, Request>();
+        runningRequests = new ConcurrentHashMap<Integer, Request>();
         jettyClient = new HttpClient();
         jettyClient.setMaxConnectionsPerDestination(HTTP_CLIENT_MAX_CONNECTIONS_PER_DEST);
         jettyClient.setConnectTimeout(HTTP_CLIENT_TIMEOUT);
+        itemUpdateCoalescer = new ItemUpdateCoalescer(ThreadPoolManager.getScheduledPool(THREADPOOL_OPENHABCLOUD),
+                updateWindow, new ItemUpdateCoalescer.Sender() {
+                    @Override
+                    public boolean sendItemUpdates(Map<String, String> updates) {
+                        return emitItemUpdates(updates);
+                    }
+                });
     }
 
     /**
@@ -257,9 +314,7 @@ public class CloudClient {
             }
         }
         // And clean up the list of running requests
-        if (runningRequests != null) {
-            runningRequests.clear();
-        }
+        runningRequests.clear();
     }
 
     /**
@@ -344,11 +399,13 @@ public class CloudClient {
                 logger.error("Unsupported request method " + requestMethod);
                 return;
             }
-            ResponseListener listener = new ResponseListener(requestId);
-            request.onResponseHeaders(listener).onResponseContent(listener).onRequestFailure(listener).send(listener);
-            // If successfully submitted request to http client, add it to the list of currently
-            // running requests to be able to cancel it if needed
+            request.idleTimeout(HTTP_REQUEST_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+            // Add the request to the list of currently running requests to be able to cancel it if needed,
+            // before it is sent, as it may complete before send() returns
             runningRequests.put(requestId, request);
+            ResponseListener listener = new ResponseListener(requestId);
+            request.onResponseHeaders(listener).onResponseContentAsync(listener).onRequestFailure(listener)
+                    .send(listener);
         } catch (JSONException e) {
             logger.error(e.getMessage());
         } catch (IOException e) {
@@ -382,10 +439,9 @@ public class CloudClient {
             int requestId = data.getInt("id");
             logger.debug("Received cancel for request {}", requestId);
             // Find and abort running request
-            if (runningRequests.containsKey(requestId)) {
-                Request request = runningRequests.get(requestId);
+            Request request = runningRequests.remove(requestId);
+            if (request != null) {
                 request.abort(new InterruptedException());
-                runningRequests.remove(requestId);
             }
         } catch (JSONException e) {
             logger.error(e.getMessage());
@@ -483,25 +539,41 @@ public class CloudClient {
     }
 
     /**
-     * Send item update to openHAB Cloud
+     * Send item update to openHAB Cloud. Updates are coalesced per item within the update window,
+     * only the latest state of each item is sent.
      *
      * @param itemName the name of the item
      * @param itemState updated item state
      *
      */
     public void sendItemUpdate(String itemName, String itemState) {
-        if (isConnected()) {
-            logger.debug("Sending update '{}' for item '{}'", itemState, itemName);
-            JSONObject itemUpdateMessage = new JSONObject();
-            try {
-                itemUpdateMessage.put("itemName", itemName);
-                itemUpdateMessage.put("itemStatus", itemState);
+        itemUpdateCoalescer.add(itemName, itemState);
+    }
+
+    /**
+     * Emits a batch of item updates to the openHAB Cloud. Every update is sent as its own 'itemupdate'
+     * message, as this is the only item update message the openHAB Cloud handles.
+     *
+     * @param updates item states by item name
+     * @return true if the updates were sent
+     */
+    private boolean emitItemUpdates(Map<String, String> updates) {
+        if (!isConnected()) {
+            logger.debug("No connection, {} Item update(s) not sent", updates.size());
+            return false;
+        }
+        try {
+            for (Map.Entry<String, String> update : updates.entrySet()) {
+                logger.debug("Sending update '{}' for item '{}'", update.getValue(), update.getKey());
+                JSONObject itemUpdateMessage = new JSONObject();
+                itemUpdateMessage.put("itemName", update.getKey());
+                itemUpdateMessage.put("itemStatus", update.getValue());
                 socket.emit("itemupdate", itemUpdateMessage);
-            } catch (JSONException e) {
-                logger.error(e.getMessage());
             }
-        } else {
-            logger.debug("No connection, Item update is not sent");
+            return true;
+        } catch (JSONException e) {
+            logger.error(e.getMessage());
+            return false;
         }
     }
 
@@ -517,6 +589,12 @@ public class CloudClient {
      */
     public void shutdown() {
         logger.info("Shutting down openHAB Cloud service connection");
+        itemUpdateCoalescer.stop();
+        logger.debug("Item updates sent: {}, coalesced: {}, dropped: {}", itemUpdateCoalescer.getSentCount(),
+                itemUpdateCoalescer.getCoalescedCount(), itemUpdateCoalescer.getDroppedCount());
+        logger.debug("Proxied requests: {}, bytes: {}, chunks: {}, frames: {}, total time: {} ms",
+                proxiedRequests.get(), proxiedBytes.get(), proxiedChunks.get(), proxiedFrames.get(),
+                proxiedTimeMillis.get());
         try {
             jettyClient.stop();
         } catch (Exception e) {
@@ -537,15 +615,84 @@ public class CloudClient {
         this.listener = listener;
     }
 
+    /**
+     * Sets the maximum size of the response content frames sent to the openHAB Cloud
+     */
+    public void setProxyFrameSize(int proxyFrameSize) {
+        this.proxyFrameSize = Math.max(1024, proxyFrameSize);
+    }
+
+    /**
+     * Sets the time in milliseconds after which a partially filled response content frame is sent
+     */
+    public void setProxyFlushDelay(long proxyFlushDelay) {
+        this.proxyFlushDelay = Math.max(0, proxyFlushDelay);
+    }
+
+    /**
+     * Returns the number of completed proxied requests
+     */
+    public long getProxiedRequests() {
+        return proxiedRequests.get();
+    }
+
+    /**
+     * Returns the number of response content bytes sent to the openHAB Cloud
+     */
+    public long getProxiedBytes() {
+        return proxiedBytes.get();
+    }
+
+    /**
+     * Returns the number of response content chunks received from local openHAB
+     */
+    public long getProxiedChunks() {
+        return proxiedChunks.get();
+    }
+
+    /**
+     * Returns the number of response content frames sent to the openHAB Cloud
+     */
+    public long getProxiedFrames() {
+        return proxiedFrames.get();
+    }
+
+    /**
+     * Returns the total time in milliseconds spent on completed proxied requests
+     */
+    public long getProxiedTimeMillis() {
+        return proxiedTimeMillis.get();
+    }
+
     /*
-     * An internal class which forwards response headers and data back to the openHAB Cloud
+     * An internal class which forwards response headers and data back to the openHAB Cloud.
+     * Content chunks are aggregated into frames of up to proxyFrameSize bytes, which are sent when
+     * they are full, after proxyFlushDelay or when the response is complete. Jetty is only asked for
+     * more content after the frames have been handed to the Socket.IO event thread.
      */
     private class ResponseListener
-            implements Response.CompleteListener, HeadersListener, ContentListener, FailureListener {
+            implements Response.CompleteListener, HeadersListener, AsyncContentListener, FailureListener {
 
-        private static final String THREADPOOL_OPENHABCLOUD = "openhabcloud";
         private int mRequestId;
         private boolean mHeadersSent = false;
+        private final long mStartTime = System.currentTimeMillis();
+        private final int mFrameSize = proxyFrameSize;
+        private byte[] mFrame;
+        private int mFrameLength;
+        private long mBytes;
+        private int mChunks;
+        private int mFrames;
+        private ScheduledFuture<?> mFlushFuture;
+
+        private final Runnable mFlushTask = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ResponseListener.this) {
+                    mFlushFuture = null;
+                    sendFrame();
+                }
+            }
+        };
 
         public ResponseListener(int requestId) {
             mRequestId = requestId;
@@ -563,14 +710,59 @@ public class CloudClient {
             return headersJSON;
         }
 
+        /*
+         * Sends the current frame, must be called while holding the lock of this listener
+         */
+        private void sendFrame() {
+            if (mFrameLength == 0) {
+                return;
+            }
+            byte[] body = mFrameLength == mFrame.length ? mFrame : Arrays.copyOf(mFrame, mFrameLength);
+            JSONObject responseJson = new JSONObject();
+            try {
+                responseJson.put("id", mRequestId);
+                responseJson.put("body", body);
+                socket.emit("responseContentBinary", responseJson);
+                logger.debug("Sent {} bytes of content to request {}", mFrameLength, mRequestId);
+            } catch (JSONException e) {
+                logger.error(e.getMessage());
+            }
+            mBytes += mFrameLength;
+            mFrames++;
+            // the array has been handed over to Socket.IO, the next frame needs a new one
+            mFrame = null;
+            mFrameLength = 0;
+        }
+
         @Override
         public void onComplete(Result result) {
             // Remove this request from list of running requests
             runningRequests.remove(mRequestId);
             if (result.isFailed() && result.getResponse().getStatus() != HttpStatus.OK_200) {
                 logger.warn("Jetty request {} failed: {}", mRequestId, result.getFailure().getMessage());
-                logger.warn(result.getRequestFailure().getMessage());
-                logger.warn(result.getResponseFailure().getMessage());
+                if (result.getRequestFailure() != null) {
+                    logger.warn(result.getRequestFailure().getMessage());
+                }
+                if (result.getResponseFailure() != null) {
+                    logger.warn(result.getResponseFailure().getMessage());
+                }
+            }
+
+            long duration;
+            synchronized (this) {
+                if (mFlushFuture != null) {
+                    mFlushFuture.cancel(false);
+                    mFlushFuture = null;
+                }
+                sendFrame();
+                duration = System.currentTimeMillis() - mStartTime;
+                proxiedRequests.incrementAndGet();
+                proxiedBytes.addAndGet(mBytes);
+                proxiedChunks.addAndGet(mChunks);
+                proxiedFrames.addAndGet(mFrames);
+                proxiedTimeMillis.addAndGet(duration);
+                logger.debug("Request {} sent {} bytes from {} chunks in {} frames, took {} ms", mRequestId, mBytes,
+                        mChunks, mFrames, duration);
             }
 
             /**
@@ -608,17 +800,36 @@ public class CloudClient {
         }
 
         @Override
-        public void onContent(Response response, ByteBuffer content) {
+        public void onContent(Response response, ByteBuffer content, final Callback callback) {
             logger.debug("Jetty received response content of size " + String.valueOf(content.remaining()));
-            JSONObject responseJson = new JSONObject();
-            try {
-                responseJson.put("id", mRequestId);
-                responseJson.put("body", BufferUtil.toArray(content));
-                socket.emit("responseContentBinary", responseJson);
-                logger.debug("Sent content to request {}", mRequestId);
-            } catch (JSONException e) {
-                logger.error(e.getMessage());
+            synchronized (this) {
+                mChunks++;
+                while (content.hasRemaining()) {
+                    if (mFrame == null) {
+                        // start small, most responses are much smaller than a frame
+                        mFrame = new byte[Math.min(mFrameSize, Math.max(8192, content.remaining()))];
+                    } else if (mFrameLength == mFrame.length) {
+                        mFrame = Arrays.copyOf(mFrame, Math.min(mFrameSize, mFrame.length * 2));
+                    }
+                    int length = Math.min(content.remaining(), mFrame.length - mFrameLength);
+                    content.get(mFrame, mFrameLength, length);
+                    mFrameLength += length;
+                    if (mFrameLength == mFrameSize) {
+                        sendFrame();
+                    }
+                }
+                if (mFrameLength > 0 && mFlushFuture == null) {
+                    mFlushFuture = ThreadPoolManager.getScheduledPool(THREADPOOL_OPENHABCLOUD).schedule(mFlushTask,
+                            proxyFlushDelay, TimeUnit.MILLISECONDS);
+                }
             }
+            // Socket.IO emits on its event thread, demand more content once the emitted frames have been processed
+            EventThread.exec(new Runnable() {
+                @Override
+                public void run() {
+                    callback.succeeded();
+                }
+            });
         }
 
         @Override
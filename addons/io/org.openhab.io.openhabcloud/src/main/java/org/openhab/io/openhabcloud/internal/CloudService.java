@@ -60,8 +60,12 @@ public class CloudService implements ActionService, CloudClientListener, EventSu
     private static final String CFG_EXPOSE = "expose";
     private static final String CFG_BASE_URL = "baseURL";
     private static final String CFG_MODE = "mode";
+    private static final String CFG_UPDATE_WINDOW = "updateWindow";
+    private static final String CFG_PROXY_FRAME_SIZE = "proxyFrameSize";
+    private static final String CFG_PROXY_FLUSH_DELAY = "proxyFlushDelay";
     private static final String SECRET_FILE_NAME = "openhabcloud" + File.separator + "secret";
     private static final String DEFAULT_URL = "https://myopenhab.org/";
+    private static final long DEFAULT_UPDATE_WINDOW = 0;
 
     private Logger logger = LoggerFactory.getLogger(CloudService.class);
 
@@ -72,7 +76,10 @@ public class CloudService implements ActionService, CloudClientListener, EventSu
     protected EventPublisher eventPublisher = null;
 
     private boolean remoteAccessEnabled = true;
-    private Set<String> exposedItems = null;
+    /*
+     * Immutable set of exposed items, replaced as a whole on configuration changes
+     */
+    private volatile Set<String> exposedItems = Collections.emptySet();
     private int localPort;
 
     public CloudService() {
@@ -165,7 +172,7 @@ public class CloudService implements ActionService, CloudClientListener, EventSu
             cloudBaseUrl = DEFAULT_URL;
         }
 
-        exposedItems = new HashSet<>();
+        Set<String> items = new HashSet<>();
         Object expCfg = config.get(CFG_EXPOSE);
         if (expCfg instanceof String) {
             String value = (String) expCfg;
@@ -176,13 +183,16 @@ public class CloudService implements ActionService, CloudClientListener, EventSu
                 value = value.substring(0, value.length() - 1);
             }
             for (String itemName : Arrays.asList((value).split(","))) {
-                exposedItems.add(itemName.trim());
+                items.add(itemName.trim());
             }
         } else if (expCfg instanceof Iterable) {
             for (Object entry : ((Iterable<?>) expCfg)) {
-                exposedItems.add(entry.toString());
+                items.add(entry.toString());
             }
         }
+        exposedItems = Collections.unmodifiableSet(items);
+
+        long updateWindow = getLongConfig(config, CFG_UPDATE_WINDOW, DEFAULT_UPDATE_WINDOW);
 
         logger.debug("UUID = " + InstanceUUID.get() + ", secret = " + getSecret());
 
@@ -192,13 +202,34 @@ public class CloudService implements ActionService, CloudClientListener, EventSu
 
         String localBaseUrl = "http://localhost:" + localPort;
         cloudClient = new CloudClient(InstanceUUID.get(), getSecret(), cloudBaseUrl, localBaseUrl, remoteAccessEnabled,
-                exposedItems);
+                exposedItems, updateWindow);
         cloudClient.setOpenHABVersion(OpenHAB.getVersion());
+        cloudClient.setProxyFrameSize(
+                (int) getLongConfig(config, CFG_PROXY_FRAME_SIZE, CloudClient.DEFAULT_PROXY_FRAME_SIZE));
+        cloudClient.setProxyFlushDelay(
+                getLongConfig(config, CFG_PROXY_FLUSH_DELAY, CloudClient.DEFAULT_PROXY_FLUSH_DELAY));
         cloudClient.connect();
         cloudClient.setListener(this);
         NotificationAction.cloudService = this;
     }
 
+    /**
+     * Returns a numeric configuration value or the default, if it is not set or invalid
+     */
+    private long getLongConfig(Map<String, ?> config, String key, long defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value '{}' for '{}', using {}", value, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     @Override
     public String getActionClassName() {
         return NotificationAction.class.getCanonicalName();
@@ -333,7 +364,7 @@ public class CloudService implements ActionService, CloudClientListener, EventSu
     @Override
     public void receive(Event event) {
         ItemStateEvent ise = (ItemStateEvent) event;
-        if (exposedItems != null && exposedItems.contains(ise.getItemName())) {
+        if (exposedItems.contains(ise.getItemName())) {
             cloudClient.sendItemUpdate(ise.getItemName(), ise.getItemState().toString());
         }
     }
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.openhabcloud.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class coalesces item updates which are sent to the openHAB Cloud. Updates are collected
+ * for a time window, keeping only the latest state of each item, and are then passed to the
+ * {@link Sender} as one batch. The pending updates are held in one slot per item, so the memory
+ * used is bounded by the number of exposed items.
+ *
+ * @author agent - Initial contribution
+ */
+public class ItemUpdateCoalescer {
+
+    private final ScheduledExecutorService scheduler;
+    private final long windowMillis;
+    private final Sender sender;
+
+    /*
+     * Pending states by item name, in the order of their first update within the window
+     */
+    private Map<String, String> pendingUpdates = new LinkedHashMap<String, String>();
+    private ScheduledFuture<?> flushFuture;
+
+    private final AtomicLong sentCounter = new AtomicLong();
+    private final AtomicLong coalescedCounter = new AtomicLong();
+    private final AtomicLong droppedCounter = new AtomicLong();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructor of ItemUpdateCoalescer
+     *
+     * @param scheduler scheduler to run the delayed sends on
+     * @param windowMillis time window to collect updates in, 0 sends every update immediately
+     * @param sender the sender of the batches
+     */
+    public ItemUpdateCoalescer(ScheduledExecutorService scheduler, long windowMillis, Sender sender) {
+        this.scheduler = scheduler;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.sender = sender;
+    }
+
+    /**
+     * Adds an item update. A pending update of the same item is replaced.
+     *
+     * @param itemName the name of the item
+     * @param itemState updated item state
+     */
+    public void add(String itemName, String itemState) {
+        if (windowMillis == 0) {
+            Map<String, String> updates = new LinkedHashMap<String, String>(2);
+            updates.put(itemName, itemState);
+            send(updates);
+            return;
+        }
+        synchronized (this) {
+            if (pendingUpdates.put(itemName, itemState) != null) {
+                coalescedCounter.incrementAndGet();
+            }
+            if (flushFuture == null) {
+                flushFuture = scheduler.schedule(flushTask, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Sends all pending updates immediately
+     */
+    public void flush() {
+        Map<String, String> updates;
+        synchronized (this) {
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+            if (pendingUpdates.isEmpty()) {
+                return;
+            }
+            updates = pendingUpdates;
+            pendingUpdates = new LinkedHashMap<String, String>();
+        }
+        send(updates);
+    }
+
+    /**
+     * Discards all pending updates
+     */
+    public void stop() {
+        synchronized (this) {
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+            droppedCounter.addAndGet(pendingUpdates.size());
+            pendingUpdates.clear();
+        }
+    }
+
+    /**
+     * Returns the number of updates sent to the openHAB Cloud
+     */
+    public long getSentCount() {
+        return sentCounter.get();
+    }
+
+    /**
+     * Returns the number of updates which have been replaced by a newer update of the same item
+     */
+    public long getCoalescedCount() {
+        return coalescedCounter.get();
+    }
+
+    /**
+     * Returns the number of updates which could not be sent
+     */
+    public long getDroppedCount() {
+        return droppedCounter.get();
+    }
+
+    private void send(Map<String, String> updates) {
+        if (sender.sendItemUpdates(updates)) {
+            sentCounter.addAndGet(updates.size());
+        } else {
+            droppedCounter.addAndGet(updates.size());
+        }
+    }
+
+    /**
+     * The sender of coalesced item updates
+     */
+    public interface Sender {
+        /**
+         * Sends a batch of item updates
+         *
+         * @param updates states by item name
+         * @return true if the updates were sent
+         */
+        boolean sendItemUpdates(Map<String, String> updates);
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.chart;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the Largest-Triangle-Three-Buckets downsampling of the {@link SeriesDownsampler}.
+ *
+ * @author agent - Initial contribution
+ * @since 2.1.0
+ */
+public class SeriesDownsamplerTest {
+
+    @Test
+    public void keepsFirstAndLastPoint() {
+        SeriesDownsampler downsampler = SeriesDownsampler.create(SeriesDownsampler.LTTB, 0, 10);
+        for (int t = 0; t < 100; t++) {
+            downsampler.add(t, Math.sin(t / 10.0));
+        }
+        Series series = downsampler.finish();
+
+        assertEquals(0, series.getTime(0));
+        assertEquals(99, series.getTime(series.size() - 1));
+        assertEquals(Math.sin(9.9), series.getValue(series.size() - 1), 0);
+    }
+
+    @Test
+    public void keepsOnePointPerBucket() {
+        SeriesDownsampler downsampler = SeriesDownsampler.create(SeriesDownsampler.LTTB, 0, 10);
+        for (int t = 0; t < 100; t++) {
+            downsampler.add(t, t % 7);
+        }
+        Series series = downsampler.finish();
+
+        // the first point for bucket 0, one point of the buckets 1 to 8 and the last point for bucket 9
+        assertEquals(10, series.size());
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals(i, series.getTime(i) / 10);
+        }
+    }
+
+    @Test
+    public void keepsSpikesAndDips() {
+        SeriesDownsampler downsampler = SeriesDownsampler.create(SeriesDownsampler.LTTB, 0, 10);
+        for (int t = 0; t < 100; t++) {
+            downsampler.add(t, t == 45 ? 100 : t == 72 ? -100 : 20);
+        }
+        Series series = downsampler.finish();
+
+        assertTrue(contains(series, 45, 100));
+        assertTrue(contains(series, 72, -100));
+    }
+
+    @Test
+    public void keepsAllPointsOfSparseSeries() {
+        SeriesDownsampler downsampler = SeriesDownsampler.create("lttb", 0, 10);
+        downsampler.add(0, 1);
+        downsampler.add(15, 2);
+        downsampler.add(37, 3);
+        Series series = downsampler.finish();
+
+        assertEquals(3, series.size());
+        assertEquals(15, series.getTime(1));
+        assertEquals(37, series.getTime(2));
+    }
+
+    @Test
+    public void handlesSeriesWithOneOrTwoPoints() {
+        SeriesDownsampler downsampler = SeriesDownsampler.create(SeriesDownsampler.LTTB, 0, 10);
+        assertEquals(0, downsampler.finish().size());
+
+        downsampler = SeriesDownsampler.create(SeriesDownsampler.LTTB, 0, 10);
+        downsampler.add(5, 1);
+        assertEquals(1, downsampler.finish().size());
+
+        downsampler = SeriesDownsampler.create(SeriesDownsampler.LTTB, 0, 10);
+        downsampler.add(5, 1);
+        downsampler.add(6, 2);
+        Series series = downsampler.finish();
+        assertEquals(2, series.size());
+        assertEquals(6, series.getTime(1));
+    }
+
+    @Test
+    public void keepsAllPointsWithoutBucketSize() {
+        SeriesDownsampler downsampler = SeriesDownsampler.create(SeriesDownsampler.LTTB, 0, 0);
+        for (int t = 0; t < 100; t++) {
+            downsampler.add(t, t);
+        }
+        assertEquals(100, downsampler.finish().size());
+    }
+
+    @Test
+    public void selectsSamePointsAsReferenceImplementation() {
+        Random random = new Random(4711);
+        long start = 1000;
+        long bucketSize = 60;
+        List<Long> times = new ArrayList<Long>();
+        List<Double> values = new ArrayList<Double>();
+        long time = start;
+        SeriesDownsampler downsampler = SeriesDownsampler.create(SeriesDownsampler.LTTB, start, bucketSize);
+        for (int i = 0; i < 5000; i++) {
+            time += 1 + random.nextInt(30);
+            double value = 20 + 5 * Math.sin(i / 50.0) + random.nextGaussian();
+            downsampler.add(time, value);
+            times.add(time);
+            values.add(value);
+        }
+        Series series = downsampler.finish();
+        Series expected = lttb(times, values, start, bucketSize);
+
+        assertEquals(expected.size(), series.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTime(i), series.getTime(i));
+            assertEquals(expected.getValue(i), series.getValue(i), 0);
+        }
+    }
+
+    private static boolean contains(Series series, long time, double value) {
+        for (int i = 0; i < series.size(); i++) {
+            if (series.getTime(i) == time && series.getValue(i) == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Non streaming Largest-Triangle-Three-Buckets over the complete series, the first point is kept instead of
+     * its bucket and the last point instead of the last bucket, the points in between are grouped by their bucket.
+     */
+    private static Series lttb(List<Long> times, List<Double> values, long start, long bucketSize) {
+        Map<Long, List<Integer>> buckets = new LinkedHashMap<Long, List<Integer>>();
+        long firstBucket = (times.get(0) - start) / bucketSize;
+        for (int i = 1; i < times.size(); i++) {
+            long bucket = (times.get(i) - start) / bucketSize;
+            if (bucket == firstBucket) {
+                continue;
+            }
+            List<Integer> points = buckets.get(bucket);
+            if (points == null) {
+                points = new ArrayList<Integer>();
+                buckets.put(bucket, points);
+            }
+            points.add(i);
+        }
+        List<List<Integer>> bucketList = new ArrayList<List<Integer>>(buckets.values());
+
+        Series series = new Series();
+        int selected = 0;
+        series.add(times.get(0), values.get(0));
+        for (int b = 0; b < bucketList.size() - 1; b++) {
+            List<Integer> nextBucket = bucketList.get(b + 1);
+            double nextTime = 0;
+            double nextValue = 0;
+            for (int index : nextBucket) {
+                nextTime += times.get(index);
+                nextValue += values.get(index);
+            }
+            nextTime /= nextBucket.size();
+            nextValue /= nextBucket.size();
+
+            double maxArea = -1;
+            int maxIndex = -1;
+            for (int index : bucketList.get(b)) {
+                double area = Math.abs((times.get(selected) - nextTime) * (values.get(index) - values.get(selected))
+                        - (times.get(selected) - times.get(index)) * (nextValue - values.get(selected)));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = index;
+                }
+            }
+            selected = maxIndex;
+            series.add(times.get(selected), values.get(selected));
+        }
+        if (times.size() > 1) {
+            series.add(times.get(times.size() - 1), values.get(values.size() - 1));
+        }
+        return series;
+    }
+}
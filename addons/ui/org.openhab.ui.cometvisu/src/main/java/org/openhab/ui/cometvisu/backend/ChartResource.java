@@ -8,12 +8,18 @@
  */
 package org.openhab.ui.cometvisu.backend;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -21,6 +27,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
 
 import javax.ws.rs.GET;
@@ -31,12 +38,17 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.eclipse.smarthome.core.events.Event;
+import org.eclipse.smarthome.core.events.EventFilter;
+import org.eclipse.smarthome.core.events.EventSubscriber;
 import org.eclipse.smarthome.core.items.GroupItem;
 import org.eclipse.smarthome.core.items.Item;
 import org.eclipse.smarthome.core.items.ItemNotFoundException;
 import org.eclipse.smarthome.core.items.ItemRegistry;
+import org.eclipse.smarthome.core.items.events.ItemStateEvent;
 import org.eclipse.smarthome.core.library.types.DecimalType;
 import org.eclipse.smarthome.core.persistence.FilterCriteria;
 import org.eclipse.smarthome.core.persistence.FilterCriteria.Ordering;
@@ -45,6 +57,9 @@ import org.eclipse.smarthome.core.persistence.PersistenceService;
 import org.eclipse.smarthome.core.persistence.QueryablePersistenceService;
 import org.eclipse.smarthome.io.rest.RESTResource;
 import org.openhab.ui.cometvisu.internal.Config;
+import org.openhab.ui.cometvisu.internal.chart.Series;
+import org.openhab.ui.cometvisu.internal.chart.SeriesCache;
+import org.openhab.ui.cometvisu.internal.chart.SeriesDownsampler;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.core.FetchData;
 import org.rrd4j.core.FetchRequest;
@@ -57,27 +72,43 @@ import org.slf4j.LoggerFactory;
  * handles requests for chart series data from the CometVisu client
  * used by the diagram plugin
  *
+ * Series from other persistence services than rrd4j are downsampled to the
+ * requested resolution and cached until a new value of the item is
+ * persisted.
+ *
  * @author Tobias Bräutigam
  * @since 2.0.0
  *
  */
 @Path(Config.COMETVISU_BACKEND_ALIAS + "/" + Config.COMETVISU_BACKEND_CHART_ALIAS)
-public class ChartResource implements RESTResource {
+public class ChartResource implements RESTResource, EventSubscriber {
     private static final Logger logger = LoggerFactory.getLogger(ChartResource.class);
 
     // pattern RRDTool uses to format doubles in XML files
     static final String PATTERN = "0.0000000000E00";
 
-    static final DecimalFormat df;
+    // DecimalFormat is not thread safe
+    static final ThreadLocal<DecimalFormat> df = new ThreadLocal<DecimalFormat>() {
+        @Override
+        protected DecimalFormat initialValue() {
+            DecimalFormat format = (DecimalFormat) NumberFormat.getNumberInstance(Locale.ENGLISH);
+            format.applyPattern(PATTERN);
+            return format;
+        }
+    };
 
     protected final static String RRD_FOLDER = org.eclipse.smarthome.config.core.ConfigConstants.getUserDataFolder()
             + File.separator + "persistence" + File.separator + "rrd4j";
 
-    static {
-        df = (DecimalFormat) NumberFormat.getNumberInstance(Locale.ENGLISH);
-        df.applyPattern(PATTERN);
-        // df.setPositivePrefix("+");
-    }
+    // number of recently requested series which are cached
+    private static final int CACHE_SIZE = 50;
+
+    // requests for ranges which differ less than this are served from the same
+    // cached series, unless the resolution is coarser
+    private static final long MIN_CACHE_QUANTUM = 10000L;
+    private static final long MAX_CACHE_QUANTUM = 60000L;
+
+    private final SeriesCache seriesCache = new SeriesCache(CACHE_SIZE);
 
     static protected Map<String, QueryablePersistenceService> persistenceServices = new HashMap<String, QueryablePersistenceService>();
 
@@ -108,6 +139,10 @@ public class ChartResource implements RESTResource {
         this.itemRegistry = null;
     }
 
+    protected void deactivate() {
+        seriesCache.clear();
+    }
+
     @GET
     @Produces({ MediaType.APPLICATION_JSON })
     public Response getChartSeries(@Context HttpHeaders headers, @QueryParam("rrd") String itemName,
@@ -119,7 +154,8 @@ public class ChartResource implements RESTResource {
         String responseType = MediaType.APPLICATION_JSON;
 
         // RRD specific: no equivalent in PersistenceService known
-        ConsolFun consilidationFunction = ConsolFun.valueOf(consFunction);
+        ConsolFun consilidationFunction = SeriesDownsampler.LTTB.equalsIgnoreCase(consFunction) ? ConsolFun.AVERAGE
+                : ConsolFun.valueOf(consFunction);
 
         // read the start/end time as they are provided in the RRD-way, we use
         // the RRD4j to read them
@@ -161,7 +197,7 @@ public class ChartResource implements RESTResource {
             if (persistenceService.getId().equals("rrd4j")) {
                 data = getRrdSeries(persistenceService, item, consilidationFunction, startTime, endTime, resolution);
             } else {
-                data = getPersistenceSeries(persistenceService, item, startTime, endTime, resolution);
+                data = getPersistenceSeries(persistenceService, item, consFunction, startTime, endTime, resolution);
             }
             return Response.ok(data, responseType).build();
         } catch (ItemNotFoundException e1) {
@@ -171,9 +207,35 @@ public class ChartResource implements RESTResource {
         return Response.serverError().build();
     }
 
-    public Object getPersistenceSeries(QueryablePersistenceService persistenceService, Item item, Date timeBegin,
-            Date timeEnd, long resolution) {
-        Map<Long, ArrayList<String>> data = new HashMap<Long, ArrayList<String>>();
+    /**
+     * returns the series of the persistence service downsampled to the
+     * resolution, the series is streamed as an array of
+     * [[timestamp,[data]]]
+     *
+     * @param persistenceService
+     * @param item
+     * @param method
+     *            - MIN, MAX, AVERAGE, FIRST, LAST or LTTB
+     * @param timeBegin
+     * @param timeEnd
+     * @param resolution
+     *            - in seconds, 0 returns all values
+     * @return
+     */
+    public Object getPersistenceSeries(QueryablePersistenceService persistenceService, Item item, String method,
+            Date timeBegin, Date timeEnd, long resolution) {
+        long bucketSize = Math.max(0, resolution) * 1000L;
+
+        // round the range so that repeated requests for a range ending now
+        // can be served from the cache
+        long quantum = Math.min(Math.max(bucketSize, MIN_CACHE_QUANTUM), MAX_CACHE_QUANTUM);
+        String key = persistenceService.getId() + ":" + item.getName() + ":" + method + ":" + resolution + ":"
+                + timeBegin.getTime() / quantum + ":" + timeEnd.getTime() / quantum;
+        Series series = seriesCache.get(key);
+        if (series != null) {
+            logger.debug("serving cached series of item '{}' with '{}' points", item.getName(), series.size());
+            return new SeriesOutput(series);
+        }
 
         // Define the data filter
         FilterCriteria filter = new FilterCriteria();
@@ -182,25 +244,32 @@ public class ChartResource implements RESTResource {
         filter.setItemName(item.getName());
         filter.setOrdering(Ordering.ASCENDING);
 
+        // read the generation before querying, so an update meanwhile
+        // prevents caching an outdated series
+        long generation = seriesCache.getGeneration(item.getName());
+
         // Get the data from the persistence store
         Iterable<HistoricItem> result = persistenceService.query(filter);
         Iterator<HistoricItem> it = result.iterator();
 
         // Iterate through the data
+        SeriesDownsampler downsampler = SeriesDownsampler.create(method, timeBegin.getTime(), bucketSize);
         int dataCounter = 0;
         while (it.hasNext()) {
             dataCounter++;
             HistoricItem historicItem = it.next();
             org.eclipse.smarthome.core.types.State state = historicItem.getState();
             if (state instanceof DecimalType) {
-                ArrayList<String> vals = new ArrayList<String>();
-                vals.add(formatDouble(((DecimalType) state).doubleValue(), "null", true));
-                data.put(historicItem.getTimestamp().getTime(), vals);
+                downsampler.add(historicItem.getTimestamp().getTime(), ((DecimalType) state).doubleValue());
             }
         }
-        logger.debug("'{}' querying item '{}' from '{}' to '{}' => '{}' results", persistenceService.getId(),
-                filter.getItemName(), filter.getBeginDate(), filter.getEndDate(), dataCounter);
-        return convertToRrd(data);
+        series = downsampler.finish();
+        seriesCache.put(key, item.getName(), series, generation);
+
+        logger.debug("'{}' querying item '{}' from '{}' to '{}' => '{}' results, '{}' points",
+                persistenceService.getId(), filter.getItemName(), filter.getBeginDate(), filter.getEndDate(),
+                dataCounter, series.size());
+        return new SeriesOutput(series);
     }
 
     /**
@@ -235,10 +304,12 @@ public class ChartResource implements RESTResource {
         } catch (FileNotFoundException e) {
             // rrd file does not exist, fallback to generic persistance service
             logger.debug("no rrd file found '{}'", (RRD_FOLDER + File.separator + item.getName() + ".rrd"));
-            return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
+            return getPersistenceSeries(persistenceService, item, consilidationFunction.name(), timeBegin, timeEnd,
+                    resolution);
         } catch (Exception e) {
             logger.error(e.getLocalizedMessage() + ": fallback to generic persistance service");
-            return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
+            return getPersistenceSeries(persistenceService, item, consilidationFunction.name(), timeBegin, timeEnd,
+                    resolution);
         }
         return convertToRrd(data);
     }
@@ -292,8 +363,61 @@ public class ChartResource implements RESTResource {
             return nanString;
         }
         if (forceExponents) {
-            return df.format(x);
+            return df.get().format(x);
         }
         return "" + x;
     }
+
+    @Override
+    public Set<String> getSubscribedEventTypes() {
+        return Collections.singleton(ItemStateEvent.TYPE);
+    }
+
+    @Override
+    public EventFilter getEventFilter() {
+        return null;
+    }
+
+    @Override
+    public void receive(Event event) {
+        // persistence services store the updates of an item, so the cached
+        // series are outdated
+        String itemName = ((ItemStateEvent) event).getItemName();
+        if (seriesCache.invalidate(itemName)) {
+            logger.trace("invalidated cached series of item '{}'", itemName);
+        }
+    }
+
+    /**
+     * Writes a series as JSON array of [[timestamp,[data]]] without creating
+     * an object for every point.
+     *
+     * @author agent - Initial contribution
+     * @since 2.1.0
+     */
+    private static class SeriesOutput implements StreamingOutput {
+        private final Series series;
+
+        public SeriesOutput(Series series) {
+            this.series = series;
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            writer.write('[');
+            for (int i = 0; i < series.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write('[');
+                writer.write(Long.toString(series.getTime(i)));
+                writer.write(",[\"");
+                writer.write(formatDouble(series.getValue(i), "null", true));
+                writer.write("\"]]");
+            }
+            writer.write(']');
+            writer.flush();
+        }
+    }
 }
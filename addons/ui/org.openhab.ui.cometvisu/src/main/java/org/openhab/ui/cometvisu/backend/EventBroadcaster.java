@@ -22,10 +22,8 @@ import org.eclipse.smarthome.core.types.State;
 public interface EventBroadcaster {
     /**
      * Broadcasts an event described by the given parameters to all currently
-     * listening clients.
+     * listening clients which requested the item of the event.
      *
-     * @param item
-     *            - the item that should be broadcasted
      * @param eventObject
      *            - bean that can be converted to a JSON object.
      */
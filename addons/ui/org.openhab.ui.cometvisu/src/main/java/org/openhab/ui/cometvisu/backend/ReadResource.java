@@ -11,12 +11,19 @@ package org.openhab.ui.cometvisu.backend;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -35,7 +42,7 @@ import org.eclipse.smarthome.core.items.ItemRegistry;
 import org.eclipse.smarthome.core.types.State;
 import org.eclipse.smarthome.io.rest.RESTResource;
 import org.glassfish.jersey.media.sse.EventOutput;
-import org.glassfish.jersey.media.sse.SseBroadcaster;
+import org.glassfish.jersey.media.sse.OutboundEvent;
 import org.glassfish.jersey.media.sse.SseFeature;
 import org.openhab.ui.cometvisu.backend.beans.StateBean;
 import org.openhab.ui.cometvisu.internal.Config;
@@ -48,6 +55,9 @@ import org.slf4j.LoggerFactory;
  * handles read request from the CometVisu client every request initializes a
  * SSE communication
  *
+ * Every request creates its own subscription with the requested items. State
+ * changes are only sent to the subscriptions which contain the changed item.
+ *
  * @author Tobias Bräutigam
  * @since 2.0.0
  */
@@ -55,16 +65,19 @@ import org.slf4j.LoggerFactory;
 public class ReadResource implements EventBroadcaster, RESTResource {
     private static final Logger logger = LoggerFactory.getLogger(ReadResource.class);
 
-    private SseBroadcaster broadcaster = new SseBroadcaster();
+    private static final long KEEPALIVE_INTERVAL = 30;
 
-    private final ExecutorService executorService;
+    private final ScheduledExecutorService executorService;
 
     private ItemRegistry itemRegistry;
 
     private StateEventListener stateEventListener;
 
-    private List<String> itemNames = new ArrayList<String>();
-    private Map<Item, Map<String, Class<? extends State>>> items = new HashMap<Item, Map<String, Class<? extends State>>>();
+    // all active subscriptions
+    private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<Subscription>();
+
+    // openHAB item name -> subscriptions which requested the item
+    private final ConcurrentMap<String, Set<Subscription>> subscriptionsByItem = new ConcurrentHashMap<String, Set<Subscription>>();
 
     @Context
     private UriInfo uriInfo;
@@ -78,11 +91,25 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     private Collection<ItemFactory> itemFactories = new CopyOnWriteArrayList<ItemFactory>();
 
     public ReadResource() {
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+        this.executorService.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                sendKeepAlive();
+            }
+        }, KEEPALIVE_INTERVAL, KEEPALIVE_INTERVAL, TimeUnit.SECONDS);
         this.stateEventListener = new StateEventListener();
         this.stateEventListener.setEventBroadcaster(this);
     }
 
+    protected void deactivate() {
+        executorService.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            unsubscribe(subscription);
+        }
+    }
+
     protected void setItemRegistry(ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
     }
@@ -100,10 +127,11 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     }
 
     /**
-     * Subscribes the connecting client to the stream of events filtered by the
-     * given eventFilter.
+     * Subscribes the connecting client to the state changes of the requested
+     * items.
      *
-     * @param eventFilter
+     * @param itemNames
+     *            - the CometVisu item names, optionally prefixed with a type
      * @return {@link EventOutput} object associated with the incoming
      *         connection.
      * @throws IOException
@@ -115,57 +143,179 @@ public class ReadResource implements EventBroadcaster, RESTResource {
             @QueryParam("t") long time) throws IOException, InterruptedException {
         final EventOutput eventOutput = new EventOutput();
 
-        this.itemNames = itemNames;
-
-        broadcaster.add(eventOutput);
-
-        // get all requested items and send their states to the client
-        items = new HashMap<Item, Map<String, Class<? extends State>>>();
-        // send the current states of all items to the client
-        if (this.itemRegistry != null) {
-            List<StateBean> states = new ArrayList<StateBean>();
-            for (String cvItemName : itemNames) {
-                try {
-                    String[] parts = cvItemName.split(":");
-                    String ohItemName = cvItemName;
-                    Class<? extends State> stateClass = null;
-                    if (parts.length == 2) {
-                        String classPrefix = parts[0].toLowerCase();
-                        if (Config.itemTypeMapper.containsKey(classPrefix)) {
-                            stateClass = Config.itemTypeMapper.get(classPrefix);
-                            classPrefix += ":";
-                        } else {
-                            logger.debug("no type found for '{}'", classPrefix);
-                            classPrefix = "";
-                        }
-                        ohItemName = parts[1];
-                    }
-                    Item item = this.itemRegistry.getItem(ohItemName);
-                    if (!items.containsKey(item)) {
-                        items.put(item, new HashMap<String, Class<? extends State>>());
-                    }
-                    items.get(item).put(cvItemName, stateClass);
-                    StateBean itemState = new StateBean();
-                    itemState.name = cvItemName;
-
-                    if (stateClass != null) {
-                        itemState.state = item.getStateAs(stateClass).toString();
-                        logger.trace("get state of '{}' as '{}' == '{}'", item, stateClass, itemState.state);
-                    } else {
-                        itemState.state = item.getState().toString();
+        // openHAB item name -> CometVisu item name -> requested state type
+        Map<String, Map<String, Class<? extends State>>> items = new HashMap<String, Map<String, Class<? extends State>>>();
+        for (String cvItemName : itemNames) {
+            String ohItemName = getItemName(cvItemName);
+            if (!items.containsKey(ohItemName)) {
+                items.put(ohItemName, new HashMap<String, Class<? extends State>>());
+            }
+            items.get(ohItemName).put(cvItemName, getStateClass(cvItemName));
+        }
+
+        final Subscription subscription = new Subscription(eventOutput, items);
+        subscribe(subscription);
+
+        // send the current states of all items to the client, state changes
+        // are queued after this task so the client never receives outdated states
+        executorService.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                write(subscription, SseUtil.buildEvent(getStates(subscription)));
+            }
+        });
+
+        return eventOutput;
+    }
+
+    /**
+     * returns the current states of all items of the subscription
+     */
+    private List<StateBean> getStates(Subscription subscription) {
+        List<StateBean> states = new ArrayList<StateBean>();
+        int count = 0;
+        for (String itemName : subscription.getItemNames()) {
+            Map<String, Class<? extends State>> clientItems = subscription.getClientItems(itemName);
+            count += clientItems.size();
+            Item item = getItem(itemName);
+            if (item == null) {
+                continue;
+            }
+            for (Map.Entry<String, Class<? extends State>> clientItem : clientItems.entrySet()) {
+                StateBean itemState = new StateBean();
+                itemState.name = clientItem.getKey();
+
+                Class<? extends State> stateClass = clientItem.getValue();
+                if (stateClass != null) {
+                    itemState.state = item.getStateAs(stateClass).toString();
+                    logger.trace("get state of '{}' as '{}' == '{}'", item, stateClass, itemState.state);
+                } else {
+                    itemState.state = item.getState().toString();
+                }
+                states.add(itemState);
+            }
+        }
+        logger.debug("initially sending " + states.size() + "/" + count + " item states");
+        return states;
+    }
+
+    /**
+     * adds the subscription to the item index and listens to state changes of
+     * its items
+     */
+    private void subscribe(Subscription subscription) {
+        synchronized (subscriptionsByItem) {
+            subscriptions.add(subscription);
+            for (String itemName : subscription.getItemNames()) {
+                Set<Subscription> itemSubscriptions = subscriptionsByItem.get(itemName);
+                if (itemSubscriptions == null) {
+                    itemSubscriptions = new CopyOnWriteArraySet<Subscription>();
+                    subscriptionsByItem.put(itemName, itemSubscriptions);
+                    addStateChangeListener(itemName);
+                }
+                itemSubscriptions.add(subscription);
+            }
+        }
+        logger.debug("added subscription for {} items, {} subscriptions active",
+                subscription.getItemNames().size(), subscriptions.size());
+    }
+
+    /**
+     * closes the subscription, removes it from the item index and stops
+     * listening to items which are not requested by any other subscription
+     */
+    private void unsubscribe(Subscription subscription) {
+        synchronized (subscriptionsByItem) {
+            if (!subscriptions.remove(subscription)) {
+                return;
+            }
+            for (String itemName : subscription.getItemNames()) {
+                Set<Subscription> itemSubscriptions = subscriptionsByItem.get(itemName);
+                if (itemSubscriptions != null) {
+                    itemSubscriptions.remove(subscription);
+                    if (itemSubscriptions.isEmpty()) {
+                        subscriptionsByItem.remove(itemName);
+                        removeStateChangeListener(itemName);
                     }
-                    states.add(itemState);
-                } catch (ItemNotFoundException e) {
-                    logger.error(e.getLocalizedMessage());
                 }
             }
-            logger.debug("initially broadcasting " + states.size() + "/" + itemNames.size() + " item states");
-            broadcaster.broadcast(SseUtil.buildEvent(states));
         }
-        // listen to state changes of the requested items
-        registerItems();
+        subscription.close();
+        logger.debug("removed subscription, {} subscriptions active", subscriptions.size());
+    }
 
-        return eventOutput;
+    /**
+     * writes the event to the subscription, the subscription is removed if the
+     * connection is closed
+     */
+    private void write(Subscription subscription, OutboundEvent event) {
+        if (!subscription.write(event)) {
+            unsubscribe(subscription);
+        }
+    }
+
+    /**
+     * sends a comment to all subscriptions to detect and remove closed
+     * connections
+     */
+    private void sendKeepAlive() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        OutboundEvent event = new OutboundEvent.Builder().comment("keepalive").build();
+        for (Subscription subscription : subscriptions) {
+            write(subscription, event);
+        }
+    }
+
+    private void addStateChangeListener(String itemName) {
+        Item item = getItem(itemName);
+        if (item instanceof GenericItem) {
+            ((GenericItem) item).addStateChangeListener(stateEventListener);
+        }
+    }
+
+    private void removeStateChangeListener(String itemName) {
+        Item item = getItem(itemName);
+        if (item instanceof GenericItem) {
+            ((GenericItem) item).removeStateChangeListener(stateEventListener);
+        }
+    }
+
+    private Item getItem(String itemName) {
+        if (itemRegistry != null) {
+            try {
+                return itemRegistry.getItem(itemName);
+            } catch (ItemNotFoundException e) {
+                logger.debug(e.getLocalizedMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * returns the openHAB item name of a CometVisu item name
+     */
+    private String getItemName(String cvItemName) {
+        String[] parts = cvItemName.split(":");
+        return parts.length == 2 ? parts[1] : cvItemName;
+    }
+
+    /**
+     * returns the requested state type of a CometVisu item name or null if the
+     * item name has no known type prefix
+     */
+    private Class<? extends State> getStateClass(String cvItemName) {
+        String[] parts = cvItemName.split(":");
+        if (parts.length == 2) {
+            String classPrefix = parts[0].toLowerCase();
+            if (Config.itemTypeMapper.containsKey(classPrefix)) {
+                return Config.itemTypeMapper.get(classPrefix);
+            }
+            logger.debug("no type found for '{}'", classPrefix);
+        }
+        return null;
     }
 
     /**
@@ -173,10 +323,8 @@ public class ReadResource implements EventBroadcaster, RESTResource {
      */
     @Override
     public void registerItems() {
-        for (Item item : items.keySet()) {
-            if (item instanceof GenericItem) {
-                ((GenericItem) item).addStateChangeListener(stateEventListener);
-            }
+        for (String itemName : subscriptionsByItem.keySet()) {
+            addStateChangeListener(itemName);
         }
     }
 
@@ -189,7 +337,7 @@ public class ReadResource implements EventBroadcaster, RESTResource {
      */
     @Override
     public void registerItem(Item item) {
-        if (item == null || items.containsKey(item) || !itemNames.contains(item.getName()))
+        if (item == null || !subscriptionsByItem.containsKey(item.getName()))
             return;
         if (item instanceof GenericItem) {
             ((GenericItem) item).addStateChangeListener(stateEventListener);
@@ -197,28 +345,24 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     }
 
     /**
-     * listens to state changes of the given item, if it is part of the
-     * requested items
+     * stops listening to state changes of the given item
      *
      * @param item
-     *            - the new item, that should be listened to
+     *            - the item, that should not be listened to anymore
      */
     @Override
     public void unregisterItem(Item item) {
-        if (item == null || items.containsKey(item) || !itemNames.contains(item.getName()))
+        if (item == null)
             return;
         if (item instanceof GenericItem) {
             ((GenericItem) item).removeStateChangeListener(stateEventListener);
-            items.remove(item);
         }
     }
 
     /**
-     * Broadcasts an event described by the given parameters to all currently
-     * listening clients.
+     * Sends an event described by the given parameters to all clients which
+     * requested the item. The event is serialized once for all clients.
      *
-     * @param item
-     *            - the item which has changed
      * @param eventObject
      *            - bean that can be converted to a JSON object.
      */
@@ -228,13 +372,103 @@ public class ReadResource implements EventBroadcaster, RESTResource {
 
             @Override
             public void run() {
-                broadcaster.broadcast(SseUtil.buildEvent(eventObject));
+                Set<Subscription> receivers;
+                String cvItemName = null;
+                if (eventObject instanceof StateBean) {
+                    cvItemName = ((StateBean) eventObject).name;
+                    receivers = subscriptionsByItem.get(getItemName(cvItemName));
+                } else {
+                    receivers = subscriptions;
+                }
+                if (receivers == null || receivers.isEmpty()) {
+                    return;
+                }
+                OutboundEvent event = null;
+                for (Subscription subscription : receivers) {
+                    if (cvItemName == null || subscription.contains(cvItemName)) {
+                        if (event == null) {
+                            event = SseUtil.buildEvent(eventObject);
+                        }
+                        write(subscription, event);
+                    }
+                }
             }
         });
     }
 
     @Override
     public Map<String, Class<? extends State>> getClientItems(Item item) {
-        return items.get(item);
+        Set<Subscription> itemSubscriptions = subscriptionsByItem.get(item.getName());
+        if (itemSubscriptions == null || itemSubscriptions.isEmpty()) {
+            return null;
+        }
+        Map<String, Class<? extends State>> clientItems = new HashMap<String, Class<? extends State>>();
+        for (Subscription subscription : itemSubscriptions) {
+            clientItems.putAll(subscription.getClientItems(item.getName()));
+        }
+        return clientItems;
+    }
+
+    /**
+     * The connection of one client with the items it requested.
+     *
+     * @author agent - Initial contribution
+     * @since 2.1.0
+     */
+    private static class Subscription {
+        private final EventOutput eventOutput;
+
+        private final Map<String, Map<String, Class<? extends State>>> items;
+
+        private final Set<String> cvItemNames = new HashSet<String>();
+
+        public Subscription(EventOutput eventOutput, Map<String, Map<String, Class<? extends State>>> items) {
+            this.eventOutput = eventOutput;
+            this.items = items;
+            for (Map<String, Class<? extends State>> clientItems : items.values()) {
+                cvItemNames.addAll(clientItems.keySet());
+            }
+        }
+
+        public Set<String> getItemNames() {
+            return items.keySet();
+        }
+
+        public Map<String, Class<? extends State>> getClientItems(String itemName) {
+            Map<String, Class<? extends State>> clientItems = items.get(itemName);
+            if (clientItems == null) {
+                return Collections.emptyMap();
+            }
+            return clientItems;
+        }
+
+        public boolean contains(String cvItemName) {
+            return cvItemNames.contains(cvItemName);
+        }
+
+        /**
+         * writes the event to the client, returns false if the connection is
+         * closed
+         */
+        public boolean write(OutboundEvent event) {
+            if (eventOutput.isClosed()) {
+                return false;
+            }
+            try {
+                eventOutput.write(event);
+                return true;
+            } catch (IOException e) {
+                logger.debug("closing subscription: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        public void close() {
+            try {
+                eventOutput.close();
+            } catch (IOException e) {
+                logger.debug(e.getMessage());
+            }
+        }
     }
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.chart;
+
+import java.util.Arrays;
+
+/**
+ * A chart series of timestamps and values, stored in primitive arrays to keep
+ * large series small in memory.
+ *
+ * @author agent - Initial contribution
+ * @since 2.1.0
+ */
+public class Series {
+
+    private long[] times;
+
+    private double[] values;
+
+    private int size;
+
+    public Series() {
+        this(64);
+    }
+
+    public Series(int capacity) {
+        times = new long[Math.max(1, capacity)];
+        values = new double[times.length];
+    }
+
+    /**
+     * adds a point to the end of the series
+     *
+     * @param time
+     *            - the timestamp in milliseconds
+     * @param value
+     *            - the value
+     */
+    public void add(long time, double value) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        times[size] = time;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.chart;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the recently requested series. The least recently used
+ * series is removed if the cache is full.
+ *
+ * @author agent - Initial contribution
+ * @since 2.1.0
+ */
+public class SeriesCache {
+
+    private final Map<String, CachedSeries> entries;
+
+    // generation of every requested item, incremented on every invalidation
+    // of the item
+    private final Map<String, Long> generations = new HashMap<String, Long>();
+
+    public SeriesCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, CachedSeries>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedSeries> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * returns the cached series or null
+     */
+    public synchronized Series get(String key) {
+        CachedSeries cachedSeries = entries.get(key);
+        return cachedSeries == null ? null : cachedSeries.series;
+    }
+
+    /**
+     * returns the current generation of the item, which is incremented on
+     * every invalidation of the item
+     */
+    public synchronized long getGeneration(String itemName) {
+        Long generation = generations.get(itemName);
+        if (generation == null) {
+            generation = 0L;
+            generations.put(itemName, generation);
+        }
+        return generation;
+    }
+
+    /**
+     * adds a series of an item to the cache, the series is not added if the
+     * item has been invalidated since the given generation
+     */
+    public synchronized void put(String key, String itemName, Series series, long generation) {
+        Long current = generations.get(itemName);
+        if (current != null && current == generation) {
+            entries.put(key, new CachedSeries(itemName, series));
+        }
+    }
+
+    /**
+     * removes all series of the item
+     *
+     * @return true if a series has been removed
+     */
+    public synchronized boolean invalidate(String itemName) {
+        Long generation = generations.get(itemName);
+        if (generation == null) {
+            // the item has never been requested
+            return false;
+        }
+        generations.put(itemName, generation + 1);
+        boolean removed = false;
+        Iterator<CachedSeries> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().itemName.equals(itemName)) {
+                it.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * removes all series
+     */
+    public synchronized void clear() {
+        for (Map.Entry<String, Long> entry : generations.entrySet()) {
+            entry.setValue(entry.getValue() + 1);
+        }
+        entries.clear();
+    }
+
+    private static class CachedSeries {
+        private final String itemName;
+        private final Series series;
+
+        public CachedSeries(String itemName, Series series) {
+            this.itemName = itemName;
+            this.series = series;
+        }
+    }
+}
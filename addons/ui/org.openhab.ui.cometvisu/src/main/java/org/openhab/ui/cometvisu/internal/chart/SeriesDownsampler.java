@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.chart;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a series to at most one point per time bucket while the points are
+ * added, so the raw series never has to be kept in memory. The points must be
+ * added in ascending order.
+ *
+ * @author agent - Initial contribution
+ * @since 2.1.0
+ */
+public abstract class SeriesDownsampler {
+
+    /**
+     * Largest-Triangle-Three-Buckets, keeps the visual shape of the series
+     */
+    public static final String LTTB = "LTTB";
+
+    protected final Series series = new Series();
+
+    protected final long start;
+
+    protected final long bucketSize;
+
+    protected SeriesDownsampler(long start, long bucketSize) {
+        this.start = start;
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * creates a downsampler for the given method
+     *
+     * @param method
+     *            - MIN, MAX, AVERAGE, FIRST, LAST or LTTB
+     * @param start
+     *            - the start of the first bucket in milliseconds
+     * @param bucketSize
+     *            - the bucket size in milliseconds, if 0 all points are kept
+     */
+    public static SeriesDownsampler create(String method, long start, long bucketSize) {
+        if (bucketSize <= 0) {
+            return new RawDownsampler();
+        }
+        if (LTTB.equalsIgnoreCase(method)) {
+            return new LttbDownsampler(start, bucketSize);
+        }
+        return new BucketDownsampler(method, start, bucketSize);
+    }
+
+    /**
+     * adds the next point of the series
+     */
+    public abstract void add(long time, double value);
+
+    /**
+     * adds the remaining points and returns the downsampled series
+     */
+    public abstract Series finish();
+
+    protected long getBucket(long time) {
+        return time < start ? 0 : (time - start) / bucketSize;
+    }
+
+    /**
+     * Keeps all points.
+     */
+    private static class RawDownsampler extends SeriesDownsampler {
+
+        public RawDownsampler() {
+            super(0, 0);
+        }
+
+        @Override
+        public void add(long time, double value) {
+            series.add(time, value);
+        }
+
+        @Override
+        public Series finish() {
+            return series;
+        }
+    }
+
+    /**
+     * Consolidates the points of a bucket to one point at the start of the
+     * bucket, like rrd4j does.
+     */
+    private static class BucketDownsampler extends SeriesDownsampler {
+        private final String method;
+
+        private long bucket = -1;
+        private int count;
+        private double min;
+        private double max;
+        private double sum;
+        private double first;
+        private double last;
+
+        public BucketDownsampler(String method, long start, long bucketSize) {
+            super(start, bucketSize);
+            this.method = method == null ? "AVERAGE" : method.toUpperCase();
+        }
+
+        @Override
+        public void add(long time, double value) {
+            long valueBucket = getBucket(time);
+            if (valueBucket != bucket) {
+                flush();
+                bucket = valueBucket;
+                min = value;
+                max = value;
+                sum = 0;
+                first = value;
+            }
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            last = value;
+        }
+
+        @Override
+        public Series finish() {
+            flush();
+            return series;
+        }
+
+        private void flush() {
+            if (count == 0) {
+                return;
+            }
+            double value;
+            switch (method) {
+                case "MIN":
+                    value = min;
+                    break;
+                case "MAX":
+                    value = max;
+                    break;
+                case "FIRST":
+                    value = first;
+                    break;
+                case "LAST":
+                    value = last;
+                    break;
+                case "TOTAL":
+                    value = sum;
+                    break;
+                default:
+                    value = sum / count;
+                    break;
+            }
+            series.add(start + bucket * bucketSize, value);
+            count = 0;
+        }
+    }
+
+    /**
+     * Streaming Largest-Triangle-Three-Buckets. Like the standard bucket
+     * layout, the first and the last point get buckets of their own: the first
+     * point stands for the bucket it falls into and the last point for the last
+     * bucket. From every bucket in between the point is selected, which forms
+     * the largest triangle with the previously selected point and the average
+     * of the next bucket. Only the points of two buckets are held in memory.
+     */
+    private static class LttbDownsampler extends SeriesDownsampler {
+        private Bucket current = new Bucket();
+        private Bucket next = new Bucket();
+
+        private boolean selected;
+        private long selectedTime;
+        private double selectedValue;
+
+        // the bucket of the first point, its other points are only kept if one is the last point
+        private long firstBucket;
+        private boolean skipped;
+        private long skippedTime;
+        private double skippedValue;
+
+        public LttbDownsampler(long start, long bucketSize) {
+            super(start, bucketSize);
+        }
+
+        @Override
+        public void add(long time, double value) {
+            if (!selected) {
+                select(time, value);
+                firstBucket = getBucket(time);
+                return;
+            }
+            long valueBucket = getBucket(time);
+            if (valueBucket == firstBucket) {
+                skipped = true;
+                skippedTime = time;
+                skippedValue = value;
+                return;
+            }
+            if (current.isEmpty() || valueBucket == current.index) {
+                current.add(valueBucket, time, value);
+            } else if (next.isEmpty() || valueBucket == next.index) {
+                next.add(valueBucket, time, value);
+            } else {
+                selectFromCurrent(next.getAverageTime(), next.getAverageValue());
+                Bucket tmp = current;
+                current = next;
+                next = tmp;
+                next.clear();
+                next.add(valueBucket, time, value);
+            }
+        }
+
+        @Override
+        public Series finish() {
+            Bucket last = next.isEmpty() ? current : next;
+            if (!next.isEmpty()) {
+                selectFromCurrent(next.getAverageTime(), next.getAverageValue());
+            }
+            if (!last.isEmpty()) {
+                select(last.times[last.size - 1], last.values[last.size - 1]);
+            } else if (skipped) {
+                // all points are in the first bucket
+                select(skippedTime, skippedValue);
+            }
+            skipped = false;
+            current.clear();
+            next.clear();
+            return series;
+        }
+
+        private void selectFromCurrent(double nextTime, double nextValue) {
+            int selectedIndex = 0;
+            double maxArea = -1;
+            for (int i = 0; i < current.size; i++) {
+                double area = Math.abs((selectedTime - nextTime) * (current.values[i] - selectedValue)
+                        - (selectedTime - current.times[i]) * (nextValue - selectedValue));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selectedIndex = i;
+                }
+            }
+            select(current.times[selectedIndex], current.values[selectedIndex]);
+        }
+
+        private void select(long time, double value) {
+            series.add(time, value);
+            selected = true;
+            selectedTime = time;
+            selectedValue = value;
+        }
+
+        /**
+         * The points of one bucket.
+         */
+        private static class Bucket {
+            private long index;
+            private long[] times = new long[16];
+            private double[] values = new double[16];
+            private int size;
+
+            private void add(long index, long time, double value) {
+                if (size == times.length) {
+                    times = Arrays.copyOf(times, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                this.index = index;
+                times[size] = time;
+                values[size] = value;
+                size++;
+            }
+
+            private boolean isEmpty() {
+                return size == 0;
+            }
+
+            private void clear() {
+                size = 0;
+            }
+
+            private double getAverageTime() {
+                double sum = 0;
+                for (int i = 0; i < size; i++) {
+                    sum += times[i] - times[0];
+                }
+                return times[0] + sum / size;
+            }
+
+            private double getAverageValue() {
+                double sum = 0;
+                for (int i = 0; i < size; i++) {
+                    sum += values[i];
+                }
+                return sum / size;
+            }
+        }
+    }
+}
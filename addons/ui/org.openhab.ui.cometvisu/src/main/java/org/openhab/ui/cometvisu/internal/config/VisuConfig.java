@@ -83,7 +83,17 @@ public class VisuConfig {
     /**
      * relative path to the config XSD schema
      */
-    private final String schemaFile = "visu_config.xsd";
+    private static final String SCHEMA_FILE = "visu_config.xsd";
+
+    /**
+     * the JAXB context is thread safe and expensive to create, so it is shared
+     * by all configs
+     */
+    private static JAXBContext jaxbContext;
+
+    private static Schema schema;
+    private static File schemaFile;
+    private static long schemaLastModified;
 
     private CometVisuApp app;
 
@@ -104,6 +114,30 @@ public class VisuConfig {
      * @return valid XML config
      */
     public String getConfigXml(HttpServletRequest req) {
+        return getConfigXml(getSchemaLocation(req));
+    }
+
+    /**
+     * returns the path to the config XSD schema relative to the requested
+     * config file
+     */
+    public static String getSchemaLocation(HttpServletRequest req) {
+        int requestFolders = req.getPathInfo().substring(1).split("/").length;
+        String relXsd = "";
+        for (int i = 1; i < requestFolders; i++) {
+            relXsd += "../";
+        }
+        return relXsd + SCHEMA_FILE;
+    }
+
+    /**
+     * generates a CometVisu config file from a sitemap
+     *
+     * @param schemaLocation
+     *            - the path to the XSD schema relative to the config file
+     * @return valid XML config
+     */
+    public String getConfigXml(String schemaLocation) {
         SchemaPages pagesBean = new SchemaPages();
         pagesBean.setBackend("oh2");
         pagesBean.setDesign("metal");
@@ -114,13 +148,7 @@ public class VisuConfig {
         pagesBean.setScrollSpeed(new BigDecimal(0));
 
         // set relative path to XSD file
-        int requestFolders = req.getPathInfo().substring(1).split("/").length;
-        logger.debug("requestPath '{}' has '{}' parts", req.getPathInfo(), requestFolders);
-        String relXsd = "";
-        for (int i = 1; i < requestFolders; i++) {
-            relXsd += "../";
-        }
-        pagesBean.setNoNamespaceSchemaLocation(relXsd + schemaFile);
+        pagesBean.setNoNamespaceSchemaLocation(schemaLocation);
 
         Meta meta = new Meta();
         pagesBean.setMeta(meta);
@@ -128,18 +156,14 @@ public class VisuConfig {
         configHelper = new ConfigHelper(pagesBean, app, sitemap.getName());
         createPages(pagesBean);
 
-        return marshal(pagesBean, rootFolder.getAbsolutePath() + File.separator + schemaFile);
+        return marshal(pagesBean, new File(rootFolder, SCHEMA_FILE));
     }
 
-    private String marshal(Pages bean, String xsdSchema) {
+    private String marshal(Pages bean, File xsdSchema) {
         String res = "";
         try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(bean.getClass());
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = (xsdSchema == null || xsdSchema.trim().length() == 0) ? null
-                    : schemaFactory.newSchema(new File(xsdSchema));
-            Marshaller marshaller = jaxbContext.createMarshaller();
-            marshaller.setSchema(schema);
+            Marshaller marshaller = getJaxbContext().createMarshaller();
+            marshaller.setSchema(getSchema(xsdSchema));
             marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             StringWriter sw = new StringWriter();
@@ -153,6 +177,30 @@ public class VisuConfig {
         return res;
     }
 
+    private static synchronized JAXBContext getJaxbContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(SchemaPages.class);
+        }
+        return jaxbContext;
+    }
+
+    /**
+     * returns the parsed XSD schema, the schema is parsed again if the file
+     * has been modified
+     */
+    private static synchronized Schema getSchema(File xsdSchema) throws SAXException {
+        if (!xsdSchema.exists()) {
+            return null;
+        }
+        if (schema == null || !xsdSchema.equals(schemaFile) || xsdSchema.lastModified() != schemaLastModified) {
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schema = schemaFactory.newSchema(xsdSchema);
+            schemaFile = xsdSchema;
+            schemaLastModified = xsdSchema.lastModified();
+        }
+        return schema;
+    }
+
     private Pages createPages(Pages pagesBean) {
         Page rootPage = new Page();
         rootPage.setName(sitemap.getName());
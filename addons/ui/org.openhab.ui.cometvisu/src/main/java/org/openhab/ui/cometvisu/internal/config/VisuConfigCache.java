@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.smarthome.model.sitemap.Sitemap;
+import org.openhab.ui.cometvisu.servlet.CometVisuApp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the generated visu_config.xml of each sitemap. A cached config is
+ * invalidated if the sitemap model has been reloaded or if the items have been
+ * changed.
+ *
+ * @author agent - Initial contribution
+ * @since 2.1.0
+ */
+public class VisuConfigCache {
+    private static final Logger logger = LoggerFactory.getLogger(VisuConfigCache.class);
+
+    // sitemap name and schema location -> cached config
+    private static final Map<String, CachedConfig> configs = new HashMap<String, CachedConfig>();
+
+    // incremented on every invalidation, configs generated before are not
+    // added to the cache
+    private static long generation;
+
+    /**
+     * returns the config of the sitemap, the config is generated if it is not
+     * cached yet
+     *
+     * @param sitemap
+     *            - the sitemap the config is generated from
+     * @param schemaLocation
+     *            - the path to the XSD schema relative to the config file
+     */
+    public static CachedConfig getConfig(Sitemap sitemap, CometVisuApp app, File rootFolder, String schemaLocation)
+            throws IOException {
+        String key = sitemap.getName() + "|" + schemaLocation;
+        long currentGeneration;
+        synchronized (configs) {
+            CachedConfig config = configs.get(key);
+            // a new sitemap instance means the sitemap file has been reloaded
+            if (config != null && config.sitemap == sitemap) {
+                return config;
+            }
+            currentGeneration = generation;
+        }
+
+        long start = System.currentTimeMillis();
+        String xml = new VisuConfig(sitemap, app, rootFolder).getConfigXml(schemaLocation);
+        CachedConfig config = new CachedConfig(sitemap, xml.getBytes(StandardCharsets.UTF_8));
+        logger.debug("generated config for sitemap '{}' in {}ms", sitemap.getName(),
+                System.currentTimeMillis() - start);
+
+        synchronized (configs) {
+            if (currentGeneration == generation) {
+                configs.put(key, config);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * removes all cached configs
+     */
+    public static void invalidate() {
+        synchronized (configs) {
+            generation++;
+            if (!configs.isEmpty()) {
+                logger.debug("invalidating {} cached configs", configs.size());
+                configs.clear();
+            }
+        }
+    }
+
+    /**
+     * A generated config with its gzipped content and ETag.
+     *
+     * @author agent - Initial contribution
+     * @since 2.1.0
+     */
+    public static class CachedConfig {
+        private final Sitemap sitemap;
+        private final byte[] content;
+        private final byte[] gzippedContent;
+        private final String eTag;
+
+        private CachedConfig(Sitemap sitemap, byte[] content) throws IOException {
+            this.sitemap = sitemap;
+            this.content = content;
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(content.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+                gzip.write(content);
+            }
+            this.gzippedContent = bos.toByteArray();
+            this.eTag = "\"" + sitemap.getName() + "_" + digest(content) + "\"";
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public byte[] getGzippedContent() {
+            return gzippedContent;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        private static String digest(byte[] content) {
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+                StringBuilder sb = new StringBuilder();
+                for (byte b : digest) {
+                    sb.append(String.format("%02x", b));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                return Integer.toHexString(Arrays.hashCode(content));
+            }
+        }
+    }
+}
@@ -14,10 +14,11 @@ import org.eclipse.smarthome.core.items.Item;
 import org.eclipse.smarthome.core.items.ItemRegistry;
 import org.eclipse.smarthome.core.items.ItemRegistryChangeListener;
 import org.openhab.ui.cometvisu.backend.EventBroadcaster;
+import org.openhab.ui.cometvisu.internal.config.VisuConfigCache;
 
 /**
  * Listener responsible for notifying the CometVisu backend about changes
- * in the ItemRegistry
+ * in the ItemRegistry and invalidating the cached configs
  * 
  * @author Tobias Bräutigam - Initial Contribution and API
  * @since 2.0.0
@@ -49,22 +50,26 @@ public class ItemRegistryEventListener implements ItemRegistryChangeListener {
 
     @Override
     public void added(Item element) {
+        VisuConfigCache.invalidate();
         eventBroadcaster.registerItem(element);
     }
 
     @Override
     public void removed(Item element) {
+        VisuConfigCache.invalidate();
         eventBroadcaster.unregisterItem(element);
     }
 
     @Override
     public void updated(Item oldElement, Item element) {
+        VisuConfigCache.invalidate();
         eventBroadcaster.unregisterItem(oldElement);
         eventBroadcaster.registerItem(element);
     }
 
     @Override
     public void allItemsChanged(Collection<String> oldItemNames) {
+        VisuConfigCache.invalidate();
         // All items have changed, StateListener needs to be registered to the new Items
         eventBroadcaster.registerItems();
     }
@@ -49,11 +49,6 @@ public class StateEventListener implements StateChangeListener {
                     stateBean.state = item.getState().toString();
                 eventBroadcaster.broadcastEvent(stateBean);
             }
-        } else {
-            StateBean stateBean = new StateBean();
-            stateBean.name = item.getName();
-            stateBean.state = newState.toString();
-            eventBroadcaster.broadcastEvent(stateBean);
         }
 
     }
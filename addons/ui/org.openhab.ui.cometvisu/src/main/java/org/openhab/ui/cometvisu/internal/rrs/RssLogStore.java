@@ -0,0 +1,507 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.rrs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.openhab.ui.cometvisu.internal.rrs.beans.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only store for the messages of the CometVisu rsslog plugin. The
+ * messages of an item are appended to segment files in the item folder, each
+ * segment file is named after the timestamp of its first message when it was
+ * started, with a sequence suffix if that name is already taken. A sparse
+ * index of every segment is kept in memory, so a feed request only reads the
+ * newest messages it needs.
+ *
+ * @author agent - Initial contribution
+ * @since 2.1.0
+ */
+public class RssLogStore {
+    private static final Logger logger = LoggerFactory.getLogger(RssLogStore.class);
+
+    // a new segment is started if the current one is larger
+    private static final long MAX_SEGMENT_SIZE = 256 * 1024;
+
+    // every n-th message of a segment is added to the index
+    private static final int INDEX_INTERVAL = 32;
+
+    /**
+     * messages older than one year are removed when a new segment is started
+     */
+    public static final long RETENTION = 365L * 24 * 60 * 60 * 1000;
+
+    // limit of DataOutput.writeUTF is 64k bytes
+    private static final int MAX_FIELD_LENGTH = 16384;
+
+    private static final String SEGMENT_EXTENSION = ".log";
+
+    // holds the time before which all messages of the item have been deleted
+    private static final String DELETED_BEFORE_FILE = "deleted";
+
+    // marks that the messages of the persistence services have been imported
+    private static final String IMPORTED_FILE = "imported";
+
+    private final File folder;
+
+    private final Map<String, ItemLog> logs = new HashMap<String, ItemLog>();
+
+    public RssLogStore(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * appends a message to the log of the item
+     */
+    public void append(String itemName, String title, String content, String state) throws IOException {
+        getLog(itemName).append(System.currentTimeMillis(), title, content, state);
+    }
+
+    /**
+     * returns true if the log of the item is empty and the persisted messages
+     * of the item have not been imported yet
+     */
+    public boolean needsImport(String itemName) throws IOException {
+        return getLog(itemName).needsImport();
+    }
+
+    /**
+     * imports the persisted messages of an item once, if its log is still
+     * empty
+     *
+     * @param itemName
+     *            - the name of the item
+     * @param entries
+     *            - the messages, oldest first
+     */
+    public void importEntries(String itemName, List<Entry> entries) throws IOException {
+        getLog(itemName).importEntries(entries);
+    }
+
+    /**
+     * returns true if the log of the item contains messages
+     */
+    public boolean contains(String itemName) throws IOException {
+        return getLog(itemName).size() > 0;
+    }
+
+    /**
+     * returns the messages of the item, newest first
+     *
+     * @param itemName
+     *            - the name of the item
+     * @param since
+     *            - only messages at or after this time in milliseconds are
+     *            returned
+     * @param offset
+     *            - the number of newest messages to skip
+     * @param limit
+     *            - the maximum number of messages
+     */
+    public List<Entry> query(String itemName, long since, int offset, int limit) throws IOException {
+        return getLog(itemName).query(since, offset, limit);
+    }
+
+    /**
+     * removes all messages of the item older than the given time in
+     * milliseconds
+     */
+    public void removeOlderThan(String itemName, long time) throws IOException {
+        getLog(itemName).removeOlderThan(time);
+    }
+
+    /**
+     * deletes all messages of the item older than the given time in
+     * milliseconds and remembers the time, see {@link #getDeletedBefore(String)}
+     */
+    public void deleteOlderThan(String itemName, long time) throws IOException {
+        getLog(itemName).deleteOlderThan(time);
+    }
+
+    /**
+     * returns the time in milliseconds before which all messages of the item
+     * have been deleted, messages from other sources older than this time
+     * must not be shown anymore
+     */
+    public long getDeletedBefore(String itemName) throws IOException {
+        return getLog(itemName).getDeletedBefore();
+    }
+
+    private synchronized ItemLog getLog(String itemName) {
+        ItemLog log = logs.get(itemName);
+        if (log == null) {
+            log = new ItemLog(itemName, new File(folder, itemName));
+            logs.put(itemName, log);
+        }
+        return log;
+    }
+
+    /**
+     * The segments of one item, the segments are loaded on first access.
+     */
+    private static class ItemLog {
+        private final String itemName;
+        private final File dir;
+        private List<Segment> segments;
+        private long lastTime;
+        private long deletedBefore;
+
+        public ItemLog(String itemName, File dir) {
+            this.itemName = itemName;
+            this.dir = dir;
+        }
+
+        public synchronized int size() throws IOException {
+            load();
+            int size = 0;
+            for (Segment segment : segments) {
+                size += segment.count;
+            }
+            return size;
+        }
+
+        public synchronized void append(long time, String title, String content, String state) throws IOException {
+            load();
+            // keep the messages ordered, even if the clock goes back
+            time = Math.max(time, lastTime);
+            Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || segment.size >= MAX_SEGMENT_SIZE) {
+                if (segment != null) {
+                    removeOlderThan(time - RETENTION);
+                }
+                dir.mkdirs();
+                segment = new Segment(newSegmentFile(time));
+                segments.add(segment);
+            }
+            segment.append(time, title, content, state);
+            lastTime = time;
+        }
+
+        public synchronized List<Entry> query(long since, int offset, int limit) throws IOException {
+            load();
+            List<Entry> entries = new ArrayList<Entry>();
+            int skip = Math.max(0, offset);
+            for (int i = segments.size() - 1; i >= 0 && entries.size() < limit; i--) {
+                Segment segment = segments.get(i);
+                if (segment.lastTime < since) {
+                    break;
+                }
+                if (segment.firstTime >= since && skip >= segment.count) {
+                    // skip the whole segment without reading it
+                    skip -= segment.count;
+                    continue;
+                }
+                List<Entry> segmentEntries = segment.read(itemName, since);
+                for (int j = segmentEntries.size() - 1; j >= 0 && entries.size() < limit; j--) {
+                    if (skip > 0) {
+                        skip--;
+                    } else {
+                        entries.add(segmentEntries.get(j));
+                    }
+                }
+            }
+            return entries;
+        }
+
+        public synchronized void removeOlderThan(long time) throws IOException {
+            load();
+            Iterator<Segment> it = segments.iterator();
+            List<Segment> compacted = new ArrayList<Segment>();
+            while (it.hasNext()) {
+                Segment segment = it.next();
+                if (segment.lastTime < time) {
+                    logger.debug("removing rsslog segment '{}'", segment.file);
+                    if (!segment.file.delete()) {
+                        throw new IOException("Can't delete " + segment.file);
+                    }
+                    it.remove();
+                } else if (segment.firstTime < time) {
+                    // rewrite the remaining messages to a new segment
+                    // the compacted segment keeps the name, so it stays in front of the next segment
+                    List<Entry> remaining = segment.read(itemName, time);
+                    Segment newSegment = new Segment(segment.file);
+                    File tempFile = new File(dir, segment.file.getName() + ".tmp");
+                    Segment tempSegment = new Segment(tempFile);
+                    for (Entry entry : remaining) {
+                        tempSegment.append(entry.publishedDate, entry.title, entry.content, entry.state);
+                    }
+                    if (!segment.file.delete() || !tempFile.renameTo(newSegment.file)) {
+                        throw new IOException("Can't compact " + segment.file);
+                    }
+                    newSegment.scan();
+                    logger.debug("compacted rsslog segment '{}'", segment.file);
+                    it.remove();
+                    compacted.add(newSegment);
+                } else {
+                    break;
+                }
+            }
+            segments.addAll(0, compacted);
+        }
+
+        public synchronized boolean needsImport() throws IOException {
+            return size() == 0 && !new File(dir, IMPORTED_FILE).exists();
+        }
+
+        public synchronized void importEntries(List<Entry> entries) throws IOException {
+            if (!needsImport()) {
+                return;
+            }
+            for (Entry entry : entries) {
+                if (entry.publishedDate >= deletedBefore) {
+                    append(entry.publishedDate, entry.title, entry.content, entry.state);
+                }
+            }
+            dir.mkdirs();
+            if (!new File(dir, IMPORTED_FILE).createNewFile()) {
+                throw new IOException("Can't create " + new File(dir, IMPORTED_FILE));
+            }
+            logger.debug("imported {} persisted rsslog messages of item '{}'", entries.size(), itemName);
+        }
+
+        public synchronized void deleteOlderThan(long time) throws IOException {
+            removeOlderThan(time);
+            if (time > getDeletedBefore()) {
+                dir.mkdirs();
+                try (DataOutputStream out = new DataOutputStream(
+                        new FileOutputStream(new File(dir, DELETED_BEFORE_FILE)))) {
+                    out.writeLong(time);
+                }
+                deletedBefore = time;
+            }
+        }
+
+        public synchronized long getDeletedBefore() throws IOException {
+            load();
+            return deletedBefore;
+        }
+
+        private void load() throws IOException {
+            if (segments != null) {
+                return;
+            }
+            List<Segment> loaded = new ArrayList<Segment>();
+            String[] files = dir.list(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(SEGMENT_EXTENSION);
+                }
+            });
+            if (files != null) {
+                // the names are zero padded timestamps, so they sort in time
+                Arrays.sort(files);
+                for (String name : files) {
+                    Segment segment = new Segment(new File(dir, name));
+                    segment.scan();
+                    if (segment.count > 0) {
+                        loaded.add(segment);
+                        lastTime = segment.lastTime;
+                    }
+                }
+            }
+            File deletedBeforeFile = new File(dir, DELETED_BEFORE_FILE);
+            if (deletedBeforeFile.exists()) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(deletedBeforeFile))) {
+                    deletedBefore = in.readLong();
+                } catch (EOFException e) {
+                    logger.warn("ignoring incomplete rsslog deletion time '{}'", deletedBeforeFile);
+                }
+            }
+            segments = loaded;
+        }
+
+        /**
+         * returns an unused file for a new segment that sorts after the last
+         * segment, as the clock can go back the name of the last segment can
+         * already be taken
+         */
+        private File newSegmentFile(long time) {
+            String lastName = segments.isEmpty() ? null : segments.get(segments.size() - 1).file.getName();
+            File file = new File(dir, getSegmentName(time, 0));
+            for (int sequence = 1; file.exists()
+                    || (lastName != null && file.getName().compareTo(lastName) <= 0); sequence++) {
+                file = new File(dir, getSegmentName(time, sequence));
+            }
+            return file;
+        }
+
+        private static String getSegmentName(long time, int sequence) {
+            // the names are compared as strings, '.' sorts before '_'
+            String name = String.format("%016d", time);
+            if (sequence > 0) {
+                name += String.format("_%06d", sequence);
+            }
+            return name + SEGMENT_EXTENSION;
+        }
+    }
+
+    /**
+     * A segment file with its sparse index. A message is stored as the length
+     * of the record followed by the timestamp, title, content and state.
+     */
+    private static class Segment {
+        private final File file;
+        private long firstTime;
+        private long lastTime;
+        private int count;
+        private long size;
+
+        // timestamp and file offset of every INDEX_INTERVAL-th message
+        private long[] indexTimes = new long[8];
+        private long[] indexOffsets = new long[8];
+        private int indexSize;
+
+        public Segment(File file) {
+            this.file = file;
+        }
+
+        /**
+         * reads the segment to build the index, an incomplete record at the
+         * end of the file is removed
+         */
+        public void scan() throws IOException {
+            count = 0;
+            indexSize = 0;
+            long offset = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (length < 8 || offset + 4 + length > file.length()) {
+                        break;
+                    }
+                    long time = in.readLong();
+                    skipFully(in, length - 8);
+                    addToIndex(time, offset);
+                    offset += 4 + length;
+                }
+            }
+            if (offset < file.length()) {
+                logger.warn("truncating incomplete rsslog segment '{}' at {}", file, offset);
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(offset);
+                }
+            }
+            size = offset;
+        }
+
+        public void append(long time, String title, String content, String state) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bos);
+            record.writeLong(time);
+            writeString(record, title);
+            writeString(record, content);
+            writeString(record, state);
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                out.writeInt(bos.size());
+                bos.writeTo(out);
+            }
+            addToIndex(time, size);
+            size += 4 + bos.size();
+        }
+
+        /**
+         * returns the messages at or after the given time, oldest first
+         */
+        public List<Entry> read(String itemName, long since) throws IOException {
+            // start at the last indexed message before since
+            long offset = 0;
+            for (int i = 0; i < indexSize && indexTimes[i] < since; i++) {
+                offset = indexOffsets[i];
+            }
+            List<Entry> entries = new ArrayList<Entry>();
+            try (FileInputStream fis = new FileInputStream(file)) {
+                fis.getChannel().position(offset);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(fis));
+                while (offset < size) {
+                    int length = in.readInt();
+                    long time = in.readLong();
+                    if (time < since) {
+                        skipFully(in, length - 8);
+                    } else {
+                        Entry entry = new Entry();
+                        entry.id = String.valueOf(time);
+                        entry.publishedDate = time;
+                        entry.tags = itemName;
+                        entry.title = readString(in);
+                        entry.content = readString(in);
+                        entry.state = readString(in);
+                        entries.add(entry);
+                    }
+                    offset += 4 + length;
+                }
+            }
+            return entries;
+        }
+
+        private void addToIndex(long time, long offset) {
+            if (count == 0) {
+                firstTime = time;
+            }
+            if (count % INDEX_INTERVAL == 0) {
+                if (indexSize == indexTimes.length) {
+                    indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+                    indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                }
+                indexTimes[indexSize] = time;
+                indexOffsets[indexSize] = offset;
+                indexSize++;
+            }
+            lastTime = time;
+            count++;
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value.length() > MAX_FIELD_LENGTH ? value.substring(0, MAX_FIELD_LENGTH) : value);
+            }
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+
+        private static void skipFully(DataInputStream in, int length) throws IOException {
+            int skipped = 0;
+            while (skipped < length) {
+                int n = in.skipBytes(length - skipped);
+                if (n <= 0) {
+                    throw new EOFException();
+                }
+                skipped += n;
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@
 package org.openhab.ui.cometvisu.servlet;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,14 +20,19 @@ import java.util.Set;
 
 import javax.servlet.ServletException;
 
+import org.eclipse.smarthome.core.events.Event;
+import org.eclipse.smarthome.core.events.EventFilter;
 import org.eclipse.smarthome.core.events.EventPublisher;
+import org.eclipse.smarthome.core.events.EventSubscriber;
 import org.eclipse.smarthome.core.items.ItemRegistry;
+import org.eclipse.smarthome.core.items.events.ItemCommandEvent;
 import org.eclipse.smarthome.core.persistence.PersistenceService;
 import org.eclipse.smarthome.core.persistence.QueryablePersistenceService;
 import org.eclipse.smarthome.model.sitemap.SitemapProvider;
 import org.eclipse.smarthome.ui.icon.IconProvider;
 import org.eclipse.smarthome.ui.items.ItemUIRegistry;
 import org.openhab.ui.cometvisu.internal.Config;
+import org.openhab.ui.cometvisu.internal.config.VisuConfigCache;
 import org.openhab.ui.cometvisu.php.PHProvider;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.cm.ConfigurationException;
@@ -41,7 +47,7 @@ import org.slf4j.LoggerFactory;
  * @author Tobias Bräutigam
  * @since 2.0.0
  */
-public class CometVisuApp {
+public class CometVisuApp implements EventSubscriber {
 
     private static final Logger logger = LoggerFactory.getLogger(CometVisuApp.class);
 
@@ -123,10 +129,12 @@ public class CometVisuApp {
 
     public void addSitemapProvider(SitemapProvider provider) {
         sitemapProviders.add(provider);
+        VisuConfigCache.invalidate();
     }
 
     public void removeSitemapProvider(SitemapProvider provider) {
         sitemapProviders.remove(provider);
+        VisuConfigCache.invalidate();
     }
 
     public ItemUIRegistry getItemUIRegistry() {
@@ -207,6 +215,27 @@ public class CometVisuApp {
         logger.info("Stopped CometVisu UI");
     }
 
+    @Override
+    public Set<String> getSubscribedEventTypes() {
+        return Collections.singleton(ItemCommandEvent.TYPE);
+    }
+
+    @Override
+    public EventFilter getEventFilter() {
+        return null;
+    }
+
+    @Override
+    public void receive(Event event) {
+        // rules can write messages for the rsslog plugin by item commands
+        CometVisuServlet currentServlet = servlet;
+        if (currentServlet != null) {
+            ItemCommandEvent commandEvent = (ItemCommandEvent) event;
+            currentServlet.receiveRssLogCommand(commandEvent.getItemName(), commandEvent.getItemCommand(),
+                    commandEvent.getSource());
+        }
+    }
+
     private void registerServlet() {
         // As the alias is user configurable, we have to check if it has a
         // trailing slash but no leading slash
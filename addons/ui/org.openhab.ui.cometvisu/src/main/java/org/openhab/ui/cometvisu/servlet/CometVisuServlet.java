@@ -56,10 +56,14 @@ import org.eclipse.smarthome.model.sitemap.SitemapProvider;
 import org.openhab.ui.cometvisu.internal.Config;
 import org.openhab.ui.cometvisu.internal.config.ConfigHelper.Transform;
 import org.openhab.ui.cometvisu.internal.config.VisuConfig;
+import org.openhab.ui.cometvisu.internal.config.VisuConfigCache;
+import org.openhab.ui.cometvisu.internal.config.VisuConfigCache.CachedConfig;
 import org.openhab.ui.cometvisu.internal.editor.dataprovider.beans.DataBean;
 import org.openhab.ui.cometvisu.internal.editor.dataprovider.beans.ItemBean;
+import org.openhab.ui.cometvisu.internal.rrs.RssLogStore;
 import org.openhab.ui.cometvisu.internal.rrs.beans.Feed;
 import org.openhab.ui.cometvisu.php.PHProvider;
+import org.openhab.ui.cometvisu.servlet.StaticResourceCache.CachedResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -87,7 +91,16 @@ public class CometVisuServlet extends HttpServlet {
 
     private String rrsLogPath = "/plugins/rsslog/rsslog_oh.php";
     private final String rssLogMessageSeparator = "\\|";
+    // source of the item commands of the rsslog plugin, they are stored already
+    static final String RSSLOG_EVENT_SOURCE = "org.openhab.ui.cometvisu.rsslog";
     private DateFormat rssPubDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+    private final Comparator<org.openhab.ui.cometvisu.internal.rrs.beans.Entry> newestFirst = new Comparator<org.openhab.ui.cometvisu.internal.rrs.beans.Entry>() {
+        @Override
+        public int compare(org.openhab.ui.cometvisu.internal.rrs.beans.Entry o1,
+                org.openhab.ui.cometvisu.internal.rrs.beans.Entry o2) {
+            return Long.compare(o2.publishedDate, o1.publishedDate);
+        }
+    };
 
     protected String root;
     protected File rootFolder;
@@ -102,6 +115,10 @@ public class CometVisuServlet extends HttpServlet {
 
     private CometVisuApp cometVisuApp;
 
+    private StaticResourceCache resourceCache;
+
+    private RssLogStore rssLogStore;
+
     public CometVisuServlet(String filesystemDir, CometVisuApp cometVisuApp) {
         root = filesystemDir;
         rootFolder = new File(root);
@@ -109,6 +126,9 @@ public class CometVisuServlet extends HttpServlet {
                 + Config.COMETVISU_WEBAPP_USERFILE_FOLDER);
         defaultUserDir = System.getProperty("user.dir");
         this.cometVisuApp = cometVisuApp;
+        resourceCache = new StaticResourceCache(rootFolder);
+        rssLogStore = new RssLogStore(new File(org.eclipse.smarthome.config.core.ConfigConstants.getUserDataFolder()
+                + File.separator + "cometvisu" + File.separator + "rsslog"));
 
         PHProvider prov = cometVisuApp.getPHProvider();
         if (prov != null) {
@@ -153,6 +173,13 @@ public class CometVisuServlet extends HttpServlet {
             this.engine.init(rootFolder.getAbsolutePath(), defaultUserDir, _servletContext);
             phpEnabled = true;
         }
+        resourceCache.start();
+    }
+
+    @Override
+    public void destroy() {
+        resourceCache.stop();
+        super.destroy();
     }
 
     /**
@@ -207,13 +234,7 @@ public class CometVisuServlet extends HttpServlet {
                 Sitemap sitemap = getSitemap(matcher.group(2));
                 if (sitemap != null) {
                     logger.debug("reading sitemap '{}'", sitemap);
-                    VisuConfig config = new VisuConfig(sitemap, cometVisuApp, rootFolder);
-
-                    // logger.info("response: "+config.getConfigXml());
-                    resp.setContentType(MediaType.APPLICATION_XML);
-                    resp.getWriter().write(config.getConfigXml(req));
-                    resp.flushBuffer();
-
+                    processConfigRequest(sitemap, req, resp);
                     return;
                 } else {
                     logger.debug("Config file not found. Neither as normal config ('{}') nor as sitemap ('{}.sitemap')",
@@ -235,6 +256,37 @@ public class CometVisuServlet extends HttpServlet {
         }
     }
 
+    /**
+     * serves the config generated from the sitemap, the config is cached until
+     * the sitemap or the items change
+     */
+    private void processConfigRequest(Sitemap sitemap, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        CachedConfig config = VisuConfigCache.getConfig(sitemap, cometVisuApp, rootFolder,
+                VisuConfig.getSchemaLocation(request));
+
+        response.setHeader("ETag", config.getETag());
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("Vary", "Accept-Encoding");
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && matches(ifNoneMatch, config.getETag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        byte[] content = config.getContent();
+        if (acceptEncoding != null && accepts(acceptEncoding, "gzip")) {
+            response.setHeader("Content-Encoding", "gzip");
+            content = config.getGzippedContent();
+        }
+        response.setContentType(MediaType.APPLICATION_XML + ";charset=UTF-8");
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
+        response.flushBuffer();
+    }
+
     protected void processPhpRequest(File file, HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         if (!this.phpEnabled) {
@@ -281,6 +333,14 @@ public class CometVisuServlet extends HttpServlet {
      * serves an RSS-Feed from a persisted string item backend for the CometVisu
      * rrslog-plugin
      *
+     * The feed is served from the {@link RssLogStore}, new messages are
+     * stored there and also sent as item command to the persistence services.
+     * Messages sent as item command by rules are stored as well. The
+     * persisted messages of an item are imported into the store once, before
+     * its log is used the first time. Feed requests support
+     * the optional parameters limit (default 25), page (starting at 0) and
+     * since (unix timestamp in seconds, default 7 days ago).
+     *
      * @param file
      * @param request
      * @param response
@@ -305,13 +365,9 @@ public class CometVisuServlet extends HttpServlet {
         }
 
         if (items.size() > 0) {
-            // Fallback to first persistenceService from list
-            if (!CometVisuApp.getPersistenceServices().entrySet().iterator().hasNext()) {
-                throw new IllegalArgumentException("No Persistence service found.");
-            }
-
             if (request.getParameter("c") != null) {
                 if (items.size() == 1) {
+                    importPersistedMessages(items.get(0));
                     // new log message should be store
                     String title = request.getParameter("h");
                     String message = request.getParameter("c");
@@ -322,7 +378,9 @@ public class CometVisuServlet extends HttpServlet {
                     // Use the event publisher to store the item in the defined
                     // persistance services
                     cometVisuApp.getEventPublisher()
-                            .post(ItemEventFactory.createCommandEvent(items.get(0).getName(), command));
+                            .post(ItemEventFactory.createCommandEvent(items.get(0).getName(), command,
+                                    RSSLOG_EVENT_SOURCE));
+                    rssLogStore.append(items.get(0).getName(), title, message, state);
                 }
                 // send empty response??
                 response.setContentType("text/plain");
@@ -330,12 +388,20 @@ public class CometVisuServlet extends HttpServlet {
                 response.flushBuffer();
             } else if (request.getParameter("dump") != null) {
             } else if (request.getParameter("r") != null) {
-                // delete all log lines older than the timestamp and optional a
-                // filter
-                // => not possible to remove data from persistence service
+                // delete all log lines older than the timestamp, the persisted
+                // messages can't be deleted, but they are not imported again
+                long timestamp;
+                try {
+                    timestamp = getTimestampParameter(request, "r", 0);
+                } catch (NumberFormatException e) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid parameter r");
+                    return;
+                }
+                for (Item item : items) {
+                    rssLogStore.deleteOlderThan(item.getName(), timestamp);
+                }
                 response.setContentType("text/plain");
-                response.getWriter().write(
-                        "Cannot execute query: It is not possible to delete data from openHAB PersistenceService");
+                response.getWriter().write("");
                 response.flushBuffer();
             } else if (request.getParameter("u") != null) {
                 // update state
@@ -357,88 +423,24 @@ public class CometVisuServlet extends HttpServlet {
                 feed.author = "";
                 feed.description = "RSS supplied logs";
                 feed.type = "rss20";
-                // Define the data filter
-                FilterCriteria filter = new FilterCriteria();
                 Calendar start = Calendar.getInstance();
-                // retrieve only the historic states from the last 7 days + BeginDate is required for RRD4j service
+                // retrieve only the messages from the last 7 days by default
                 start.add(Calendar.DAY_OF_YEAR, -7);
-                // Date end = new Date();
-                filter.setBeginDate(start.getTime());
-                // filter.setEndDate(end);
-                filter.setPageSize(25);
-                filter.setOrdering(Ordering.DESCENDING);
+                int limit;
+                int page;
+                try {
+                    start.setTimeInMillis(getTimestampParameter(request, "since", start.getTimeInMillis()));
+                    limit = getIntParameter(request, "limit", 25);
+                    page = getIntParameter(request, "page", 0);
+                } catch (NumberFormatException e) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid parameter: " + e.getMessage());
+                    return;
+                }
+                int offset = (int) Math.min(Integer.MAX_VALUE, (long) page * limit);
 
                 for (Item item : items) {
-                    filter.setItemName(item.getName());
-                    Iterator<Entry<String, QueryablePersistenceService>> pit = CometVisuApp.getPersistenceServices()
-                            .entrySet().iterator();
-                    QueryablePersistenceService persistenceService = pit.next().getValue();
-                    // Get the data from the persistence store
-                    Iterable<HistoricItem> result = persistenceService.query(filter);
-                    Iterator<HistoricItem> it = result.iterator();
-                    boolean forceStop = false;
-                    while (!forceStop && !it.hasNext()) {
-                        if (pit.hasNext()) {
-                            persistenceService = pit.next().getValue();
-                            result = persistenceService.query(filter);
-                        } else {
-                            // no persisted data found for this item in any of
-                            // the available persistence services
-                            forceStop = true;
-                        }
-                    }
-                    if (it.hasNext()) {
-                        logger.debug("persisted data for item {} found in service {}", item.getName(),
-                                persistenceService.getId());
-                    }
-
-                    // Iterate through the data
-                    int i = 0;
-                    while (it.hasNext()) {
-                        i++;
-                        HistoricItem historicItem = it.next();
-                        if (historicItem.getState() == null || historicItem.getState().toString().isEmpty()) {
-                            continue;
-                        }
-                        org.openhab.ui.cometvisu.internal.rrs.beans.Entry entry = new org.openhab.ui.cometvisu.internal.rrs.beans.Entry();
-                        entry.publishedDate = historicItem.getTimestamp().getTime();
-                        logger.info(rssPubDateFormat.format(entry.publishedDate) + ": " + historicItem.getState());
-                        entry.tags = historicItem.getName();
-                        String[] content = historicItem.getState().toString().split(rssLogMessageSeparator);
-                        if (content.length == 0) {
-                            entry.content = historicItem.getState().toString();
-                        } else if (content.length == 1) {
-                            entry.content = content[0];
-                        } else if (content.length == 2) {
-                            entry.title = content[0];
-                            entry.content = content[1];
-                        } else if (content.length == 3) {
-                            entry.title = content[0];
-                            entry.content = content[1];
-                            entry.state = content[2];
-                        } else if (content.length == 4) {
-                            entry.title = content[0];
-                            entry.content = content[1];
-                            entry.state = content[2];
-                            // ignore tags in content[3] as is is already known
-                            // by item name
-                        }
-                        feed.entries.add(entry);
-                    }
-                    if ("rrd4j".equals(persistenceService.getId())
-                            && FilterCriteria.Ordering.DESCENDING.equals(filter.getOrdering())) {
-                        // the RRD4j PersistenceService does not support descending ordering so we do it manually
-                        Collections.sort(feed.entries,
-                                new Comparator<org.openhab.ui.cometvisu.internal.rrs.beans.Entry>() {
-                                    @Override
-                                    public int compare(org.openhab.ui.cometvisu.internal.rrs.beans.Entry o1,
-                                            org.openhab.ui.cometvisu.internal.rrs.beans.Entry o2) {
-                                        return Long.compare(o2.publishedDate, o1.publishedDate);
-                                    }
-                                });
-                    }
-                    logger.debug("querying {} item from {} to {} => {} results on service {}", filter.getItemName(),
-                            filter.getBeginDate(), filter.getEndDate(), i, persistenceService.getId());
+                    importPersistedMessages(item);
+                    feed.entries.addAll(rssLogStore.query(item.getName(), start.getTimeInMillis(), offset, limit));
                 }
                 if (request.getParameter("j") != null) {
                     // request data in JSON format
@@ -475,6 +477,154 @@ public class CometVisuServlet extends HttpServlet {
 
     }
 
+    /**
+     * returns the value of a unix timestamp parameter in milliseconds, negative
+     * values are clamped to 0
+     *
+     * @throws NumberFormatException if the value is not a number
+     */
+    private static long getTimestampParameter(HttpServletRequest request, String name, long defaultValue) {
+        String value = request.getParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Math.min(Math.max(0, Long.parseLong(value.trim())), Long.MAX_VALUE / 1000) * 1000L;
+    }
+
+    /**
+     * returns the value of an integer parameter, negative values are clamped
+     * to 0
+     *
+     * @throws NumberFormatException if the value is not a number
+     */
+    private static int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Math.max(0, Integer.parseInt(value.trim()));
+    }
+
+    /**
+     * returns the persisted messages of the item from the first persistence
+     * service with data, in the order of the filter
+     */
+    private List<org.openhab.ui.cometvisu.internal.rrs.beans.Entry> queryPersistence(Item item,
+            FilterCriteria filter) {
+        List<org.openhab.ui.cometvisu.internal.rrs.beans.Entry> entries = new ArrayList<org.openhab.ui.cometvisu.internal.rrs.beans.Entry>();
+        filter.setItemName(item.getName());
+        Iterator<Entry<String, QueryablePersistenceService>> pit = CometVisuApp.getPersistenceServices()
+                .entrySet().iterator();
+        QueryablePersistenceService persistenceService = pit.next().getValue();
+        // Get the data from the persistence store
+        Iterable<HistoricItem> result = persistenceService.query(filter);
+        Iterator<HistoricItem> it = result.iterator();
+        boolean forceStop = false;
+        while (!forceStop && !it.hasNext()) {
+            if (pit.hasNext()) {
+                persistenceService = pit.next().getValue();
+                result = persistenceService.query(filter);
+                it = result.iterator();
+            } else {
+                // no persisted data found for this item in any of
+                // the available persistence services
+                forceStop = true;
+            }
+        }
+        if (it.hasNext()) {
+            logger.debug("persisted data for item {} found in service {}", item.getName(),
+                    persistenceService.getId());
+        }
+
+        // Iterate through the data
+        int i = 0;
+        while (it.hasNext()) {
+            i++;
+            HistoricItem historicItem = it.next();
+            if (historicItem.getState() == null || historicItem.getState().toString().isEmpty()) {
+                continue;
+            }
+            org.openhab.ui.cometvisu.internal.rrs.beans.Entry entry = parseMessage(
+                    historicItem.getState().toString());
+            entry.publishedDate = historicItem.getTimestamp().getTime();
+            logger.info(rssPubDateFormat.format(entry.publishedDate) + ": " + historicItem.getState());
+            entry.tags = historicItem.getName();
+            entries.add(entry);
+        }
+        if ("rrd4j".equals(persistenceService.getId())
+                && FilterCriteria.Ordering.DESCENDING.equals(filter.getOrdering())) {
+            // the RRD4j PersistenceService does not support descending ordering so we do it manually
+            Collections.sort(entries, newestFirst);
+        }
+        logger.debug("querying {} item from {} to {} => {} results on service {}", filter.getItemName(),
+                filter.getBeginDate(), filter.getEndDate(), i, persistenceService.getId());
+        return entries;
+    }
+
+    /**
+     * splits a message in the format title|content|state|tags, the tags are
+     * ignored as they are known by the item name
+     */
+    private org.openhab.ui.cometvisu.internal.rrs.beans.Entry parseMessage(String message) {
+        org.openhab.ui.cometvisu.internal.rrs.beans.Entry entry = new org.openhab.ui.cometvisu.internal.rrs.beans.Entry();
+        // the separator is stored with its regex escape, so split on the escaped
+        // separator as well
+        String[] content = message.split("\\\\?" + rssLogMessageSeparator);
+        if (content.length == 0) {
+            entry.content = message;
+        } else if (content.length == 1) {
+            entry.content = content[0];
+        } else if (content.length == 2) {
+            entry.title = content[0];
+            entry.content = content[1];
+        } else if (content.length == 3) {
+            entry.title = content[0];
+            entry.content = content[1];
+            entry.state = content[2];
+        } else if (content.length == 4) {
+            entry.title = content[0];
+            entry.content = content[1];
+            entry.state = content[2];
+        }
+        return entry;
+    }
+
+    /**
+     * stores a message sent to an item by a rule in the log of the item. The
+     * messages of the rsslog plugin are already stored, and items whose log
+     * has not been used yet get the message with the import from persistence.
+     */
+    void receiveRssLogCommand(String itemName, Command command, String source) {
+        if (!(command instanceof StringType) || RSSLOG_EVENT_SOURCE.equals(source)) {
+            return;
+        }
+        try {
+            if (!rssLogStore.needsImport(itemName)) {
+                org.openhab.ui.cometvisu.internal.rrs.beans.Entry entry = parseMessage(command.toString());
+                rssLogStore.append(itemName, entry.title, entry.content, entry.state);
+            }
+        } catch (IOException e) {
+            logger.warn("Can't store rsslog message of item '{}': {}", itemName, e.getMessage());
+        }
+    }
+
+    /**
+     * imports the persisted messages of the last year into the empty log of
+     * the item, this is done only once for every item
+     */
+    private void importPersistedMessages(Item item) throws IOException {
+        if (!rssLogStore.needsImport(item.getName())
+                || !CometVisuApp.getPersistenceServices().entrySet().iterator().hasNext()) {
+            return;
+        }
+        FilterCriteria filter = new FilterCriteria();
+        // deleted messages are not imported again
+        filter.setBeginDate(new Date(Math.max(System.currentTimeMillis() - RssLogStore.RETENTION,
+                rssLogStore.getDeletedBefore(item.getName()))));
+        filter.setOrdering(Ordering.ASCENDING);
+        rssLogStore.importEntries(item.getName(), queryPersistence(item, filter));
+    }
+
     /**
      * Process the actual request.
      *
@@ -527,10 +677,12 @@ public class CometVisuServlet extends HttpServlet {
         }
 
         // Prepare some variables. The ETag is an unique identifier of the file.
+        // Small files are served from the cache.
+        CachedResource cachedResource = resourceCache.get(file);
         String fileName = file.getName();
-        long length = file.length();
-        long lastModified = file.lastModified();
-        String eTag = fileName + "_" + length + "_" + lastModified;
+        long length = cachedResource != null ? cachedResource.getLength() : file.length();
+        long lastModified = cachedResource != null ? cachedResource.getLastModified() : file.lastModified();
+        String eTag = cachedResource != null ? cachedResource.getETag() : fileName + "_" + length + "_" + lastModified;
         long expires = System.currentTimeMillis() + DEFAULT_EXPIRE_TIME;
 
         // Validate request headers for caching
@@ -628,7 +780,7 @@ public class CometVisuServlet extends HttpServlet {
                     long end = sublong(part, part.indexOf("-") + 1, part.length());
 
                     if (start == -1) {
-                        start = length - end;
+                        start = Math.max(0, length - end);
                         end = length - 1;
                     } else if (end == -1 || end > length - 1) {
                         end = length - 1;
@@ -675,6 +827,10 @@ public class CometVisuServlet extends HttpServlet {
             String acceptEncoding = request.getHeader("Accept-Encoding");
             acceptsGzip = acceptEncoding != null && accepts(acceptEncoding, "gzip");
             contentType += ";charset=UTF-8";
+        } else if (cachedResource != null && cachedResource.getGzippedContent() != null) {
+            // precompressed scripts, json, svg...
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            acceptsGzip = acceptEncoding != null && accepts(acceptEncoding, "gzip");
         }
 
         // Else, expect for images, determine content disposition. If content
@@ -693,6 +849,11 @@ public class CometVisuServlet extends HttpServlet {
         response.setDateHeader("Last-Modified", lastModified);
         response.setDateHeader("Expires", expires);
 
+        if (cachedResource != null) {
+            writeCachedResource(cachedResource, response, contentType, acceptsGzip, content, full, ranges);
+            return;
+        }
+
         // Send requested file (part(s)) to client
         // ------------------------------------------------
 
@@ -779,6 +940,57 @@ public class CometVisuServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Sends the cached file or the requested ranges of it to the client, the
+     * ranges are written directly from the cached content.
+     */
+    private void writeCachedResource(CachedResource resource, HttpServletResponse response, String contentType,
+            boolean acceptsGzip, boolean content, Range full, List<Range> ranges) throws IOException {
+        byte[] data = resource.getContent();
+        if (resource.getGzippedContent() != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        if (ranges.isEmpty() || ranges.get(0) == full) {
+            // Return full file, gzipped if possible
+            response.setContentType(contentType);
+            response.setHeader("Content-Range", "bytes " + full.start + "-" + full.end + "/" + full.total);
+            if (acceptsGzip && resource.getGzippedContent() != null) {
+                response.setHeader("Content-Encoding", "gzip");
+                data = resource.getGzippedContent();
+            }
+            response.setHeader("Content-Length", String.valueOf(data.length));
+            if (content) {
+                response.getOutputStream().write(data);
+            }
+        } else if (ranges.size() == 1) {
+            // Return single part of file.
+            Range r = ranges.get(0);
+            response.setContentType(contentType);
+            response.setHeader("Content-Range", "bytes " + r.start + "-" + r.end + "/" + r.total);
+            response.setHeader("Content-Length", String.valueOf(r.length));
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT); // 206.
+            if (content) {
+                response.getOutputStream().write(data, (int) r.start, (int) r.length);
+            }
+        } else {
+            // Return multiple parts of file.
+            response.setContentType("multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT); // 206.
+            if (content) {
+                ServletOutputStream sos = response.getOutputStream();
+                for (Range r : ranges) {
+                    sos.println();
+                    sos.println("--" + MULTIPART_BOUNDARY);
+                    sos.println("Content-Type: " + contentType);
+                    sos.println("Content-Range: bytes " + r.start + "-" + r.end + "/" + r.total);
+                    sos.write(data, (int) r.start, (int) r.length);
+                }
+                sos.println();
+                sos.println("--" + MULTIPART_BOUNDARY + "--");
+            }
+        }
+    }
+
     /**
      * Save config file send by editor
      *
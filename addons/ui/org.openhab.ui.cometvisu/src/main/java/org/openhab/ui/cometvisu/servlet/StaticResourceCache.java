@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.servlet;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the content of the static files of the CometVisu in memory, together
+ * with a gzipped variant of compressible files. The root folder is watched
+ * for changes, so a modified file is read again on the next request.
+ *
+ * @author agent - Initial contribution
+ * @since 2.1.0
+ */
+public class StaticResourceCache {
+    private static final Logger logger = LoggerFactory.getLogger(StaticResourceCache.class);
+
+    // files larger than this are always served from the filesystem
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    // the maximum size of all cached files
+    private static final long MAX_CACHE_SIZE = 32 * 1024 * 1024;
+
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = new HashSet<String>(Arrays.asList("js", "css",
+            "html", "htm", "xml", "xsd", "json", "svg", "txt", "csv", "map"));
+
+    private final File rootFolder;
+
+    private final Map<File, CachedResource> resources = new LinkedHashMap<File, CachedResource>(256, 0.75f, true);
+
+    private long cacheSize;
+
+    // incremented on every invalidation, files read before are not added to
+    // the cache
+    private long generation;
+
+    private WatchService watchService;
+
+    private volatile Thread watchThread;
+
+    public StaticResourceCache(File rootFolder) {
+        this.rootFolder = rootFolder.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+    /**
+     * starts watching the root folder, the cache is only used if the folder
+     * can be watched
+     */
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerAll(rootFolder.toPath());
+        } catch (IOException e) {
+            logger.warn("can not watch '{}', static files are not cached: {}", rootFolder, e.getMessage());
+            stop();
+            return;
+        }
+        watchThread = new Thread("CometVisuResourceWatcher") {
+            @Override
+            public void run() {
+                watch();
+            }
+        };
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * stops watching the root folder and clears the cache
+     */
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug(e.getMessage());
+            }
+            watchService = null;
+        }
+        watchThread = null;
+        invalidate(null);
+    }
+
+    /**
+     * returns the cached file, the file is read if it is not cached yet.
+     * Returns null if the file can not be cached.
+     */
+    public CachedResource get(File file) throws IOException {
+        if (watchThread == null) {
+            return null;
+        }
+        long currentGeneration;
+        synchronized (resources) {
+            CachedResource resource = resources.get(file);
+            if (resource != null) {
+                return resource;
+            }
+            currentGeneration = generation;
+        }
+        if (!file.isFile() || file.length() > MAX_FILE_SIZE || !isInRootFolder(file)) {
+            return null;
+        }
+
+        CachedResource resource = new CachedResource(file);
+        synchronized (resources) {
+            if (currentGeneration == generation) {
+                resources.put(file, resource);
+                cacheSize += resource.getSize();
+                Iterator<CachedResource> it = resources.values().iterator();
+                while (cacheSize > MAX_CACHE_SIZE && it.hasNext()) {
+                    cacheSize -= it.next().getSize();
+                    it.remove();
+                }
+            }
+        }
+        return resource;
+    }
+
+    private boolean isInRootFolder(File file) {
+        return file.getAbsoluteFile().toPath().normalize().startsWith(rootFolder.toPath());
+    }
+
+    /**
+     * removes the file and all files below it from the cache, all files are
+     * removed if file is null
+     */
+    private void invalidate(File file) {
+        synchronized (resources) {
+            generation++;
+            if (file == null) {
+                resources.clear();
+                cacheSize = 0;
+                return;
+            }
+            Path path = file.toPath();
+            Iterator<Map.Entry<File, CachedResource>> it = resources.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<File, CachedResource> entry = it.next();
+                if (entry.getKey().getAbsoluteFile().toPath().normalize().startsWith(path)) {
+                    cacheSize -= entry.getValue().getSize();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void registerAll(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        while (service != null && watchThread == Thread.currentThread()) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (Exception e) {
+                // interrupted or closed by stop()
+                break;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    invalidate(null);
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                logger.trace("{} '{}'", event.kind(), child);
+                invalidate(child.toFile());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                    try {
+                        registerAll(child);
+                    } catch (IOException e) {
+                        logger.debug("can not watch '{}': {}", child, e.getMessage());
+                    }
+                }
+            }
+            key.reset();
+        }
+    }
+
+    /**
+     * The content of a file with the gzipped content, if the file type is
+     * compressible.
+     *
+     * @author agent - Initial contribution
+     * @since 2.1.0
+     */
+    public static class CachedResource {
+        private final long length;
+        private final long lastModified;
+        private final String eTag;
+        private final byte[] content;
+        private final byte[] gzippedContent;
+
+        private CachedResource(File file) throws IOException {
+            this.lastModified = file.lastModified();
+            this.content = Files.readAllBytes(file.toPath());
+            this.length = content.length;
+            this.eTag = file.getName() + "_" + length + "_" + lastModified;
+
+            String extension = file.getName().substring(file.getName().lastIndexOf('.') + 1).toLowerCase();
+            if (COMPRESSIBLE_EXTENSIONS.contains(extension) && length > 0) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(content.length / 3);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+                    gzip.write(content);
+                }
+                // only keep the gzipped content if it is worth it
+                gzippedContent = bos.size() < length ? bos.toByteArray() : null;
+            } else {
+                gzippedContent = null;
+            }
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * returns the content, it must not be modified
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * returns the gzipped content or null if the file is not compressible
+         */
+        public byte[] getGzippedContent() {
+            return gzippedContent;
+        }
+
+        private long getSize() {
+            return content.length + (gzippedContent != null ? gzippedContent.length : 0);
+        }
+    }
+}
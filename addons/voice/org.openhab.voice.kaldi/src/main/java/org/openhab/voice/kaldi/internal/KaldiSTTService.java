@@ -16,6 +16,7 @@ import java.util.Set;
 
 import org.eclipse.smarthome.core.audio.AudioFormat;
 import org.eclipse.smarthome.core.audio.AudioStream;
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
 import org.eclipse.smarthome.core.voice.STTException;
 import org.eclipse.smarthome.core.voice.STTListener;
 import org.eclipse.smarthome.core.voice.STTService;
@@ -36,6 +37,11 @@ public class KaldiSTTService implements STTService {
      */
     private static final String kaldiWebSocketURL = "ws://52.37.26.79:8888/client/ws/speech";
 
+    /**
+     * Name of the shared thread pool running the recognition sessions
+     */
+    private static final String THREADPOOL_NAME = "kaldi";
+
     /**
      * Set of supported locales
      */
@@ -46,6 +52,11 @@ public class KaldiSTTService implements STTService {
      */
     private final HashSet<AudioFormat> audioFormats = initAudioFormats();
 
+    /**
+     * Metrics of the recognition sessions
+     */
+    private final STTServiceKaldiMetrics metrics = new STTServiceKaldiMetrics();
+
     /**
      * {@inheritDoc}
      */
@@ -108,14 +119,22 @@ public class KaldiSTTService implements STTService {
 
         // Start recognition
         STTServiceKaldiRunnable sttServiceKaldiRunnable = new STTServiceKaldiRunnable(recognitionSession, sttListener,
-                audioStream);
-        Thread thread = new Thread(sttServiceKaldiRunnable);
-        thread.start();
+                audioStream, metrics);
+        ThreadPoolManager.getPool(THREADPOOL_NAME).execute(sttServiceKaldiRunnable);
 
         // Return STTServiceHandleKaldi
         return new STTServiceHandleKaldi(sttServiceKaldiRunnable);
     }
 
+    /**
+     * Returns the metrics of the recognition sessions
+     *
+     * @return The metrics of this instance
+     */
+    public STTServiceKaldiMetrics getMetrics() {
+        return this.metrics;
+    }
+
     /**
      * Initializes this.locales
      *
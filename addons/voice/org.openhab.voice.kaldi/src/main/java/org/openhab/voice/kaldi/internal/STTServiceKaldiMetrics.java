@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.voice.kaldi.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the recognition sessions of a {@link KaldiSTTService}
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class STTServiceKaldiMetrics {
+
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong hypotheses = new AtomicLong();
+    private final AtomicLong firstHypothesisMillis = new AtomicLong();
+    private final AtomicLong maxFirstHypothesisMillis = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong suppressedBytes = new AtomicLong();
+
+    /**
+     * Records the start of a recognition session
+     */
+    void sessionStarted() {
+        sessions.incrementAndGet();
+    }
+
+    /**
+     * Records the time from sending the first audio data to the first hypothesis of a session
+     */
+    void firstHypothesisReceived(long millis) {
+        hypotheses.incrementAndGet();
+        firstHypothesisMillis.addAndGet(millis);
+        long max = maxFirstHypothesisMillis.get();
+        while (millis > max && !maxFirstHypothesisMillis.compareAndSet(max, millis)) {
+            max = maxFirstHypothesisMillis.get();
+        }
+    }
+
+    /**
+     * Records audio data sent to the server
+     */
+    void bytesSent(long bytes) {
+        sentBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Records audio data suppressed as silence
+     */
+    void bytesSuppressed(long bytes) {
+        suppressedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * @return The number of started recognition sessions
+     */
+    public long getSessionCount() {
+        return sessions.get();
+    }
+
+    /**
+     * @return The number of sessions which received a hypothesis
+     */
+    public long getHypothesisCount() {
+        return hypotheses.get();
+    }
+
+    /**
+     * @return The average time to the first hypothesis in milliseconds, or -1 if no hypothesis was received
+     */
+    public long getAverageFirstHypothesisMillis() {
+        long count = hypotheses.get();
+        return count == 0 ? -1 : firstHypothesisMillis.get() / count;
+    }
+
+    /**
+     * @return The maximal time to the first hypothesis in milliseconds
+     */
+    public long getMaxFirstHypothesisMillis() {
+        return maxFirstHypothesisMillis.get();
+    }
+
+    /**
+     * @return The number of audio bytes sent to the server
+     */
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    /**
+     * @return The number of audio bytes suppressed as silence
+     */
+    public long getSuppressedBytes() {
+        return suppressedBytes.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "sessions=" + getSessionCount() + ", hypotheses=" + getHypothesisCount()
+                + ", averageFirstHypothesisMillis=" + getAverageFirstHypothesisMillis()
+                + ", maxFirstHypothesisMillis=" + getMaxFirstHypothesisMillis() + ", sentBytes=" + getSentBytes()
+                + ", suppressedBytes=" + getSuppressedBytes();
+    }
+}
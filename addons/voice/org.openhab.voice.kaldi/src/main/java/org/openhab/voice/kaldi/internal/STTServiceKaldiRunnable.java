@@ -13,9 +13,12 @@ import java.util.Arrays;
 
 import org.eclipse.smarthome.core.audio.AudioFormat;
 import org.eclipse.smarthome.core.audio.AudioStream;
+import org.eclipse.smarthome.core.audio.FixedLengthAudioStream;
 import org.eclipse.smarthome.core.voice.RecognitionStartEvent;
 import org.eclipse.smarthome.core.voice.STTListener;
 import org.eclipse.smarthome.core.voice.SpeechRecognitionErrorEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ee.ioc.phon.netspeechapi.duplex.RecognitionEvent;
 import ee.ioc.phon.netspeechapi.duplex.RecognitionEventListener;
@@ -24,11 +27,21 @@ import ee.ioc.phon.netspeechapi.duplex.WsDuplexRecognitionSession;
 /**
  * A Runnable that sends AudioStream data in a WsDuplexRecognitionSession
  *
+ * Buffered audio data, e.g. of a file, is sent as fast as possible, while live audio data is paced to real time.
+ * Leading and trailing silence of 16 bit PCM audio data is suppressed by a {@link VoiceActivityGate}.
+ *
  * @author Kelly Davis - Initial contribution and API
  *
  */
 public class STTServiceKaldiRunnable implements Runnable, RecognitionEventListener {
 
+    /**
+     * Number of chunks sent per second of audio data, 4 <= chunkRate [See: http://bit.ly/1V4Ktw2]
+     */
+    private static final int CHUNK_RATE = 8;
+
+    private final Logger logger = LoggerFactory.getLogger(STTServiceKaldiRunnable.class);
+
     /**
      * Boolean indicating if the server closed the connection
      */
@@ -54,20 +67,37 @@ public class STTServiceKaldiRunnable implements Runnable, RecognitionEventListen
      */
     private final WsDuplexRecognitionSession recognitionSession;
 
+    /**
+     * The metrics of the recognition sessions
+     */
+    private final STTServiceKaldiMetrics metrics;
+
+    /**
+     * Time the first audio data was sent in nanoseconds, 0 if no data was sent yet
+     */
+    private volatile long firstChunkNanos;
+
+    /**
+     * Boolean indicating if a hypothesis was received
+     */
+    private volatile boolean isHypothesisReceived;
+
     /**
      * Constructs an instance targeting the passed WsDuplexRecognitionSession
      *
      * @param recognitionSession The WsDuplexRecognitionSession sesion
      * @param sttListener The STTListener targeted for STTEvents
      * @param audioStream The AudioSource data
+     * @param metrics The metrics of the recognition sessions
      */
     public STTServiceKaldiRunnable(WsDuplexRecognitionSession recognitionSession, STTListener sttListener,
-            AudioStream audioStream) {
+            AudioStream audioStream, STTServiceKaldiMetrics metrics) {
         this.isClosed = false;
         this.isAborting = false;
         this.audioStream = audioStream;
         this.sttListener = sttListener;
         this.recognitionSession = recognitionSession;
+        this.metrics = metrics;
 
         this.recognitionSession.addRecognitionEventListener(this);
     }
@@ -79,39 +109,64 @@ public class STTServiceKaldiRunnable implements Runnable, RecognitionEventListen
     public void run() {
         try {
             this.recognitionSession.connect();
+            metrics.sessionStarted();
             AudioFormat audioFormat = this.audioStream.getFormat();
             int bitRate = audioFormat.getBitRate().intValue();
             int byteRate = (bitRate / 8);
-            int chunkRate = 4; // 4 <= chunkRate [See: http://bit.ly/1V4Ktw2]
-            byte buffer[] = new byte[byteRate / chunkRate];
+            int chunkSize = Math.max(2, (byteRate / CHUNK_RATE) & ~1);
+            boolean isLive = !(this.audioStream instanceof FixedLengthAudioStream);
+            VoiceActivityGate gate = VoiceActivityGate.create(audioFormat);
 
             sttListener.sttEventReceived(new RecognitionStartEvent());
 
             boolean sentLastChunk = false;
+            long startNanos = System.nanoTime();
+            long readBytes = 0;
+            byte preRoll[] = null;
             while (!this.isAborting && !this.isClosed) {
-                long millisWithinChunkSecond = System.currentTimeMillis() % (1000 / chunkRate);
-                int size = audioStream.read(buffer);
-                if (size < 0) {
-                    sentLastChunk = true;
-                    byte buffer2[] = new byte[0];
-                    this.recognitionSession.sendChunk(buffer2, true);
-                    break;
+                byte buffer[] = new byte[chunkSize];
+                int size = readChunk(buffer);
+                boolean isLast = size < chunkSize;
+                if (isLast) {
+                    buffer = Arrays.copyOf(buffer, size);
                 }
-                if (size == (byteRate / chunkRate)) {
-                    this.recognitionSession.sendChunk(buffer, false);
+                readBytes += size;
+
+                if (null != gate) {
+                    VoiceActivityGate.State state = gate.process(buffer, size);
+                    if (VoiceActivityGate.State.SILENCE == state && !isLast) {
+                        // Keep the last chunk of silence, so the start of the speech isn't cut
+                        if (null != preRoll) {
+                            metrics.bytesSuppressed(preRoll.length);
+                        }
+                        preRoll = buffer;
+                    } else {
+                        if (null != preRoll) {
+                            sendChunk(preRoll, false);
+                            preRoll = null;
+                        }
+                        isLast = isLast || (VoiceActivityGate.State.END == state);
+                        sendChunk(buffer, isLast);
+                    }
                 } else {
+                    sendChunk(buffer, isLast);
+                }
+                if (isLast) {
                     sentLastChunk = true;
-                    byte buffer2[] = Arrays.copyOf(buffer, size);
-                    this.recognitionSession.sendChunk(buffer2, true);
                     break;
                 }
-                Thread.sleep(1000 / chunkRate - millisWithinChunkSecond);
+                if (isLive && 0 < byteRate) {
+                    pace(startNanos, readBytes, byteRate);
+                }
             }
 
             if (this.isAborting && !this.isClosed && !sentLastChunk) {
                 byte buffer2[] = new byte[0];
                 this.recognitionSession.sendChunk(buffer2, true);
             }
+            if (null != gate) {
+                logger.debug("Speech detected: {}", gate.isSpeechDetected());
+            }
         } catch (IOException e) {
             sttListener.sttEventReceived(new SpeechRecognitionErrorEvent("Unable to send audio data to the server"));
         } catch (InterruptedException e) {
@@ -134,6 +189,48 @@ public class STTServiceKaldiRunnable implements Runnable, RecognitionEventListen
             // This temporary, but working, solution is to catch a RuntimeException
             // here and assume that it results from sendChunk() being called on a
             // closed session then proceede as if onClose() was called.
+        } finally {
+            logger.debug("Recognition finished, metrics: {}", metrics);
+        }
+    }
+
+    /**
+     * Reads a chunk of audio data, blocking until the chunk is full or the end of the stream is reached
+     *
+     * @param buffer The buffer for the chunk
+     * @return The number of bytes read, less than the buffer length only at the end of the stream
+     */
+    private int readChunk(byte buffer[]) throws IOException {
+        int size = 0;
+        while (size < buffer.length) {
+            int count = this.audioStream.read(buffer, size, buffer.length - size);
+            if (count < 0) {
+                break;
+            }
+            size += count;
+        }
+        return size;
+    }
+
+    /**
+     * Sends a chunk of audio data in the WsDuplexRecognitionSession
+     */
+    private void sendChunk(byte buffer[], boolean isLast) throws IOException {
+        if (0 == this.firstChunkNanos) {
+            this.firstChunkNanos = System.nanoTime();
+        }
+        this.recognitionSession.sendChunk(buffer, isLast);
+        metrics.bytesSent(buffer.length);
+    }
+
+    /**
+     * Waits until the read audio data has been played in real time, if the AudioStream delivers it faster
+     */
+    private void pace(long startNanos, long readBytes, int byteRate) throws InterruptedException {
+        long audioMillis = (1000L * readBytes) / byteRate;
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1000000L;
+        if (audioMillis > elapsedMillis) {
+            Thread.sleep(audioMillis - elapsedMillis);
         }
     }
 
@@ -149,7 +246,15 @@ public class STTServiceKaldiRunnable implements Runnable, RecognitionEventListen
      */
     @Override
     public void onRecognitionEvent(RecognitionEvent recognitionEvent) {
-        // RecognitionEvent are ignored
+        // Only the time to the first hypothesis is recorded, RecognitionEvent are forwarded by
+        // RecognitionEventListenerKaldi
+        if (RecognitionEvent.STATUS_SUCCESS == recognitionEvent.getStatus() && !this.isHypothesisReceived
+                && 0 != this.firstChunkNanos) {
+            this.isHypothesisReceived = true;
+            long millis = (System.nanoTime() - this.firstChunkNanos) / 1000000L;
+            metrics.firstHypothesisReceived(millis);
+            logger.debug("First hypothesis received after {} ms", millis);
+        }
     }
 
     /**
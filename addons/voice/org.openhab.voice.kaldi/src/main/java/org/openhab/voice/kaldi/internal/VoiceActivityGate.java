@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.voice.kaldi.internal;
+
+import org.eclipse.smarthome.core.audio.AudioFormat;
+
+/**
+ * An energy based voice activity detector for 16 bit PCM audio data
+ *
+ * The detector compares the RMS energy of each chunk with a threshold derived from the noise floor of the preceding
+ * silence. It is used to suppress leading silence and to end an utterance after a period of trailing silence.
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class VoiceActivityGate {
+
+    /**
+     * State of the audio data after a chunk
+     */
+    public enum State {
+        /**
+         * No speech has been detected yet
+         */
+        SILENCE,
+        /**
+         * Speech has been detected, the chunk is part of the utterance
+         */
+        SPEECH,
+        /**
+         * The utterance has ended
+         */
+        END
+    }
+
+    /**
+     * Minimal RMS energy of speech, about -36 dBFS
+     */
+    private static final double MIN_SPEECH_ENERGY = 500;
+
+    /**
+     * Factor by which the energy of speech exceeds the noise floor
+     */
+    private static final double SPEECH_FACTOR = 3.0;
+
+    /**
+     * Weight of a new chunk in the noise floor estimate
+     */
+    private static final double NOISE_FLOOR_WEIGHT = 0.2;
+
+    /**
+     * Milliseconds of silence ending an utterance
+     */
+    private static final long TRAILING_SILENCE_MILLIS = 800;
+
+    /**
+     * Milliseconds of silence after which the recognition ends if no speech is detected
+     */
+    private static final long MAX_LEADING_SILENCE_MILLIS = 10000;
+
+    private final boolean bigEndian;
+    private final long bytesPerSecond;
+
+    private State state = State.SILENCE;
+    private boolean speechDetected;
+    private double noiseFloor;
+    private long silenceMillis;
+
+    private VoiceActivityGate(boolean bigEndian, long bytesPerSecond) {
+        this.bigEndian = bigEndian;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Creates a VoiceActivityGate for the passed AudioFormat
+     *
+     * @param audioFormat The AudioFormat of the audio data
+     * @return The VoiceActivityGate or null, if the audio data can't be analyzed and should be streamed ungated
+     */
+    public static VoiceActivityGate create(AudioFormat audioFormat) {
+        if (!AudioFormat.CODEC_PCM_SIGNED.equals(audioFormat.getCodec()) || null == audioFormat.getBitDepth()
+                || 16 != audioFormat.getBitDepth().intValue() || null == audioFormat.getBitRate()
+                || 8 > audioFormat.getBitRate().intValue()) {
+            return null;
+        }
+        boolean bigEndian = (null != audioFormat.isBigEndian()) && audioFormat.isBigEndian().booleanValue();
+        return new VoiceActivityGate(bigEndian, audioFormat.getBitRate().intValue() / 8);
+    }
+
+    /**
+     * Processes the next chunk of audio data
+     *
+     * @param chunk The audio data
+     * @param length The length of the audio data in the chunk
+     * @return The state after the chunk
+     */
+    public State process(byte[] chunk, int length) {
+        if (State.END == state) {
+            return state;
+        }
+        double energy = getEnergy(chunk, length);
+        boolean isSpeech = energy > Math.max(MIN_SPEECH_ENERGY, noiseFloor * SPEECH_FACTOR);
+        long chunkMillis = (1000L * length) / bytesPerSecond;
+
+        if (isSpeech) {
+            silenceMillis = 0;
+            speechDetected = true;
+            state = State.SPEECH;
+        } else {
+            silenceMillis += chunkMillis;
+            if (State.SILENCE == state) {
+                noiseFloor = (0 == noiseFloor) ? energy
+                        : (1 - NOISE_FLOOR_WEIGHT) * noiseFloor + NOISE_FLOOR_WEIGHT * energy;
+                if (silenceMillis >= MAX_LEADING_SILENCE_MILLIS) {
+                    state = State.END;
+                }
+            } else if (silenceMillis >= TRAILING_SILENCE_MILLIS) {
+                state = State.END;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return true, if speech has been detected
+     */
+    public boolean isSpeechDetected() {
+        return speechDetected;
+    }
+
+    /**
+     * Calculates the RMS energy of 16 bit samples
+     */
+    private double getEnergy(byte[] chunk, int length) {
+        int samples = length / 2;
+        if (0 == samples) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < samples; i++) {
+            int lo = bigEndian ? chunk[2 * i + 1] & 0xff : chunk[2 * i] & 0xff;
+            int hi = bigEndian ? chunk[2 * i] : chunk[2 * i + 1];
+            int sample = (hi << 8) | lo;
+            sum += (double) sample * sample;
+        }
+        return Math.sqrt(sum / samples);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.voice.marytts.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffer for the raw audio data of a synthesized text. The audio data is appended in chunks while it is synthesized
+ * and can be read concurrently by any number of {@link MaryTTSAudioStream}s, which block until more data is available.
+ * Appended chunks are never modified, so the streams share the data without copying it.
+ *
+ * @author agent - Initial contribution
+ */
+class MaryTTSAudioBuffer {
+
+    private final javax.sound.sampled.AudioFormat format;
+
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+    private long length;
+    private boolean complete;
+    private IOException failure;
+
+    /**
+     * Constructs an empty buffer
+     *
+     * @param format The format of the raw audio data
+     */
+    public MaryTTSAudioBuffer(javax.sound.sampled.AudioFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * @return The format of the raw audio data
+     */
+    public javax.sound.sampled.AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Appends a chunk of raw audio data. The chunk must not be modified afterwards.
+     */
+    public synchronized void append(byte[] chunk) {
+        if (chunk.length > 0) {
+            chunks.add(chunk);
+            length += chunk.length;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Marks the buffer as complete, no more chunks will be appended.
+     */
+    public synchronized void complete() {
+        complete = true;
+        notifyAll();
+    }
+
+    /**
+     * Marks the buffer as failed, readers waiting for more data will receive the exception. A complete buffer is not
+     * changed.
+     */
+    public synchronized void fail(IOException failure) {
+        if (complete) {
+            return;
+        }
+        this.failure = failure;
+        complete = true;
+        notifyAll();
+    }
+
+    /**
+     * @return true, if all audio data has been appended successfully
+     */
+    public synchronized boolean isComplete() {
+        return complete && failure == null;
+    }
+
+    /**
+     * @return true, if the synthesis failed
+     */
+    public synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Waits until the first chunk has been appended or the buffer is complete.
+     *
+     * @throws IOException if the synthesis failed before any audio data was appended
+     */
+    public synchronized void awaitData() throws IOException {
+        while (chunks.isEmpty() && !complete) {
+            waitForData();
+        }
+        if (chunks.isEmpty() && failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return The length of the raw audio data appended so far
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the chunk with the given index, waiting until it has been appended.
+     *
+     * @return The chunk or null, if the buffer is complete and has no more chunks
+     * @throws IOException if the synthesis failed
+     */
+    synchronized byte[] getChunk(int index) throws IOException {
+        while (index >= chunks.size() && !complete) {
+            waitForData();
+        }
+        if (index < chunks.size()) {
+            return chunks.get(index);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    private void waitForData() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for audio data");
+        }
+    }
+}
@@ -8,14 +8,9 @@
  */
 package org.openhab.voice.marytts.internal;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
 
-import javax.sound.sampled.AudioInputStream;
-
-import org.apache.commons.io.IOUtils;
 import org.eclipse.smarthome.core.audio.AudioException;
 import org.eclipse.smarthome.core.audio.AudioFormat;
 import org.eclipse.smarthome.core.audio.AudioSource;
@@ -24,35 +19,40 @@ import org.eclipse.smarthome.core.audio.FixedLengthAudioStream;
 /**
  * Implementation of the {@link AudioSource} interface for the {@link MaryTTSService}
  *
+ * The stream reads the audio data from a {@link MaryTTSAudioBuffer} while it is synthesized. If the synthesis is not
+ * complete when reading starts, the WAVE header contains the maximum length, as usual for streamed WAVE data.
+ *
  * @author Kelly Davis - Initial contribution and API
  * @author Kai Kreuzer - Refactored to updated APIs and moved to openHAB
  */
 class MaryTTSAudioStream extends FixedLengthAudioStream {
 
+    private static final int HEADER_LENGTH = 44;
+
     /**
      * {@link AudioFormat} of this {@link AudioSource}
      */
     private final AudioFormat audioFormat;
 
     /**
-     * {@link InputStream} of this {@link AudioSource}
+     * Audio data of this {@link AudioSource}, shared with all clones
      */
-    private InputStream inputStream;
+    private final MaryTTSAudioBuffer buffer;
 
-    private byte[] rawAudio;
-    private int length;
+    private byte[] header;
+    private int headerPos;
+    private int chunkIndex;
+    private byte[] chunk;
+    private int chunkPos;
 
     /**
      * Constructs an instance with the passed properties
      *
-     * @param inputStream The InputStream of this instance
+     * @param buffer The buffer with the audio data of this instance
      * @param audioFormat The AudioFormat of this instance
-     * @throws IOException
      */
-    public MaryTTSAudioStream(AudioInputStream inputStream, AudioFormat audioFormat) throws IOException {
-        rawAudio = IOUtils.toByteArray(inputStream);
-        this.length = rawAudio.length + 36;
-        this.inputStream = new SequenceInputStream(getWavHeaderInputStream(length), new ByteArrayInputStream(rawAudio));
+    public MaryTTSAudioStream(MaryTTSAudioBuffer buffer, AudioFormat audioFormat) {
+        this.buffer = buffer;
         this.audioFormat = audioFormat;
     }
 
@@ -63,35 +63,80 @@ class MaryTTSAudioStream extends FixedLengthAudioStream {
 
     @Override
     public int read(byte[] b) throws IOException {
-        return inputStream.read(b, 0, b.length);
+        return read(b, 0, b.length);
     }
 
     @Override
-    public int read(byte[] b, int off, int len) throws IOException {
-        return inputStream.read(b, off, len);
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (header == null) {
+            header = getWavHeader();
+        }
+        if (headerPos < header.length) {
+            int count = Math.min(len, header.length - headerPos);
+            System.arraycopy(header, headerPos, b, off, count);
+            headerPos += count;
+            return count;
+        }
+        while (chunk == null || chunkPos >= chunk.length) {
+            chunk = buffer.getChunk(chunkIndex);
+            if (chunk == null) {
+                return -1;
+            }
+            chunkIndex++;
+            chunkPos = 0;
+        }
+        int count = Math.min(len, chunk.length - chunkPos);
+        System.arraycopy(chunk, chunkPos, b, off, count);
+        chunkPos += count;
+        return count;
     }
 
     @Override
     public int read() throws IOException {
-        return inputStream.read();
+        byte[] b = new byte[1];
+        int count = read(b, 0, 1);
+        return count == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (header == null) {
+            return 0;
+        }
+        if (headerPos < header.length) {
+            return header.length - headerPos;
+        }
+        return chunk == null ? 0 : chunk.length - chunkPos;
     }
 
+    /**
+     * Returns the length of the WAVE data, or -1 if the length is not known yet, because the synthesis is not
+     * complete.
+     */
     @Override
     public long length() {
-        return length;
+        if (!buffer.isComplete()) {
+            return -1;
+        }
+        return HEADER_LENGTH + buffer.getLength();
     }
 
-    private InputStream getWavHeaderInputStream(int length) throws IOException {
+    private byte[] getWavHeader() {
         // WAVE header
         // see http://www-mmsp.ece.mcgill.ca/Documents/AudioFormats/WAVE/WAVE.html
-        byte[] header = new byte[44];
+        byte[] header = new byte[HEADER_LENGTH];
 
-        byte format = 0x10; // PCM
-        byte bits = 16;
-        byte channel = 1;
-        int srate = 48000;
-        long rawLength = length - 36;
-        long bitrate = srate * channel * bits;
+        javax.sound.sampled.AudioFormat format = buffer.getFormat();
+        byte formatTag = 0x10; // PCM
+        int bits = format.getSampleSizeInBits();
+        int channel = format.getChannels();
+        int srate = (int) format.getSampleRate();
+        long rawLength = buffer.isComplete() ? buffer.getLength() : 0xffffffffL - 36;
+        long length = rawLength + 36;
+        long bitrate = (long) srate * channel * bits;
 
         header[0] = 'R';
         header[1] = 'I';
@@ -109,13 +154,13 @@ class MaryTTSAudioStream extends FixedLengthAudioStream {
         header[13] = 'm';
         header[14] = 't';
         header[15] = ' ';
-        header[16] = format;
+        header[16] = formatTag;
         header[17] = 0;
         header[18] = 0;
         header[19] = 0;
         header[20] = 1;
         header[21] = 0;
-        header[22] = channel;
+        header[22] = (byte) channel;
         header[23] = 0;
         header[24] = (byte) (srate & 0xff);
         header[25] = (byte) ((srate >> 8) & 0xff);
@@ -127,7 +172,7 @@ class MaryTTSAudioStream extends FixedLengthAudioStream {
         header[31] = (byte) (((bitrate / 8) >> 24) & 0xff);
         header[32] = (byte) ((channel * bits) / 8);
         header[33] = 0;
-        header[34] = 16;
+        header[34] = (byte) bits;
         header[35] = 0;
         header[36] = 'd';
         header[37] = 'a';
@@ -137,21 +182,20 @@ class MaryTTSAudioStream extends FixedLengthAudioStream {
         header[41] = (byte) ((rawLength >> 8) & 0xff);
         header[42] = (byte) ((rawLength >> 16) & 0xff);
         header[43] = (byte) ((rawLength >> 24) & 0xff);
-        return new ByteArrayInputStream(header);
+        return header;
     }
 
     @Override
     public synchronized void reset() throws IOException {
-        IOUtils.closeQuietly(inputStream);
-        this.inputStream = new SequenceInputStream(getWavHeaderInputStream(length), new ByteArrayInputStream(rawAudio));
+        header = null;
+        headerPos = 0;
+        chunkIndex = 0;
+        chunk = null;
+        chunkPos = 0;
     }
 
     @Override
     public InputStream getClonedStream() throws AudioException {
-        try {
-            return new SequenceInputStream(getWavHeaderInputStream(length), new ByteArrayInputStream(rawAudio));
-        } catch (IOException e) {
-            throw new AudioException(e);
-        }
+        return new MaryTTSAudioStream(buffer, audioFormat);
     }
 }
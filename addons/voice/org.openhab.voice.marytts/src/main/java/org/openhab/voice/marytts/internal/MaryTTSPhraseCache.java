@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2014-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.voice.marytts.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of the {@link MaryTTSAudioBuffer}s of synthesized phrases. Buffers are added while they
+ * are synthesized, so concurrent requests for the same phrase share the synthesis. The cache is limited by the total
+ * length of the complete buffers and the number of entries.
+ *
+ * @author agent - Initial contribution
+ */
+class MaryTTSPhraseCache {
+
+    private final long maxSize;
+    private final int maxEntries;
+
+    private final LinkedHashMap<String, MaryTTSAudioBuffer> buffers = new LinkedHashMap<String, MaryTTSAudioBuffer>(16,
+            0.75f, true);
+
+    /**
+     * Constructs an empty cache
+     *
+     * @param maxSize The maximum total length of the cached audio data in bytes
+     * @param maxEntries The maximum number of cached phrases
+     */
+    public MaryTTSPhraseCache(long maxSize, int maxEntries) {
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the key of a phrase
+     */
+    public static String getKey(String text, String voice, String format) {
+        return voice + '\n' + format + '\n' + text;
+    }
+
+    /**
+     * Returns the buffer of a phrase, which may still be synthesized, or null if the phrase is not cached.
+     */
+    public synchronized MaryTTSAudioBuffer get(String key) {
+        MaryTTSAudioBuffer buffer = buffers.get(key);
+        if (buffer != null && buffer.isFailed()) {
+            buffers.remove(key);
+            return null;
+        }
+        return buffer;
+    }
+
+    /**
+     * Adds the buffer of a phrase, which may still be synthesized.
+     */
+    public synchronized void put(String key, MaryTTSAudioBuffer buffer) {
+        buffers.put(key, buffer);
+        evict();
+    }
+
+    /**
+     * Removes the buffer of a phrase, if it is still cached.
+     */
+    public synchronized void remove(String key, MaryTTSAudioBuffer buffer) {
+        if (buffers.get(key) == buffer) {
+            buffers.remove(key);
+        }
+    }
+
+    /**
+     * Removes the least recently used phrases if the cache is over budget. Must be called when a buffer is complete.
+     */
+    public synchronized void evict() {
+        long size = 0;
+        for (MaryTTSAudioBuffer buffer : buffers.values()) {
+            size += buffer.getLength();
+        }
+        Iterator<Map.Entry<String, MaryTTSAudioBuffer>> it = buffers.entrySet().iterator();
+        while ((size > maxSize || buffers.size() > maxEntries) && it.hasNext()) {
+            MaryTTSAudioBuffer buffer = it.next().getValue();
+            if (buffer.isComplete() || buffer.isFailed()) {
+                size -= buffer.getLength();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The number of cached phrases
+     */
+    public synchronized int size() {
+        return buffers.size();
+    }
+
+    /**
+     * Removes all phrases.
+     */
+    public synchronized void clear() {
+        buffers.clear();
+    }
+}
@@ -16,15 +16,23 @@ package org.openhab.voice.marytts.internal;
  */
 
 import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
+import org.apache.commons.io.IOUtils;
 import org.eclipse.smarthome.core.audio.AudioFormat;
 import org.eclipse.smarthome.core.audio.AudioStream;
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
 import org.eclipse.smarthome.core.voice.TTSException;
 import org.eclipse.smarthome.core.voice.TTSService;
 import org.slf4j.Logger;
@@ -39,13 +47,48 @@ import marytts.modules.synthesis.Voice;
 /**
  * This is a TTS service implementation for using MaryTTS.
  *
+ * The text is synthesized sentence by sentence in the background, so the returned stream provides the audio of the
+ * first sentence while the following sentences are still synthesized. Synthesized phrases are cached, so recurring
+ * announcements are not synthesized again.
+ *
  * @author Kelly Davis - Initial contribution and API
  * @author Kai Kreuzer - Refactored to updated APIs and moved to openHAB
  */
 public class MaryTTSService implements TTSService {
 
+    private static final String THREADPOOL_NAME = "marytts";
+
+    /**
+     * Maximum total length of the cached audio data in bytes
+     */
+    private static final long CACHE_MAX_SIZE = 32L * 1024 * 1024;
+
+    /**
+     * Maximum number of cached phrases
+     */
+    private static final int CACHE_MAX_ENTRIES = 100;
+
+    /**
+     * Text synthesized for each voice on startup, to load the voice data
+     */
+    private static final String WARM_UP_TEXT = "OK.";
+
     private final Logger logger = LoggerFactory.getLogger(MaryTTSService.class);
 
+    private final ExecutorService executor = ThreadPoolManager.getPool(THREADPOOL_NAME);
+
+    private final MaryTTSPhraseCache phraseCache = new MaryTTSPhraseCache(CACHE_MAX_SIZE, CACHE_MAX_ENTRIES);
+
+    /**
+     * Synthesis jobs, which are queued or running
+     */
+    private final Set<SynthesisJob> jobs = Collections.synchronizedSet(new HashSet<SynthesisJob>());
+
+    /**
+     * Set if a text is synthesized or the service is deactivated, the warm-up of the voices is stopped then
+     */
+    private volatile boolean warmUpCancelled;
+
     private MaryInterface marytts;
 
     /**
@@ -63,11 +106,26 @@ public class MaryTTSService implements TTSService {
             marytts = getMaryInterface();
             voices = initVoices();
             audioFormats = initAudioFormats();
+            warmUpCancelled = false;
+            warmUpVoices();
         } catch (Throwable t) {
             logger.error("Failed to initialize MaryTTS: {}", t.getMessage(), t);
         }
     }
 
+    protected void deactivate() {
+        warmUpCancelled = true;
+        List<SynthesisJob> pendingJobs;
+        synchronized (jobs) {
+            pendingJobs = new ArrayList<SynthesisJob>(jobs);
+            jobs.clear();
+        }
+        for (SynthesisJob job : pendingJobs) {
+            job.cancel();
+        }
+        phraseCache.clear();
+    }
+
     @Override
     public Set<org.eclipse.smarthome.core.voice.Voice> getAvailableVoices() {
         return this.voices;
@@ -122,23 +180,160 @@ public class MaryTTSService implements TTSService {
         Voice maryTTSVoice = Voice.getVoice(voice.getLabel());
         AudioFormat maryTTSVoiceAudioFormat = getAudioFormat(maryTTSVoice.dbAudioFormat());
 
+        String key = MaryTTSPhraseCache.getKey(text, voice.getUID(),
+                maryTTSVoiceAudioFormat.getCodec() + "/" + maryTTSVoiceAudioFormat.getFrequency());
+        MaryTTSAudioBuffer buffer;
+        synchronized (phraseCache) {
+            buffer = phraseCache.get(key);
+            if (buffer == null) {
+                buffer = new MaryTTSAudioBuffer(maryTTSVoice.dbAudioFormat());
+                phraseCache.put(key, buffer);
+                warmUpCancelled = true;
+                SynthesisJob job = new SynthesisJob(key, text, voice, buffer);
+                jobs.add(job);
+                job.future = executor.submit(job);
+            } else {
+                logger.debug("Using cached audio for '{}'", text);
+            }
+        }
+
+        // Wait for the first sentence, so errors are reported to the caller
+        try {
+            buffer.awaitData();
+        } catch (IOException e) {
+            throw new TTSException("Error generating an AudioStream", e);
+        }
+        return new MaryTTSAudioStream(buffer, maryTTSVoiceAudioFormat);
+    }
+
+    /**
+     * Splits a text into sentences, which are synthesized separately
+     *
+     * @param text The text
+     * @param locale The locale of the text
+     * @return The sentences of the text
+     */
+    private List<String> splitSentences(String text, Locale locale) {
+        List<String> sentences = new ArrayList<String>();
+        BreakIterator iterator = BreakIterator.getSentenceInstance(locale);
+        iterator.setText(text);
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            String sentence = text.substring(start, end).trim();
+            if (!sentence.isEmpty()) {
+                sentences.add(sentence);
+            }
+        }
+        if (sentences.isEmpty()) {
+            sentences.add(text);
+        }
+        return sentences;
+    }
+
+    /**
+     * Synthesizes a text with a voice
+     *
+     * @param text The text
+     * @param voice The voice
+     * @return The raw audio data
+     */
+    private byte[] generateAudio(String text, org.eclipse.smarthome.core.voice.Voice voice)
+            throws SynthesisException, IOException {
         // Synchronize on marytts
         synchronized (marytts) {
-            // AudioStream to return
-            AudioStream audioStream = null;
-
             // Set voice (Each voice supports onl a single AudioFormat)
             marytts.setLocale(voice.getLocale());
             marytts.setVoice(voice.getLabel());
 
+            AudioInputStream audioInputStream = marytts.generateAudio(text);
+            try {
+                return IOUtils.toByteArray(audioInputStream);
+            } finally {
+                IOUtils.closeQuietly(audioInputStream);
+            }
+        }
+    }
+
+    /**
+     * Synthesizes each voice once in the background, so the voice data is loaded before the first real request. The
+     * voices are warmed up one after the other by a single job, which stops as soon as a text is synthesized.
+     */
+    private void warmUpVoices() {
+        final List<org.eclipse.smarthome.core.voice.Voice> warmUpVoices;
+        warmUpVoices = new ArrayList<org.eclipse.smarthome.core.voice.Voice>(voices);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (org.eclipse.smarthome.core.voice.Voice voice : warmUpVoices) {
+                    if (warmUpCancelled) {
+                        logger.debug("Stopped warm-up of the voices");
+                        return;
+                    }
+                    try {
+                        long start = System.currentTimeMillis();
+                        generateAudio(WARM_UP_TEXT, voice);
+                        logger.debug("Warmed up voice '{}' in {} ms", voice.getLabel(),
+                                System.currentTimeMillis() - start);
+                    } catch (Exception e) {
+                        logger.debug("Failed to warm up voice '{}': {}", voice.getLabel(), e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Synthesizes a text sentence by sentence into a {@link MaryTTSAudioBuffer}.
+     *
+     * @author agent - Initial contribution
+     */
+    private class SynthesisJob implements Runnable {
+        private final String key;
+        private final String text;
+        private final org.eclipse.smarthome.core.voice.Voice voice;
+        private final MaryTTSAudioBuffer buffer;
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+
+        public SynthesisJob(String key, String text, org.eclipse.smarthome.core.voice.Voice voice,
+                MaryTTSAudioBuffer buffer) {
+            this.key = key;
+            this.text = text;
+            this.voice = voice;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void run() {
             try {
-                AudioInputStream audioInputStream = marytts.generateAudio(text);
-                audioStream = new MaryTTSAudioStream(audioInputStream, maryTTSVoiceAudioFormat);
-            } catch (SynthesisException | IOException e) {
-                throw new TTSException("Error generating an AudioStream", e);
+                for (String sentence : splitSentences(text, voice.getLocale())) {
+                    if (cancelled) {
+                        return;
+                    }
+                    buffer.append(generateAudio(sentence, voice));
+                }
+                buffer.complete();
+                phraseCache.evict();
+            } catch (SynthesisException | IOException | RuntimeException e) {
+                logger.debug("Error generating audio for '{}': {}", text, e.getMessage());
+                phraseCache.remove(key, buffer);
+                buffer.fail(e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e));
+            } finally {
+                jobs.remove(this);
             }
+        }
 
-            return audioStream;
+        /**
+         * Stops the job before the next sentence, a queued job is removed from the executor.
+         */
+        public void cancel() {
+            cancelled = true;
+            Future<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+            phraseCache.remove(key, buffer);
+            buffer.fail(new IOException("The synthesis has been cancelled"));
         }
     }
 
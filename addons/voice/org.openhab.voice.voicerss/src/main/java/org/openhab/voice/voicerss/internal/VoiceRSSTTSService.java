@@ -120,7 +120,7 @@ public class VoiceRSSTTSService implements TTSService {
         // only a default voice
         try {
             File cacheAudioFile = voiceRssImpl.getTextToSpeechAsFile(this.apiKey, text,
-                    voice.getLocale().toLanguageTag(), requestedFormat.getCodec());
+                    voice.getLocale().toLanguageTag(), voice.getLabel(), requestedFormat.getCodec());
             if (cacheAudioFile == null) {
                 throw new TTSException("Could not read from VoiceRSS service");
             }
@@ -9,80 +9,160 @@
 package org.openhab.voice.voicerss.internal.cloudapi;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This class implements a cache for the retrieved audio data. It will preserve
- * them in file system, as .mp3 files with an additional .txt file to indidate
+ * them in file system, as audio files with an additional .txt file to indidate
  * what content is in the audio file.
  * 
+ * The cache files are named by the locale and a MD5 hash of text, voice and
+ * audio format. An index of all cached files is kept in least recently used
+ * order, so the cache can be limited in size and number of entries. Files are
+ * written to a temporary file first and then renamed, and concurrent requests
+ * for the same audio share one request to the cloud service.
+ * 
  * @author Jochen Hiller - Initial contribution
  */
 public class CachedVoiceRSSCloudImplementation extends VoiceRSSCloudImplementation {
 
+	/** Default maximum size of all cached audio files in bytes. */
+	public static final long DEFAULT_MAX_CACHE_SIZE = 50L * 1024 * 1024;
+
+	/** Default maximum number of cached audio files. */
+	public static final int DEFAULT_MAX_CACHE_ENTRIES = 1000;
+
+	private static final String TEXT_EXTENSION = ".txt";
+	private static final String TEMP_EXTENSION = ".tmp";
+
 	private final Logger logger = LoggerFactory.getLogger(CachedVoiceRSSCloudImplementation.class);
 
 	private final File cacheFolder;
+	private final long maxCacheSize;
+	private final int maxCacheEntries;
+
+	/**
+	 * Cached audio files by file name, in least recently used order.
+	 */
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long cacheSize;
+
+	/**
+	 * Requests to the cloud service which are currently running, by file name.
+	 */
+	private final ConcurrentMap<String, FutureTask<File>> inFlight = new ConcurrentHashMap<String, FutureTask<File>>();
 
 	public CachedVoiceRSSCloudImplementation(String cacheFolderName) {
+		this(cacheFolderName, DEFAULT_MAX_CACHE_SIZE, DEFAULT_MAX_CACHE_ENTRIES);
+	}
+
+	public CachedVoiceRSSCloudImplementation(String cacheFolderName, long maxCacheSize, int maxCacheEntries) {
 		if (cacheFolderName == null) {
 			throw new RuntimeException("Folder for cache must be defined");
 		}
+		this.maxCacheSize = maxCacheSize;
+		this.maxCacheEntries = maxCacheEntries;
 		// Lazy create the cache folder
 		cacheFolder = new File(cacheFolderName);
 		if (!cacheFolder.exists()) {
 			cacheFolder.mkdirs();
 		}
+		loadIndex();
 	}
 
-	public File getTextToSpeechAsFile(String apiKey, String text, String locale, String audioFormat)
-			throws IOException {
-		String fileNameInCache = getUniqeFilenameForText(text, locale);
-		// check if in cache
-		File audioFileInCache = new File(cacheFolder, fileNameInCache + ".mp3");
-		if (audioFileInCache.exists()) {
+	/**
+	 * Returns the cached audio file for the given parameters, retrieving it
+	 * from the cloud service if it is not cached yet.
+	 * 
+	 * @return the audio file, or null if it could not be retrieved
+	 */
+	public File getTextToSpeechAsFile(final String apiKey, final String text, final String locale, final String voice,
+			final String audioFormat) throws IOException {
+		final String fileNameInCache = getUniqeFilenameForText(text, locale, voice, audioFormat) + "."
+				+ audioFormat.toLowerCase();
+		File audioFileInCache = getCachedFile(fileNameInCache);
+		if (audioFileInCache != null) {
 			return audioFileInCache;
 		}
 
-		// if not in cache, get audio data and put to cache
-		try (InputStream is = super.getTextToSpeech(apiKey, text, locale, audioFormat);
-				FileOutputStream fos = new FileOutputStream(audioFileInCache);) {
-			copyStream(is, fos);
-			// write text to file for transparency too
-			// this allows to know which contents is in which audio file
-			File txtFileInCache = new File(cacheFolder, fileNameInCache + ".txt");
-			writeText(txtFileInCache, text);
-			// return from cache
-			return audioFileInCache;
-		} catch (FileNotFoundException ex) {
-			logger.warn("Could not write {} to cache, return null", audioFileInCache, ex);
-			return null;
-		} catch (IOException ex) {
-			logger.error("Could not write {} to cache, return null", audioFileInCache, ex);
-			return null;
+		// if not in cache, get audio data and put to cache, sharing the
+		// request with concurrent callers for the same audio
+		FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				return retrieveToCache(apiKey, text, locale, audioFormat, fileNameInCache);
+			}
+		});
+		FutureTask<File> runningTask = inFlight.putIfAbsent(fileNameInCache, task);
+		if (runningTask == null) {
+			runningTask = task;
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(fileNameInCache, task);
+			}
+		} else {
+			logger.debug("Waiting for running request of {}", fileNameInCache);
+		}
+		try {
+			return runningTask.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for " + fileNameInCache, ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			throw new IOException(ex.getCause());
 		}
 	}
 
 	/**
-	 * Gets a unique filename for a give text, by creating a MD5 hash of it. It
-	 * will be preceded by the locale.
+	 * Returns the number of cached audio files.
+	 */
+	public synchronized int getCacheEntries() {
+		return index.size();
+	}
+
+	/**
+	 * Returns the size of all cached audio files in bytes.
+	 */
+	public synchronized long getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Gets a unique filename for a give text, voice and audio format, by
+	 * creating a MD5 hash of them. It will be preceded by the locale.
 	 * 
 	 * Sample: "en-US_00a2653ac5f77063bc4ea2fee87318d3"
 	 */
-	String getUniqeFilenameForText(String text, String locale) {
+	String getUniqeFilenameForText(String text, String locale, String voice, String audioFormat) {
 		try {
-			byte[] bytesOfMessage = text.getBytes("UTF-8");
+			byte[] bytesOfMessage = (text + '\n' + voice + '\n' + audioFormat).getBytes("UTF-8");
 			MessageDigest md = MessageDigest.getInstance("MD5");
 			byte[] md5Hash = md.digest(bytesOfMessage);
 			BigInteger bigInt = new BigInteger(1, md5Hash);
@@ -105,8 +185,127 @@ public class CachedVoiceRSSCloudImplementation extends VoiceRSSCloudImplementati
 		}
 	}
 
+	// cache index
+
+	/**
+	 * Returns the cached file and marks it as recently used, or null if it is
+	 * not cached.
+	 */
+	private synchronized File getCachedFile(String fileName) {
+		if (index.get(fileName) == null) {
+			return null;
+		}
+		File file = new File(cacheFolder, fileName);
+		if (!file.exists()) {
+			// deleted from outside
+			cacheSize -= index.remove(fileName);
+			return null;
+		}
+		// keep the order across restarts
+		file.setLastModified(System.currentTimeMillis());
+		return file;
+	}
+
+	/**
+	 * Adds a file to the index and evicts the least recently used files if the
+	 * cache is over budget.
+	 */
+	private synchronized void addToIndex(String fileName, long size) {
+		Long oldSize = index.put(fileName, size);
+		cacheSize += size - (oldSize != null ? oldSize : 0);
+		Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+		while ((cacheSize > maxCacheSize || index.size() > maxCacheEntries) && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			if (eldest.getKey().equals(fileName)) {
+				// never evict the file just added
+				continue;
+			}
+			it.remove();
+			cacheSize -= eldest.getValue();
+			deleteCacheFile(eldest.getKey());
+		}
+	}
+
+	/**
+	 * Builds the index from the files in the cache folder, ordered by their
+	 * last use. Temporary files of interrupted writes are deleted.
+	 */
+	private synchronized void loadIndex() {
+		File[] files = cacheFolder.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				long diff = f1.lastModified() - f2.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(TEMP_EXTENSION)) {
+				file.delete();
+			} else if (file.isFile() && !name.endsWith(TEXT_EXTENSION)) {
+				addToIndex(name, file.length());
+			}
+		}
+		logger.debug("Found {} files with {} bytes in cache {}", index.size(), cacheSize, cacheFolder);
+	}
+
+	private void deleteCacheFile(String fileName) {
+		logger.debug("Evicting {} from cache", fileName);
+		File audioFile = new File(cacheFolder, fileName);
+		if (!audioFile.delete() && audioFile.exists()) {
+			logger.debug("Could not delete {}, it may still be in use", audioFile);
+		}
+		int dot = fileName.lastIndexOf('.');
+		String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+		new File(cacheFolder, baseName + TEXT_EXTENSION).delete();
+	}
+
+	/**
+	 * Retrieves the audio data from the cloud service and writes it atomically
+	 * to the cache.
+	 */
+	private File retrieveToCache(String apiKey, String text, String locale, String audioFormat,
+			String fileNameInCache) {
+		File audioFileInCache = new File(cacheFolder, fileNameInCache);
+		File tempFile = null;
+		try {
+			tempFile = File.createTempFile(fileNameInCache, TEMP_EXTENSION, cacheFolder);
+			try (InputStream is = super.getTextToSpeech(apiKey, text, locale, audioFormat);
+					FileOutputStream fos = new FileOutputStream(tempFile);) {
+				copyStream(is, fos);
+			}
+			// write text to file for transparency too
+			// this allows to know which contents is in which audio file
+			int dot = fileNameInCache.lastIndexOf('.');
+			writeText(new File(cacheFolder, fileNameInCache.substring(0, dot) + TEXT_EXTENSION), text);
+			moveAtomically(tempFile, audioFileInCache);
+			addToIndex(fileNameInCache, audioFileInCache.length());
+			// return from cache
+			return audioFileInCache;
+		} catch (IOException ex) {
+			logger.error("Could not write {} to cache, return null", audioFileInCache, ex);
+			if (tempFile != null) {
+				tempFile.delete();
+			}
+			return null;
+		}
+	}
+
 	// helper methods
 
+	private void moveAtomically(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
 	private void copyStream(InputStream inputStream, OutputStream outputStream) throws IOException {
 		byte[] bytes = new byte[4096];
 		int read = inputStream.read(bytes, 0, 4096);
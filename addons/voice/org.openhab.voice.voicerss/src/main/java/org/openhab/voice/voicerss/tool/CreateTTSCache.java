@@ -45,6 +45,7 @@ public class CreateTTSCache {
 		String apiKey = args[1];
 		String cacheDir = args[2];
 		String locale = args[3];
+		CachedVoiceRSSCloudImplementation impl = new CachedVoiceRSSCloudImplementation(cacheDir);
 		if (args[4].startsWith("@")) {
 			String inputFileName = args[4].substring(1);
 			File inputFile = new File(inputFileName);
@@ -53,10 +54,10 @@ public class CreateTTSCache {
 				System.err.println("File " + inputFileName + " not found");
 				return RC_INPUT_FILE_NOT_FOUND;
 			}
-			generateCacheForFile(apiKey, cacheDir, locale, inputFileName);
+			generateCacheForFile(impl, apiKey, locale, inputFileName);
 		} else {
 			String text = args[4];
-			generateCacheForMessage(apiKey, cacheDir, locale, text);
+			generateCacheForMessage(impl, apiKey, locale, text);
 		}
 		return RC_OK;
 	}
@@ -76,8 +77,8 @@ public class CreateTTSCache {
 		System.out.println();
 	}
 
-	private void generateCacheForFile(String apiKey, String cacheDir, String locale, String inputFileName)
-			throws IOException {
+	private void generateCacheForFile(CachedVoiceRSSCloudImplementation impl, String apiKey, String locale,
+			String inputFileName) throws IOException {
 		File inputFile = new File(inputFileName);
 		BufferedReader br = null;
 		try {
@@ -85,7 +86,7 @@ public class CreateTTSCache {
 			String line;
 			while ((line = br.readLine()) != null) {
 				// process the line.
-				generateCacheForMessage(apiKey, cacheDir, locale, line);
+				generateCacheForMessage(impl, apiKey, locale, line);
 			}
 		} finally {
 			if (br != null) {
@@ -94,7 +95,8 @@ public class CreateTTSCache {
 		}
 	}
 
-	private void generateCacheForMessage(String apiKey, String cacheDir, String locale, String msg) throws IOException {
+	private void generateCacheForMessage(CachedVoiceRSSCloudImplementation impl, String apiKey, String locale,
+			String msg) throws IOException {
 		if (msg == null) {
 			System.err.println("Ignore msg=null");
 			return;
@@ -104,8 +106,7 @@ public class CreateTTSCache {
 			System.err.println("Ignore msg=''");
 			return;
 		}
-		CachedVoiceRSSCloudImplementation impl = new CachedVoiceRSSCloudImplementation(cacheDir);
-		File cachedFile = impl.getTextToSpeechAsFile(apiKey, msg, locale, "MP3");
+		File cachedFile = impl.getTextToSpeechAsFile(apiKey, msg, locale, "VoiceRSS", "MP3");
 		System.out.println("Created cached audio for locale='" + locale + "', msg='" + msg + "' to file=" + cachedFile);
 	}
 }